@@ -6,17 +6,17 @@
 // Lecturer: Florian Heimerl
 // Notes to Grader: NONE
 
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.LinkedList;
-import java.util.PriorityQueue;
 import java.util.NoSuchElementException;
 
 public class AEPlaceholder implements GraphADT<IVertex>, IGraph {
 
     /**
-     * Vertex objects group a data field with an adjacency list of weighted
-     * directed edges that lead away from them.
+     * Vertex objects group a data field with adjacency lists of weighted
+     * directed edges that lead away from them and that lead into them.
      */
     protected class Vertex implements IVertex {
         public int id;
@@ -26,6 +26,8 @@ public class AEPlaceholder implements GraphADT<IVertex>, IGraph {
 
         public IVertex data; // vertex label or application specific data
         public LinkedList<Edge> edgesLeaving;
+        public LinkedList<Edge> edgesEntering; // the same Edge objects, listed at their target
+        public int index; // position in vertexList, dense over all vertices
 
         public Vertex(IVertex data) {
             this.setId(data.getId());
@@ -34,6 +36,7 @@ public class AEPlaceholder implements GraphADT<IVertex>, IGraph {
             this.setY(data.getY());
             this.data = data;
             this.edgesLeaving = new LinkedList<>();
+            this.edgesEntering = new LinkedList<>();
         }
 
         @Override
@@ -78,14 +81,16 @@ public class AEPlaceholder implements GraphADT<IVertex>, IGraph {
     }
 
     /**
-     * Edge objects are stored within their source vertex, and group together
-     * their target destination vertex, along with an double weight.
+     * Edge objects are stored within their source vertex and their target vertex, and group
+     * together their target destination vertex, along with an double weight.
      */
     protected class Edge {
         public Vertex source;
 
         public Vertex target;
         public double weight;
+        public int slot; // position in edgeList, dense over all edges
+        public double countedWeight; // weight of the edge as summed up by the counters
 
         public double getWeight() {
             if (Double.isNaN(this.weight))
@@ -100,8 +105,46 @@ public class AEPlaceholder implements GraphADT<IVertex>, IGraph {
         }
     }
 
-    protected Hashtable<IVertex, Vertex> vertices; // holds graph verticies, key=data
-    public AEPlaceholder() { vertices = new Hashtable<>(); }
+    protected HashMap<IVertex, Vertex> vertices; // holds graph verticies, key=data
+    protected ArrayList<Vertex> vertexList; // holds graph verticies, key=index
+    protected ArrayList<Edge> edgeList; // holds graph edges, key=slot
+    protected LongIntMap edgeIndex; // packed (source index, target index) -> slot in edgeList
+    protected GraphCounters counters; // sizes and degree statistics, updated by every change
+    protected GraphSnapshot snapshot; // snapshot of the current graph, null after a change
+    protected int heapArity = 4; // arity of the indexed heap used by searches
+    protected boolean reuseSearchState = true; // keep one search state for all queries
+    protected SearchState searchState; // reused search state, created by the first query
+    public AEPlaceholder() {
+        vertices = new HashMap<>();
+        vertexList = new ArrayList<>();
+        edgeList = new ArrayList<>();
+        edgeIndex = new LongIntMap();
+        counters = new GraphCounters();
+    }
+
+    /**
+     * Look up the edge from sourceVertex to targetVertex in the edge index.
+     *
+     * @return the edge, or null if there is no such edge
+     */
+    protected Edge findEdge(Vertex sourceVertex, Vertex targetVertex) {
+        int slot = edgeIndex.get(LongIntMap.key(sourceVertex.index, targetVertex.index));
+        return slot == -1 ? null : edgeList.get(slot);
+    }
+
+    /**
+     * Drop an edge from edgeList and the edge index, moving the last edge into its slot.
+     * The adjacency lists of its end vertices are left to the caller.
+     */
+    protected void unindexEdge(Edge edge) {
+        edgeIndex.remove(LongIntMap.key(edge.source.index, edge.target.index));
+        Edge last = edgeList.remove(edgeList.size() - 1);
+        if(last != edge) {
+            last.slot = edge.slot;
+            edgeList.set(last.slot, last);
+            edgeIndex.put(LongIntMap.key(last.source.index, last.target.index), last.slot);
+        }
+    }
 
     /**
      * Insert a new vertex into the graph.
@@ -115,7 +158,12 @@ public class AEPlaceholder implements GraphADT<IVertex>, IGraph {
         if(data == null) 
             throw new NullPointerException("Cannot add null vertex");
         if(vertices.containsKey(data)) return false; // duplicate values are not allowed
-        vertices.put(data, new Vertex(data));
+        Vertex vertex = new Vertex(data);
+        vertex.index = vertexList.size();
+        vertexList.add(vertex);
+        vertices.put(data, vertex);
+        counters.vertexInserted();
+        snapshot = null;
         return true;
     }
     
@@ -132,19 +180,78 @@ public class AEPlaceholder implements GraphADT<IVertex>, IGraph {
         if(data == null) throw new NullPointerException("Cannot remove null vertex");
         Vertex removeVertex = vertices.get(data);
         if(removeVertex == null) return false; // vertex not found within graph
-        // search all vertices for edges targeting removeVertex 
-        for(Vertex v : vertices.values()) {
-            Edge removeEdge = null;
-            for(Edge e : v.edgesLeaving)
-                if(e.target == removeVertex)
-                    removeEdge = e;
-            // and remove any such edges that are found
-            if(removeEdge != null) v.edgesLeaving.remove(removeEdge);
+        // only the vertices adjacent to removeVertex list edges to or from it
+        int outDegree = removeVertex.edgesLeaving.size(); // degrees of removeVertex as its edges go
+        int inDegree = removeVertex.edgesEntering.size();
+        for(Edge e : removeVertex.edgesEntering) {
+            if(e.source != removeVertex) {
+                counters.edgeRemoved(e.source.edgesLeaving.size(), inDegree--, e.countedWeight);
+                e.source.edgesLeaving.remove(e);
+            } else
+                counters.edgeRemoved(outDegree--, inDegree--, e.countedWeight);
+            unindexEdge(e);
+        }
+        for(Edge e : removeVertex.edgesLeaving) {
+            if(e.target == removeVertex) continue; // self loop, already dropped with the entering edges
+            counters.edgeRemoved(outDegree--, e.target.edgesEntering.size(), e.countedWeight);
+            e.target.edgesEntering.remove(e);
+            unindexEdge(e);
+        }
+        counters.vertexRemoved(0, 0);
+        snapshot = null;
+        // move the last vertex into the freed index so indices stay dense
+        Vertex last = vertexList.remove(vertexList.size() - 1);
+        if(last != removeVertex) {
+            // edges of the moved vertex are keyed by its old index
+            for(Edge e : last.edgesLeaving)
+                edgeIndex.remove(LongIntMap.key(e.source.index, e.target.index));
+            for(Edge e : last.edgesEntering)
+                edgeIndex.remove(LongIntMap.key(e.source.index, e.target.index));
+            last.index = removeVertex.index;
+            vertexList.set(last.index, last);
+            for(Edge e : last.edgesLeaving)
+                edgeIndex.put(LongIntMap.key(e.source.index, e.target.index), e.slot);
+            for(Edge e : last.edgesEntering)
+                edgeIndex.put(LongIntMap.key(e.source.index, e.target.index), e.slot);
         }
         // finally remove the vertex and all edges contained within it
         return vertices.remove(data) != null;
     }
 
+    /**
+     * Refresh the coordinates and label copied into a vertex after its data item has been changed.
+     *
+     * @param data the data item stored in the vertex
+     * @return true if the coordinates of the vertex changed, false if they are the ones
+     *     already copied or the vertex is not in the graph
+     * @throws NullPointerException if data is null
+     */
+    public boolean updateVertex(IVertex data) {
+        if(data == null) throw new NullPointerException("Cannot update null vertex");
+        Vertex vertex = vertices.get(data);
+        if(vertex == null) return false;
+        vertex.setLabel(data.getLabel());
+        if(vertex.getX() == data.getX() && vertex.getY() == data.getY()) return false; // no path changes with a label
+        vertex.setX(data.getX());
+        vertex.setY(data.getY());
+        // edges weighted by the distance between their ends change with the vertex
+        for(Edge e : vertex.edgesLeaving)
+            recountWeight(e);
+        for(Edge e : vertex.edgesEntering)
+            recountWeight(e);
+        snapshot = null;
+        return true;
+    }
+
+    /**
+     * Update the weight an edge contributes to the counters.
+     */
+    private void recountWeight(Edge edge) {
+        double weight = edge.getWeight();
+        counters.weightChanged(edge.countedWeight, weight);
+        edge.countedWeight = weight;
+    }
+
     /**
      * Insert a new directed edge with a positive edge weight into the graph.
      *
@@ -172,11 +279,18 @@ public class AEPlaceholder implements GraphADT<IVertex>, IGraph {
         if(weight < 0) 
             throw new IllegalArgumentException("Cannot add edge with negative weight");
         // handle cases where edge already exists between these verticies
-        for(Edge e : sourceVertex.edgesLeaving)
-            if(e.target == targetVertex)
-                return false; // edge already exists
+        if(findEdge(sourceVertex, targetVertex) != null)
+            return false; // edge already exists
         // otherwise add new edge to sourceVertex
-        sourceVertex.edgesLeaving.add(new Edge(sourceVertex, targetVertex, weight));
+        Edge edge = new Edge(sourceVertex, targetVertex, weight);
+        edge.countedWeight = edge.getWeight();
+        counters.edgeInserted(sourceVertex.edgesLeaving.size(), targetVertex.edgesEntering.size(), edge.countedWeight);
+        sourceVertex.edgesLeaving.add(edge);
+        targetVertex.edgesEntering.add(edge);
+        edge.slot = edgeList.size();
+        edgeList.add(edge);
+        edgeIndex.put(LongIntMap.key(sourceVertex.index, targetVertex.index), edge.slot);
+        snapshot = null;
         return true;
     }
 
@@ -199,12 +313,13 @@ public class AEPlaceholder implements GraphADT<IVertex>, IGraph {
         Vertex targetVertex = this.vertices.get(target);
         if(sourceVertex == null || targetVertex == null) throw new IllegalArgumentException("Cannot remove edge with vertices that do not exist");
         // find edge to remove
-        Edge removeEdge = null;
-        for(Edge e : sourceVertex.edgesLeaving)
-            if(e.target == targetVertex) 
-                removeEdge = e;
+        Edge removeEdge = findEdge(sourceVertex, targetVertex);
         if(removeEdge != null) { // remove edge that is successfully found                
+            counters.edgeRemoved(sourceVertex.edgesLeaving.size(), targetVertex.edgesEntering.size(), removeEdge.countedWeight);
             sourceVertex.edgesLeaving.remove(removeEdge);
+            targetVertex.edgesEntering.remove(removeEdge);
+            unindexEdge(removeEdge);
+            snapshot = null;
             return true;
         }
         return false; // otherwise return false to indicate failure to find
@@ -234,11 +349,8 @@ public class AEPlaceholder implements GraphADT<IVertex>, IGraph {
         if(source == null || target == null) throw new NullPointerException("Cannot contain edge adjacent to null data"); 
         Vertex sourceVertex = vertices.get(source);
         Vertex targetVertex = vertices.get(target);
-        if(sourceVertex == null) return false;
-        for(Edge e : sourceVertex.edgesLeaving)
-            if(e.target == targetVertex)
-                return true;
-        return false;
+        if(sourceVertex == null || targetVertex == null) return false;
+        return findEdge(sourceVertex, targetVertex) != null;
     }
     
     /**
@@ -260,9 +372,9 @@ public class AEPlaceholder implements GraphADT<IVertex>, IGraph {
         Vertex sourceVertex = vertices.get(source);
         Vertex targetVertex = vertices.get(target);
         if(sourceVertex == null || targetVertex == null) throw new IllegalArgumentException("Cannot retrieve weight of edge between vertices that do not exist");
-        for(Edge e : sourceVertex.edgesLeaving)
-            if(e.target == targetVertex)
-                return e.getWeight();
+        Edge edge = findEdge(sourceVertex, targetVertex);
+        if(edge != null)
+            return edge.getWeight();
         throw new NoSuchElementException("No directed edge found between these vertices");
     }
     
@@ -272,10 +384,7 @@ public class AEPlaceholder implements GraphADT<IVertex>, IGraph {
      * @return the number of edges in the graph
      */
     public int getEdgeCount() {
-        int edgeCount = 0;
-        for(Vertex v : vertices.values())
-            edgeCount += v.edgesLeaving.size();
-        return edgeCount;
+        return edgeList.size();
     }
     
     /**
@@ -287,6 +396,60 @@ public class AEPlaceholder implements GraphADT<IVertex>, IGraph {
         return vertices.size();
     }
 
+    /**
+     * Return the number of edges leaving a vertex.
+     *
+     * @param data the data item stored in the vertex
+     * @return the out-degree of the vertex
+     * @throws NoSuchElementException if no vertex contains data
+     */
+    public int getOutDegree(IVertex data) {
+        Vertex vertex = data == null ? null : vertices.get(data);
+        if(vertex == null) throw new NoSuchElementException("No vertex found for " + data);
+        return vertex.edgesLeaving.size();
+    }
+
+    /**
+     * Return the number of edges entering a vertex.
+     *
+     * @param data the data item stored in the vertex
+     * @return the in-degree of the vertex
+     * @throws NoSuchElementException if no vertex contains data
+     */
+    public int getInDegree(IVertex data) {
+        Vertex vertex = data == null ? null : vertices.get(data);
+        if(vertex == null) throw new NoSuchElementException("No vertex found for " + data);
+        return vertex.edgesEntering.size();
+    }
+
+    /**
+     * Return a snapshot of the size and degree statistics of the graph. Distance weighted
+     * edges are summed with the vertex coordinates of the last insert or update.
+     *
+     * @return the current statistics of the graph
+     */
+    public GraphStats getStats() {
+        return counters.snapshot();
+    }
+
+    /**
+     * Return an immutable snapshot of the current graph, copied into CSR arrays the first
+     * time it is asked for after a change.
+     *
+     * @return a snapshot of the current graph
+     */
+    public GraphSnapshot snapshot() {
+        if (snapshot == null) {
+            CSRGraph copy = new CSRGraph();
+            for (Vertex v : vertexList)
+                copy.insertVertex(v.data);
+            for (Edge e : edgeList)
+                copy.insertEdge(e.source.data, e.target.data, e.weight);
+            snapshot = copy.snapshot();
+        }
+        return snapshot;
+    }
+
     /**
      * Check if the graph is empty (does not contain any vertices or edges).
      * 
@@ -298,75 +461,78 @@ public class AEPlaceholder implements GraphADT<IVertex>, IGraph {
 
     /**
      * Path objects store a discovered path of vertices and the overal distance of cost
-     * of the weighted directed edges along this path. Path objects can be copied and extended
-     * to include new edges and verticies using the extend constructor. In comparison to a
-     * predecessor table which is sometimes used to implement Dijkstra's algorithm, this
-     * eliminates the need for tracing paths backwards from the destination vertex to the
-     * starting vertex at the end of the algorithm.
+     * of the weighted directed edges along this path. A path is only built once the search
+     * has settled its end vertex, by tracing the predecessor table backwards from the
+     * destination vertex to the starting vertex.
      */
-    protected class Path implements Comparable<Path> {
+    protected class Path {
         public Vertex start; // first vertex within path
         public double distance; // sumed weight of all edges in path
         public List<IVertex> dataSequence; // ordered sequence of data from vertices in path
         public Vertex end; // last vertex within path
 
         /**
-         * Creates a new path containing a single vertex.  Since this vertex is both
-         * the start and end of the path, it's initial distance is zero.
+         * Creates a new path by following the predecessor table from end back to start.
          * @param start is the first vertex on this path
+         * @param end is the last vertex on this path
+         * @param distance is the summed weight of all edges on this path
+         * @param state is the finished search holding the predecessor of each vertex
          */
-        public Path(Vertex start) {
+        public Path(Vertex start, Vertex end, double distance, SearchState state) {
             this.start = start;
-            this.distance = 0;
-            this.dataSequence = new LinkedList<>();
-            this.dataSequence.add(start.data);
-            this.end = start;
+            this.distance = distance;
+            this.end = end;
+            LinkedList<IVertex> sequence = new LinkedList<>();
+            for (int v = end.index; v != -1; v = state.pred(v))
+                sequence.addFirst(vertexList.get(v).data);
+            this.dataSequence = sequence;
         }
+    }
 
-        /**
-         * This extension constructor makes a copy of the path passed into it as an argument
-         * without affecting the original path object (copyPath). The path is then extended
-         * by the Edge object extendBy.
-         * @param copyPath is the path that is being copied
-         * @param extendBy is the edge the copied path is extended by
-         */
-        public Path(Path copyPath, Edge extendBy) {
-            // Implement this constructor in Step 5.
-            this(copyPath.start);
-            this.dataSequence.clear();
-            this.dataSequence.addAll(copyPath.dataSequence);
-            this.dataSequence.add(extendBy.target.data);
-            this.distance = copyPath.distance;
-            this.distance += extendBy.getWeight();
-            this.end = extendBy.target;
-        }
+    /**
+     * Return the working memory for a search over the current vertices: the state kept by
+     * this graph when search states are reused, or a fresh one otherwise.
+     */
+    protected SearchState searchState() {
+        if (!reuseSearchState)
+            return new SearchState(vertexList.size(), heapArity);
+        if (searchState == null || searchState.heap.getArity() != heapArity)
+            searchState = new SearchState(vertexList.size(), heapArity);
+        return searchState;
+    }
 
-        /**
-         * Allows the natural ordering of paths to be increasing with path distance.
-         * When path distance is equal, the string comparison of end vertex data is used to break ties.
-         * @param other is the other path that is being compared to this one
-         * @return -1 when this path has a smaller distance than the other,
-         *         +1 when this path has a larger distance that the other,
-         *         and the comparison of end vertex data in string form when these distances are tied
-         */
-        public int compareTo(Path other) {
-            double cmp = this.distance - other.distance;
-            // use path distance as the natural ordering
-            if (cmp < 0)
-                return -1;
-            if (cmp > 0)
-                return 1;
-            // when path distances are equal, break ties by comparing the string
-            // representation of data in the end vertex of each path
-            return this.end.data.toString().compareTo(other.end.data.toString());
-        }
+    /**
+     * Set the arity of the indexed heap used by shortest path searches.
+     *
+     * @param heapArity the number of children of each heap node, e.g. 2, 4 or 8
+     * @throws IllegalArgumentException if heapArity is less than 2
+     */
+    public void setHeapArity(int heapArity) {
+        if (heapArity < 2) throw new IllegalArgumentException("Heap arity must be at least 2");
+        this.heapArity = heapArity;
+    }
+
+    /**
+     * Choose whether shortest path searches reuse one search state (heap, distance and
+     * predecessor arrays) across queries, so repeated queries allocate nothing. A reused
+     * state must not be shared by concurrent queries.
+     *
+     * @param reuseSearchState true to reuse the search state, false to allocate one per query
+     */
+    public void setReuseSearchState(boolean reuseSearchState) {
+        this.reuseSearchState = reuseSearchState;
+        if (!reuseSearchState) searchState = null;
     }
 
     /**
      * Uses Dijkstra's shortest path algorithm to find and return the shortest path 
      * between two vertices in this graph: start and end. This path contains an ordered list
      * of the data within each node on this path, and also the distance or cost of all edges
-     * that are a part of this path.
+     * that are a part of this path. Distances and predecessors are kept in arrays indexed by
+     * Vertex.index, the frontier in an indexed heap (ties broken by Vertex.index), and the
+     * search stops as soon as end is settled. Of several paths with the same cost, the one
+     * returned is thus picked by the dense indices of its vertices rather than by their ids,
+     * and it may change once the removal of a vertex moves another one into its index.
      * @param start data item within first node in path
      * @param end data item within last node in path
      * @return the shortest path from start to end, as computed by Dijkstra's algorithm
@@ -374,35 +540,96 @@ public class AEPlaceholder implements GraphADT<IVertex>, IGraph {
      *     including when no vertex containing start or end can be found
      */
     protected Path dijkstrasShortestPath(IVertex start, IVertex end) {
-        Hashtable<Vertex, Boolean> vis = new Hashtable<>();
-        Hashtable<Vertex, Path> dist = new Hashtable<>();
-        PriorityQueue<Path> Q = new PriorityQueue<>();
-        if (!this.vertices.containsKey(start)) throw new NoSuchElementException();
-        if (!this.vertices.containsKey(end)) throw new NoSuchElementException();
+        if (start == null || !this.vertices.containsKey(start)) throw new NoSuchElementException();
+        if (end == null || !this.vertices.containsKey(end)) throw new NoSuchElementException();
         Vertex startVertex = this.vertices.get(start);
         Vertex endVertex = this.vertices.get(end);
-        dist.put(startVertex, new Path(startVertex));
-        Q.add(new Path(startVertex));
+        SearchState state = searchState();
+        state.reset(vertexList.size());
+        state.addSource(startVertex.index, 0);
+        IndexedHeap Q = state.heap;
         while (!Q.isEmpty()) {
-            Path current = Q.peek();
-            Q.poll();
-            if (vis.containsKey(current.end) && vis.get(current.end)) continue;
-            vis.put(current.end, true);
-            for (Edge edge : current.end.edgesLeaving) {
-                if (!dist.containsKey(edge.target)) {
-                    dist.put(edge.target, new Path(current, edge));
-                    Q.add(new Path(current, edge));
-                }
-                else if (dist.get(edge.target).distance > edge.getWeight() + dist.get(current.end).distance) {
-                    dist.replace(edge.target, new Path(current, edge));
-                    Q.add(new Path(current, edge));
-                }
-            }
+            Vertex u = vertexList.get(Q.poll());
+            if (u == endVertex)
+                return new Path(startVertex, endVertex, state.dist(u.index), state);
+            for (Edge edge : u.edgesLeaving)
+                state.relax(u.index, edge.target.index, edge.getWeight(), 0);
         }
-        if (!dist.containsKey(endVertex)) throw new NoSuchElementException();
-        return dist.get(endVertex); // Implement this method in Step 7.
+        throw new NoSuchElementException();
     }
     
+    /**
+     * Returns the vertices within a distance of source, nearest first.
+     * Runs Dijkstra's shortest path algorithm, never queueing a vertex beyond maxCost.
+     * 
+     * @param source the data item in the source vertex of all paths
+     * @param maxCost the largest distance from source to include
+     * @return the ids and distances of the vertices within maxCost of source
+     * @throws NoSuchElementException when no vertex containing source can be found
+     */
+    public ReachableSet verticesWithin(IVertex source, double maxCost) {
+        if (source == null || !this.vertices.containsKey(source)) throw new NoSuchElementException();
+        Vertex sourceVertex = this.vertices.get(source);
+        ReachableSet reachable = new ReachableSet(source.getId(), maxCost);
+        if (!(maxCost >= 0)) return reachable;
+        SearchState state = searchState();
+        state.reset(vertexList.size());
+        state.addSource(sourceVertex.index, 0);
+        IndexedHeap Q = state.heap;
+        while (!Q.isEmpty()) {
+            Vertex u = vertexList.get(Q.poll());
+            double distance = state.dist(u.index);
+            reachable.add(u.data.getId(), distance);
+            for (Edge edge : u.edgesLeaving)
+                if (distance + edge.getWeight() <= maxCost)
+                    state.relax(u.index, edge.target.index, edge.getWeight(), 0);
+        }
+        return reachable;
+    }
+    
+    /**
+     * Returns up to k shortest loopless paths between start and end, shortest first.
+     * Runs Yen's algorithm on the snapshot of the graph.
+     * 
+     * @param start the data item in the starting vertex for the paths
+     * @param end the data item in the destination vertex for the paths
+     * @param k the number of paths to find
+     * @return the data items of the vertices on each path, including both start and end
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public List<List<IVertex>> kShortestPaths(IVertex start, IVertex end, int k) {
+        if (start == null || !this.vertices.containsKey(start)) throw new NoSuchElementException();
+        if (end == null || !this.vertices.containsKey(end)) throw new NoSuchElementException();
+        return snapshot().kShortestPaths(start.getId(), end.getId(), k);
+    }
+    
+    /**
+     * Returns the shortest paths from source to every vertex it reaches.
+     * Runs Dijkstra's shortest path algorithm until every reachable vertex is settled.
+     * 
+     * @param source the data item in the source vertex of all paths
+     * @return the shortest path tree rooted at source
+     * @throws NoSuchElementException when no vertex containing source can be found
+     */
+    public ShortestPathTree shortestPathTree(IVertex source) {
+        if (source == null || !this.vertices.containsKey(source)) throw new NoSuchElementException();
+        Vertex sourceVertex = this.vertices.get(source);
+        SearchState state = searchState();
+        state.reset(vertexList.size());
+        state.addSource(sourceVertex.index, 0);
+        IndexedHeap Q = state.heap;
+        while (!Q.isEmpty()) {
+            Vertex u = vertexList.get(Q.poll());
+            for (Edge edge : u.edgesLeaving)
+                state.relax(u.index, edge.target.index, edge.getWeight(), 0);
+        }
+        IVertex[] data = new IVertex[vertexList.size()];
+        for (int i = 0; i < data.length; i++)
+            data[i] = vertexList.get(i).data;
+        return ShortestPathTree.fromSearch(data, sourceVertex.index, state);
+    }
+
     /**
      * Returns the shortest path between start and end.
      * Uses Dijkstra's shortest path algorithm to find the shortest path.
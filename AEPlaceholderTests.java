@@ -0,0 +1,170 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the adjacency list graph engine and its Dijkstra over dense vertex indices
+ * against a plain Dijkstra
+ */
+public class AEPlaceholderTests {
+    /**
+     * The search finds the same distances and paths as a plain Dijkstra on random graphs, where
+     * many pairs cannot reach each other, with every heap arity and with or without reusing
+     * the search state
+     */
+    @Test
+    public void testMatchesDijkstra() {
+        int unreachable = 0;
+        for (long seed = 0; seed < 12; seed++) {
+            AEPlaceholder graph = new AEPlaceholder();
+            graph.setHeapArity(new int[]{2, 4, 8}[(int) (seed % 3)]);
+            graph.setReuseSearchState(seed % 2 == 0);
+            ReferenceGraph reference = ReferenceGraph.random(graph, seed, 60, 150);
+            unreachable += reference.checkQueries(200);
+        }
+        assertTrue(unreachable > 0);
+    }
+
+    /**
+     * On a grid of unit edges, where most pairs are joined by many paths of the same cost, a
+     * shortest path is returned and the same one every time it is asked for
+     */
+    @Test
+    public void testEqualCostPaths() {
+        AEPlaceholder graph = new AEPlaceholder();
+        ReferenceGraph reference = new ReferenceGraph(graph, 0);
+        IVertex[][] grid = new IVertex[8][8];
+        for (int row = 0; row < 8; row++)
+            for (int column = 0; column < 8; column++)
+                grid[row][column] = reference.addVertex();
+        for (int row = 0; row < 8; row++)
+            for (int column = 0; column < 8; column++) {
+                if (column + 1 < 8) reference.addEdge(grid[row][column], grid[row][column + 1], 1);
+                if (row + 1 < 8) reference.addEdge(grid[row][column], grid[row + 1][column], 1);
+            }
+        for (IVertex source : reference.getVertices())
+            for (IVertex target : reference.getVertices()) {
+                reference.checkQuery(source, target);
+                if (reference.distance(source, target) < Double.POSITIVE_INFINITY) {
+                    List<IVertex> path = graph.shortestPath(source, target);
+                    assertEquals(path, graph.shortestPath(source, target));
+                }
+            }
+    }
+
+    /**
+     * Answers stay right as vertices are removed, each handing its dense index to the last
+     * vertex, and as edges are removed and added between queries
+     */
+    @Test
+    public void testAfterMutations() {
+        for (long seed = 0; seed < 10; seed++) {
+            ReferenceGraph reference = ReferenceGraph.random(new AEPlaceholder(), seed, 60, 150);
+            for (int round = 0; round < 10; round++) {
+                reference.removeVertex(reference.randomVertex());
+                reference.removeEdge(reference.randomVertex(), reference.randomVertex());
+                reference.addVertex();
+                for (int i = 0; i < 5; i++)
+                    reference.addEdge(reference.randomVertex(), reference.randomVertex());
+                reference.checkQueries(20);
+            }
+        }
+    }
+
+    /**
+     * Check every pair of vertices, the degrees and the counts of the graph against the edges
+     * kept as plain pairs of vertex ids, and the dense vertex indices and edge slots against
+     * the lists and the edge index that hold them.
+     */
+    private static void checkAdjacency(AEPlaceholder graph, List<IVertex> vertices, HashSet<List<Integer>> edges) {
+        assertEquals(vertices.size(), graph.getVertexCount());
+        assertEquals(edges.size(), graph.getEdgeCount());
+        for (IVertex source : vertices) {
+            int out = 0;
+            int in = 0;
+            for (IVertex target : vertices) {
+                boolean expected = edges.contains(List.of(source.getId(), target.getId()));
+                assertEquals(expected, graph.containsEdge(source, target));
+                if (expected) {
+                    assertEquals(ReferenceGraph.euclidean(source, target), graph.getWeightD(source, target), 1e-9);
+                    out++;
+                } else
+                    assertThrows(NoSuchElementException.class, () -> graph.getWeightD(source, target));
+                if (edges.contains(List.of(target.getId(), source.getId()))) in++;
+            }
+            assertEquals(out, graph.getOutDegree(source));
+            assertEquals(in, graph.getInDegree(source));
+        }
+        for (int i = 0; i < graph.vertexList.size(); i++) {
+            AEPlaceholder.Vertex vertex = graph.vertexList.get(i);
+            assertEquals(i, vertex.index);
+            assertSame(vertex, graph.vertices.get(vertex.data));
+        }
+        for (int i = 0; i < graph.edgeList.size(); i++) {
+            AEPlaceholder.Edge edge = graph.edgeList.get(i);
+            assertEquals(i, edge.slot);
+            assertEquals(i, graph.edgeIndex.get(LongIntMap.key(edge.source.index, edge.target.index)));
+            assertTrue(edge.source.edgesLeaving.contains(edge));
+            assertTrue(edge.target.edgesEntering.contains(edge));
+        }
+    }
+
+    /**
+     * Random vertex and edge inserts and removals, including self loops and removed vertices
+     * coming back, keep the adjacency, the degrees and the index of every edge equal to
+     * brute-force adjacency
+     */
+    @Test
+    public void testAdjacencyAfterMutations() {
+        for (long seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            AEPlaceholder graph = new AEPlaceholder();
+            List<IVertex> all = new ArrayList<>();
+            for (int i = 0; i < 30; i++)
+                all.add(new VertexGeneral(i, "v" + i, random.nextDouble() * 1000, random.nextDouble() * 1000));
+            List<IVertex> vertices = new ArrayList<>();
+            HashSet<List<Integer>> edges = new HashSet<>();
+            for (int step = 0; step < 2000; step++) {
+                IVertex vertex = all.get(random.nextInt(all.size()));
+                int op = random.nextInt(10);
+                if (op < 2) {
+                    assertEquals(!vertices.contains(vertex), graph.insertVertex(vertex));
+                    if (!vertices.contains(vertex)) vertices.add(vertex);
+                } else if (op < 3) {
+                    assertEquals(vertices.remove(vertex), graph.removeVertex(vertex));
+                    edges.removeIf(edge -> edge.contains(vertex.getId()));
+                } else if (!vertices.isEmpty()) {
+                    IVertex source = vertices.get(random.nextInt(vertices.size()));
+                    IVertex target = random.nextInt(10) == 0 ? source : vertices.get(random.nextInt(vertices.size()));
+                    List<Integer> edge = List.of(source.getId(), target.getId());
+                    if (op < 8) assertEquals(edges.add(edge), graph.insertEdge(source, target));
+                    else assertEquals(edges.remove(edge), graph.removeEdge(source, target));
+                }
+                if (step % 100 == 0) checkAdjacency(graph, vertices, edges);
+            }
+            checkAdjacency(graph, vertices, edges);
+        }
+    }
+
+    /**
+     * Queries from or to a vertex that is not in the graph throw
+     */
+    @Test
+    public void testUnknownVertex() {
+        AEPlaceholder graph = new AEPlaceholder();
+        ReferenceGraph reference = ReferenceGraph.random(graph, 1, 5, 10);
+        IVertex stranger = new VertexGeneral(100, "stranger", 0, 0);
+        assertThrows(NoSuchElementException.class, () -> graph.shortestPath(stranger, reference.randomVertex()));
+        assertThrows(NoSuchElementException.class, () -> graph.getPathCostD(reference.randomVertex(), stranger));
+        assertThrows(NoSuchElementException.class, () -> graph.shortestPath(null, reference.randomVertex()));
+    }
+}
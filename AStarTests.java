@@ -0,0 +1,70 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the A* search mode of the graph engine against a plain Dijkstra
+ */
+public class AStarTests {
+    /**
+     * A* finds the same distances and paths as Dijkstra on random graphs, where many pairs
+     * cannot reach each other
+     */
+    @Test
+    public void testMatchesDijkstra() {
+        int unreachable = 0;
+        for (long seed = 0; seed < 20; seed++) {
+            ReferenceGraph reference = ReferenceGraph.random(new CSRGraph(SearchMode.ASTAR), seed, 60, 150);
+            unreachable += reference.checkQueries(200);
+        }
+        assertTrue(unreachable > 0);
+    }
+
+    /**
+     * Queries into and out of a vertex without edges throw
+     */
+    @Test
+    public void testIsolatedVertex() {
+        ReferenceGraph reference = ReferenceGraph.random(new CSRGraph(SearchMode.ASTAR), 1, 30, 120);
+        IVertex isolated = reference.addVertex();
+        for (IVertex vertex : reference.getVertices()) {
+            reference.checkQuery(vertex, isolated);
+            reference.checkQuery(isolated, vertex);
+        }
+    }
+
+    /**
+     * Edges lighter than the straight line between their ends make the coordinates an
+     * inadmissible heuristic, which A* must notice and stop using
+     */
+    @Test
+    public void testInadmissibleWeights() {
+        for (long seed = 0; seed < 10; seed++) {
+            ReferenceGraph reference = ReferenceGraph.random(new CSRGraph(SearchMode.ASTAR), seed, 60, 150);
+            for (int i = 0; i < 20; i++) {
+                IVertex source = reference.randomVertex();
+                IVertex target = reference.randomVertex();
+                reference.addEdge(source, target, ReferenceGraph.euclidean(source, target) * 0.1);
+            }
+            reference.checkQueries(200);
+        }
+    }
+
+    /**
+     * Answers stay right as vertices and edges are removed and added between queries
+     */
+    @Test
+    public void testAfterMutations() {
+        for (long seed = 0; seed < 10; seed++) {
+            ReferenceGraph reference = ReferenceGraph.random(new CSRGraph(SearchMode.ASTAR), seed, 60, 150);
+            for (int round = 0; round < 10; round++) {
+                reference.removeVertex(reference.randomVertex());
+                reference.removeEdge(reference.randomVertex(), reference.randomVertex());
+                reference.addVertex();
+                for (int i = 0; i < 5; i++)
+                    reference.addEdge(reference.randomVertex(), reference.randomVertex());
+                reference.checkQueries(20);
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the all-pairs shortest path tables against a plain Dijkstra, and the files
+ * they are kept in
+ */
+public class AllPairsShortestPathsTests {
+    @TempDir
+    File directory;
+
+    /**
+     * Check every entry of a table against the distances found by the reference Dijkstra.
+     */
+    private static void assertDistances(ReferenceGraph reference, AllPairsShortestPaths table) {
+        assertEquals(reference.getVertices().size(), table.getVertexCount());
+        for (IVertex source : reference.getVertices()) {
+            Map<IVertex, Double> distances = reference.distancesFrom(source);
+            for (IVertex target : reference.getVertices()) {
+                double expected = distances.getOrDefault(target, Double.POSITIVE_INFINITY);
+                assertEquals(expected, table.distance(source.getId(), target.getId()), 1e-9 * Math.max(1, expected));
+            }
+        }
+    }
+
+    /**
+     * Both algorithms find the distances of Dijkstra, infinity between vertices that cannot
+     * reach each other; Floyd-Warshall is run on enough vertices to span several tiles
+     */
+    @Test
+    public void testMatchesDijkstra() {
+        for (AllPairsShortestPaths.Method method : new AllPairsShortestPaths.Method[]{
+                AllPairsShortestPaths.Method.DIJKSTRA, AllPairsShortestPaths.Method.FLOYD_WARSHALL})
+            for (long seed = 0; seed < 4; seed++) {
+                CSRGraph graph = new CSRGraph();
+                ReferenceGraph reference = ReferenceGraph.random(graph, seed, 150, 400);
+                reference.removeVertex(reference.randomVertex()); // leaves a hole in the ids
+                AllPairsShortestPaths table = AllPairsShortestPaths.compute(graph.snapshot(), method, ForkJoinPool.commonPool());
+                assertEquals(method, table.getMethod());
+                assertDistances(reference, table);
+                assertEquals(Double.POSITIVE_INFINITY, table.distance(-1, reference.randomVertex().getId()));
+            }
+    }
+
+    /**
+     * The algorithm is chosen by the density of the graph
+     */
+    @Test
+    public void testChoose() {
+        assertEquals(AllPairsShortestPaths.Method.DIJKSTRA, AllPairsShortestPaths.choose(0, 0));
+        assertEquals(AllPairsShortestPaths.Method.DIJKSTRA, AllPairsShortestPaths.choose(100, 300));
+        assertEquals(AllPairsShortestPaths.Method.FLOYD_WARSHALL, AllPairsShortestPaths.choose(100, 5000));
+    }
+
+    /**
+     * A table read back from its file holds the same distances
+     */
+    @Test
+    public void testWriteAndRead() throws IOException {
+        CSRGraph graph = new CSRGraph();
+        ReferenceGraph reference = ReferenceGraph.random(graph, 5, 80, 200);
+        File file = AllPairsShortestPaths.fileFor(directory);
+        AllPairsShortestPaths.compute(graph.snapshot()).write(file);
+        assertTrue(AllPairsShortestPaths.isCurrent(file, graph.snapshot()));
+        AllPairsShortestPaths table = AllPairsShortestPaths.read(file, graph.snapshot());
+        assertTrue(table.matches(graph.snapshot()));
+        assertDistances(reference, table);
+    }
+
+    /**
+     * A table written before the graph changed is refused and can be deleted as stale, whether
+     * an edge was added, removed, or reweighted by moving one of its ends
+     */
+    @Test
+    public void testStaleTable() throws IOException {
+        for (int change = 0; change < 3; change++) {
+            CSRGraph graph = new CSRGraph();
+            ReferenceGraph reference = ReferenceGraph.random(graph, change, 40, 100);
+            IVertex source = reference.getVertices().get(0);
+            IVertex target = reference.getVertices().get(1);
+            graph.removeEdge(source, target);
+            graph.insertEdge(source, target); // weighted by the length of the edge
+            graph.removeEdge(target, source);
+            File file = AllPairsShortestPaths.fileFor(directory);
+            AllPairsShortestPaths table = AllPairsShortestPaths.compute(graph.snapshot());
+            table.write(file);
+            assertFalse(AllPairsShortestPaths.deleteIfStale(file, graph.snapshot()));
+            if (change == 0) graph.insertEdge(target, source, 1);
+            else if (change == 1) graph.removeEdge(source, target);
+            else {
+                source.setX(source.getX() + 1);
+                graph.updateVertex(source);
+            }
+            assertFalse(table.matches(graph.snapshot()));
+            assertFalse(AllPairsShortestPaths.isCurrent(file, graph.snapshot()));
+            assertThrows(IOException.class, () -> AllPairsShortestPaths.read(file, graph.snapshot()));
+            assertTrue(AllPairsShortestPaths.deleteIfStale(file, graph.snapshot()));
+            assertFalse(file.exists());
+        }
+    }
+
+    /**
+     * The table of a map stays current for the same map built again in another order, as
+     * when it is saved and opened again
+     */
+    @Test
+    public void testFingerprintIgnoresOrder() {
+        CSRGraph graph = new CSRGraph();
+        ReferenceGraph reference = ReferenceGraph.random(graph, 6, 50, 150);
+        CSRGraph copy = new CSRGraph();
+        List<IVertex> vertices = new ArrayList<>(reference.getVertices());
+        Collections.shuffle(vertices, reference.getRandom());
+        for (IVertex vertex : vertices)
+            copy.insertVertex(vertex);
+        Collections.shuffle(vertices, reference.getRandom());
+        for (IVertex source : vertices)
+            for (IVertex target : reference.getVertices())
+                if (graph.containsEdge(source, target))
+                    copy.insertEdge(source, target, graph.getWeightD(source, target));
+        assertEquals(AllPairsShortestPaths.fingerprint(graph.snapshot()), AllPairsShortestPaths.fingerprint(copy.snapshot()));
+        assertTrue(AllPairsShortestPaths.compute(graph.snapshot()).matches(copy.snapshot()));
+    }
+
+    /**
+     * Saving a map keeps a table that is still current and deletes it once the graph changed
+     */
+    @Test
+    public void testSaveDeletesStaleTable() throws IOException {
+        IBackend backend = new BackendPlaceholder(CSRGraph::new);
+        for (int i = 0; i < 10; i++)
+            backend.addVertex(new VertexGeneral(i, "v" + i, i * 10, (i % 3) * 10));
+        for (int i = 0; i < 9; i++)
+            backend.addEdge(new EdgeGeneral(i, 0, i, i + 1));
+        File file = AllPairsShortestPaths.fileFor(directory);
+        AllPairsShortestPaths table = backend.allPairsShortestPaths(directory);
+        assertEquals(Double.POSITIVE_INFINITY, table.distance(9, 0));
+        assertTrue(file.exists());
+        backend.saveFile(directory);
+        assertTrue(file.exists());
+        assertEquals(table.distance(0, 9), backend.allPairsShortestPaths(directory).distance(0, 9));
+        backend.addEdge(new EdgeGeneral(9, 0, 9, 0));
+        backend.saveFile(directory);
+        assertFalse(file.exists());
+        assertTrue(backend.allPairsShortestPaths(directory).distance(9, 0) < Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * A graph engine that counts the snapshots it is asked for.
+     */
+    private static class CountingGraph extends CSRGraph {
+        int snapshots;
+
+        @Override
+        public GraphSnapshot snapshot() {
+            snapshots++;
+            return super.snapshot();
+        }
+    }
+
+    /**
+     * Saving a map into a directory without a table does not compile a snapshot of the graph
+     * to check a table against
+     */
+    @Test
+    public void testSaveWithoutTable() throws IOException {
+        CountingGraph graph = new CountingGraph();
+        IBackend backend = new BackendPlaceholder(() -> graph);
+        backend.addVertex(new VertexGeneral(0, "a", 0, 0));
+        backend.addVertex(new VertexGeneral(1, "b", 10, 0));
+        backend.addEdge(new EdgeGeneral(0, 0, 0, 1));
+        int snapshots = graph.snapshots;
+        backend.saveFile(directory);
+        assertFalse(AllPairsShortestPaths.fileFor(directory).exists());
+        assertEquals(snapshots, graph.snapshots);
+        backend.allPairsShortestPaths(directory);
+        snapshots = graph.snapshots;
+        backend.saveFile(directory); // now there is a table to check
+        assertEquals(snapshots + 1, graph.snapshots);
+    }
+}
@@ -4,24 +4,44 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.function.Supplier;
 
 public class Backend implements IBackend{
     List<IVertex> vertices;
     List<IEdge> edges;
+    Supplier<IGraph> graphFactory; // creates the graph engine, e.g. AEPlaceholder::new, CSRGraph::new or ConcurrentGraph::new
     IGraph graph;
     IDataLoader dataLoader;
     HashMap<Integer, IVertex> idToV;
     HashMap<Integer, IEdge> idToE;
+    LongIntMap edgeIds; // packed (from id, to id) -> id of the edge the graph holds between them
+    PathCache pathCache; // shortest path results, made stale by every change that can change a path
+    ShortestPathTree sourceTree; // last shortest path tree, stale once the path cache version moves on
+    long sourceTreeVersion;
+    int lastFrom = -1; // origin of the last route that missed the cache
+    KdTree spatialIndex; // vertex coordinates, for nearest, radius and rectangle queries
+    EdgeRTree edgeIndex; // edge segments, for nearest and rectangle queries
+    VertexClusters clusters; // vertex counts and edge bundles per grid cell, for drawing zoomed out
 
     public Backend(){
+        this(AEPlaceholder::new);
+    }
+
+    public Backend(Supplier<IGraph> graphFactory){
         vertices = new ArrayList<>();
         edges = new ArrayList<>();
         // graph need to be initialized
         // dataLoader need to be initialized
         idToE = new HashMap();
         idToV = new HashMap();
+        edgeIds = new LongIntMap();
         dataLoader = new DataLoaderPlaceholder();
-        graph = new AEPlaceholder();
+        this.graphFactory = graphFactory;
+        graph = graphFactory.get();
+        pathCache = new PathCache(256);
+        spatialIndex = new KdTree();
+        edgeIndex = new EdgeRTree();
+        clusters = new VertexClusters();
     }
 
     @Override
@@ -29,22 +49,46 @@ public class Backend implements IBackend{
         String path = file.getAbsolutePath();
         dataLoader.writeEdges(edges, path + File.separator + "edges.json");
         dataLoader.writeVertices(vertices, path + File.separator + "vertices.json");
+        File tableFile = AllPairsShortestPaths.fileFor(file);
+        if (tableFile.isFile()) // most maps have no table, and a snapshot compiles the whole graph
+            AllPairsShortestPaths.deleteIfStale(tableFile, graph.snapshot());
     }
 
     @Override
     public void openFile(File file) throws IOException {
-        String path = file.getAbsolutePath();
-        vertices = dataLoader.loadVertices(path + File.separator + "vertices.json");
-        edges = dataLoader.loadEdges(path + File.separator + "edges.json");
-        for (IVertex v: vertices){
+        load(readVertices(file), readEdges(file));
+    }
+
+    @Override
+    public List<IVertex> readVertices(File file) throws IOException {
+        return dataLoader.loadVertices(file.getAbsolutePath() + File.separator + "vertices.json");
+    }
+
+    @Override
+    public List<IEdge> readEdges(File file) throws IOException {
+        return dataLoader.loadEdges(file.getAbsolutePath() + File.separator + "edges.json");
+    }
+
+    @Override
+    public void load(List<? extends IVertex> vertices, List<? extends IEdge> edges) {
+        clear();
+        this.vertices = new ArrayList<>(vertices);
+        this.edges = new ArrayList<>(edges);
+        for (IVertex v: this.vertices){
             graph.insertVertex(v);
             idToV.put(v.getId(), v);
+            spatialIndex.insert(v.getId(), v.getX(), v.getY());
+            clusters.addVertex(v.getId(), v.getX(), v.getY());
         }
 
-        for (IEdge e: edges) {
+        for (IEdge e: this.edges) {
             idToE.put(e.getId(), e);
-            graph.insertEdge(idToV.get(e.getFrom()), idToV.get(e.getTo()));
+            if (graph.insertEdge(idToV.get(e.getFrom()), idToV.get(e.getTo())))
+                edgeIds.put(LongIntMap.key(e.getFrom(), e.getTo()), e.getId());
+            clusters.addEdge(e.getId(), e.getFrom(), e.getTo());
         }
+        edgeIndex.load(this.edges, idToV);
+        pathCache.invalidate();
     }
 
     @Override
@@ -53,6 +97,9 @@ public class Backend implements IBackend{
         idToV.put(v.getId(), v);
         vertices.add(v);
         graph.insertVertex(v);
+        spatialIndex.insert(v.getId(), v.getX(), v.getY());
+        clusters.addVertex(v.getId(), v.getX(), v.getY());
+        pathCache.invalidate();
     }
 
     @Override
@@ -60,7 +107,12 @@ public class Backend implements IBackend{
         if (idToE.containsKey(e.getId())) return;
         idToE.put(e.getId(), e);
         edges.add(e);
-        graph.insertEdge(idToV.get(e.getFrom()), idToV.get(e.getTo()));
+        if (graph.insertEdge(idToV.get(e.getFrom()), idToV.get(e.getTo())))
+            edgeIds.put(LongIntMap.key(e.getFrom(), e.getTo()), e.getId());
+        if (idToV.containsKey(e.getFrom()) && idToV.containsKey(e.getTo()))
+            edgeIndex.insert(e, idToV.get(e.getFrom()), idToV.get(e.getTo()));
+        clusters.addEdge(e.getId(), e.getFrom(), e.getTo());
+        pathCache.invalidate();
     }
 
     @Override
@@ -69,22 +121,45 @@ public class Backend implements IBackend{
         graph.removeVertex(v);
         vertices.remove(v);
         idToV.remove(id);
+        // the graph dropped the edges of the vertex, so drop them here too
+        edges.removeIf(e -> {
+            if (e.getFrom() != id && e.getTo() != id) return false;
+            idToE.remove(e.getId());
+            edgeIds.remove(LongIntMap.key(e.getFrom(), e.getTo()));
+            return true;
+        });
+        spatialIndex.remove(id);
+        edgeIndex.removeVertex(id);
+        clusters.removeVertex(id);
+        pathCache.invalidate();
     }
 
     @Override
     public void removeEdge(int id) throws IOException {
         IEdge e = idToE.get(id);
         graph.removeEdge(idToV.get(e.getFrom()), idToV.get(e.getTo()));
+        edgeIds.remove(LongIntMap.key(e.getFrom(), e.getTo()));
         edges.remove(e);
         idToE.remove(id);
+        edgeIndex.remove(id);
+        clusters.removeEdge(id);
+        pathCache.invalidate();
     }
 
     @Override
     public void changeVertex(int id, double x, double y) {
-        if (idToV.get(id).getX() == x && idToV.get(id).getY() == y) return;
         IVertex v = idToV.get(id);
-        v.setX(x);
-        v.setY(y);
+        if (v.getX() != x || v.getY() != y) {
+            v.setX(x);
+            v.setY(y);
+        }
+        // frontend vertices may already report the new position, so let the graph compare
+        // with the position it recorded; clicks call this without moving the vertex
+        if (!graph.updateVertex(v)) return;
+        spatialIndex.move(id, x, y);
+        edgeIndex.moveVertex(id, x, y);
+        clusters.moveVertex(id, x, y);
+        pathCache.invalidate();
     }
 
     @Override
@@ -92,6 +167,7 @@ public class Backend implements IBackend{
         if (idToV.get(id).getLabel().equals(s)) return;
         IVertex v = idToV.get(id);
         v.setLabel(s);
+        graph.updateVertex(v); // no path changes with a label
     }
 
     @Override
@@ -114,47 +190,143 @@ public class Backend implements IBackend{
         return id;
     }
 
+    /**
+     * Return the shortest path between two vertices, from the cache unless the graph changed
+     * since it was computed, so that the distance, vertex and edge queries for the same pair
+     * share a single search. Once a second destination is asked for from the same origin,
+     * the whole shortest path tree of the origin is grown and answers the destinations that follow.
+     *
+     * @throws NoSuchElementException when no path from start to end can be found
+     */
+    private PathCache.Route route(int from, int to) {
+        PathCache.Route route = pathCache.get(from, to);
+        if (route == null) {
+            try {
+                ShortestPathTree tree = currentTree(from);
+                if (tree == null && from == lastFrom)
+                    tree = getShortestPathTree(from);
+                lastFrom = from;
+                route = toRoute(tree != null ? tree.pathTo(to) : graph.shortestPath(idToV.get(from), idToV.get(to)));
+            } catch (NoSuchElementException e) {
+                route = new PathCache.Route(null, null, Double.POSITIVE_INFINITY);
+            }
+            pathCache.put(from, to, route);
+        }
+        if (!route.exists())
+            throw new NoSuchElementException("No path found between these vertices");
+        return route;
+    }
+
+    /**
+     * Translate a path of the graph into the ids of its vertices and edges and its distance.
+     */
+    private PathCache.Route toRoute(List<IVertex> v) {
+        List<Integer> shortV = new ArrayList<>();
+        List<Integer> shortE = new ArrayList<>();
+        double distance = 0;
+        for (int i = 0; i < v.size(); i++){
+            shortV.add(v.get(i).getId());
+            if (i == 0) continue;
+            distance += graph.getWeightD(v.get(i - 1), v.get(i));
+            int id = edgeIds.get(LongIntMap.key(v.get(i - 1).getId(), v.get(i).getId()));
+            if (id != -1)
+                shortE.add(id);
+        }
+        return new PathCache.Route(shortV, shortE, distance);
+    }
+
     @Override
     public double getShortestByDistance(int from, int to) {
-        return graph.getPathCostD(idToV.get(from), idToV.get(to));
+        return route(from, to).distance;
     }
 
     @Override
     public List<Integer> getShortestByEdge(int from, int to) {
-        IVertex start, end;
-        double weight;
-        List<Integer> shortV = getShortestByVertex(from, to);
-        List<Integer> res = new ArrayList<>();
-
-        for (int i = 0; i < shortV.size(); i++){
-            start = idToV.get(from);
-            end = idToV.get(to);
-            weight = Double.MAX_VALUE;
-            IEdge toBeAdd = null;
-            for (IEdge e: edges){
-                if (e.getFrom() == start.getId() && e.getTo() == end.getId()){
-                    if (e.getWeight() <= weight){
-                        toBeAdd = e;
-                        weight = e.getWeight();
-                    }
-                }
-            }
-            if (toBeAdd != null)
-                res.add(toBeAdd.getId());
+        return new ArrayList<>(route(from, to).edgeIds);
+    }
+
+    @Override
+    public List<Integer> getShortestByVertex(int from, int to) {
+        return new ArrayList<>(route(from, to).vertexIds);
+    }
+
+    /**
+     * Return the shortest path tree of a vertex if one was grown for the current graph.
+     */
+    private ShortestPathTree currentTree(int from) {
+        if (sourceTree != null && sourceTree.getSourceId() == from && sourceTreeVersion == pathCache.getVersion())
+            return sourceTree;
+        return null;
+    }
+
+    @Override
+    public List<PathCache.Route> getKShortest(int from, int to, int k) {
+        List<PathCache.Route> routes = new ArrayList<>();
+        for (List<IVertex> path : graph.kShortestPaths(idToV.get(from), idToV.get(to), k))
+            routes.add(toRoute(path));
+        return routes;
+    }
+
+    @Override
+    public ShortestPathTree getShortestPathTree(int from) {
+        ShortestPathTree tree = currentTree(from);
+        if (tree == null) {
+            tree = graph.shortestPathTree(idToV.get(from));
+            sourceTree = tree;
+            sourceTreeVersion = pathCache.getVersion();
         }
+        return tree;
+    }
+
+    @Override
+    public ReachableSet verticesWithin(int id, double maxCost) {
+        return graph.verticesWithin(idToV.get(id), maxCost);
+    }
 
-        return res;
+    @Override
+    public double[][] distanceMatrix(int[] sources, int[] targets) {
+        return graph.snapshot().distanceMatrix(sources, targets);
     }
 
     @Override
-    public List<Integer> getShortestByVertex(int from, int to) {
-        IVertex start = idToV.get(from);
-        IVertex end = idToV.get(to);
-        List<IVertex> v = graph.shortestPath(start, end);
-        List<Integer> res = new ArrayList<>();
-        for (IVertex ver: v)
-            res.add(ver.getId());
-        return res;
+    public AllPairsShortestPaths allPairsShortestPaths(File file) throws IOException {
+        GraphSnapshot snapshot = graph.snapshot();
+        File tableFile = AllPairsShortestPaths.fileFor(file);
+        if (AllPairsShortestPaths.isCurrent(tableFile, snapshot))
+            return AllPairsShortestPaths.read(tableFile, snapshot);
+        AllPairsShortestPaths table = AllPairsShortestPaths.compute(snapshot);
+        table.write(tableFile);
+        return table;
+    }
+
+    @Override
+    public int[] nearestVertices(double x, double y, int k) {
+        return spatialIndex.nearest(x, y, k);
+    }
+
+    @Override
+    public int[] verticesInRadius(double x, double y, double radius) {
+        return spatialIndex.withinRadius(x, y, radius);
+    }
+
+    @Override
+    public int[] verticesInRectangle(double minX, double minY, double maxX, double maxY) {
+        return spatialIndex.inRectangle(minX, minY, maxX, maxY);
+    }
+
+    @Override
+    public int nearestEdge(double x, double y, double maxDistance) {
+        return edgeIndex.nearest(x, y, maxDistance);
+    }
+
+    @Override
+    public int[] edgesInRectangle(double minX, double minY, double maxX, double maxY) {
+        return edgeIndex.inRectangle(minX, minY, maxX, maxY);
+    }
+
+    @Override
+    public VertexClusters getClusters() {
+        return clusters;
     }
 
     @Override
@@ -177,12 +349,27 @@ public class Backend implements IBackend{
         return idToE.containsKey(id);
     }
 
+    @Override
+    public PathCache getPathCache() {
+        return pathCache;
+    }
+
+    @Override
+    public GraphSnapshot snapshot() {
+        return graph.snapshot();
+    }
+
     @Override
     public void clear() {
         vertices = new ArrayList<>();
         edges = new ArrayList<>();
-        // graph = new Graph();
+        graph = graphFactory.get();
         idToE = new HashMap();
         idToV = new HashMap();
+        edgeIds = new LongIntMap();
+        spatialIndex.clear();
+        edgeIndex.clear();
+        clusters.clear();
+        pathCache.invalidate();
     }
 }
@@ -1,21 +1,42 @@
 import java.io.File;
 import java.io.IOException;
-import java.util.Hashtable;
+import java.util.HashMap;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
 
 public class BackendPlaceholder implements IBackend {
-    Hashtable<Integer, IVertex> vertices;
-    Hashtable<Integer, IEdge> edges;
+    HashMap<Integer, IVertex> vertices;
+    HashMap<Integer, IEdge> edges;
+    LongIntMap edgeIds; // packed (from id, to id) -> id of the edge the graph holds between them
     IDataLoader dataLoader;
     File currentFile;
-    AEPlaceholder graph;
+    Supplier<IGraph> graphFactory; // creates the graph engine, e.g. AEPlaceholder::new, CSRGraph::new or ConcurrentGraph::new
+    IGraph graph;
+    PathCache pathCache; // shortest path results, made stale by every change that can change a path
+    ShortestPathTree sourceTree; // last shortest path tree, stale once the path cache version moves on
+    long sourceTreeVersion;
+    int lastFrom = -1; // origin of the last route that missed the cache
+    KdTree spatialIndex; // vertex coordinates, for nearest, radius and rectangle queries
+    EdgeRTree edgeIndex; // edge segments, for nearest and rectangle queries
+    VertexClusters clusters; // vertex counts and edge bundles per grid cell, for drawing zoomed out
 
     public BackendPlaceholder() {
-        vertices = new Hashtable<>();
-        edges = new Hashtable<>();
+        this(AEPlaceholder::new);
+    }
+
+    public BackendPlaceholder(Supplier<IGraph> graphFactory) {
+        vertices = new HashMap<>();
+        edges = new HashMap<>();
+        edgeIds = new LongIntMap();
         dataLoader = new DataLoaderPlaceholder();
         currentFile = null;
-        graph = new AEPlaceholder();
+        this.graphFactory = graphFactory;
+        graph = graphFactory.get();
+        pathCache = new PathCache(256);
+        spatialIndex = new KdTree();
+        edgeIndex = new EdgeRTree();
+        clusters = new VertexClusters();
     }
 
     @Override
@@ -24,61 +45,114 @@ public class BackendPlaceholder implements IBackend {
         List<IEdge> edges = getEdges();
         dataLoader.writeVertices(vertices, file.getAbsolutePath());
         dataLoader.writeEdges(edges, file.getAbsolutePath());
+        File tableFile = AllPairsShortestPaths.fileFor(file);
+        if (tableFile.isFile()) // most maps have no table, and a snapshot compiles the whole graph
+            AllPairsShortestPaths.deleteIfStale(tableFile, graph.snapshot());
         currentFile = file;
     }
 
     @Override
     public void openFile(File file) throws IOException {
+        load(readVertices(file), readEdges(file));
+        currentFile = file;
+    }
+
+    @Override
+    public List<IVertex> readVertices(File file) throws IOException {
+        return dataLoader.loadVertices(file.getAbsolutePath());
+    }
+
+    @Override
+    public List<IEdge> readEdges(File file) throws IOException {
+        return dataLoader.loadEdges(file.getAbsolutePath());
+    }
+
+    @Override
+    public void load(List<? extends IVertex> verticesList, List<? extends IEdge> edgesList) {
         this.clear();
-        List<IVertex> verticesList = dataLoader.loadVertices(file.getAbsolutePath());
-        List<IEdge> edgesList = dataLoader.loadEdges(file.getAbsolutePath());
-        vertices.clear();
-        for (IVertex v : verticesList)
+        for (IVertex v : verticesList) {
             vertices.put(v.getId(), v);
-        edges.clear();
-        for (IEdge e : edgesList)
+            graph.insertVertex(v);
+            spatialIndex.insert(v.getId(), v.getX(), v.getY());
+            clusters.addVertex(v.getId(), v.getX(), v.getY());
+        }
+        for (IEdge e : edgesList) {
             edges.put(e.getId(), e);
-        currentFile = file;
+            if (graph.insertEdge(vertices.get(e.getFrom()), vertices.get(e.getTo())))
+                edgeIds.put(LongIntMap.key(e.getFrom(), e.getTo()), e.getId());
+            clusters.addEdge(e.getId(), e.getFrom(), e.getTo());
+        }
+        edgeIndex.load(edgesList, vertices);
+        pathCache.invalidate();
     }
 
     @Override
     public void addVertex(IVertex v) {
         vertices.put(v.getId(), v);
         graph.insertVertex(v);
+        spatialIndex.insert(v.getId(), v.getX(), v.getY());
+        clusters.addVertex(v.getId(), v.getX(), v.getY());
+        pathCache.invalidate();
     }
 
     @Override
     public void addEdge(IEdge e) {
         edges.put(e.getId(), e);
-        graph.insertEdge(vertices.get(e.getFrom()), vertices.get(e.getTo()));
+        if (graph.insertEdge(vertices.get(e.getFrom()), vertices.get(e.getTo())))
+            edgeIds.put(LongIntMap.key(e.getFrom(), e.getTo()), e.getId());
+        if (vertices.containsKey(e.getFrom()) && vertices.containsKey(e.getTo()))
+            edgeIndex.insert(e, vertices.get(e.getFrom()), vertices.get(e.getTo()));
+        clusters.addEdge(e.getId(), e.getFrom(), e.getTo());
+        pathCache.invalidate();
     }
 
     @Override
     public void removeVertex(int id) {
         graph.removeVertex(vertices.get(id));
         vertices.remove(id);
+        // the graph dropped the edges of the vertex, so drop them here too
+        edges.values().removeIf(e -> {
+            if (e.getFrom() != id && e.getTo() != id) return false;
+            edgeIds.remove(LongIntMap.key(e.getFrom(), e.getTo()));
+            return true;
+        });
+        spatialIndex.remove(id);
+        edgeIndex.removeVertex(id);
+        clusters.removeVertex(id);
+        pathCache.invalidate();
     }
 
     @Override
     public void removeEdge(int id) {
-        graph.removeEdge(vertices.get(edges.get(id).getFrom()), vertices.get(edges.get(id).getTo()));
+        IEdge e = edges.get(id);
+        graph.removeEdge(vertices.get(e.getFrom()), vertices.get(e.getTo()));
+        edgeIds.remove(LongIntMap.key(e.getFrom(), e.getTo()));
         edges.remove(id);
+        edgeIndex.remove(id);
+        clusters.removeEdge(id);
+        pathCache.invalidate();
     }
 
     @Override
     public void changeVertex(int id, double x, double y) {
-        if (vertices.get(id).getX() == x && vertices.get(id).getY() == y)
-            return;
-        vertices.get(id).setX(x);
-        vertices.get(id).setY(y);
-        graph.vertices.get(vertices.get(id)).setX(x);
-        graph.vertices.get(vertices.get(id)).setY(y);
+        IVertex v = vertices.get(id);
+        if (v.getX() != x || v.getY() != y) {
+            v.setX(x);
+            v.setY(y);
+        }
+        // frontend vertices may already report the new position, so let the graph compare
+        // with the position it recorded; clicks call this without moving the vertex
+        if (!graph.updateVertex(v)) return;
+        spatialIndex.move(id, x, y);
+        edgeIndex.moveVertex(id, x, y);
+        clusters.moveVertex(id, x, y);
+        pathCache.invalidate();
     }
 
     @Override
     public void changeVertex(int id, String s) {
         vertices.get(id).setLabel(s);
-        graph.vertices.get(vertices.get(id)).setLabel(s);
+        graph.updateVertex(vertices.get(id)); // no path changes with a label
     }
 
     @Override
@@ -99,35 +173,146 @@ public class BackendPlaceholder implements IBackend {
         return result;
     }
 
+    /**
+     * Return the shortest path between two vertices, from the cache unless the graph changed
+     * since it was computed, so that the distance, vertex and edge queries for the same pair
+     * share a single search. Once a second destination is asked for from the same origin,
+     * the whole shortest path tree of the origin is grown and answers the destinations that follow.
+     *
+     * @throws NoSuchElementException when no path from start to end can be found
+     */
+    private PathCache.Route route(int from, int to) {
+        PathCache.Route route = pathCache.get(from, to);
+        if (route == null) {
+            try {
+                ShortestPathTree tree = currentTree(from);
+                if (tree == null && from == lastFrom)
+                    tree = getShortestPathTree(from);
+                lastFrom = from;
+                route = toRoute(tree != null ? tree.pathTo(to) : graph.shortestPath(vertices.get(from), vertices.get(to)));
+            } catch (NoSuchElementException e) {
+                route = new PathCache.Route(null, null, Double.POSITIVE_INFINITY);
+            }
+            pathCache.put(from, to, route);
+        }
+        if (!route.exists())
+            throw new NoSuchElementException("No path found between these vertices");
+        return route;
+    }
+
+    /**
+     * Translate a path of the graph into the ids of its vertices and edges and its distance.
+     */
+    private PathCache.Route toRoute(List<IVertex> path) {
+        List<Integer> vertexIds = new java.util.ArrayList<>(path.size());
+        List<Integer> edgeIds = new java.util.ArrayList<>(path.size());
+        double distance = 0;
+        IVertex prev = null;
+        for (IVertex curr : path) {
+            vertexIds.add(curr.getId());
+            if (prev != null) {
+                distance += graph.getWeightD(prev, curr);
+                int edgeId = this.edgeIds.get(LongIntMap.key(prev.getId(), curr.getId()));
+                if (edgeId != -1)
+                    edgeIds.add(edgeId);
+            }
+            prev = curr;
+        }
+        return new PathCache.Route(vertexIds, edgeIds, distance);
+    }
+
     @Override
     public double getShortestByDistance(int from, int to) {
-        return graph.getPathCostD(vertices.get(from), vertices.get(to));
+        return route(from, to).distance;
     }
 
     @Override
     public List<Integer> getShortestByEdge(int from, int to) {
-        List<IVertex> path = graph.shortestPath(vertices.get(from), vertices.get(to));
-        List<Integer> result = new java.util.LinkedList<>();
-        if (path.size() < 2)
-            return result;
-        IVertex prev = path.get(0);
-        for (int i = 1; i < path.size(); i++) {
-            IVertex curr = path.get(i);
-            for (IEdge edge : edges.values())
-                if (edge.getFrom() == prev.getId() && edge.getTo() == curr.getId())
-                    result.add(edge.getId());
-            prev = curr;
-        }
-        return result;
+        return new java.util.LinkedList<>(route(from, to).edgeIds);
     }
 
     @Override
     public List<Integer> getShortestByVertex(int from, int to) {
-        List<Integer> result = new java.util.LinkedList<>();
-        List<IVertex> path = graph.shortestPath(vertices.get(from), vertices.get(to));
-        for (IVertex v : path)
-            result.add(v.getId());
-        return result;
+        return new java.util.LinkedList<>(route(from, to).vertexIds);
+    }
+
+    /**
+     * Return the shortest path tree of a vertex if one was grown for the current graph.
+     */
+    private ShortestPathTree currentTree(int from) {
+        if (sourceTree != null && sourceTree.getSourceId() == from && sourceTreeVersion == pathCache.getVersion())
+            return sourceTree;
+        return null;
+    }
+
+    @Override
+    public List<PathCache.Route> getKShortest(int from, int to, int k) {
+        List<PathCache.Route> routes = new java.util.ArrayList<>();
+        for (List<IVertex> path : graph.kShortestPaths(vertices.get(from), vertices.get(to), k))
+            routes.add(toRoute(path));
+        return routes;
+    }
+
+    @Override
+    public ShortestPathTree getShortestPathTree(int from) {
+        ShortestPathTree tree = currentTree(from);
+        if (tree == null) {
+            tree = graph.shortestPathTree(vertices.get(from));
+            sourceTree = tree;
+            sourceTreeVersion = pathCache.getVersion();
+        }
+        return tree;
+    }
+
+    @Override
+    public ReachableSet verticesWithin(int id, double maxCost) {
+        return graph.verticesWithin(vertices.get(id), maxCost);
+    }
+
+    @Override
+    public double[][] distanceMatrix(int[] sources, int[] targets) {
+        return graph.snapshot().distanceMatrix(sources, targets);
+    }
+
+    @Override
+    public AllPairsShortestPaths allPairsShortestPaths(File file) throws IOException {
+        GraphSnapshot snapshot = graph.snapshot();
+        File tableFile = AllPairsShortestPaths.fileFor(file);
+        if (AllPairsShortestPaths.isCurrent(tableFile, snapshot))
+            return AllPairsShortestPaths.read(tableFile, snapshot);
+        AllPairsShortestPaths table = AllPairsShortestPaths.compute(snapshot);
+        table.write(tableFile);
+        return table;
+    }
+
+    @Override
+    public int[] nearestVertices(double x, double y, int k) {
+        return spatialIndex.nearest(x, y, k);
+    }
+
+    @Override
+    public int[] verticesInRadius(double x, double y, double radius) {
+        return spatialIndex.withinRadius(x, y, radius);
+    }
+
+    @Override
+    public int[] verticesInRectangle(double minX, double minY, double maxX, double maxY) {
+        return spatialIndex.inRectangle(minX, minY, maxX, maxY);
+    }
+
+    @Override
+    public int nearestEdge(double x, double y, double maxDistance) {
+        return edgeIndex.nearest(x, y, maxDistance);
+    }
+
+    @Override
+    public int[] edgesInRectangle(double minX, double minY, double maxX, double maxY) {
+        return edgeIndex.inRectangle(minX, minY, maxX, maxY);
+    }
+
+    @Override
+    public VertexClusters getClusters() {
+        return clusters;
     }
 
     @Override
@@ -150,11 +335,26 @@ public class BackendPlaceholder implements IBackend {
         return edges.containsKey(id);
     }
 
+    @Override
+    public PathCache getPathCache() {
+        return pathCache;
+    }
+
+    @Override
+    public GraphSnapshot snapshot() {
+        return graph.snapshot();
+    }
+
     @Override
     public void clear() {
         vertices.clear();
         edges.clear();
+        edgeIds.clear();
+        spatialIndex.clear();
+        edgeIndex.clear();
+        clusters.clear();
         currentFile = null;
-        graph = new AEPlaceholder();
+        graph = graphFactory.get();
+        pathCache.invalidate();
     }
 }
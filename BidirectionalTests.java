@@ -0,0 +1,65 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the bidirectional Dijkstra search mode of the graph engine against a plain
+ * Dijkstra
+ */
+public class BidirectionalTests {
+    /**
+     * The bidirectional search finds the same distances and paths as Dijkstra on random graphs,
+     * where many pairs cannot reach each other
+     */
+    @Test
+    public void testMatchesDijkstra() {
+        int unreachable = 0;
+        for (long seed = 0; seed < 20; seed++) {
+            ReferenceGraph reference = ReferenceGraph.random(new CSRGraph(SearchMode.BIDIRECTIONAL), seed, 60, 150);
+            unreachable += reference.checkQueries(200);
+        }
+        assertTrue(unreachable > 0);
+    }
+
+    /**
+     * A vertex only reaches itself when its edges all point at it, and nothing reaches a
+     * vertex whose edges all leave it
+     */
+    @Test
+    public void testOneWayVertices() {
+        ReferenceGraph reference = ReferenceGraph.random(new CSRGraph(SearchMode.BIDIRECTIONAL), 2, 30, 120);
+        IVertex sink = reference.addVertex();
+        IVertex source = reference.addVertex();
+        for (int i = 0; i < 5; i++) {
+            reference.addEdge(reference.randomVertex(), sink);
+            reference.addEdge(source, reference.randomVertex());
+        }
+        for (IVertex vertex : reference.getVertices()) {
+            reference.checkQuery(vertex, sink);
+            reference.checkQuery(sink, vertex);
+            reference.checkQuery(vertex, source);
+            reference.checkQuery(source, vertex);
+        }
+    }
+
+    /**
+     * Answers stay right as vertices and edges are removed and added between queries, also
+     * through a graph behind the concurrent wrapper
+     */
+    @Test
+    public void testAfterMutations() {
+        for (long seed = 0; seed < 10; seed++) {
+            IGraph graph = seed % 2 == 0 ? new CSRGraph(SearchMode.BIDIRECTIONAL)
+                    : new ConcurrentGraph(new CSRGraph(SearchMode.BIDIRECTIONAL));
+            ReferenceGraph reference = ReferenceGraph.random(graph, seed, 60, 150);
+            for (int round = 0; round < 10; round++) {
+                reference.removeVertex(reference.randomVertex());
+                reference.removeEdge(reference.randomVertex(), reference.randomVertex());
+                reference.addVertex();
+                for (int i = 0; i < 5; i++)
+                    reference.addEdge(reference.randomVertex(), reference.randomVertex());
+                reference.checkQueries(20);
+            }
+        }
+    }
+}
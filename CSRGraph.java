@@ -0,0 +1,1301 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A directed graph with positive edge weights that keeps its vertices as dense int indices
+ * and its adjacency in compressed sparse row (CSR) form: the edges leaving vertex i are
+ * targets[offsets[i]] .. targets[offsets[i + 1] - 1], with their weights at the same
+ * positions of weights. Mutations are recorded in primitive staging arrays and the CSR
+ * arrays are rebuilt lazily by the first query that follows them, so that shortest path
+ * searches only ever walk contiguous arrays.
+ */
+public class CSRGraph implements GraphADT<IVertex>, IGraph {
+
+    /**
+     * Compiled CSR arrays of the graph. Instances are never modified after construction,
+     * a mutation of the graph simply drops the compiled arrays.
+     */
+    protected static final class Compiled {
+        public final int vertexCount;
+        public final int[] offsets; // length vertexCount + 1
+        public final int[] targets; // length edgeCount
+        public final double[] weights; // length edgeCount, NaN weights already resolved
+        public final int[] reverseOffsets; // edges entering vertex i, in the same layout
+        public final int[] sources;
+        public final double[] reverseWeights;
+        public final double[] xs; // coordinates the weights were resolved with
+        public final double[] ys;
+        public final boolean euclideanAdmissible; // no edge is shorter than the straight line between its ends
+        public final IVertex[] data; // index -> data item when the arrays were built
+
+        public Compiled(int vertexCount, int[] offsets, int[] targets, double[] weights,
+                        int[] reverseOffsets, int[] sources, double[] reverseWeights,
+                        double[] xs, double[] ys, boolean euclideanAdmissible, IVertex[] data) {
+            this.vertexCount = vertexCount;
+            this.offsets = offsets;
+            this.targets = targets;
+            this.weights = weights;
+            this.reverseOffsets = reverseOffsets;
+            this.sources = sources;
+            this.reverseWeights = reverseWeights;
+            this.xs = xs;
+            this.ys = ys;
+            this.euclideanAdmissible = euclideanAdmissible;
+            this.data = data;
+        }
+
+        /**
+         * Straight-line distance between two vertices.
+         */
+        public double euclidean(int u, int v) {
+            double dx = xs[v] - xs[u];
+            double dy = ys[v] - ys[u];
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+    }
+
+    protected ArrayList<IVertex> vertexAt; // index -> data item
+    protected HashMap<IVertex, Integer> indexOf; // data item -> index
+    protected double[] xs; // coordinates of each vertex when it was inserted or last updated
+    protected double[] ys;
+
+    // staging edge list, one slot per edge in no particular order
+    protected int[] edgeSource;
+    protected int[] edgeTarget;
+    protected double[] edgeWeight; // NaN for edges weighted by the distance between their ends
+    protected int edgeCount;
+    protected LongIntMap edgeSlot; // packed (source, target) -> slot, -1 if there is no such edge
+    // staging slots of the edges leaving and entering each vertex, so removals only touch incident edges
+    protected int[][] outSlots;
+    protected int[] outDegree;
+    protected int[][] inSlots;
+    protected int[] inDegree;
+    protected GraphCounters counters; // sizes and degree statistics, updated by every change
+
+    protected Compiled compiled; // null while the staging arrays have pending changes
+    protected Prepared prepared; // stale once it was built for other compiled arrays or settings
+    protected GraphSnapshot snapshot; // stale once it was taken of another query context
+    protected ContractionHierarchy hierarchy; // stale once it was built for other compiled arrays
+    protected Landmarks landmarks; // stale once it was built for other compiled arrays
+    protected int landmarkCount = 8; // landmarks of ALT searches
+    protected Landmarks.Strategy landmarkStrategy = Landmarks.Strategy.AVOID;
+
+    protected SearchMode searchMode; // algorithm answering point-to-point queries
+    protected int heapArity = 4; // arity of the indexed heap used by searches
+    protected boolean reuseSearchState = true; // keep one search state for all queries
+    protected SearchState searchState; // reused search state, created by the first query
+    protected SearchState backwardState; // reused state of the backward half of bidirectional searches
+
+    public CSRGraph() {
+        this(SearchMode.DIJKSTRA);
+    }
+
+    public CSRGraph(SearchMode searchMode) {
+        this.searchMode = searchMode;
+        vertexAt = new ArrayList<>();
+        indexOf = new HashMap<>();
+        xs = new double[16];
+        ys = new double[16];
+        edgeSource = new int[16];
+        edgeTarget = new int[16];
+        edgeWeight = new double[16];
+        edgeCount = 0;
+        edgeSlot = new LongIntMap();
+        outSlots = new int[16][];
+        outDegree = new int[16];
+        inSlots = new int[16][];
+        inDegree = new int[16];
+        counters = new GraphCounters();
+        compiled = null;
+    }
+
+    /**
+     * Build a compiled graph from the vertices and edges of a backend.
+     *
+     * @param backend the backend to copy the graph from
+     * @return a new graph with the same vertices and edges as the backend
+     */
+    public static CSRGraph fromBackend(IBackend backend) {
+        return build(backend.getVertices(), backend.getEdges());
+    }
+
+    /**
+     * Build a compiled graph from lists of vertices and edges. Like the backends, edges are
+     * weighted by the distance between their end vertices.
+     *
+     * @param vertices the vertices of the graph
+     * @param edges    the edges of the graph, referring to vertices by id
+     * @return a new graph with the given vertices and edges
+     * @throws IllegalArgumentException if an edge refers to a vertex id that is not in vertices
+     */
+    public static CSRGraph build(List<IVertex> vertices, List<IEdge> edges) {
+        CSRGraph graph = new CSRGraph();
+        HashMap<Integer, IVertex> idToV = new HashMap<>();
+        for (IVertex v : vertices) {
+            graph.insertVertex(v);
+            idToV.put(v.getId(), v);
+        }
+        for (IEdge e : edges) {
+            IVertex source = idToV.get(e.getFrom());
+            IVertex target = idToV.get(e.getTo());
+            if (source == null || target == null)
+                throw new IllegalArgumentException("Edge " + e.getId() + " refers to a vertex that does not exist");
+            graph.insertEdge(source, target);
+        }
+        graph.compile();
+        return graph;
+    }
+
+    /**
+     * Pack a (source, target) pair of vertex indices into a single key.
+     */
+    protected static long edgeKey(int source, int target) {
+        return LongIntMap.key(source, target);
+    }
+
+    /**
+     * Insert a new vertex into the graph.
+     *
+     * @param data the data item stored in the new vertex
+     * @return true if the data can be inserted as a new vertex, false if it is
+     *     already in the graph
+     * @throws NullPointerException if data is null
+     */
+    public boolean insertVertex(IVertex data) {
+        if (data == null)
+            throw new NullPointerException("Cannot add null vertex");
+        if (indexOf.containsKey(data)) return false; // duplicate values are not allowed
+        int index = vertexAt.size();
+        if (index == xs.length) {
+            xs = Arrays.copyOf(xs, index * 2);
+            ys = Arrays.copyOf(ys, index * 2);
+            outSlots = Arrays.copyOf(outSlots, index * 2);
+            outDegree = Arrays.copyOf(outDegree, index * 2);
+            inSlots = Arrays.copyOf(inSlots, index * 2);
+            inDegree = Arrays.copyOf(inDegree, index * 2);
+        }
+        outSlots[index] = new int[2];
+        inSlots[index] = new int[2];
+        vertexAt.add(data);
+        indexOf.put(data, index);
+        xs[index] = data.getX();
+        ys[index] = data.getY();
+        counters.vertexInserted();
+        compiled = null;
+        return true;
+    }
+
+    /**
+     * Remove a vertex from the graph.
+     * Also removes all edges adjacent to the vertex from the graph (all edges
+     * that have the vertex as a source or a destination vertex).
+     * The last vertex takes over the index of the removed one, so indices stay dense.
+     *
+     * @param data the data item stored in the vertex to remove
+     * @return true if a vertex with *data* has been removed, false if it was not in the graph
+     * @throws NullPointerException if data is null
+     */
+    public boolean removeVertex(IVertex data) {
+        if (data == null) throw new NullPointerException("Cannot remove null vertex");
+        Integer boxed = indexOf.remove(data);
+        if (boxed == null) return false; // vertex not found within graph
+        int index = boxed;
+        // remove every edge adjacent to the vertex
+        while (outDegree[index] > 0)
+            removeEdgeSlot(outSlots[index][outDegree[index] - 1]);
+        while (inDegree[index] > 0)
+            removeEdgeSlot(inSlots[index][inDegree[index] - 1]);
+        counters.vertexRemoved(0, 0);
+        // move the last vertex into the freed index, relabelling only its own edges
+        int last = vertexAt.size() - 1;
+        IVertex moved = vertexAt.remove(last);
+        if (index != last) {
+            vertexAt.set(index, moved);
+            indexOf.put(moved, index);
+            xs[index] = xs[last];
+            ys[index] = ys[last];
+            for (int k = 0; k < outDegree[last]; k++) {
+                int e = outSlots[last][k];
+                edgeSlot.remove(edgeKey(edgeSource[e], edgeTarget[e]));
+                edgeSource[e] = index;
+                edgeSlot.put(edgeKey(edgeSource[e], edgeTarget[e]), e);
+            }
+            for (int k = 0; k < inDegree[last]; k++) {
+                int e = inSlots[last][k];
+                edgeSlot.remove(edgeKey(edgeSource[e], edgeTarget[e]));
+                edgeTarget[e] = index;
+                edgeSlot.put(edgeKey(edgeSource[e], edgeTarget[e]), e);
+            }
+            outSlots[index] = outSlots[last];
+            outDegree[index] = outDegree[last];
+            inSlots[index] = inSlots[last];
+            inDegree[index] = inDegree[last];
+        }
+        outSlots[last] = null;
+        outDegree[last] = 0;
+        inSlots[last] = null;
+        inDegree[last] = 0;
+        compiled = null;
+        return true;
+    }
+
+    /**
+     * Refresh the coordinates recorded for a vertex after its data item has been moved.
+     *
+     * @param data the data item stored in the vertex
+     * @return true if the coordinates of the vertex changed, false if they are the ones
+     *     already recorded or the vertex is not in the graph
+     * @throws NullPointerException if data is null
+     */
+    public boolean updateVertex(IVertex data) {
+        if (data == null) throw new NullPointerException("Cannot update null vertex");
+        Integer index = indexOf.get(data);
+        if (index == null) return false;
+        if (xs[index] == data.getX() && ys[index] == data.getY()) return false;
+        double before = incidentWeight(index);
+        xs[index] = data.getX();
+        ys[index] = data.getY();
+        counters.weightChanged(before, incidentWeight(index));
+        compiled = null; // distance weighted edges change with the vertex
+        return true;
+    }
+
+    /**
+     * Summed weight of the edges incident to a vertex, counting self loops once.
+     */
+    private double incidentWeight(int v) {
+        double sum = 0;
+        for (int k = 0; k < outDegree[v]; k++)
+            sum += resolveWeight(outSlots[v][k]);
+        for (int k = 0; k < inDegree[v]; k++)
+            if (edgeSource[inSlots[v][k]] != v)
+                sum += resolveWeight(inSlots[v][k]);
+        return sum;
+    }
+
+    /**
+     * Insert a new directed edge with a positive edge weight into the graph.
+     *
+     * @param source the data item contained in the source vertex for the edge
+     * @param target the data item contained in the target vertex for the edge
+     * @param weight the weight for the edge (has to be a positive integer)
+     * @return true if the edge could be inserted, false if the edge was already in the graph
+     * @throws IllegalArgumentException if either source or target or both are not in the graph,
+     *     or if its weight is < 0
+     * @throws NullPointerException if either source or target or both are null
+     */
+    @Override
+    public boolean insertEdge(IVertex source, IVertex target, int weight) {
+        return insertEdge(source, target, (double) weight);
+    }
+
+    public boolean insertEdge(IVertex source, IVertex target, double weight) {
+        if (source == null || target == null)
+            throw new NullPointerException("Cannot add edge with null source or target");
+        Integer sourceIndex = indexOf.get(source);
+        Integer targetIndex = indexOf.get(target);
+        if (sourceIndex == null || targetIndex == null)
+            throw new IllegalArgumentException("Cannot add edge with vertices that do not exist");
+        if (weight < 0)
+            throw new IllegalArgumentException("Cannot add edge with negative weight");
+        long key = edgeKey(sourceIndex, targetIndex);
+        if (edgeSlot.containsKey(key)) return false; // edge already exists
+        if (edgeCount == edgeSource.length) {
+            edgeSource = Arrays.copyOf(edgeSource, edgeCount * 2);
+            edgeTarget = Arrays.copyOf(edgeTarget, edgeCount * 2);
+            edgeWeight = Arrays.copyOf(edgeWeight, edgeCount * 2);
+        }
+        edgeSource[edgeCount] = sourceIndex;
+        edgeTarget[edgeCount] = targetIndex;
+        edgeWeight[edgeCount] = weight;
+        edgeSlot.put(key, edgeCount);
+        counters.edgeInserted(outDegree[sourceIndex], inDegree[targetIndex], resolveWeight(edgeCount));
+        addIncident(outSlots, outDegree, sourceIndex, edgeCount);
+        addIncident(inSlots, inDegree, targetIndex, edgeCount);
+        edgeCount++;
+        compiled = null;
+        return true;
+    }
+
+    public boolean insertEdge(IVertex source, IVertex target) {
+        return insertEdge(source, target, Double.NaN);
+    }
+
+    /**
+     * Remove an edge from the graph.
+     *
+     * @param source the data item contained in the source vertex for the edge
+     * @param target the data item contained in the target vertex for the edge
+     * @return true if the edge could be removed, false if it was not in the graph
+     * @throws IllegalArgumentException if either source or target or both are not in the graph
+     * @throws NullPointerException if either source or target or both are null
+     */
+    public boolean removeEdge(IVertex source, IVertex target) {
+        if (source == null || target == null) throw new NullPointerException("Cannot remove edge with null source or target");
+        Integer sourceIndex = indexOf.get(source);
+        Integer targetIndex = indexOf.get(target);
+        if (sourceIndex == null || targetIndex == null) throw new IllegalArgumentException("Cannot remove edge with vertices that do not exist");
+        int slot = edgeSlot.get(edgeKey(sourceIndex, targetIndex));
+        if (slot == -1) return false; // otherwise return false to indicate failure to find
+        removeEdgeSlot(slot);
+        compiled = null;
+        return true;
+    }
+
+    /**
+     * Remove the edge stored in a staging slot, moving the last edge into that slot.
+     */
+    protected void removeEdgeSlot(int slot) {
+        counters.edgeRemoved(outDegree[edgeSource[slot]], inDegree[edgeTarget[slot]], resolveWeight(slot));
+        edgeSlot.remove(edgeKey(edgeSource[slot], edgeTarget[slot]));
+        replaceIncident(outSlots, outDegree, edgeSource[slot], slot, -1);
+        replaceIncident(inSlots, inDegree, edgeTarget[slot], slot, -1);
+        int last = edgeCount - 1;
+        if (slot != last) {
+            edgeSource[slot] = edgeSource[last];
+            edgeTarget[slot] = edgeTarget[last];
+            edgeWeight[slot] = edgeWeight[last];
+            edgeSlot.put(edgeKey(edgeSource[slot], edgeTarget[slot]), slot);
+            replaceIncident(outSlots, outDegree, edgeSource[slot], last, slot);
+            replaceIncident(inSlots, inDegree, edgeTarget[slot], last, slot);
+        }
+        edgeCount--;
+    }
+
+    /**
+     * Append an edge slot to the incident slots of a vertex.
+     */
+    private static void addIncident(int[][] slots, int[] degree, int v, int slot) {
+        if (degree[v] == slots[v].length)
+            slots[v] = Arrays.copyOf(slots[v], degree[v] * 2);
+        slots[v][degree[v]++] = slot;
+    }
+
+    /**
+     * Replace an edge slot among the incident slots of a vertex, or remove it if
+     * replacement is -1.
+     */
+    private static void replaceIncident(int[][] slots, int[] degree, int v, int slot, int replacement) {
+        int[] list = slots[v];
+        for (int k = 0; k < degree[v]; k++)
+            if (list[k] == slot) {
+                if (replacement == -1) list[k] = list[--degree[v]];
+                else list[k] = replacement;
+                return;
+            }
+    }
+
+    /**
+     * Check if the graph contains a vertex with data item *data*.
+     *
+     * @param data the data item to check for
+     * @return true if data item is stored in a vertex of the graph, false otherwise
+     * @throws NullPointerException if *data* is null
+     */
+    public boolean containsVertex(IVertex data) {
+        if (data == null) throw new NullPointerException("Cannot contain null data vertex");
+        return indexOf.containsKey(data);
+    }
+
+    /**
+     * Check if edge is in the graph.
+     *
+     * @param source the data item contained in the source vertex for the edge
+     * @param target the data item contained in the target vertex for the edge
+     * @return true if the edge is in the graph, false if it is not in the graph
+     * @throws NullPointerException if either source or target or both are null
+     */
+    public boolean containsEdge(IVertex source, IVertex target) {
+        if (source == null || target == null) throw new NullPointerException("Cannot contain edge adjacent to null data");
+        Integer sourceIndex = indexOf.get(source);
+        Integer targetIndex = indexOf.get(target);
+        if (sourceIndex == null || targetIndex == null) return false;
+        return edgeSlot.containsKey(edgeKey(sourceIndex, targetIndex));
+    }
+
+    /**
+     * Return the weight of an edge.
+     *
+     * @param source the data item contained in the source vertex for the edge
+     * @param target the data item contained in the target vertex for the edge
+     * @return the weight of the edge (0 or positive integer)
+     * @throws IllegalArgumentException if either sourceVertex or targetVertex or both are not in the graph
+     * @throws NullPointerException if either sourceVertex or targetVertex or both are null
+     * @throws NoSuchElementException if edge is not in the graph
+     */
+    public int getWeight(IVertex source, IVertex target) {
+        return (int) getWeightD(source, target);
+    }
+
+    public double getWeightD(IVertex source, IVertex target) {
+        if (source == null || target == null) throw new NullPointerException("Cannot contain weighted edge adjacent to null data");
+        Integer sourceIndex = indexOf.get(source);
+        Integer targetIndex = indexOf.get(target);
+        if (sourceIndex == null || targetIndex == null) throw new IllegalArgumentException("Cannot retrieve weight of edge between vertices that do not exist");
+        int slot = edgeSlot.get(edgeKey(sourceIndex, targetIndex));
+        if (slot == -1) throw new NoSuchElementException("No directed edge found between these vertices");
+        return resolveWeight(slot);
+    }
+
+    /**
+     * Weight of the edge in a staging slot, using the distance between its end vertices
+     * when the edge was inserted without a weight.
+     */
+    protected double resolveWeight(int slot) {
+        double weight = edgeWeight[slot];
+        if (!Double.isNaN(weight)) return weight;
+        double dx = xs[edgeTarget[slot]] - xs[edgeSource[slot]];
+        double dy = ys[edgeTarget[slot]] - ys[edgeSource[slot]];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Return the number of edges in the graph.
+     *
+     * @return the number of edges in the graph
+     */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Return a snapshot of the size and degree statistics of the graph. Distance weighted
+     * edges are summed with the vertex coordinates of the last insert or update.
+     *
+     * @return the current statistics of the graph
+     */
+    public GraphStats getStats() {
+        return counters.snapshot();
+    }
+
+    /**
+     * Return the number of vertices in the graph
+     *
+     * @return the number of vertices in the graph
+     */
+    public int getVertexCount() {
+        return vertexAt.size();
+    }
+
+    /**
+     * Return the number of edges leaving a vertex.
+     *
+     * @param data the data item stored in the vertex
+     * @return the out-degree of the vertex
+     * @throws NoSuchElementException if no vertex contains data
+     */
+    public int getOutDegree(IVertex data) {
+        return outDegree[indexOfExisting(data)];
+    }
+
+    /**
+     * Return the number of edges entering a vertex.
+     *
+     * @param data the data item stored in the vertex
+     * @return the in-degree of the vertex
+     * @throws NoSuchElementException if no vertex contains data
+     */
+    public int getInDegree(IVertex data) {
+        return inDegree[indexOfExisting(data)];
+    }
+
+    /**
+     * Check if the graph is empty (does not contain any vertices or edges).
+     *
+     * @return true if the graph does not contain any vertices or edges, false otherwise
+     */
+    public boolean isEmpty() {
+        return vertexAt.isEmpty();
+    }
+
+    /**
+     * Return the CSR arrays of the graph, rebuilding them from the staging arrays with a
+     * counting sort on the source index (and on the target index for the reverse adjacency)
+     * if the graph changed since they were last built.
+     *
+     * @return the compiled CSR arrays of the current graph
+     */
+    protected Compiled compile() {
+        if (compiled == null) compiled = buildCompiled();
+        return compiled;
+    }
+
+    /**
+     * Build the CSR arrays of the current graph without caching them, so that the graph
+     * is only read.
+     */
+    private Compiled buildCompiled() {
+        int n = vertexAt.size();
+        int[] offsets = new int[n + 1];
+        int[] reverseOffsets = new int[n + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            offsets[edgeSource[e] + 1]++;
+            reverseOffsets[edgeTarget[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+            reverseOffsets[i + 1] += reverseOffsets[i];
+        }
+        int[] targets = new int[edgeCount];
+        double[] weights = new double[edgeCount];
+        int[] sources = new int[edgeCount];
+        double[] reverseWeights = new double[edgeCount];
+        int[] cursor = Arrays.copyOf(offsets, n);
+        int[] reverseCursor = Arrays.copyOf(reverseOffsets, n);
+        boolean euclideanAdmissible = true;
+        for (int e = 0; e < edgeCount; e++) {
+            double weight = resolveWeight(e);
+            int position = cursor[edgeSource[e]]++;
+            targets[position] = edgeTarget[e];
+            weights[position] = weight;
+            int reversePosition = reverseCursor[edgeTarget[e]]++;
+            sources[reversePosition] = edgeSource[e];
+            reverseWeights[reversePosition] = weight;
+            // an explicit weight below the straight-line length would make A* overestimate
+            if (euclideanAdmissible && !Double.isNaN(edgeWeight[e])) {
+                double dx = xs[edgeTarget[e]] - xs[edgeSource[e]];
+                double dy = ys[edgeTarget[e]] - ys[edgeSource[e]];
+                euclideanAdmissible = edgeWeight[e] >= Math.sqrt(dx * dx + dy * dy) * (1 - 1e-9);
+            }
+        }
+        return new Compiled(n, offsets, targets, weights, reverseOffsets, sources, reverseWeights,
+                Arrays.copyOf(xs, n), Arrays.copyOf(ys, n), euclideanAdmissible, vertexAt.toArray(new IVertex[0]));
+    }
+
+    /**
+     * Return the contraction hierarchy of the current graph, running the preprocessing if
+     * the graph changed since the hierarchy was last built. Queries in the
+     * CONTRACTION_HIERARCHIES mode call this themselves; calling it ahead of time moves the
+     * preprocessing cost out of the first query.
+     *
+     * @return the contraction hierarchy of the current graph
+     */
+    public ContractionHierarchy prepareHierarchy() {
+        Compiled graph = compile();
+        if (hierarchy == null || hierarchy.graph != graph)
+            hierarchy = new ContractionHierarchy(graph);
+        return hierarchy;
+    }
+
+    /**
+     * Return the landmark distance tables of the current graph, recomputing them if the
+     * graph changed since they were last computed. Queries in the ALT mode call this
+     * themselves, so the tables are refreshed lazily by the first query after a mutation.
+     *
+     * @return the landmark distance tables of the current graph
+     */
+    public Landmarks prepareLandmarks() {
+        Compiled graph = compile();
+        if (landmarks == null || landmarks.graph != graph)
+            landmarks = new Landmarks(graph, landmarkCount, landmarkStrategy);
+        return landmarks;
+    }
+
+    /**
+     * Set the number of landmarks and how they are picked for ALT searches.
+     *
+     * @param landmarkCount    the number of landmarks
+     * @param landmarkStrategy how to pick the landmarks
+     * @throws IllegalArgumentException if landmarkCount is less than 1
+     */
+    public void setLandmarks(int landmarkCount, Landmarks.Strategy landmarkStrategy) {
+        if (landmarkCount < 1) throw new IllegalArgumentException("Need at least one landmark");
+        this.landmarkCount = landmarkCount;
+        this.landmarkStrategy = landmarkStrategy;
+        this.landmarks = null;
+    }
+
+    /**
+     * Return the working memory for a search over the current vertices: the state kept by
+     * this graph when search states are reused, or a fresh one otherwise.
+     */
+    protected SearchState searchState() {
+        if (!reuseSearchState)
+            return new SearchState(vertexAt.size(), heapArity);
+        if (searchState == null || searchState.heap.getArity() != heapArity)
+            searchState = new SearchState(vertexAt.size(), heapArity);
+        return searchState;
+    }
+
+    /**
+     * Choose the algorithm answering shortestPath and getPathCostD queries.
+     *
+     * @param searchMode the algorithm to use
+     */
+    public void setSearchMode(SearchMode searchMode) {
+        this.searchMode = searchMode;
+    }
+
+    public SearchMode getSearchMode() {
+        return searchMode;
+    }
+
+    /**
+     * Return the working memory for the backward half of a bidirectional search, see searchState.
+     */
+    protected SearchState backwardState() {
+        if (!reuseSearchState)
+            return new SearchState(vertexAt.size(), heapArity);
+        if (backwardState == null || backwardState.heap.getArity() != heapArity)
+            backwardState = new SearchState(vertexAt.size(), heapArity);
+        return backwardState;
+    }
+
+    /**
+     * Set the arity of the indexed heap used by shortest path searches.
+     *
+     * @param heapArity the number of children of each heap node, e.g. 2, 4 or 8
+     * @throws IllegalArgumentException if heapArity is less than 2
+     */
+    public void setHeapArity(int heapArity) {
+        if (heapArity < 2) throw new IllegalArgumentException("Heap arity must be at least 2");
+        this.heapArity = heapArity;
+    }
+
+    /**
+     * Choose whether shortest path searches reuse one search state (heap, distance and
+     * predecessor arrays) across queries, so repeated queries allocate nothing. A reused
+     * state must not be shared by concurrent queries.
+     *
+     * @param reuseSearchState true to reuse the search state, false to allocate one per query
+     */
+    public void setReuseSearchState(boolean reuseSearchState) {
+        this.reuseSearchState = reuseSearchState;
+        if (!reuseSearchState) {
+            searchState = null;
+            backwardState = null;
+        }
+    }
+
+    /**
+     * Uses Dijkstra's shortest path algorithm over the CSR arrays to find the shortest path
+     * from start to end, stopping as soon as end is settled.
+     *
+     * @param start index of the first vertex in path
+     * @param end   index of the last vertex in path
+     * @param graph the compiled graph to search
+     * @param state the search state, left holding the predecessor of each reached vertex
+     * @return the distance from start to end
+     * @throws NoSuchElementException when no path from start to end can be found
+     */
+    protected double dijkstra(int start, int end, Compiled graph, SearchState state) {
+        state.reset(graph.vertexCount);
+        state.addSource(start, 0);
+        IndexedHeap heap = state.heap;
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        double[] weights = graph.weights;
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            if (u == end) return state.dist(u);
+            for (int i = offsets[u]; i < offsets[u + 1]; i++)
+                state.relax(u, targets[i], weights[i], 0);
+        }
+        throw new NoSuchElementException("No path found between these vertices");
+    }
+
+    /**
+     * Uses Dijkstra's shortest path algorithm over the CSR arrays to find the shortest paths
+     * from start to every vertex it reaches.
+     *
+     * @param start index of the source of all paths
+     * @param graph the compiled graph to search
+     * @param state the search state, left holding the distance and predecessor of each reached vertex
+     */
+    protected void dijkstraAll(int start, Compiled graph, SearchState state) {
+        state.reset(graph.vertexCount);
+        state.addSource(start, 0);
+        IndexedHeap heap = state.heap;
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        double[] weights = graph.weights;
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            for (int i = offsets[u]; i < offsets[u + 1]; i++)
+                state.relax(u, targets[i], weights[i], 0);
+        }
+    }
+
+    /**
+     * Uses Dijkstra's shortest path algorithm over the CSR arrays to find the vertices within
+     * maxCost of start. Vertices farther than maxCost are never queued, so the search only
+     * settles the vertices of the result and reads the edges leaving them.
+     *
+     * @param start   index of the source of all paths
+     * @param maxCost the largest distance from start to include
+     * @param graph   the compiled graph to search
+     * @param state   the search state
+     * @return the vertices within maxCost of start with their distances, nearest first
+     */
+    protected ReachableSet dijkstraWithin(int start, double maxCost, Compiled graph, SearchState state) {
+        ReachableSet reachable = new ReachableSet(graph.data[start].getId(), maxCost);
+        if (!(maxCost >= 0)) return reachable;
+        state.reset(graph.vertexCount);
+        state.addSource(start, 0);
+        IndexedHeap heap = state.heap;
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        double[] weights = graph.weights;
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            double distance = state.dist(u);
+            reachable.add(graph.data[u].getId(), distance);
+            for (int i = offsets[u]; i < offsets[u + 1]; i++)
+                if (distance + weights[i] <= maxCost)
+                    state.relax(u, targets[i], weights[i], 0);
+        }
+        return reachable;
+    }
+
+    /**
+     * Uses Dijkstra's shortest path algorithm over the CSR arrays to find the distances from
+     * start to a set of targets, stopping as soon as all of them are settled.
+     *
+     * @param start       index of the source of all paths
+     * @param isTarget    marks the indices of the targets
+     * @param targetCount the number of marked targets
+     * @param graph       the compiled graph to search
+     * @param state       the search state, left holding the distance of every target start reaches
+     */
+    protected void dijkstraMany(int start, boolean[] isTarget, int targetCount, Compiled graph, SearchState state) {
+        state.reset(graph.vertexCount);
+        state.addSource(start, 0);
+        IndexedHeap heap = state.heap;
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        double[] weights = graph.weights;
+        int settledTargets = 0;
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            if (isTarget[u] && ++settledTargets == targetCount) return;
+            for (int i = offsets[u]; i < offsets[u + 1]; i++)
+                state.relax(u, targets[i], weights[i], 0);
+        }
+    }
+
+    /**
+     * Uses the A* algorithm over the CSR arrays to find the shortest path from start to end,
+     * with the straight-line distance to end as the heuristic. That lower bound only holds
+     * when no edge is shorter than the straight line between its ends, so graphs with such
+     * explicit weights are searched with plain Dijkstra instead.
+     *
+     * @param start index of the first vertex in path
+     * @param end   index of the last vertex in path
+     * @param graph the compiled graph to search
+     * @param state the search state, left holding the predecessor of each reached vertex
+     * @return the distance from start to end
+     * @throws NoSuchElementException when no path from start to end can be found
+     */
+    protected double aStar(int start, int end, Compiled graph, SearchState state) {
+        if (!graph.euclideanAdmissible) return dijkstra(start, end, graph, state);
+        state.reset(graph.vertexCount);
+        state.addSource(start, 0, graph.euclidean(start, end));
+        IndexedHeap heap = state.heap;
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        double[] weights = graph.weights;
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            if (u == end) return state.dist(u);
+            for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                int v = targets[i];
+                if (state.settled(v)) continue;
+                state.relax(u, v, weights[i], graph.euclidean(v, end));
+            }
+        }
+        throw new NoSuchElementException("No path found between these vertices");
+    }
+
+    /**
+     * Uses the A* algorithm over the CSR arrays to find the shortest path from start to end,
+     * with the landmark lower bounds as the heuristic. They hold for any non-negative weights,
+     * so unlike the straight-line heuristic they stay useful after weights are edited. Vertices
+     * the landmarks prove cannot reach end are never queued.
+     *
+     * @param start index of the first vertex in path
+     * @param end   index of the last vertex in path
+     * @param graph  the compiled graph to search
+     * @param bounds the landmark distance tables of graph
+     * @param state  the search state, left holding the predecessor of each reached vertex
+     * @return the distance from start to end
+     * @throws NoSuchElementException when no path from start to end can be found
+     */
+    protected double alt(int start, int end, Compiled graph, Landmarks bounds, SearchState state) {
+        state.reset(graph.vertexCount);
+        double startBound = bounds.lowerBound(start, end);
+        if (startBound == Double.POSITIVE_INFINITY)
+            throw new NoSuchElementException("No path found between these vertices");
+        state.addSource(start, 0, startBound);
+        IndexedHeap heap = state.heap;
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        double[] weights = graph.weights;
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            if (u == end) return state.dist(u);
+            for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                int v = targets[i];
+                if (state.settled(v)) continue;
+                double bound = bounds.lowerBound(v, end);
+                if (bound == Double.POSITIVE_INFINITY) continue;
+                state.relax(u, v, weights[i], bound);
+            }
+        }
+        throw new NoSuchElementException("No path found between these vertices");
+    }
+
+    /**
+     * Uses Dijkstra's shortest path algorithm over the reversed CSR arrays to find the
+     * distances from every vertex to end.
+     *
+     * @param end   index of the destination of all paths
+     * @param graph the compiled graph to search
+     * @param state the search state, left holding the distance to end of each vertex reaching it
+     */
+    protected void dijkstraAllBackward(int end, Compiled graph, SearchState state) {
+        state.reset(graph.vertexCount);
+        state.addSource(end, 0);
+        IndexedHeap heap = state.heap;
+        int[] offsets = graph.reverseOffsets;
+        int[] sources = graph.sources;
+        double[] weights = graph.reverseWeights;
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            for (int i = offsets[u]; i < offsets[u + 1]; i++)
+                state.relax(u, sources[i], weights[i], 0);
+        }
+    }
+
+    /**
+     * Uses A* over the CSR arrays to find the shortest path from start to end that avoids a
+     * set of vertices and does not leave start towards any of a set of vertices, as the spur
+     * searches of Yen's k-shortest paths algorithm need. The heuristic is the distance to
+     * end in the unrestricted graph, which removing vertices and edges can only lengthen, so
+     * it stays admissible. It is also exact, so the first settled vertex whose unrestricted
+     * shortest path to end respects the restrictions completes an optimal path: the search
+     * stops there and the rest of the path follows that shortest path.
+     *
+     * @param start      index of the first vertex in path
+     * @param end        index of the last vertex in path
+     * @param graph      the compiled graph to search
+     * @param toEnd      the distance from each vertex to end in the unrestricted graph
+     * @param towardsEnd the next vertex on the unrestricted shortest path from each vertex to end
+     * @param removed    marks the vertices the path must not visit
+     * @param bannedNext the vertices the path must not go to directly from start
+     * @param state      the search state, left holding the predecessor of each reached vertex
+     * @return the vertex where the path joins the unrestricted shortest path to end
+     * @throws NoSuchElementException when no such path can be found
+     */
+    protected int restricted(int start, int end, Compiled graph, double[] toEnd, int[] towardsEnd,
+                             boolean[] removed, int[] bannedNext, SearchState state) {
+        state.reset(graph.vertexCount);
+        if (toEnd[start] == Double.POSITIVE_INFINITY)
+            throw new NoSuchElementException("No path found between these vertices");
+        state.addSource(start, 0, toEnd[start]);
+        IndexedHeap heap = state.heap;
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        double[] weights = graph.weights;
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            if (joinsShortestPath(u, start, towardsEnd, removed, bannedNext, state)) return u;
+            edges:
+            for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                int v = targets[i];
+                if (removed[v] || toEnd[v] == Double.POSITIVE_INFINITY || state.settled(v)) continue;
+                if (u == start)
+                    for (int banned : bannedNext)
+                        if (v == banned) continue edges;
+                state.relax(u, v, weights[i], toEnd[v]);
+            }
+        }
+        throw new NoSuchElementException("No path found between these vertices");
+    }
+
+    /**
+     * Check if the search path from start to u followed by the unrestricted shortest path
+     * from u to end is loopless and respects the restrictions of a restricted search.
+     */
+    private static boolean joinsShortestPath(int u, int start, int[] towardsEnd, boolean[] removed,
+                                             int[] bannedNext, SearchState state) {
+        if (u == start)
+            for (int banned : bannedNext)
+                if (towardsEnd[u] == banned) return false;
+        for (int w = u; w != -1; w = state.pred(w)) // temporarily remove the search path itself
+            removed[w] = true;
+        boolean joins = true;
+        for (int w = towardsEnd[u]; w != -1 && joins; w = towardsEnd[w])
+            joins = !removed[w];
+        for (int w = u; w != -1; w = state.pred(w))
+            removed[w] = false;
+        return joins;
+    }
+
+    /**
+     * Uses bidirectional Dijkstra over the CSR arrays: a forward search from start over the
+     * edges leaving each vertex and a backward search from end over the edges entering each
+     * vertex, always advancing the side with the smaller frontier key. Whenever a vertex is
+     * reached by both sides the sum of its distances is a candidate path, and the search
+     * stops once the two smallest keys together are no less than the best candidate.
+     *
+     * @param start    index of the first vertex in path
+     * @param end      index of the last vertex in path
+     * @param graph    the compiled graph to search
+     * @param forward  the forward search state, left holding predecessors towards start
+     * @param backward the backward search state, left holding successors towards end
+     * @return the vertex where the shortest path found by both searches meets
+     * @throws NoSuchElementException when no path from start to end can be found
+     */
+    protected int bidirectional(int start, int end, Compiled graph, SearchState forward, SearchState backward) {
+        forward.reset(graph.vertexCount);
+        backward.reset(graph.vertexCount);
+        forward.addSource(start, 0);
+        backward.addSource(end, 0);
+        double best = start == end ? 0 : Double.POSITIVE_INFINITY;
+        int meet = start == end ? start : -1;
+        IndexedHeap forwardHeap = forward.heap;
+        IndexedHeap backwardHeap = backward.heap;
+        while (!forwardHeap.isEmpty() && !backwardHeap.isEmpty()
+                && forwardHeap.peekKey() + backwardHeap.peekKey() < best) {
+            boolean isForward = forwardHeap.peekKey() <= backwardHeap.peekKey();
+            SearchState self = isForward ? forward : backward;
+            SearchState other = isForward ? backward : forward;
+            int[] offsets = isForward ? graph.offsets : graph.reverseOffsets;
+            int[] adjacent = isForward ? graph.targets : graph.sources;
+            double[] weights = isForward ? graph.weights : graph.reverseWeights;
+            int u = self.heap.poll();
+            for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                int v = adjacent[i];
+                if (self.relax(u, v, weights[i], 0) && other.reached(v)) {
+                    double candidate = self.dist(v) + other.dist(v);
+                    if (candidate < best) {
+                        best = candidate;
+                        meet = v;
+                    }
+                }
+            }
+        }
+        if (meet == -1) throw new NoSuchElementException("No path found between these vertices");
+        return meet;
+    }
+
+    /**
+     * Everything a point-to-point query reads, captured at one point in time: the compiled
+     * arrays, the search mode and the preprocessing that mode needs. A Prepared is never
+     * modified, so it can answer queries while the graph goes on changing, as long as each
+     * query brings its own search states.
+     */
+    protected final class Prepared {
+        public final Compiled graph;
+        public final SearchMode searchMode;
+        public final ContractionHierarchy hierarchy; // only for CONTRACTION_HIERARCHIES
+        public final Landmarks landmarks; // only for ALT
+
+        Prepared(Compiled graph, SearchMode searchMode, ContractionHierarchy hierarchy, Landmarks landmarks) {
+            this.graph = graph;
+            this.searchMode = searchMode;
+            this.hierarchy = hierarchy;
+            this.landmarks = landmarks;
+        }
+
+        /**
+         * Check if queries need a second search state for a backward search.
+         */
+        public boolean usesBackwardState() {
+            return searchMode == SearchMode.BIDIRECTIONAL || searchMode == SearchMode.CONTRACTION_HIERARCHIES;
+        }
+
+        /**
+         * Find the shortest path between two vertex indices.
+         *
+         * @param backward the second search state, only used if usesBackwardState()
+         * @return the data items on the path, including both start and end
+         * @throws NoSuchElementException when no path from start to end can be found
+         */
+        public List<IVertex> shortestPath(int start, int end, SearchState state, SearchState backward) {
+            LinkedList<IVertex> path = new LinkedList<>();
+            if (searchMode == SearchMode.CONTRACTION_HIERARCHIES) {
+                int meet = hierarchy.query(start, end, state, backward);
+                for (int v : hierarchy.unpack(meet, state, backward))
+                    path.add(graph.data[v]);
+                return path;
+            }
+            if (searchMode == SearchMode.BIDIRECTIONAL) {
+                int meet = bidirectional(start, end, graph, state, backward);
+                for (int v = meet; v != -1; v = state.pred(v))
+                    path.addFirst(graph.data[v]);
+                for (int v = backward.pred(meet); v != -1; v = backward.pred(v))
+                    path.addLast(graph.data[v]);
+                return path;
+            }
+            search(start, end, state);
+            for (int v = end; v != -1; v = state.pred(v))
+                path.addFirst(graph.data[v]);
+            return path;
+        }
+
+        /**
+         * Find the distance between two vertex indices.
+         *
+         * @param backward the second search state, only used if usesBackwardState()
+         * @return the distance from start to end
+         * @throws NoSuchElementException when no path from start to end can be found
+         */
+        public double pathCost(int start, int end, SearchState state, SearchState backward) {
+            if (searchMode == SearchMode.CONTRACTION_HIERARCHIES) {
+                int meet = hierarchy.query(start, end, state, backward);
+                return state.dist(meet) + backward.dist(meet);
+            }
+            if (searchMode == SearchMode.BIDIRECTIONAL) {
+                int meet = bidirectional(start, end, graph, state, backward);
+                return state.dist(meet) + backward.dist(meet);
+            }
+            return search(start, end, state);
+        }
+
+        /**
+         * Find the shortest paths from a vertex index to every vertex it reaches. The search
+         * mode does not matter, a full search is always plain Dijkstra.
+         *
+         * @return the shortest path tree rooted at source
+         */
+        public ShortestPathTree shortestPathTree(int source, SearchState state) {
+            dijkstraAll(source, graph, state);
+            return ShortestPathTree.fromSearch(graph.data, source, state);
+        }
+
+        /**
+         * Find the distances from a vertex index to every vertex it reaches.
+         *
+         * @param state the search state, left holding the distance of every vertex source reaches
+         */
+        public void distancesFrom(int source, SearchState state) {
+            dijkstraAll(source, graph, state);
+        }
+
+        /**
+         * Find the vertices within a distance of a vertex index with a bounded search.
+         *
+         * @return the vertices within maxCost of source with their distances, nearest first
+         */
+        public ReachableSet verticesWithin(int source, double maxCost, SearchState state) {
+            return dijkstraWithin(source, maxCost, graph, state);
+        }
+
+        /**
+         * Find the distances from a vertex index to a set of targets with one search that
+         * stops once all targets are settled.
+         *
+         * @param isTarget    marks the indices of the targets
+         * @param targetCount the number of marked targets
+         * @param state       the search state, left holding the distance of every target source reaches
+         */
+        public void distancesFrom(int source, boolean[] isTarget, int targetCount, SearchState state) {
+            dijkstraMany(source, isTarget, targetCount, graph, state);
+        }
+
+        /**
+         * Find the distances from every vertex index to target.
+         *
+         * @param state the search state, left holding the distance to target of every vertex reaching it
+         */
+        public void distancesTo(int target, SearchState state) {
+            dijkstraAllBackward(target, graph, state);
+        }
+
+        /**
+         * Find the shortest path between two vertex indices that avoids a set of vertices and
+         * does not leave start towards any of a set of vertices.
+         *
+         * @param toEnd      the distance from each vertex index to end, as found by distancesTo
+         * @param towardsEnd the next vertex on the shortest path from each vertex index to end
+         * @param removed    marks the vertices the path must not visit
+         * @param bannedNext the vertices the path must not go to directly from start
+         * @param state      the search state, left holding the predecessor of each reached vertex
+         * @return the vertex where the path joins the shortest path to end given by towardsEnd
+         * @throws NoSuchElementException when no such path can be found
+         */
+        public int restrictedPath(int start, int end, double[] toEnd, int[] towardsEnd, boolean[] removed,
+                                  int[] bannedNext, SearchState state) {
+            return restricted(start, end, graph, toEnd, towardsEnd, removed, bannedNext, state);
+        }
+
+        /**
+         * Run the one-directional search selected by the search mode.
+         */
+        private double search(int start, int end, SearchState state) {
+            switch (searchMode) {
+                case ASTAR:
+                    return aStar(start, end, graph, state);
+                case ALT:
+                    return alt(start, end, graph, landmarks, state);
+                default:
+                    return dijkstra(start, end, graph, state);
+            }
+        }
+    }
+
+    /**
+     * Return the query context of the current graph and search mode, compiling the graph
+     * and running the preprocessing of the search mode if they are stale.
+     *
+     * @return the query context of the current graph
+     */
+    protected Prepared prepare() {
+        Compiled graph = compile();
+        ContractionHierarchy hierarchy = searchMode == SearchMode.CONTRACTION_HIERARCHIES ? prepareHierarchy() : null;
+        Landmarks landmarks = searchMode == SearchMode.ALT ? prepareLandmarks() : null;
+        if (prepared == null || prepared.graph != graph || prepared.searchMode != searchMode
+                || prepared.hierarchy != hierarchy || prepared.landmarks != landmarks)
+            prepared = new Prepared(graph, searchMode, hierarchy, landmarks);
+        return prepared;
+    }
+
+    /**
+     * Return the query context if it is up to date, without compiling or preprocessing
+     * anything, so that the graph is only read.
+     *
+     * @return the current query context, or null if prepare() has work to do
+     */
+    protected Prepared preparedIfCurrent() {
+        Prepared current = prepared;
+        if (current == null || compiled == null || current.graph != compiled || current.searchMode != searchMode)
+            return null;
+        if (searchMode == SearchMode.CONTRACTION_HIERARCHIES && current.hierarchy != hierarchy) return null;
+        if (searchMode == SearchMode.ALT && current.landmarks != landmarks) return null;
+        return current;
+    }
+
+    /**
+     * Return the query context of the current graph and search mode like prepare(), but
+     * without caching what had to be compiled or preprocessed, so that the graph is only
+     * read and several threads may call this at once.
+     *
+     * @return the query context of the current graph
+     */
+    protected Prepared prepareDetached() {
+        Prepared current = preparedIfCurrent();
+        if (current != null) return current;
+        Compiled graph = compiled != null ? compiled : buildCompiled();
+        ContractionHierarchy hierarchy = null;
+        Landmarks landmarks = null;
+        if (searchMode == SearchMode.CONTRACTION_HIERARCHIES)
+            hierarchy = this.hierarchy != null && this.hierarchy.graph == graph
+                    ? this.hierarchy : new ContractionHierarchy(graph);
+        if (searchMode == SearchMode.ALT)
+            landmarks = this.landmarks != null && this.landmarks.graph == graph
+                    ? this.landmarks : new Landmarks(graph, landmarkCount, landmarkStrategy);
+        return new Prepared(graph, searchMode, hierarchy, landmarks);
+    }
+
+    /**
+     * Return an immutable snapshot of the current graph, taken again only if the graph or
+     * the search mode changed since the last one.
+     *
+     * @return a snapshot of the current graph
+     */
+    public GraphSnapshot snapshot() {
+        Prepared current = prepare();
+        if (snapshot == null || snapshot.prepared != current)
+            snapshot = new GraphSnapshot(current);
+        return snapshot;
+    }
+
+    /**
+     * Look up the index of the vertex holding a data item.
+     *
+     * @throws NoSuchElementException when no vertex containing data can be found
+     */
+    protected int indexOfExisting(IVertex data) {
+        Integer index = data == null ? null : indexOf.get(data);
+        if (index == null) throw new NoSuchElementException("No vertex found for " + data);
+        return index;
+    }
+
+    /**
+     * Returns the shortest path between start and end.
+     * Uses Dijkstra's shortest path algorithm to find the shortest path.
+     *
+     * @param start the data item in the starting vertex for the path
+     * @param end the data item in the destination vertex for the path
+     * @return list of data item in vertices in order on the shortest path between vertex
+     * with data item start and vertex with data item end, including both start and end
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public List<IVertex> shortestPath(IVertex start, IVertex end) {
+        int startIndex = indexOfExisting(start);
+        int endIndex = indexOfExisting(end);
+        Prepared prepared = prepare();
+        return prepared.shortestPath(startIndex, endIndex, searchState(), prepared.usesBackwardState() ? backwardState() : null);
+    }
+
+    /**
+     * Returns the shortest paths from source to every vertex it reaches.
+     *
+     * @param source the data item in the source vertex of all paths
+     * @return the shortest path tree rooted at source
+     * @throws NoSuchElementException when no vertex containing source can be found
+     */
+    public ShortestPathTree shortestPathTree(IVertex source) {
+        int sourceIndex = indexOfExisting(source);
+        return prepare().shortestPathTree(sourceIndex, searchState());
+    }
+
+    /**
+     * Returns the vertices within a distance of source, nearest first. Uses Dijkstra's
+     * shortest path algorithm, stopped before it goes beyond maxCost.
+     *
+     * @param source the data item in the source vertex of all paths
+     * @param maxCost the largest distance from source to include
+     * @return the ids and distances of the vertices within maxCost of source
+     * @throws NoSuchElementException when no vertex containing source can be found
+     */
+    public ReachableSet verticesWithin(IVertex source, double maxCost) {
+        int sourceIndex = indexOfExisting(source);
+        return prepare().verticesWithin(sourceIndex, maxCost, searchState());
+    }
+
+    /**
+     * Returns up to k shortest loopless paths between start and end, shortest first.
+     * Uses Yen's algorithm with the spur searches of each round running in parallel.
+     *
+     * @param start the data item in the starting vertex for the paths
+     * @param end the data item in the destination vertex for the paths
+     * @param k the number of paths to find
+     * @return the data items of the vertices on each path, including both start and end
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public List<List<IVertex>> kShortestPaths(IVertex start, IVertex end, int k) {
+        indexOfExisting(start);
+        indexOfExisting(end);
+        return snapshot().kShortestPaths(start.getId(), end.getId(), k);
+    }
+
+    /**
+     * Returns the cost of the path (sum over edge weights) between start and end.
+     * Uses Dijkstra's shortest path algorithm to find the shortest path.
+     *
+     * @param start the data item in the starting vertex for the path
+     * @param end the data item in the end vertex for the path
+     * @return the cost of the shortest path between vertex with data item start
+     * and vertex with data item end, including all edges between start and end
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public int getPathCost(IVertex start, IVertex end) {
+        return (int) getPathCostD(start, end);
+    }
+
+    public double getPathCostD(IVertex start, IVertex end) {
+        int startIndex = indexOfExisting(start);
+        int endIndex = indexOfExisting(end);
+        Prepared prepared = prepare();
+        return prepared.pathCost(startIndex, endIndex, searchState(), prepared.usesBackwardState() ? backwardState() : null);
+    }
+}
@@ -0,0 +1,345 @@
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A thread-safe graph that guards a CSRGraph with a StampedLock. Mutations take the write
+ * lock, so a multi-step change such as removeVertex is never seen half done. Lookups that
+ * walk the maps of the graph take the read lock, while counts held in plain fields are read
+ * optimistically and only take the read lock if a writer interfered. Shortest path queries
+ * pin the immutable query context of the graph (its compiled arrays and search
+ * preprocessing) together with the indices of their end vertices, then search outside the
+ * lock with search states owned by the calling thread. Any number of queries therefore run
+ * in parallel with each other and with writers, each answering for the graph as it was
+ * when the query started. Readers that need one consistent version across many queries
+ * take a snapshot, which writers that change the graph unpublish and the next reader
+ * republishes.
+ */
+public class ConcurrentGraph implements GraphADT<IVertex>, IGraph {
+
+    /**
+     * A query context together with the indices of the start and end vertex of a query.
+     */
+    protected static final class Pinned {
+        public final CSRGraph.Prepared prepared;
+        public final int start;
+        public final int end;
+
+        Pinned(CSRGraph.Prepared prepared, int start, int end) {
+            this.prepared = prepared;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    protected final CSRGraph graph; // only accessed while holding or validating the lock
+    protected final StampedLock lock;
+    protected final int heapArity; // arity of the heaps of the per-thread search states
+    protected final ThreadLocal<SearchState[]> searchStates; // forward and backward state of each thread
+    protected final AtomicReference<GraphSnapshot> published; // snapshot of the current version, null after a write
+
+    public ConcurrentGraph() {
+        this(new CSRGraph());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param graph the graph to guard, which must not be used directly afterwards
+     */
+    public ConcurrentGraph(CSRGraph graph) {
+        this.graph = graph;
+        this.lock = new StampedLock();
+        this.heapArity = graph.heapArity;
+        this.searchStates = ThreadLocal.withInitial(() -> new SearchState[2]);
+        this.published = new AtomicReference<>();
+    }
+
+    /**
+     * Run a read-only operation on the graph under the read lock.
+     */
+    protected <T> T read(Supplier<T> reader) {
+        long stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Run a read-only operation on the graph, first optimistically without locking and
+     * again under the read lock if a writer changed the graph in the meantime. Only for
+     * reads of plain fields: a map that a writer is rehashing must not be walked without
+     * the lock, since a torn read may loop or fail before it could be validated.
+     */
+    protected <T> T readOptimistic(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            T result = reader.get();
+            if (lock.validate(stamp)) return result;
+        }
+        return read(reader);
+    }
+
+    /**
+     * Run a mutation of the graph under the write lock and, if it changed the graph,
+     * unpublish the snapshot of the version it replaces. Readers that already hold that
+     * snapshot keep using it.
+     *
+     * @param writer the mutation, returning whether it changed the graph
+     * @return the result of the mutation
+     */
+    protected boolean write(BooleanSupplier writer) {
+        long stamp = lock.writeLock();
+        try {
+            boolean changed = writer.getAsBoolean();
+            if (changed) published.set(null);
+            return changed;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Return an immutable snapshot of the current graph. While the graph is not written
+     * this is a single atomic read; the first calls after a write build a snapshot under
+     * the read lock, and the first of them to finish publishes it for the readers that
+     * follow while the others drop their copy.
+     *
+     * @return a snapshot of the current graph
+     */
+    public GraphSnapshot snapshot() {
+        GraphSnapshot current = published.get();
+        if (current != null) return current;
+        long stamp = lock.readLock();
+        try {
+            current = new GraphSnapshot(graph.prepareDetached());
+            // published while still holding the read lock, so no write can unpublish it in between
+            if (published.compareAndSet(null, current)) return current;
+            return published.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Capture the query context of the graph and the indices of start and end. While a
+     * snapshot of the current graph is published, both are taken from the snapshot, which
+     * never changes, without locking; otherwise they are read under the read lock, and the
+     * graph is compiled and preprocessed under the write lock if it is stale.
+     *
+     * @throws NoSuchElementException when no vertex containing start or end can be found
+     */
+    protected Pinned pin(IVertex start, IVertex end) {
+        GraphSnapshot current = published.get();
+        if (current != null && start != null && end != null) {
+            int startIndex = current.indexOf(start.getId());
+            int endIndex = current.indexOf(end.getId());
+            IVertex[] data = current.prepared.graph.data;
+            if (startIndex != -1 && endIndex != -1 && data[startIndex].equals(start) && data[endIndex].equals(end))
+                return new Pinned(current.prepared, startIndex, endIndex);
+        }
+        long stamp = lock.readLock();
+        try {
+            int startIndex = graph.indexOfExisting(start);
+            int endIndex = graph.indexOfExisting(end);
+            CSRGraph.Prepared prepared = graph.preparedIfCurrent();
+            if (prepared == null) { // compiling and preprocessing write to the graph
+                long writeStamp = lock.tryConvertToWriteLock(stamp);
+                if (writeStamp == 0) {
+                    lock.unlockRead(stamp);
+                    stamp = lock.writeLock();
+                    startIndex = graph.indexOfExisting(start);
+                    endIndex = graph.indexOfExisting(end);
+                } else
+                    stamp = writeStamp;
+                prepared = graph.prepare();
+            }
+            return new Pinned(prepared, startIndex, endIndex);
+        } finally {
+            lock.unlock(stamp);
+        }
+    }
+
+    /**
+     * Return the search state of the calling thread, forward (0) or backward (1).
+     */
+    protected SearchState searchState(int direction) {
+        SearchState[] states = searchStates.get();
+        if (states[direction] == null)
+            states[direction] = new SearchState(0, heapArity);
+        return states[direction];
+    }
+
+    public boolean insertVertex(IVertex data) {
+        return write(() -> graph.insertVertex(data));
+    }
+
+    public boolean removeVertex(IVertex data) {
+        return write(() -> graph.removeVertex(data));
+    }
+
+    public boolean updateVertex(IVertex data) {
+        return write(() -> graph.updateVertex(data));
+    }
+
+    @Override
+    public boolean insertEdge(IVertex source, IVertex target, int weight) {
+        return write(() -> graph.insertEdge(source, target, weight));
+    }
+
+    public boolean insertEdge(IVertex source, IVertex target, double weight) {
+        return write(() -> graph.insertEdge(source, target, weight));
+    }
+
+    public boolean insertEdge(IVertex source, IVertex target) {
+        return write(() -> graph.insertEdge(source, target));
+    }
+
+    public boolean removeEdge(IVertex source, IVertex target) {
+        return write(() -> graph.removeEdge(source, target));
+    }
+
+    /**
+     * Choose the algorithm answering shortestPath and getPathCostD queries. Queries that
+     * already started finish with the previous algorithm.
+     *
+     * @param searchMode the algorithm to use
+     */
+    public void setSearchMode(SearchMode searchMode) {
+        write(() -> {
+            boolean changed = graph.getSearchMode() != searchMode;
+            graph.setSearchMode(searchMode);
+            return changed;
+        });
+    }
+
+    public SearchMode getSearchMode() {
+        return readOptimistic(graph::getSearchMode);
+    }
+
+    public boolean containsVertex(IVertex data) {
+        return read(() -> graph.containsVertex(data));
+    }
+
+    public boolean containsEdge(IVertex source, IVertex target) {
+        return read(() -> graph.containsEdge(source, target));
+    }
+
+    public int getWeight(IVertex source, IVertex target) {
+        return read(() -> graph.getWeight(source, target));
+    }
+
+    public double getWeightD(IVertex source, IVertex target) {
+        return read(() -> graph.getWeightD(source, target));
+    }
+
+    public int getEdgeCount() {
+        return readOptimistic(graph::getEdgeCount);
+    }
+
+    public int getVertexCount() {
+        return readOptimistic(graph::getVertexCount);
+    }
+
+    public int getOutDegree(IVertex data) {
+        return read(() -> graph.getOutDegree(data));
+    }
+
+    public int getInDegree(IVertex data) {
+        return read(() -> graph.getInDegree(data));
+    }
+
+    public GraphStats getStats() {
+        return readOptimistic(graph::getStats);
+    }
+
+    public boolean isEmpty() {
+        return readOptimistic(graph::isEmpty);
+    }
+
+    /**
+     * Returns the shortest path between start and end, searching the graph as it was when
+     * the call started without holding the lock.
+     *
+     * @param start the data item in the starting vertex for the path
+     * @param end the data item in the destination vertex for the path
+     * @return list of data item in vertices in order on the shortest path between vertex
+     * with data item start and vertex with data item end, including both start and end
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public List<IVertex> shortestPath(IVertex start, IVertex end) {
+        Pinned query = pin(start, end);
+        CSRGraph.Prepared prepared = query.prepared;
+        return prepared.shortestPath(query.start, query.end, searchState(0), prepared.usesBackwardState() ? searchState(1) : null);
+    }
+
+    /**
+     * Returns the shortest paths from source to every vertex it reaches, searching the
+     * graph as it was when the call started without holding the lock.
+     *
+     * @param source the data item in the source vertex of all paths
+     * @return the shortest path tree rooted at source
+     * @throws NoSuchElementException when no vertex containing source can be found
+     */
+    public ShortestPathTree shortestPathTree(IVertex source) {
+        Pinned query = pin(source, source);
+        return query.prepared.shortestPathTree(query.start, searchState(0));
+    }
+
+    /**
+     * Returns the vertices within a distance of source, searching the graph as it was when
+     * the call started without holding the lock.
+     *
+     * @param source the data item in the source vertex of all paths
+     * @param maxCost the largest distance from source to include
+     * @return the ids and distances of the vertices within maxCost of source
+     * @throws NoSuchElementException when no vertex containing source can be found
+     */
+    public ReachableSet verticesWithin(IVertex source, double maxCost) {
+        Pinned query = pin(source, source);
+        return query.prepared.verticesWithin(query.start, maxCost, searchState(0));
+    }
+
+    /**
+     * Returns up to k shortest loopless paths between start and end, searching the
+     * published snapshot of the graph without holding the lock.
+     *
+     * @param start the data item in the starting vertex for the paths
+     * @param end the data item in the destination vertex for the paths
+     * @param k the number of paths to find
+     * @return the data items of the vertices on each path, including both start and end
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public List<List<IVertex>> kShortestPaths(IVertex start, IVertex end, int k) {
+        if (start == null || end == null) throw new NoSuchElementException("No vertex found for null");
+        return snapshot().kShortestPaths(start.getId(), end.getId(), k);
+    }
+
+    public int getPathCost(IVertex start, IVertex end) {
+        return (int) getPathCostD(start, end);
+    }
+
+    /**
+     * Returns the cost of the shortest path between start and end, searching the graph as
+     * it was when the call started without holding the lock.
+     *
+     * @param start the data item in the starting vertex for the path
+     * @param end the data item in the end vertex for the path
+     * @return the cost of the shortest path between vertex with data item start
+     * and vertex with data item end, including all edges between start and end
+     * @throws NoSuchElementException when no path from start to end can be found
+     *     including when no vertex containing start or end can be found
+     */
+    public double getPathCostD(IVertex start, IVertex end) {
+        Pinned query = pin(start, end);
+        CSRGraph.Prepared prepared = query.prepared;
+        return prepared.pathCost(query.start, query.end, searchState(0), prepared.usesBackwardState() ? searchState(1) : null);
+    }
+}
@@ -0,0 +1,144 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the lock-guarded graph engine against a plain Dijkstra, and the snapshots
+ * it publishes
+ */
+public class ConcurrentGraphTests {
+    /**
+     * Queries find the distances of Dijkstra in every search mode, also after changes
+     */
+    @Test
+    public void testMatchesDijkstra() {
+        for (SearchMode mode : SearchMode.values())
+            for (long seed = 0; seed < 3; seed++) {
+                ConcurrentGraph graph = new ConcurrentGraph(new CSRGraph(mode));
+                ReferenceGraph reference = ReferenceGraph.random(graph, seed, 50, 120);
+                reference.checkQueries(50);
+                graph.snapshot(); // the next queries pin the published snapshot
+                reference.checkQueries(50);
+                reference.removeVertex(reference.randomVertex());
+                reference.addEdge(reference.randomVertex(), reference.randomVertex());
+                reference.checkQueries(50);
+            }
+    }
+
+    /**
+     * Writes that leave the graph as it was keep the published snapshot, writes that change
+     * it replace the snapshot
+     */
+    @Test
+    public void testNoOpWritesKeepSnapshot() {
+        ConcurrentGraph graph = new ConcurrentGraph();
+        ReferenceGraph reference = ReferenceGraph.random(graph, 3, 20, 40);
+        IVertex vertex = reference.getVertices().get(0);
+        IVertex other = reference.getVertices().get(1);
+        GraphSnapshot snapshot = graph.snapshot();
+        assertFalse(graph.updateVertex(vertex)); // where it already is
+        vertex.setLabel("renamed");
+        assertFalse(graph.updateVertex(vertex));
+        assertFalse(graph.insertVertex(vertex));
+        assertFalse(graph.removeEdge(vertex, vertex));
+        graph.setSearchMode(graph.getSearchMode());
+        assertSame(snapshot, graph.snapshot());
+        graph.removeEdge(vertex, other);
+        assertTrue(graph.insertEdge(vertex, other, 1));
+        GraphSnapshot changed = graph.snapshot();
+        assertNotSame(snapshot, changed);
+        vertex.setX(vertex.getX() + 1);
+        assertTrue(graph.updateVertex(vertex));
+        assertNotSame(changed, graph.snapshot());
+        changed = graph.snapshot();
+        graph.setSearchMode(SearchMode.BIDIRECTIONAL);
+        assertNotSame(changed, graph.snapshot());
+        assertEquals(SearchMode.BIDIRECTIONAL, graph.snapshot().prepared.searchMode);
+    }
+
+    /**
+     * A vertex that is not in the published snapshot, or another data item with the id of
+     * one that is, is looked up in the graph and refused
+     */
+    @Test
+    public void testUnknownVertex() {
+        ConcurrentGraph graph = new ConcurrentGraph();
+        ReferenceGraph reference = ReferenceGraph.random(graph, 1, 10, 30);
+        graph.snapshot();
+        IVertex stranger = new VertexGeneral(100, "stranger", 0, 0);
+        IVertex impostor = new VertexGeneral(0, "impostor", 0, 0);
+        for (IVertex unknown : new IVertex[]{stranger, impostor}) {
+            assertThrows(NoSuchElementException.class, () -> graph.getPathCostD(unknown, reference.randomVertex()));
+            assertThrows(NoSuchElementException.class, () -> graph.shortestPath(reference.randomVertex(), unknown));
+        }
+    }
+
+    /**
+     * Queries on vertices that are never removed stay right while another thread keeps
+     * adding and removing other vertices and their edges
+     */
+    @Test
+    public void testQueriesWhileWriting() throws Exception {
+        ConcurrentGraph graph = new ConcurrentGraph();
+        ReferenceGraph reference = ReferenceGraph.random(graph, 7, 60, 200);
+        List<IVertex> stable = new ArrayList<>(reference.getVertices());
+        double[][] expected = new double[stable.size()][stable.size()];
+        for (int i = 0; i < stable.size(); i++)
+            for (int j = 0; j < stable.size(); j++)
+                expected[i][j] = reference.distance(stable.get(i), stable.get(j));
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Future<?> writer = pool.submit(() -> {
+                int id = 1000;
+                while (!done.get()) { // vertices that only lead into the stable ones change no distance
+                    IVertex extra = new VertexGeneral(id, "extra" + id, id % 1000, 0);
+                    id++;
+                    graph.insertVertex(extra);
+                    graph.insertEdge(extra, stable.get(id % stable.size()), 1);
+                    if (id % 3 == 0) graph.snapshot();
+                    graph.removeVertex(extra);
+                }
+            });
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                int offset = t;
+                readers.add(pool.submit(() -> {
+                    for (int round = 0; round < 20; round++)
+                        for (int i = offset; i < stable.size(); i += 3)
+                            for (int j = 0; j < stable.size(); j += 7) {
+                                double distance;
+                                try {
+                                    distance = graph.getPathCostD(stable.get(i), stable.get(j));
+                                } catch (NoSuchElementException e) {
+                                    distance = Double.POSITIVE_INFINITY;
+                                }
+                                assertEquals(expected[i][j], distance, 1e-9 * Math.max(1, expected[i][j]));
+                            }
+                }));
+            }
+            for (Future<?> reader : readers)
+                reader.get();
+            done.set(true);
+            writer.get();
+        } finally {
+            done.set(true);
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Contraction Hierarchies over a compiled CSRGraph. Preprocessing contracts the vertices one
+ * by one in order of importance; whenever the only shortest path between two remaining
+ * neighbors of the contracted vertex runs through it (no witness path is found), a shortcut
+ * edge is added between them. Queries then run a bidirectional Dijkstra that only follows
+ * edges towards more important vertices, which settles a tiny fraction of the graph, and
+ * shortcuts are unpacked back into original edges afterwards.
+ */
+public class ContractionHierarchy {
+    // bounds on the vertices settled by a witness search; missing a witness only costs an extra shortcut
+    protected static final int WITNESS_SETTLE_LIMIT = 256;
+    protected static final int ESTIMATE_SETTLE_LIMIT = 32; // when only estimating the importance of a vertex
+
+    /**
+     * Edges of a vertex in the graph being contracted, at most one per neighbor.
+     */
+    protected static class Adjacency {
+        int[] neighbors = new int[4];
+        double[] weights = new double[4];
+        int size = 0;
+
+        void remove(int neighbor) {
+            int i = find(neighbor);
+            if (i < 0) return;
+            size--;
+            neighbors[i] = neighbors[size];
+            weights[i] = weights[size];
+        }
+
+        int find(int neighbor) {
+            for (int i = 0; i < size; i++)
+                if (neighbors[i] == neighbor) return i;
+            return -1;
+        }
+
+        /**
+         * Add an edge or lower the weight of an existing one.
+         *
+         * @return true if the adjacency changed
+         */
+        boolean addOrDecrease(int neighbor, double weight) {
+            int i = find(neighbor);
+            if (i >= 0) {
+                if (weights[i] <= weight) return false;
+                weights[i] = weight;
+                return true;
+            }
+            if (size == neighbors.length) {
+                neighbors = Arrays.copyOf(neighbors, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            neighbors[size] = neighbor;
+            weights[size] = weight;
+            size++;
+            return true;
+        }
+    }
+
+    public final CSRGraph.Compiled graph; // the graph this hierarchy was built for
+    // edges towards more important vertices, leaving each vertex (forward) or entering it (backward)
+    protected final int[] upOffsets;
+    protected final int[] upTargets;
+    protected final double[] upWeights;
+    protected final int[] downOffsets;
+    protected final int[] downSources;
+    protected final double[] downWeights;
+    protected final LongIntMap middleOf; // packed (source, target) of each shortcut -> bypassed vertex, -1 for original edges
+    protected final int shortcutCount;
+
+    // preprocessing state, dropped once the hierarchy is built
+    private Adjacency[] out;
+    private Adjacency[] in;
+    private boolean[] contracted;
+    private SearchState witness;
+
+    /**
+     * Preprocess a compiled graph: order and contract its vertices and build the upward
+     * search graphs.
+     *
+     * @param graph the compiled graph to build a hierarchy for
+     */
+    public ContractionHierarchy(CSRGraph.Compiled graph) {
+        this.graph = graph;
+        int n = graph.vertexCount;
+        out = new Adjacency[n];
+        in = new Adjacency[n];
+        for (int v = 0; v < n; v++) {
+            out[v] = new Adjacency();
+            in[v] = new Adjacency();
+        }
+        for (int u = 0; u < n; u++)
+            for (int i = graph.offsets[u]; i < graph.offsets[u + 1]; i++) {
+                int v = graph.targets[i];
+                if (v == u) continue; // loops never lie on a shortest path
+                out[u].addOrDecrease(v, graph.weights[i]);
+                in[v].addOrDecrease(u, graph.weights[i]);
+            }
+        contracted = new boolean[n];
+        witness = new SearchState(n, 4);
+        middleOf = new LongIntMap();
+
+        // order vertices by importance, re-evaluating the least important one before contracting it
+        int[] contractedNeighbors = new int[n];
+        int[] level = new int[n]; // depth of the hierarchy below each vertex
+        IndexedHeap order = new IndexedHeap(n);
+        for (int v = 0; v < n; v++)
+            order.insertOrDecrease(v, priority(v, 0));
+        Adjacency[] upOut = new Adjacency[n];
+        Adjacency[] upIn = new Adjacency[n];
+        int shortcuts = 0;
+        while (!order.isEmpty()) {
+            int v = order.poll();
+            double priority = priority(v, contractedNeighbors[v] + level[v]);
+            if (!order.isEmpty() && priority > order.peekKey()) {
+                order.update(v, priority); // no longer the least important vertex
+                continue;
+            }
+            shortcuts += contract(v);
+            contracted[v] = true;
+            // the remaining edges of v all lead to more important vertices
+            upOut[v] = remaining(out[v]);
+            upIn[v] = remaining(in[v]);
+            for (int i = 0; i < upOut[v].size; i++) in[upOut[v].neighbors[i]].remove(v);
+            for (int i = 0; i < upIn[v].size; i++) out[upIn[v].neighbors[i]].remove(v);
+            // neighbors of contracted vertices become more important, which spreads contractions evenly
+            for (int i = 0; i < upOut[v].size; i++) {
+                int w = upOut[v].neighbors[i];
+                contractedNeighbors[w]++;
+                level[w] = Math.max(level[w], level[v] + 1);
+            }
+            for (int i = 0; i < upIn[v].size; i++) {
+                int u = upIn[v].neighbors[i];
+                if (upOut[v].find(u) >= 0) continue; // already counted as an out-neighbor
+                contractedNeighbors[u]++;
+                level[u] = Math.max(level[u], level[v] + 1);
+            }
+            out[v] = null;
+            in[v] = null;
+        }
+        shortcutCount = shortcuts;
+
+        upOffsets = new int[n + 1];
+        downOffsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            upOffsets[v + 1] = upOffsets[v] + upOut[v].size;
+            downOffsets[v + 1] = downOffsets[v] + upIn[v].size;
+        }
+        upTargets = new int[upOffsets[n]];
+        upWeights = new double[upOffsets[n]];
+        downSources = new int[downOffsets[n]];
+        downWeights = new double[downOffsets[n]];
+        for (int v = 0; v < n; v++) {
+            System.arraycopy(upOut[v].neighbors, 0, upTargets, upOffsets[v], upOut[v].size);
+            System.arraycopy(upOut[v].weights, 0, upWeights, upOffsets[v], upOut[v].size);
+            System.arraycopy(upIn[v].neighbors, 0, downSources, downOffsets[v], upIn[v].size);
+            System.arraycopy(upIn[v].weights, 0, downWeights, downOffsets[v], upIn[v].size);
+        }
+        out = null;
+        in = null;
+        contracted = null;
+        witness = null;
+    }
+
+    /**
+     * Copy of the edges of an adjacency that lead to vertices not contracted yet.
+     */
+    private Adjacency remaining(Adjacency adjacency) {
+        Adjacency result = new Adjacency();
+        for (int i = 0; i < adjacency.size; i++)
+            if (!contracted[adjacency.neighbors[i]])
+                result.addOrDecrease(adjacency.neighbors[i], adjacency.weights[i]);
+        return result;
+    }
+
+    /**
+     * Importance of a vertex: twice the shortcuts its contraction would add minus the edges
+     * it removes, plus a spread term (its contracted neighbors and its level in the hierarchy).
+     */
+    private double priority(int v, int spread) {
+        int removed = 0;
+        for (int i = 0; i < in[v].size; i++)
+            if (!contracted[in[v].neighbors[i]]) removed++;
+        for (int i = 0; i < out[v].size; i++)
+            if (!contracted[out[v].neighbors[i]]) removed++;
+        return 2 * (shortcutsNeeded(v, false) - removed) + spread;
+    }
+
+    /**
+     * Contract a vertex, adding the shortcuts it requires.
+     *
+     * @return the number of shortcuts added
+     */
+    private int contract(int v) {
+        return shortcutsNeeded(v, true);
+    }
+
+    /**
+     * For every pair of remaining neighbors u -> v -> w, search for a witness path from u
+     * to w avoiding v that is no longer than the path through v.
+     *
+     * @param v   the vertex to be contracted
+     * @param add true to add the missing shortcuts, false to only count them
+     * @return the number of shortcuts needed
+     */
+    private int shortcutsNeeded(int v, boolean add) {
+        int count = 0;
+        Adjacency incoming = in[v];
+        Adjacency outgoing = out[v];
+        double maxOut = 0;
+        for (int j = 0; j < outgoing.size; j++)
+            if (!contracted[outgoing.neighbors[j]])
+                maxOut = Math.max(maxOut, outgoing.weights[j]);
+        for (int i = 0; i < incoming.size; i++) {
+            int u = incoming.neighbors[i];
+            if (contracted[u]) continue;
+            double viaWeight = incoming.weights[i];
+            witnessSearch(u, v, viaWeight + maxOut, add ? WITNESS_SETTLE_LIMIT : ESTIMATE_SETTLE_LIMIT);
+            for (int j = 0; j < outgoing.size; j++) {
+                int w = outgoing.neighbors[j];
+                if (contracted[w] || w == u) continue;
+                double through = viaWeight + outgoing.weights[j];
+                if (witness.dist(w) <= through) continue; // a witness path makes the shortcut unnecessary
+                count++;
+                if (add && out[u].addOrDecrease(w, through)) {
+                    in[w].addOrDecrease(u, through);
+                    middleOf.put(CSRGraph.edgeKey(u, w), v);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Dijkstra from source over the remaining graph without the vertex being contracted,
+     * stopping at the distance limit or after settling a bounded number of vertices.
+     */
+    private void witnessSearch(int source, int excluded, double limit, int settleLimit) {
+        witness.reset(graph.vertexCount);
+        witness.addSource(source, 0);
+        int settled = 0;
+        while (!witness.heap.isEmpty() && settled++ < settleLimit) {
+            if (witness.heap.peekKey() > limit) break;
+            int u = witness.heap.poll();
+            Adjacency adjacency = out[u];
+            for (int i = 0; i < adjacency.size; i++) {
+                int w = adjacency.neighbors[i];
+                if (w == excluded || contracted[w]) continue;
+                witness.relax(u, w, adjacency.weights[i], 0);
+            }
+        }
+    }
+
+    public int getShortcutCount() {
+        return shortcutCount;
+    }
+
+    /**
+     * Bidirectional upward search: the forward search from start and the backward search
+     * from end only follow edges towards more important vertices, and each side stops once
+     * its smallest key is no less than the best path found through a vertex reached by both.
+     *
+     * @param start    index of the first vertex in path
+     * @param end      index of the last vertex in path
+     * @param forward  the forward search state, left holding predecessors towards start
+     * @param backward the backward search state, left holding successors towards end
+     * @return the vertex where the shortest path found by both searches meets
+     * @throws NoSuchElementException when no path from start to end can be found
+     */
+    public int query(int start, int end, SearchState forward, SearchState backward) {
+        int n = graph.vertexCount;
+        forward.reset(n);
+        backward.reset(n);
+        forward.addSource(start, 0);
+        backward.addSource(end, 0);
+        double best = start == end ? 0 : Double.POSITIVE_INFINITY;
+        int meet = start == end ? start : -1;
+        IndexedHeap forwardHeap = forward.heap;
+        IndexedHeap backwardHeap = backward.heap;
+        while (true) {
+            boolean forwardOpen = !forwardHeap.isEmpty() && forwardHeap.peekKey() < best;
+            boolean backwardOpen = !backwardHeap.isEmpty() && backwardHeap.peekKey() < best;
+            if (!forwardOpen && !backwardOpen) break;
+            boolean isForward = forwardOpen && (!backwardOpen || forwardHeap.peekKey() <= backwardHeap.peekKey());
+            SearchState self = isForward ? forward : backward;
+            SearchState other = isForward ? backward : forward;
+            int[] offsets = isForward ? upOffsets : downOffsets;
+            int[] adjacent = isForward ? upTargets : downSources;
+            double[] weights = isForward ? upWeights : downWeights;
+            int u = self.heap.poll();
+            for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                int v = adjacent[i];
+                if (self.relax(u, v, weights[i], 0) && other.reached(v)) {
+                    double candidate = self.dist(v) + other.dist(v);
+                    if (candidate < best) {
+                        best = candidate;
+                        meet = v;
+                    }
+                }
+            }
+        }
+        if (meet == -1) throw new NoSuchElementException("No path found between these vertices");
+        return meet;
+    }
+
+    /**
+     * Turn the result of a query into the sequence of original vertices from start to end,
+     * replacing every shortcut by the two edges it bypasses.
+     *
+     * @param meet     the meeting vertex returned by query
+     * @param forward  the forward search state of the query
+     * @param backward the backward search state of the query
+     * @return the vertex indices on the path, including start and end
+     */
+    public List<Integer> unpack(int meet, SearchState forward, SearchState backward) {
+        ArrayList<Integer> hierarchyPath = new ArrayList<>();
+        for (int v = meet; v != -1; v = forward.pred(v))
+            hierarchyPath.add(v);
+        Collections.reverse(hierarchyPath);
+        for (int v = backward.pred(meet); v != -1; v = backward.pred(v))
+            hierarchyPath.add(v);
+        ArrayList<Integer> path = new ArrayList<>();
+        path.add(hierarchyPath.get(0));
+        int[] stack = new int[16];
+        for (int i = 1; i < hierarchyPath.size(); i++) {
+            // depth-first expansion of the edge (from, to), emitting each original target in order
+            int from = hierarchyPath.get(i - 1);
+            int top = 0;
+            stack[top++] = hierarchyPath.get(i);
+            while (top > 0) {
+                int to = stack[top - 1];
+                int middle = middleOf.get(CSRGraph.edgeKey(from, to));
+                if (middle == -1) {
+                    path.add(to);
+                    from = to;
+                    top--;
+                } else {
+                    if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+                    stack[top++] = middle;
+                }
+            }
+        }
+        return path;
+    }
+}
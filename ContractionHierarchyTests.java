@@ -0,0 +1,79 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the contraction hierarchies search mode of the graph engine against a plain
+ * Dijkstra
+ */
+public class ContractionHierarchyTests {
+    /**
+     * Queries through the hierarchy find the same distances and paths as Dijkstra on random
+     * graphs, where many pairs cannot reach each other
+     */
+    @Test
+    public void testMatchesDijkstra() {
+        int unreachable = 0;
+        for (long seed = 0; seed < 20; seed++) {
+            ReferenceGraph reference = ReferenceGraph.random(new CSRGraph(SearchMode.CONTRACTION_HIERARCHIES), seed, 60, 150);
+            unreachable += reference.checkQueries(200);
+        }
+        assertTrue(unreachable > 0);
+    }
+
+    /**
+     * Dense graphs with equal weights have many ties between a shortcut and its witness paths,
+     * and the paths unpacked from the shortcuts must still be shortest
+     */
+    @Test
+    public void testEqualWeights() {
+        for (long seed = 0; seed < 10; seed++) {
+            CSRGraph graph = new CSRGraph(SearchMode.CONTRACTION_HIERARCHIES);
+            ReferenceGraph reference = ReferenceGraph.random(graph, seed, 40, 0);
+            for (int i = 0; i < 300; i++)
+                reference.addEdge(reference.randomVertex(), reference.randomVertex(), 1);
+            assertTrue(graph.prepareHierarchy().getShortcutCount() > 0);
+            reference.checkQueries(300);
+        }
+    }
+
+    /**
+     * No query crosses between two components that have no edge between them
+     */
+    @Test
+    public void testDisconnectedComponents() {
+        ReferenceGraph reference = ReferenceGraph.random(new CSRGraph(SearchMode.CONTRACTION_HIERARCHIES), 3, 40, 0);
+        List<IVertex> vertices = reference.getVertices();
+        for (int i = 0; i < 150; i++) {
+            int offset = i % 2 == 0 ? 0 : 20;
+            reference.addEdge(vertices.get(offset + reference.getRandom().nextInt(20)),
+                    vertices.get(offset + reference.getRandom().nextInt(20)));
+        }
+        for (IVertex source : vertices)
+            for (IVertex target : vertices)
+                reference.checkQuery(source, target);
+    }
+
+    /**
+     * The hierarchy is rebuilt after the graph changes, whether or not it was prepared ahead of
+     * the next query
+     */
+    @Test
+    public void testAfterMutations() {
+        for (long seed = 0; seed < 10; seed++) {
+            CSRGraph graph = new CSRGraph(SearchMode.CONTRACTION_HIERARCHIES);
+            ReferenceGraph reference = ReferenceGraph.random(graph, seed, 60, 150);
+            for (int round = 0; round < 10; round++) {
+                reference.removeVertex(reference.randomVertex());
+                reference.removeEdge(reference.randomVertex(), reference.randomVertex());
+                reference.addVertex();
+                for (int i = 0; i < 5; i++)
+                    reference.addEdge(reference.randomVertex(), reference.randomVertex());
+                if (round % 2 == 0) graph.prepareHierarchy();
+                reference.checkQueries(20);
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This class tests the many-to-many distance matrices of snapshots against a plain Dijkstra
+ * per pair
+ */
+public class DistanceMatrixTests {
+    /**
+     * Check every entry of a matrix against the distance the reference Dijkstra finds for its
+     * pair, and against a single-pair query of the graph where there is a path.
+     */
+    private static void checkMatrix(ReferenceGraph reference, List<IVertex> sources, List<IVertex> targets,
+                                    double[][] matrix) {
+        assertEquals(sources.size(), matrix.length);
+        for (int i = 0; i < sources.size(); i++) {
+            assertEquals(targets.size(), matrix[i].length);
+            Map<IVertex, Double> distances = reference.distancesFrom(sources.get(i));
+            for (int j = 0; j < targets.size(); j++) {
+                Double expected = distances.get(targets.get(j));
+                if (expected == null) {
+                    assertEquals(Double.POSITIVE_INFINITY, matrix[i][j]);
+                    continue;
+                }
+                double delta = 1e-9 * Math.max(1, expected);
+                assertEquals(expected, matrix[i][j], delta);
+                assertEquals(reference.getGraph().getPathCostD(sources.get(i), targets.get(j)), matrix[i][j], delta);
+            }
+        }
+    }
+
+    private static int[] ids(List<IVertex> vertices) {
+        return vertices.stream().mapToInt(IVertex::getId).toArray();
+    }
+
+    /**
+     * Random sources and targets, including repeated ones and vertices the sources do not
+     * reach, get the distances of a plain Dijkstra per pair in every search mode, also on
+     * a pool with a single worker and after changes
+     */
+    @Test
+    public void testMatchesDijkstra() {
+        ForkJoinPool single = new ForkJoinPool(1);
+        try {
+            for (SearchMode mode : SearchMode.values())
+                for (long seed = 0; seed < 3; seed++) {
+                    CSRGraph graph = new CSRGraph(mode);
+                    ReferenceGraph reference = ReferenceGraph.random(graph, seed, 60, 130);
+                    for (int round = 0; round < 3; round++) {
+                        List<IVertex> sources = new ArrayList<>();
+                        List<IVertex> targets = new ArrayList<>();
+                        for (int i = 0; i < 12; i++) {
+                            sources.add(reference.randomVertex());
+                            targets.add(reference.randomVertex());
+                        }
+                        targets.add(sources.get(0)); // distance 0 to itself
+                        targets.add(targets.get(0));
+                        GraphSnapshot snapshot = graph.snapshot();
+                        checkMatrix(reference, sources, targets, snapshot.distanceMatrix(ids(sources), ids(targets)));
+                        checkMatrix(reference, sources, targets,
+                                snapshot.distanceMatrix(ids(sources), ids(targets), single));
+                        reference.removeVertex(reference.randomVertex());
+                        reference.addEdge(reference.randomVertex(), reference.randomVertex());
+                    }
+                }
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    /**
+     * Pairs without a path are infinite, in either direction of a one-way edge and between
+     * parts of the graph no edge joins
+     */
+    @Test
+    public void testUnreachable() {
+        CSRGraph graph = new CSRGraph();
+        ReferenceGraph reference = ReferenceGraph.random(graph, 2, 6, 0);
+        List<IVertex> vertices = reference.getVertices();
+        reference.addEdge(vertices.get(0), vertices.get(1), 2);
+        reference.addEdge(vertices.get(1), vertices.get(2), 3);
+        reference.addEdge(vertices.get(3), vertices.get(4), 1);
+        double[][] matrix = graph.snapshot().distanceMatrix(ids(vertices), ids(vertices));
+        checkMatrix(reference, vertices, vertices, matrix);
+        assertEquals(5, matrix[0][2]);
+        assertEquals(Double.POSITIVE_INFINITY, matrix[2][0]);
+        assertEquals(Double.POSITIVE_INFINITY, matrix[0][3]);
+        assertEquals(Double.POSITIVE_INFINITY, matrix[5][4]);
+        assertEquals(0, matrix[5][5]);
+    }
+
+    /**
+     * Ids the snapshot has no vertex for, including vertices removed after it was taken,
+     * give rows and columns of infinity instead of throwing like the single-pair queries,
+     * and no sources or targets give an empty matrix
+     */
+    @Test
+    public void testUnknownIds() {
+        CSRGraph graph = new CSRGraph();
+        ReferenceGraph reference = ReferenceGraph.random(graph, 4, 20, 60);
+        IVertex removed = reference.getVertices().get(0);
+        IVertex kept = reference.getVertices().get(1);
+        GraphSnapshot before = graph.snapshot();
+        reference.removeVertex(removed);
+        GraphSnapshot snapshot = graph.snapshot();
+        assertThrows(NoSuchElementException.class, () -> snapshot.shortestPath(removed.getId(), kept.getId()));
+        int[] sources = {kept.getId(), 1000, removed.getId()};
+        int[] targets = {1000, kept.getId(), removed.getId(), -1};
+        double[][] matrix = snapshot.distanceMatrix(sources, targets);
+        assertEquals(0, matrix[0][1]);
+        for (int i = 0; i < sources.length; i++)
+            for (int j = 0; j < targets.length; j++)
+                if (i != 0 || j != 1) assertEquals(Double.POSITIVE_INFINITY, matrix[i][j]);
+        double[][] old = before.distanceMatrix(new int[]{removed.getId()}, new int[]{removed.getId()});
+        assertEquals(0, old[0][0]); // still in the older snapshot
+        assertEquals(0, snapshot.distanceMatrix(new int[0], targets).length);
+        double[][] noTargets = snapshot.distanceMatrix(sources, new int[0]);
+        assertEquals(sources.length, noTargets.length);
+        for (double[] row : noTargets)
+            assertEquals(0, row.length);
+        double[][] onlyUnknown = snapshot.distanceMatrix(new int[]{kept.getId()}, new int[]{1000});
+        assertEquals(Double.POSITIVE_INFINITY, onlyUnknown[0][0]);
+    }
+}
@@ -1,4 +1,5 @@
 import javafx.scene.Group;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
 import javafx.scene.control.MenuItem;
@@ -15,17 +16,80 @@ import java.util.Objects;
 
 /**
  * EdgeFD is a class that represents an edge on the graph, and an instance of IEdge
+ * Its JavaFX nodes are only attached while the edge is near the viewport, see MapViewport
  *
  * @author Ruixuan Tu
  */
 public class EdgeFD implements IEdge {
+    public static final double OFFSET = 30; // distance of the line from the centers of its vertices
+    private static final double[] ARROW_X = {0, 15, -15}; // the triangle at the end of the line, pointing down
+    private static final double[] ARROW_Y = {7.5, -7.5, -7.5};
+
+    /**
+     * The JavaFX nodes drawing an edge, recycled between the edges that scroll in and out of
+     * the viewport, their handlers forward to the edge currently owning them
+     */
+    public static class View {
+        public final Group group;
+        public final Line line;
+        public final Polygon triangle;
+        public final Label label;
+        public final TextField textField;
+        public final ContextMenu contextMenu;
+        private EdgeFD owner;
+
+        /**
+         * Constructor for View
+         */
+        public View() {
+            this.line = new Line();
+            this.triangle = new Polygon(ARROW_X[0], ARROW_Y[0], ARROW_X[1], ARROW_Y[1], ARROW_X[2], ARROW_Y[2]);
+            this.label = new Label();
+            this.group = new Group(line, triangle, label);
+            this.line.setStrokeWidth(2);
+            this.textField = new TextField();
+            this.contextMenu = new ContextMenu();
+            MenuItem changeWeight = new MenuItem("Change Weight");
+            MenuItem delete = new MenuItem("Delete");
+            this.contextMenu.getItems().addAll(changeWeight, delete);
+
+            this.group.setOnMouseClicked(e -> this.owner.handleGroupMouseClicked(e));
+            this.group.setOnContextMenuRequested(e -> {
+                this.contextMenu.show(this.group, e.getScreenX(), e.getScreenY());
+                e.consume();
+            });
+            this.group.setOnDragDetected(e -> this.owner.dragging = true);
+            this.group.setOnMousePressed(e -> {
+                this.owner.dragging = false;
+                this.owner.update();
+                e.consume();
+            });
+
+            changeWeight.setOnAction(e -> {
+                this.owner.startEditing();
+                e.consume();
+            });
+
+            delete.setOnAction(e -> {
+                this.owner.controller.removeEdge(this.owner.id);
+                e.consume();
+            });
+
+            this.textField.setOnKeyPressed(e -> this.owner.handleTextFieldKeyPressed(e));
+        }
+    }
+
     public int id;
     public double weight;
     public boolean selected;
     public boolean dragging;
+    public boolean editing; // the label is replaced by the text field to change the weight
     public double theta; // in radian
+    public Color stroke;
+    public Color textFill;
 
-    public Group group;
+    public View view; // null while the edge is outside the viewport
+    public Group group; // the nodes of view, null along with it
     public Line line;
     public Polygon triangle;
     public Label label;
@@ -48,71 +112,144 @@ public class EdgeFD implements IEdge {
      * @param controller the controller of the graph
      */
     public EdgeFD(int id, VertexFD fromVertex, VertexFD toVertex, MapController controller) {
-        this.line = new Line(fromVertex.pos.getX(), fromVertex.pos.getY(), toVertex.pos.getX(), toVertex.pos.getY());
-        this.triangle = new Polygon(0, 7.5, 15, -7.5, -15, -7.5);
-        this.label = new Label(Double.toString(weight));
-        this.group = new Group(line, triangle, label);
-        this.line.setStroke(Color.DARKGRAY);
-        this.line.setStrokeWidth(2);
-        this.triangle.setFill(Color.DARKGRAY);
-        this.label.setTextFill(Color.BLACK);
+        this.stroke = Color.DARKGRAY;
+        this.textFill = Color.BLACK;
         this.fromPos = fromVertex.pos;
         this.toPos = toVertex.pos;
         this.controller = controller;
         this.id = id;
-        this.textField = new TextField(Double.toString(weight));
-        this.contextMenu = new ContextMenu();
-        MenuItem changeWeight = new MenuItem("Change Weight");
-        MenuItem delete = new MenuItem("Delete");
-        this.contextMenu.getItems().addAll(changeWeight, delete);
         this.selected = false;
-        this.group.setId("edge-" + id);
+        this.editing = false;
         this.fromVertex = fromVertex;
         this.toVertex = toVertex;
 
-        try {
-            this.controller.backend.addEdge(this);
-        } catch (Exception ex) {
-            this.controller.criticalError("Backend error when adding Edge " + id + ".", ex);
-        }
+        update();
+    }
 
+    /**
+     * Attach the nodes of a view to the edge and draw the edge with them
+     *
+     * @param view the view to take over
+     */
+    public void show(View view) {
+        this.view = view;
+        view.owner = this;
+        this.group = view.group;
+        this.line = view.line;
+        this.triangle = view.triangle;
+        this.label = view.label;
+        this.textField = view.textField;
+        this.contextMenu = view.contextMenu;
+        this.group.setId("edge-" + id);
+        this.line.setStroke(this.stroke);
+        this.triangle.setFill(this.stroke);
+        this.label.setTextFill(this.textFill);
+        this.group.getChildren().setAll(this.line, this.triangle, this.editing ? this.textField : this.label);
         update();
+    }
 
-        this.group.setOnMouseClicked(this::handleGroupMouseClicked);
-        this.group.setOnContextMenuRequested(e -> {
-            this.contextMenu.show(this.group, e.getScreenX(), e.getScreenY());
-            e.consume();
-        });
-        this.group.setOnDragDetected(e -> this.dragging = true);
-        this.group.setOnMousePressed(e -> {
-            this.dragging = false;
-            update();
-            e.consume();
-        });
+    /**
+     * Detach the nodes of the edge so that another edge can reuse them
+     *
+     * @return the view the edge was drawn with
+     */
+    public View hide() {
+        View view = this.view;
+        this.contextMenu.hide();
+        view.owner = null;
+        this.view = null;
+        this.group = null;
+        this.line = null;
+        this.triangle = null;
+        this.label = null;
+        this.textField = null;
+        this.contextMenu = null;
+        return view;
+    }
 
-        changeWeight.setOnAction(e -> {
-            this.group.getChildren().remove(this.label);
-            this.textField.setText(this.label.getText());
-            this.group.getChildren().add(textField);
-            update();
-            e.consume();
-        });
+    /**
+     * Draw the edge onto a canvas, for the edges not shown with their own nodes
+     *
+     * @param gc the graphics context of the canvas, with text centered on the drawing point
+     */
+    public void draw(GraphicsContext gc) {
+        double dx = -OFFSET * Math.sin(Math.PI + this.theta);
+        double dy = OFFSET * Math.cos(Math.PI + this.theta);
+        double x1 = this.fromPos.getX() + dx, y1 = this.fromPos.getY() + dy;
+        double x2 = this.toPos.getX() + dx, y2 = this.toPos.getY() + dy;
+        gc.setStroke(this.stroke);
+        gc.setLineWidth(2);
+        gc.strokeLine(x1, y1, x2, y2);
+        gc.save();
+        gc.translate(x2, y2);
+        gc.rotate((this.theta - Math.PI / 2) * 180 / Math.PI);
+        gc.setFill(this.stroke);
+        gc.fillPolygon(ARROW_X, ARROW_Y, 3);
+        gc.restore();
+        gc.setFill(this.textFill);
+        gc.fillText(String.format("%.2f", this.weight), (x1 + x2) / 2, (y1 + y2) / 2);
+    }
 
-        delete.setOnAction(e -> {
-            this.controller.removeEdge(this.id);
-            e.consume();
-        });
+    /**
+     * Return the distance from a point to the line of the edge
+     *
+     * @param x the x coordinate of the point in the pane
+     * @param y the y coordinate of the point in the pane
+     * @return the distance from the point to the closest point of the line
+     */
+    public double distanceTo(double x, double y) {
+        double dx = -OFFSET * Math.sin(Math.PI + this.theta);
+        double dy = OFFSET * Math.cos(Math.PI + this.theta);
+        double x1 = this.fromPos.getX() + dx, y1 = this.fromPos.getY() + dy;
+        double x2 = this.toPos.getX() + dx, y2 = this.toPos.getY() + dy;
+        double lengthSq = (x2 - x1) * (x2 - x1) + (y2 - y1) * (y2 - y1);
+        double t = lengthSq == 0 ? 0 : ((x - x1) * (x2 - x1) + (y - y1) * (y2 - y1)) / lengthSq;
+        t = Math.max(0, Math.min(1, t));
+        return this.controller.distance(x1 + t * (x2 - x1), y1 + t * (y2 - y1), x, y);
+    }
 
-        this.textField.setOnKeyPressed(this::handleTextFieldKeyPressed);
+    /**
+     * Set the colors of the line and arrow and of the label of the edge
+     *
+     * @param stroke   the color of the line and the arrow
+     * @param textFill the color of the label
+     */
+    public void setColors(Color stroke, Color textFill) {
+        this.stroke = stroke;
+        this.textFill = textFill;
+        if (this.view != null) {
+            this.line.setStroke(stroke);
+            this.triangle.setFill(stroke);
+            this.label.setTextFill(textFill);
+        }
+        this.controller.viewport.requestRedraw();
+    }
+
+    /**
+     * Replaces the label with the text field to change the weight of the edge
+     */
+    private void startEditing() {
+        this.editing = true;
+        this.group.getChildren().remove(this.label);
+        this.textField.setText(this.label.getText());
+        this.group.getChildren().add(textField);
+        update();
+    }
+
+    /**
+     * Replaces the text field with the label after changing the weight of the edge
+     */
+    private void stopEditing() {
+        this.editing = false;
+        this.group.getChildren().remove(this.textField);
+        this.group.getChildren().add(this.label);
     }
 
     /**
      * Deletes the edge from the map
      */
     public void deselect() {
-        this.line.setStroke(Color.DARKGRAY);
-        this.triangle.setFill(Color.DARKGRAY);
-        this.label.setTextFill(Color.BLACK);
+        setColors(Color.DARKGRAY, Color.BLACK);
         this.selected = false;
         this.controller.selectedEdges.remove(this);
     }
@@ -135,12 +272,13 @@ public class EdgeFD implements IEdge {
         double x2a = this.toPos.getX();
         double y2a = this.toPos.getY();
         this.setWeight(this.controller.distance(x1a, y1a, x2a, y2a));
+        if (this.view == null) return;
         double x1b, y1b, x2b, y2b;
         // this.controller.statusLabel.setText("[DEBUG] Theta (deg): " + this.theta * 180 / Math.PI + " Theta (rad): " + this.theta / Math.PI + " pi");
-        x1b = x1a - 30 * Math.sin(Math.PI + this.theta);
-        y1b = y1a + 30 * Math.cos(Math.PI + this.theta);
-        x2b = x2a - 30 * Math.sin(Math.PI + this.theta);
-        y2b = y2a + 30 * Math.cos(Math.PI + this.theta);
+        x1b = x1a - OFFSET * Math.sin(Math.PI + this.theta);
+        y1b = y1a + OFFSET * Math.cos(Math.PI + this.theta);
+        x2b = x2a - OFFSET * Math.sin(Math.PI + this.theta);
+        y2b = y2a + OFFSET * Math.cos(Math.PI + this.theta);
         this.line.setStartX(x1b);
         this.line.setStartY(y1b);
         this.line.setEndX(x2b);
@@ -166,6 +304,7 @@ public class EdgeFD implements IEdge {
      * Updates the arrow of the edge
      */
     private void updateArrow() {
+        if (this.view == null) return;
         double x1 = this.line.getStartX();
         double y1 = this.line.getStartY();
         double x2 = this.line.getEndX();
@@ -194,7 +333,8 @@ public class EdgeFD implements IEdge {
     @Override
     public void setId(int id) {
         this.id = id;
-        group.setId(Integer.toString(id));
+        if (this.view != null)
+            group.setId(Integer.toString(id));
     }
 
     /**
@@ -215,7 +355,8 @@ public class EdgeFD implements IEdge {
     @Override
     public void setWeight(double weight) {
         this.weight = weight;
-        this.label.setText(String.format("%.2f", weight));
+        if (this.view != null)
+            this.label.setText(String.format("%.2f", weight));
     }
 
     /**
@@ -286,7 +427,7 @@ public class EdgeFD implements IEdge {
      *
      * @param e the mouse click event
      */
-    private void handleGroupMouseClicked(MouseEvent e) {
+    public void handleGroupMouseClicked(MouseEvent e) {
         if (e.getButton() != MouseButton.SECONDARY) this.contextMenu.hide();
         if (e.getButton() == MouseButton.PRIMARY && !dragging)
             this.controller.setSelectedEdge(this);
@@ -307,14 +448,13 @@ public class EdgeFD implements IEdge {
             double dy = this.toPos.getY() - this.fromPos.getY();
             this.toVertex.setX(this.fromVertex.getX() + dx * scale);
             this.toVertex.setY(this.fromVertex.getY() + dy * scale);
-            this.group.getChildren().remove(this.textField);
-            this.group.getChildren().add(this.label);
+            stopEditing();
             for (EdgeFD edge : this.controller.edgesConnectedToVertex.get(this.toVertex))
                 edge.update();
             this.controller.backend.changeVertex(this.toVertex.getId(), this.toVertex.getX(), this.toVertex.getY());
+            this.controller.viewport.requestRefresh(); // the vertex may have moved out of the viewport
         } else if (e.getCode() == KeyCode.ESCAPE) {
-            this.group.getChildren().remove(this.textField);
-            this.group.getChildren().add(this.label);
+            stopEditing();
             update();
         }
         e.consume();
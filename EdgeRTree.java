@@ -0,0 +1,504 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An R-tree over the segments the edges draw between the positions of their vertices,
+ * answering which edges cross a rectangle and which edge is nearest a point while visiting
+ * only the nodes whose bounding boxes are close. A whole map is bulk-loaded with
+ * Sort-Tile-Recursive packing: the segments are sorted into vertical slices by the x of
+ * their centers, each slice is sorted by y and cut into full leaves, and the same is done
+ * level by level up to the root. Edges added later go down the path that least enlarges the
+ * bounding boxes, and full nodes split in halves along their wider axis. Moving a vertex
+ * updates its edges in place while they stay inside their leaf, and reinserts them otherwise.
+ */
+public class EdgeRTree {
+
+    /**
+     * The segment of an edge, from the position of its from vertex to that of its to vertex.
+     */
+    private static final class Segment {
+        final int id;
+        final int from; // id of the from vertex
+        final int to; // id of the to vertex
+        double x1, y1, x2, y2;
+        Node leaf; // the leaf holding the segment
+
+        Segment(int id, int from, int to, double x1, double y1, double x2, double y2) {
+            this.id = id;
+            this.from = from;
+            this.to = to;
+            this.x1 = x1;
+            this.y1 = y1;
+            this.x2 = x2;
+            this.y2 = y2;
+        }
+
+        double centerX() {
+            return (x1 + x2) / 2;
+        }
+
+        double centerY() {
+            return (y1 + y2) / 2;
+        }
+    }
+
+    /**
+     * A node of the tree with the bounding box of everything below it. Leaves hold segments,
+     * inner nodes hold other nodes.
+     */
+    private static final class Node {
+        double minX, minY, maxX, maxY;
+        Node parent;
+        final boolean leaf;
+        final Object[] entries = new Object[MAX_ENTRIES + 1]; // one spare slot before a split
+        int count;
+
+        Node(boolean leaf) {
+            this.leaf = leaf;
+        }
+
+        void add(Object entry) {
+            entries[count++] = entry;
+            if (entry instanceof Node) ((Node) entry).parent = this;
+            else ((Segment) entry).leaf = this;
+        }
+
+        void removeAt(int i) {
+            entries[i] = entries[--count];
+            entries[count] = null;
+        }
+
+        int indexOf(Object entry) {
+            for (int i = 0; i < count; i++)
+                if (entries[i] == entry) return i;
+            return -1;
+        }
+
+        /**
+         * Recompute the bounding box from the entries.
+         */
+        void fit() {
+            minX = minY = Double.POSITIVE_INFINITY;
+            maxX = maxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < count; i++)
+                include(entries[i]);
+        }
+
+        void include(Object entry) {
+            if (entry instanceof Node) {
+                Node node = (Node) entry;
+                minX = Math.min(minX, node.minX);
+                minY = Math.min(minY, node.minY);
+                maxX = Math.max(maxX, node.maxX);
+                maxY = Math.max(maxY, node.maxY);
+            } else {
+                Segment s = (Segment) entry;
+                minX = Math.min(minX, Math.min(s.x1, s.x2));
+                minY = Math.min(minY, Math.min(s.y1, s.y2));
+                maxX = Math.max(maxX, Math.max(s.x1, s.x2));
+                maxY = Math.max(maxY, Math.max(s.y1, s.y2));
+            }
+        }
+
+        boolean contains(Segment s) {
+            return Math.min(s.x1, s.x2) >= minX && Math.max(s.x1, s.x2) <= maxX
+                    && Math.min(s.y1, s.y2) >= minY && Math.max(s.y1, s.y2) <= maxY;
+        }
+
+        /**
+         * Return how much the area of the box grows to take in a segment.
+         */
+        double enlargement(Segment s) {
+            double width = Math.max(maxX, Math.max(s.x1, s.x2)) - Math.min(minX, Math.min(s.x1, s.x2));
+            double height = Math.max(maxY, Math.max(s.y1, s.y2)) - Math.min(minY, Math.min(s.y1, s.y2));
+            return width * height - area();
+        }
+
+        double area() {
+            return (maxX - minX) * (maxY - minY);
+        }
+
+        /**
+         * Return the squared distance from a point to the box, 0 inside it.
+         */
+        double distanceSq(double x, double y) {
+            double dx = Math.max(0, Math.max(minX - x, x - maxX));
+            double dy = Math.max(0, Math.max(minY - y, y - maxY));
+            return dx * dx + dy * dy;
+        }
+    }
+
+    protected static final int MAX_ENTRIES = 16; // entries per node, bulk-loaded nodes are full
+
+    private Node root;
+    private final HashMap<Integer, Segment> segments; // edge id -> segment
+    private final HashMap<Integer, List<Segment>> incident; // vertex id -> segments of its edges
+    private int removedSinceLoad; // removals that left nodes underfull since the last packing
+
+    public EdgeRTree() {
+        segments = new HashMap<>();
+        incident = new HashMap<>();
+        root = new Node(true);
+        root.fit();
+    }
+
+    public int size() {
+        return segments.size();
+    }
+
+    public boolean contains(int id) {
+        return segments.containsKey(id);
+    }
+
+    /**
+     * Replace the content of the tree with the segments of the given edges, packed with
+     * Sort-Tile-Recursive. Edges with a vertex missing from the map are left out.
+     *
+     * @param edges    the edges to index
+     * @param vertices the vertices of the edges by id
+     */
+    public void load(Collection<? extends IEdge> edges, Map<Integer, ? extends IVertex> vertices) {
+        clear();
+        for (IEdge e : edges) {
+            IVertex from = vertices.get(e.getFrom());
+            IVertex to = vertices.get(e.getTo());
+            if (from != null && to != null)
+                track(new Segment(e.getId(), e.getFrom(), e.getTo(), from.getX(), from.getY(), to.getX(), to.getY()));
+        }
+        pack();
+    }
+
+    /**
+     * Insert the segment of an edge, replacing its previous segment if it already has a
+     * different one.
+     *
+     * @param e    the edge
+     * @param from the vertex the edge starts from
+     * @param to   the vertex the edge ends at
+     */
+    public void insert(IEdge e, IVertex from, IVertex to) {
+        Segment old = segments.get(e.getId());
+        if (old != null && old.from == from.getId() && old.to == to.getId() && old.x1 == from.getX()
+                && old.y1 == from.getY() && old.x2 == to.getX() && old.y2 == to.getY())
+            return;
+        remove(e.getId());
+        Segment s = new Segment(e.getId(), from.getId(), to.getId(), from.getX(), from.getY(), to.getX(), to.getY());
+        track(s);
+        insert(s);
+    }
+
+    /**
+     * Remove the segment of an edge.
+     *
+     * @param id the id of the edge
+     * @return true if the edge had a segment in the tree
+     */
+    public boolean remove(int id) {
+        Segment s = segments.remove(id);
+        if (s == null) return false;
+        untrack(s, s.from);
+        if (s.to != s.from) untrack(s, s.to);
+        detach(s);
+        if (++removedSinceLoad > segments.size())
+            pack(); // mostly underfull nodes, repack what is left
+        return true;
+    }
+
+    /**
+     * Remove the segments of all edges of a vertex.
+     */
+    public void removeVertex(int vertexId) {
+        List<Segment> edges = incident.get(vertexId);
+        if (edges == null) return;
+        for (Segment s : edges.toArray(new Segment[0]))
+            remove(s.id);
+    }
+
+    /**
+     * Move an end of every edge of a vertex to its new position.
+     *
+     * @param vertexId the id of the vertex
+     * @param x        the new x coordinate of the vertex
+     * @param y        the new y coordinate of the vertex
+     */
+    public void moveVertex(int vertexId, double x, double y) {
+        List<Segment> edges = incident.get(vertexId);
+        if (edges == null) return;
+        for (Segment s : edges) {
+            if (s.from == vertexId) {
+                s.x1 = x;
+                s.y1 = y;
+            }
+            if (s.to == vertexId) {
+                s.x2 = x;
+                s.y2 = y;
+            }
+            if (!s.leaf.contains(s)) { // outgrew its leaf, the boxes above would no longer cover it
+                detach(s);
+                insert(s);
+            }
+        }
+    }
+
+    public void clear() {
+        segments.clear();
+        incident.clear();
+        root = new Node(true);
+        root.fit();
+        removedSinceLoad = 0;
+    }
+
+    private void track(Segment s) {
+        segments.put(s.id, s);
+        incident.computeIfAbsent(s.from, k -> new ArrayList<>()).add(s);
+        if (s.to != s.from)
+            incident.computeIfAbsent(s.to, k -> new ArrayList<>()).add(s);
+    }
+
+    private void untrack(Segment s, int vertexId) {
+        List<Segment> edges = incident.get(vertexId);
+        edges.remove(s);
+        if (edges.isEmpty()) incident.remove(vertexId);
+    }
+
+    /**
+     * Rebuild the whole tree from the tracked segments with Sort-Tile-Recursive packing.
+     */
+    private void pack() {
+        removedSinceLoad = 0;
+        Object[] level = segments.values().toArray();
+        boolean leaves = true;
+        do {
+            level = packLevel(level, leaves);
+            leaves = false;
+        } while (level.length > 1);
+        root = level.length == 1 ? (Node) level[0] : new Node(true);
+        root.parent = null;
+        root.fit();
+    }
+
+    /**
+     * Pack the entries of one level into full nodes: sort by the x of their centers, cut
+     * into about sqrt(nodes) vertical slices, sort each slice by y and fill the nodes in order.
+     */
+    private static Object[] packLevel(Object[] entries, boolean leaves) {
+        int nodeCount = (entries.length + MAX_ENTRIES - 1) / MAX_ENTRIES;
+        int slices = (int) Math.ceil(Math.sqrt(nodeCount));
+        int sliceSize = slices * MAX_ENTRIES;
+        Arrays.sort(entries, Comparator.comparingDouble(EdgeRTree::centerX));
+        List<Node> nodes = new ArrayList<>(nodeCount);
+        for (int from = 0; from < entries.length; from += sliceSize) {
+            int to = Math.min(from + sliceSize, entries.length);
+            Arrays.sort(entries, from, to, Comparator.comparingDouble(EdgeRTree::centerY));
+            for (int i = from; i < to; i += MAX_ENTRIES) {
+                Node node = new Node(leaves);
+                for (int j = i; j < Math.min(i + MAX_ENTRIES, to); j++)
+                    node.add(entries[j]);
+                node.fit();
+                nodes.add(node);
+            }
+        }
+        return nodes.toArray();
+    }
+
+    private static double centerX(Object entry) {
+        if (entry instanceof Segment) return ((Segment) entry).centerX();
+        Node node = (Node) entry;
+        return (node.minX + node.maxX) / 2;
+    }
+
+    private static double centerY(Object entry) {
+        if (entry instanceof Segment) return ((Segment) entry).centerY();
+        Node node = (Node) entry;
+        return (node.minY + node.maxY) / 2;
+    }
+
+    /**
+     * Insert a tracked segment down the path that least enlarges the boxes, splitting the
+     * nodes that overflow on the way back up.
+     */
+    private void insert(Segment s) {
+        Node node = root;
+        while (!node.leaf) {
+            Node best = null;
+            double bestGrowth = 0, bestArea = 0;
+            for (int i = 0; i < node.count; i++) {
+                Node child = (Node) node.entries[i];
+                double growth = child.enlargement(s), area = child.area();
+                if (best == null || growth < bestGrowth || growth == bestGrowth && area < bestArea) {
+                    best = child;
+                    bestGrowth = growth;
+                    bestArea = area;
+                }
+            }
+            node = best;
+        }
+        node.add(s);
+        for (Node n = node; n != null; n = n.parent)
+            n.include(s);
+        while (node != null && node.count > MAX_ENTRIES) {
+            Node sibling = split(node);
+            Node parent = node.parent;
+            if (parent == null) {
+                parent = new Node(false);
+                parent.add(node);
+                root = parent;
+            }
+            parent.add(sibling);
+            parent.fit();
+            node = parent;
+        }
+    }
+
+    /**
+     * Move the upper half of an overflowing node, by the centers along the axis on which they
+     * spread the widest, into a new sibling.
+     */
+    private static Node split(Node node) {
+        Object[] entries = Arrays.copyOf(node.entries, node.count);
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (Object e : entries) {
+            minX = Math.min(minX, centerX(e));
+            maxX = Math.max(maxX, centerX(e));
+            minY = Math.min(minY, centerY(e));
+            maxY = Math.max(maxY, centerY(e));
+        }
+        if (maxX - minX >= maxY - minY)
+            Arrays.sort(entries, Comparator.comparingDouble(EdgeRTree::centerX));
+        else
+            Arrays.sort(entries, Comparator.comparingDouble(EdgeRTree::centerY));
+        Arrays.fill(node.entries, null);
+        node.count = 0;
+        Node sibling = new Node(node.leaf);
+        int half = entries.length / 2;
+        for (int i = 0; i < entries.length; i++)
+            (i < half ? node : sibling).add(entries[i]);
+        node.fit();
+        sibling.fit();
+        return sibling;
+    }
+
+    /**
+     * Take a segment out of its leaf, dropping the nodes left empty and shrinking the boxes above.
+     */
+    private void detach(Segment s) {
+        Node node = s.leaf;
+        node.removeAt(node.indexOf(s));
+        s.leaf = null;
+        while (node.count == 0 && node.parent != null) {
+            Node parent = node.parent;
+            parent.removeAt(parent.indexOf(node));
+            node = parent;
+        }
+        for (; node != null; node = node.parent)
+            node.fit();
+        while (!root.leaf && root.count == 1) { // a root with a single child only adds a level
+            root = (Node) root.entries[0];
+            root.parent = null;
+        }
+        if (!root.leaf && root.count == 0)
+            root = new Node(true);
+        if (root.count == 0)
+            root.fit();
+    }
+
+    /**
+     * Find the edges whose segments cross a rectangle, borders included.
+     *
+     * @return the ids of the edges, in no particular order
+     */
+    public int[] inRectangle(double minX, double minY, double maxX, double maxY) {
+        int[] hits = new int[16];
+        int size = 0;
+        List<Node> stack = new ArrayList<>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.remove(stack.size() - 1);
+            if (node.minX > maxX || node.maxX < minX || node.minY > maxY || node.maxY < minY)
+                continue;
+            for (int i = 0; i < node.count; i++) {
+                if (!node.leaf) {
+                    stack.add((Node) node.entries[i]);
+                    continue;
+                }
+                Segment s = (Segment) node.entries[i];
+                if (crosses(s, minX, minY, maxX, maxY)) {
+                    if (size == hits.length) hits = Arrays.copyOf(hits, size * 2);
+                    hits[size++] = s.id;
+                }
+            }
+        }
+        return Arrays.copyOf(hits, size);
+    }
+
+    /**
+     * Return whether a segment has a point inside a rectangle, by clipping it to the
+     * rectangle with the Liang-Barsky algorithm.
+     */
+    private static boolean crosses(Segment s, double minX, double minY, double maxX, double maxY) {
+        double dx = s.x2 - s.x1, dy = s.y2 - s.y1;
+        double[] p = {-dx, dx, -dy, dy};
+        double[] q = {s.x1 - minX, maxX - s.x1, s.y1 - minY, maxY - s.y1};
+        double enter = 0, leave = 1;
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0) {
+                if (q[i] < 0) return false; // parallel to this border and outside it
+            } else {
+                double t = q[i] / p[i];
+                if (p[i] < 0) enter = Math.max(enter, t);
+                else leave = Math.min(leave, t);
+                if (enter > leave) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the edge whose segment passes nearest to a point.
+     *
+     * @param x           the x coordinate of the point
+     * @param y           the y coordinate of the point
+     * @param maxDistance the largest distance from the point to consider
+     * @return the id of the nearest edge, -1 if no edge is within maxDistance of the point
+     */
+    public int nearest(double x, double y, double maxDistance) {
+        if (!(maxDistance >= 0)) return -1;
+        double[] best = {maxDistance * maxDistance, -1}; // squared distance and id of the best segment
+        nearest(root, x, y, best);
+        return (int) best[1];
+    }
+
+    private static void nearest(Node node, double x, double y, double[] best) {
+        if (node.distanceSq(x, y) > best[0]) return;
+        for (int i = 0; i < node.count; i++) {
+            if (!node.leaf) {
+                nearest((Node) node.entries[i], x, y, best);
+                continue;
+            }
+            Segment s = (Segment) node.entries[i];
+            double d = distanceSq(s, x, y);
+            if (d < best[0] || d == best[0] && best[1] == -1) {
+                best[0] = d;
+                best[1] = s.id;
+            }
+        }
+    }
+
+    /**
+     * Return the squared distance from a point to the closest point of a segment.
+     */
+    private static double distanceSq(Segment s, double x, double y) {
+        double dx = s.x2 - s.x1, dy = s.y2 - s.y1;
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : ((x - s.x1) * dx + (y - s.y1) * dy) / lengthSq;
+        t = Math.max(0, Math.min(1, t));
+        double px = s.x1 + t * dx - x, py = s.y1 + t * dy - y;
+        return px * px + py * py;
+    }
+}
@@ -0,0 +1,222 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the R-tree over edge segments against linear scans of the edges
+ */
+public class EdgeRTreeTests {
+    private final HashMap<Integer, IVertex> vertices = new HashMap<>();
+    private final HashMap<Integer, IEdge> edges = new HashMap<>();
+
+    /**
+     * Return the squared distance from a point to the closest point of the segment of an edge.
+     */
+    private double distanceSq(IEdge edge, double x, double y) {
+        IVertex from = vertices.get(edge.getFrom());
+        IVertex to = vertices.get(edge.getTo());
+        double dx = to.getX() - from.getX(), dy = to.getY() - from.getY();
+        double best = Double.POSITIVE_INFINITY;
+        for (int step = 0; step <= 1; step++) { // the ends
+            double px = from.getX() + step * dx - x, py = from.getY() + step * dy - y;
+            best = Math.min(best, px * px + py * py);
+        }
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? -1 : ((x - from.getX()) * dx + (y - from.getY()) * dy) / lengthSq;
+        if (t > 0 && t < 1) { // the foot of the perpendicular
+            double px = from.getX() + t * dx - x, py = from.getY() + t * dy - y;
+            best = Math.min(best, px * px + py * py);
+        }
+        return best;
+    }
+
+    /**
+     * Return the sign of the turn from a to b to c.
+     */
+    private static int orientation(double ax, double ay, double bx, double by, double cx, double cy) {
+        return (int) Math.signum((bx - ax) * (cy - ay) - (by - ay) * (cx - ax));
+    }
+
+    private static boolean segmentsIntersect(double[] s, double[] t) {
+        int o1 = orientation(s[0], s[1], s[2], s[3], t[0], t[1]);
+        int o2 = orientation(s[0], s[1], s[2], s[3], t[2], t[3]);
+        int o3 = orientation(t[0], t[1], t[2], t[3], s[0], s[1]);
+        int o4 = orientation(t[0], t[1], t[2], t[3], s[2], s[3]);
+        return o1 != o2 && o3 != o4;
+    }
+
+    /**
+     * Check if the segment of an edge has a point inside a rectangle: an end inside it, or a
+     * crossing with one of its sides.
+     */
+    private boolean crosses(IEdge edge, double minX, double minY, double maxX, double maxY) {
+        IVertex from = vertices.get(edge.getFrom());
+        IVertex to = vertices.get(edge.getTo());
+        for (IVertex end : new IVertex[]{from, to})
+            if (end.getX() >= minX && end.getX() <= maxX && end.getY() >= minY && end.getY() <= maxY)
+                return true;
+        double[] segment = {from.getX(), from.getY(), to.getX(), to.getY()};
+        double[][] sides = {{minX, minY, maxX, minY}, {maxX, minY, maxX, maxY}, {maxX, maxY, minX, maxY},
+                {minX, maxY, minX, minY}};
+        for (double[] side : sides)
+            if (segmentsIntersect(segment, side)) return true;
+        return false;
+    }
+
+    private static int[] sorted(int[] ids) {
+        int[] copy = ids.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    /**
+     * Check rectangle and nearest queries at random places against linear scans of the edges.
+     */
+    private void checkQueries(EdgeRTree tree, Random random) {
+        assertEquals(edges.size(), tree.size());
+        for (int query = 0; query < 5; query++) {
+            double minX = random.nextDouble() * 1000, minY = random.nextDouble() * 1000;
+            double maxX = minX + random.nextDouble() * 200, maxY = minY + random.nextDouble() * 200;
+            List<Integer> expected = new ArrayList<>();
+            for (IEdge edge : edges.values())
+                if (crosses(edge, minX, minY, maxX, maxY))
+                    expected.add(edge.getId());
+            assertArrayEquals(sorted(expected.stream().mapToInt(Integer::intValue).toArray()),
+                    sorted(tree.inRectangle(minX, minY, maxX, maxY)));
+
+            double x = random.nextDouble() * 1000, y = random.nextDouble() * 1000;
+            double maxDistance = random.nextDouble() * 100;
+            double best = Double.POSITIVE_INFINITY;
+            for (IEdge edge : edges.values())
+                best = Math.min(best, distanceSq(edge, x, y));
+            int nearest = tree.nearest(x, y, maxDistance);
+            if (best > maxDistance * maxDistance)
+                assertEquals(-1, nearest);
+            else // ties may be broken either way, the distance may not
+                assertEquals(best, distanceSq(edges.get(nearest), x, y), 1e-9);
+        }
+    }
+
+    private void addVertex(int id, Random random) {
+        vertices.put(id, new VertexGeneral(id, "v" + id, random.nextDouble() * 1000, random.nextDouble() * 1000));
+    }
+
+    /**
+     * Random edge inserts and removals, vertex moves and removals, starting from a bulk-loaded
+     * map, keep the answers of a linear scan
+     */
+    @Test
+    public void testMatchesLinearScan() {
+        for (long seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            vertices.clear();
+            edges.clear();
+            for (int i = 0; i < 100; i++)
+                addVertex(i, random);
+            for (int i = 0; i < 300; i++) {
+                int from = random.nextInt(100);
+                int to = random.nextInt(3) == 0 ? from : random.nextInt(100); // some loops, drawn as points
+                edges.put(i, new EdgeGeneral(i, 1, from, to));
+            }
+            EdgeRTree tree = new EdgeRTree();
+            tree.load(edges.values(), vertices);
+            checkQueries(tree, random);
+            int nextEdge = 300;
+            for (int i = 0; i < 1500; i++) {
+                int op = random.nextInt(4);
+                int vertex = random.nextInt(100);
+                if (op == 0) {
+                    IEdge edge = new EdgeGeneral(nextEdge++, 1, vertex, random.nextInt(100));
+                    edges.put(edge.getId(), edge);
+                    tree.insert(edge, vertices.get(edge.getFrom()), vertices.get(edge.getTo()));
+                } else if (op == 1) {
+                    int id = random.nextInt(nextEdge);
+                    assertEquals(edges.remove(id) != null, tree.remove(id));
+                } else if (op == 2) {
+                    IVertex moved = vertices.get(vertex);
+                    moved.setX(Math.max(0, Math.min(1000, moved.getX() + (random.nextDouble() - 0.5) * 400)));
+                    moved.setY(Math.max(0, Math.min(1000, moved.getY() + (random.nextDouble() - 0.5) * 400)));
+                    tree.moveVertex(vertex, moved.getX(), moved.getY());
+                } else if (random.nextInt(10) == 0) {
+                    edges.values().removeIf(edge -> edge.getFrom() == vertex || edge.getTo() == vertex);
+                    tree.removeVertex(vertex);
+                }
+                if (i % 50 == 0) checkQueries(tree, random);
+            }
+            checkQueries(tree, random);
+        }
+    }
+
+    /**
+     * Edges removed one by one, enough to repack the tree, can be inserted again
+     */
+    @Test
+    public void testRemoveAndReinsert() {
+        Random random = new Random(2);
+        vertices.clear();
+        edges.clear();
+        for (int i = 0; i < 50; i++)
+            addVertex(i, random);
+        EdgeRTree tree = new EdgeRTree();
+        for (int i = 0; i < 400; i++) {
+            IEdge edge = new EdgeGeneral(i, 1, random.nextInt(50), random.nextInt(50));
+            edges.put(i, edge);
+            tree.insert(edge, vertices.get(edge.getFrom()), vertices.get(edge.getTo()));
+        }
+        checkQueries(tree, random);
+        for (int i = 0; i < 400; i += 4) {
+            assertTrue(tree.remove(i));
+            assertFalse(tree.contains(i));
+            edges.remove(i);
+        }
+        for (int i = 1; i < 400; i += 4) {
+            assertTrue(tree.remove(i));
+            edges.remove(i);
+        }
+        assertFalse(tree.remove(0));
+        checkQueries(tree, random);
+        for (int i = 0; i < 400; i += 4) {
+            IEdge edge = new EdgeGeneral(i, 1, random.nextInt(50), random.nextInt(50));
+            edges.put(i, edge);
+            tree.insert(edge, vertices.get(edge.getFrom()), vertices.get(edge.getTo()));
+        }
+        for (int i = 0; i < 20; i++)
+            checkQueries(tree, random);
+    }
+
+    /**
+     * Segments touching the border of a rectangle are inside it, and the nearest edge is only
+     * found within the given distance
+     */
+    @Test
+    public void testBorders() {
+        vertices.clear();
+        edges.clear();
+        vertices.put(0, new VertexGeneral(0, "a", 0, 0));
+        vertices.put(1, new VertexGeneral(1, "b", 10, 0));
+        vertices.put(2, new VertexGeneral(2, "c", 10, 10));
+        edges.put(0, new EdgeGeneral(0, 1, 0, 1));
+        edges.put(1, new EdgeGeneral(1, 1, 1, 2));
+        EdgeRTree tree = new EdgeRTree();
+        tree.load(edges.values(), vertices);
+        assertArrayEquals(new int[]{0}, tree.inRectangle(2, -5, 8, 0)); // touches the bottom edge from above
+        assertArrayEquals(new int[]{0, 1}, sorted(tree.inRectangle(10, -1, 12, 1)));
+        assertEquals(0, tree.inRectangle(-5, 1, 5, 5).length);
+        assertEquals(0, tree.nearest(5, 3, 3));
+        assertEquals(-1, tree.nearest(5, 3, 2.9));
+        tree.moveVertex(2, 10, -10);
+        assertArrayEquals(new int[]{1}, tree.inRectangle(9, -12, 11, -9));
+        tree.removeVertex(1);
+        assertEquals(0, tree.size());
+        assertEquals(-1, tree.nearest(5, 0, 100));
+    }
+}
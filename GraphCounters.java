@@ -0,0 +1,119 @@
+import java.util.Arrays;
+
+/**
+ * Counters a graph engine updates as it changes, from which GraphStats snapshots are taken.
+ * Degrees are tracked in histograms (number of vertices per degree), and since an edge
+ * insertion or removal moves a vertex to an adjacent degree, the smallest and largest
+ * degree are kept up to date in O(1) per change.
+ */
+public class GraphCounters {
+
+    /**
+     * Number of vertices with each degree, with the smallest and largest degree in use.
+     */
+    protected static class DegreeHistogram {
+        protected int[] count = new int[8]; // degree -> number of vertices with that degree
+        protected int vertices;
+        protected int min;
+        protected int max;
+
+        void add(int degree) {
+            if (degree >= count.length)
+                count = Arrays.copyOf(count, Math.max(degree + 1, count.length * 2));
+            count[degree]++;
+            if (vertices++ == 0) {
+                min = degree;
+                max = degree;
+            } else {
+                min = Math.min(min, degree);
+                max = Math.max(max, degree);
+            }
+        }
+
+        void remove(int degree) {
+            count[degree]--;
+            if (--vertices == 0) {
+                min = 0;
+                max = 0;
+                return;
+            }
+            while (count[min] == 0) min++;
+            while (count[max] == 0) max--;
+        }
+
+        /**
+         * Move a vertex from one degree to an adjacent one.
+         */
+        void move(int from, int to) {
+            if (to >= count.length)
+                count = Arrays.copyOf(count, count.length * 2);
+            count[from]--;
+            count[to]++;
+            min = Math.min(min, to);
+            max = Math.max(max, to);
+            if (count[from] == 0) {
+                if (from == min) min = to; // to = from + 1 is in use now
+                if (from == max) max = to; // to = from - 1 is in use now
+            }
+        }
+    }
+
+    protected int vertexCount;
+    protected int edgeCount;
+    protected double totalWeight;
+    protected final DegreeHistogram outDegrees = new DegreeHistogram();
+    protected final DegreeHistogram inDegrees = new DegreeHistogram();
+
+    /**
+     * Count a new vertex without edges.
+     */
+    public void vertexInserted() {
+        vertexCount++;
+        outDegrees.add(0);
+        inDegrees.add(0);
+    }
+
+    /**
+     * Forget a vertex, with the degrees it was counted with.
+     */
+    public void vertexRemoved(int outDegree, int inDegree) {
+        vertexCount--;
+        outDegrees.remove(outDegree);
+        inDegrees.remove(inDegree);
+    }
+
+    /**
+     * Count a new edge. The degrees are those of its end vertices before the insertion.
+     */
+    public void edgeInserted(int sourceOutDegree, int targetInDegree, double weight) {
+        edgeCount++;
+        totalWeight += weight;
+        outDegrees.move(sourceOutDegree, sourceOutDegree + 1);
+        inDegrees.move(targetInDegree, targetInDegree + 1);
+    }
+
+    /**
+     * Forget an edge. The degrees are those of its end vertices before the removal.
+     */
+    public void edgeRemoved(int sourceOutDegree, int targetInDegree, double weight) {
+        edgeCount--;
+        totalWeight -= weight;
+        outDegrees.move(sourceOutDegree, sourceOutDegree - 1);
+        inDegrees.move(targetInDegree, targetInDegree - 1);
+    }
+
+    /**
+     * Account for an edge whose weight changed, e.g. because an end vertex moved.
+     */
+    public void weightChanged(double oldWeight, double newWeight) {
+        totalWeight += newWeight - oldWeight;
+    }
+
+    /**
+     * Take a snapshot of the current counters.
+     */
+    public GraphStats snapshot() {
+        return new GraphStats(vertexCount, edgeCount, totalWeight, outDegrees.min, outDegrees.max,
+                inDegrees.min, inDegrees.max);
+    }
+}
@@ -0,0 +1,429 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An immutable version of a graph for readers that must see a consistent graph while it
+ * keeps being edited, e.g. batch jobs over many vertex pairs. A snapshot holds the compiled
+ * CSR arrays and search preprocessing of one version of the graph and never changes, so any
+ * number of threads can query it without locks. Vertex coordinates and edge weights are
+ * frozen in the snapshot; the data items themselves are shared with the live graph.
+ */
+public class GraphSnapshot {
+    public final CSRGraph.Prepared prepared;
+    protected final LongIntMap indexOfId; // vertex id -> index in the compiled arrays
+    // forward and backward search state of each thread, shared by all snapshots so that a
+    // pool thread keeps two states however many versions of the graph it has searched
+    private static final ThreadLocal<SearchState[]> SEARCH_STATES = ThreadLocal.withInitial(() -> new SearchState[2]);
+
+    /**
+     * Constructor
+     *
+     * @param prepared the query context of the version of the graph to pin
+     */
+    public GraphSnapshot(CSRGraph.Prepared prepared) {
+        this.prepared = prepared;
+        IVertex[] data = prepared.graph.data;
+        this.indexOfId = new LongIntMap(data.length, -1);
+        for (int i = 0; i < data.length; i++)
+            indexOfId.put(data[i].getId(), i);
+    }
+
+    public int getVertexCount() {
+        return prepared.graph.vertexCount;
+    }
+
+    public int getEdgeCount() {
+        return prepared.graph.offsets[prepared.graph.vertexCount];
+    }
+
+    /**
+     * Return the data items of all vertices, in the order of their indices.
+     */
+    public List<IVertex> getVertices() {
+        return Collections.unmodifiableList(Arrays.asList(prepared.graph.data));
+    }
+
+    public boolean containsVertex(int id) {
+        return indexOfId.containsKey(id);
+    }
+
+    /**
+     * Return the index of a vertex in the compiled arrays of the snapshot.
+     *
+     * @param id the id of the vertex
+     * @return the index of the vertex, or -1 if the snapshot has no vertex with that id
+     */
+    public int indexOf(int id) {
+        return indexOfId.get(id);
+    }
+
+    /**
+     * Look up the index of the vertex with the given id.
+     *
+     * @throws NoSuchElementException when the snapshot has no vertex with that id
+     */
+    protected int indexOfExisting(int id) {
+        int index = indexOfId.get(id);
+        if (index == -1) throw new NoSuchElementException("No vertex found with id " + id);
+        return index;
+    }
+
+    /**
+     * Return the search state of the calling thread, forward (0) or backward (1). The state
+     * grows to the largest graph the thread has searched and is reset by every search.
+     */
+    protected SearchState searchState(int direction) {
+        SearchState[] states = SEARCH_STATES.get();
+        if (states[direction] == null)
+            states[direction] = new SearchState(prepared.graph.vertexCount, 4);
+        return states[direction];
+    }
+
+    /**
+     * Returns the shortest path between two vertices of this version of the graph.
+     *
+     * @param from the id of the starting vertex
+     * @param to   the id of the destination vertex
+     * @return the data items of the vertices on the path, including both ends
+     * @throws NoSuchElementException when no path can be found, including when the
+     *     snapshot has no vertex with id from or to
+     */
+    public List<IVertex> shortestPath(int from, int to) {
+        int start = indexOfExisting(from);
+        int end = indexOfExisting(to);
+        return prepared.shortestPath(start, end, searchState(0), prepared.usesBackwardState() ? searchState(1) : null);
+    }
+
+    /**
+     * Returns the shortest paths from one vertex to every vertex it reaches in this version
+     * of the graph.
+     *
+     * @param from the id of the source vertex
+     * @return the shortest path tree rooted at the source
+     * @throws NoSuchElementException when the snapshot has no vertex with id from
+     */
+    public ShortestPathTree shortestPathTree(int from) {
+        return prepared.shortestPathTree(indexOfExisting(from), searchState(0));
+    }
+
+    /**
+     * Returns the vertices within a distance of a vertex of this version of the graph.
+     *
+     * @param from    the id of the source vertex
+     * @param maxCost the largest distance from the source to include
+     * @return the ids and distances of the vertices within maxCost of the source, nearest first
+     * @throws NoSuchElementException when the snapshot has no vertex with id from
+     */
+    public ReachableSet verticesWithin(int from, double maxCost) {
+        return prepared.verticesWithin(indexOfExisting(from), maxCost, searchState(0));
+    }
+
+    /**
+     * Compute the shortest distances from every source to every target on the common
+     * ForkJoinPool, see distanceMatrix(int[], int[], ForkJoinPool).
+     */
+    public double[][] distanceMatrix(int[] sources, int[] targets) {
+        return distanceMatrix(sources, targets, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Compute the shortest distances from every source to every target. Each source is a
+     * one-to-many search that stops once all targets are settled, and the searches of
+     * different sources run in parallel on the pool, every worker thread reusing its own
+     * search state.
+     *
+     * @param sources the ids of the source vertices, one row each
+     * @param targets the ids of the target vertices, one column each
+     * @param pool    the pool to run the searches on
+     * @return entry [i][j] is the distance from sources[i] to targets[j], infinity if there is
+     *     no path or either vertex is not in the snapshot
+     */
+    public double[][] distanceMatrix(int[] sources, int[] targets, ForkJoinPool pool) {
+        double[][] matrix = new double[sources.length][targets.length];
+        int[] targetIndex = new int[targets.length];
+        boolean[] isTarget = new boolean[getVertexCount()];
+        int targetCount = 0;
+        for (int j = 0; j < targets.length; j++) {
+            targetIndex[j] = indexOf(targets[j]);
+            if (targetIndex[j] != -1 && !isTarget[targetIndex[j]]) {
+                isTarget[targetIndex[j]] = true;
+                targetCount++;
+            }
+        }
+        pool.invoke(new MatrixRows(matrix, sources, targetIndex, isTarget, targetCount, 0, sources.length));
+        return matrix;
+    }
+
+    /**
+     * Fills a range of rows of a distance matrix, splitting it in halves down to single rows
+     * so that idle workers can steal the searches of busy ones.
+     */
+    private final class MatrixRows extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final double[][] matrix;
+        private final int[] sources; // vertex ids, one per row
+        private final int[] targetIndex; // vertex index of each column, -1 if not in the snapshot
+        private final boolean[] isTarget;
+        private final int targetCount;
+        private final int from; // first row
+        private final int to; // last row + 1
+
+        MatrixRows(double[][] matrix, int[] sources, int[] targetIndex, boolean[] isTarget, int targetCount,
+                   int from, int to) {
+            this.matrix = matrix;
+            this.sources = sources;
+            this.targetIndex = targetIndex;
+            this.isTarget = isTarget;
+            this.targetCount = targetCount;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new MatrixRows(matrix, sources, targetIndex, isTarget, targetCount, from, middle),
+                        new MatrixRows(matrix, sources, targetIndex, isTarget, targetCount, middle, to));
+            } else if (from < to)
+                fillRow(from);
+        }
+
+        private void fillRow(int i) {
+            double[] row = matrix[i];
+            int source = indexOf(sources[i]);
+            if (source == -1 || targetCount == 0) {
+                Arrays.fill(row, Double.POSITIVE_INFINITY);
+                return;
+            }
+            SearchState state = searchState(0); // owned by the worker thread running this row
+            prepared.distancesFrom(source, isTarget, targetCount, state);
+            for (int j = 0; j < row.length; j++)
+                row[j] = targetIndex[j] == -1 ? Double.POSITIVE_INFINITY : state.dist(targetIndex[j]);
+        }
+    }
+
+    /**
+     * Find up to k shortest loopless paths between two vertices on the common ForkJoinPool,
+     * see kShortestPaths(int, int, int, ForkJoinPool).
+     */
+    public List<List<IVertex>> kShortestPaths(int from, int to, int k) {
+        return kShortestPaths(from, to, k, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Find up to k shortest loopless paths between two vertices with Yen's algorithm. Each
+     * round deviates from the path found last at every vertex from where it left its
+     * parent path on (Lawler's refinement): the spur search from such a vertex avoids the
+     * vertices before it and the next hops of all paths found so far that share the same
+     * beginning. One backward search first finds the distance from every vertex to the
+     * destination, which guides all spur searches as an A* heuristic, so each of them only
+     * explores around its detour. The spur searches of a round are independent and run in
+     * parallel on the pool, every worker thread reusing its own search state.
+     *
+     * @param from the id of the starting vertex
+     * @param to   the id of the destination vertex
+     * @param k    the number of paths to find
+     * @param pool the pool to run the spur searches on
+     * @return the data items of the vertices on each path, including both ends, shortest
+     *     first; fewer than k if there are no more loopless paths
+     * @throws NoSuchElementException when no path can be found, including when the
+     *     snapshot has no vertex with id from or to
+     */
+    public List<List<IVertex>> kShortestPaths(int from, int to, int k, ForkJoinPool pool) {
+        int start = indexOfExisting(from);
+        int end = indexOfExisting(to);
+        List<List<IVertex>> paths = new ArrayList<>();
+        if (k < 1) return paths;
+        SearchState state = searchState(0);
+        prepared.distancesTo(end, state);
+        ReverseTree tree = new ReverseTree(getVertexCount(), state);
+        int join = prepared.restrictedPath(start, end, tree.toEnd, tree.towardsEnd, new boolean[getVertexCount()],
+                new int[0], state);
+        List<Path> accepted = new ArrayList<>();
+        accepted.add(Path.fromSearch(null, 0, join, tree, state));
+        HashSet<Path> seen = new HashSet<>(accepted);
+        PriorityQueue<Path> candidates = new PriorityQueue<>(Comparator.comparingDouble(Path::cost));
+        while (accepted.size() < k) {
+            Path last = accepted.get(accepted.size() - 1);
+            Path[] spurs = new Path[last.vertices.length - 1];
+            pool.invoke(new SpurSearches(accepted, last, end, tree, spurs, last.deviation, spurs.length));
+            for (Path spur : spurs)
+                if (spur != null && seen.add(spur))
+                    candidates.add(spur);
+            Path next = candidates.poll();
+            if (next == null) break;
+            accepted.add(next);
+        }
+        for (Path path : accepted) {
+            List<IVertex> vertices = new ArrayList<>(path.vertices.length);
+            for (int v : path.vertices)
+                vertices.add(prepared.graph.data[v]);
+            paths.add(vertices);
+        }
+        return paths;
+    }
+
+    /**
+     * The shortest paths from every vertex to the destination of a k-shortest paths query.
+     */
+    private static final class ReverseTree {
+        final double[] toEnd; // distance from each vertex to the destination, infinity if it does not reach it
+        final int[] towardsEnd; // next vertex on the way to the destination, -1 for the destination itself
+
+        /**
+         * Copy the distances and predecessors of a finished backward search from the destination.
+         */
+        ReverseTree(int vertexCount, SearchState state) {
+            toEnd = new double[vertexCount];
+            towardsEnd = new int[vertexCount];
+            for (int v = 0; v < vertexCount; v++) {
+                toEnd[v] = state.dist(v);
+                towardsEnd[v] = state.pred(v);
+            }
+        }
+    }
+
+    /**
+     * A path of Yen's algorithm: its vertex indices, the distance from the start to each of
+     * them, and the position where it deviates from the path it was derived from.
+     */
+    private static final class Path {
+        final int[] vertices;
+        final double[] prefix; // distance from the start to each vertex of the path
+        final int deviation; // position of the spur vertex, 0 for the first path
+
+        Path(int[] vertices, double[] prefix, int deviation) {
+            this.vertices = vertices;
+            this.prefix = prefix;
+            this.deviation = deviation;
+        }
+
+        /**
+         * Join the first spur vertices of root, the path a finished restricted search found
+         * from the spur vertex to join, and the shortest path from join to the destination.
+         *
+         * @param root the path to deviate from, null if the search started at the start
+         */
+        static Path fromSearch(Path root, int spur, int join, ReverseTree tree, SearchState state) {
+            int searched = 0; // vertices from the spur vertex to join
+            for (int v = join; v != -1; v = state.pred(v))
+                searched++;
+            int length = spur + searched;
+            for (int v = tree.towardsEnd[join]; v != -1; v = tree.towardsEnd[v])
+                length++;
+            int[] vertices = new int[length];
+            double[] prefix = new double[length];
+            double rootCost = root == null ? 0 : root.prefix[spur];
+            int i = spur + searched - 1;
+            for (int v = join; v != -1; v = state.pred(v), i--) {
+                vertices[i] = v;
+                prefix[i] = rootCost + state.dist(v);
+            }
+            double total = rootCost + state.dist(join) + tree.toEnd[join];
+            i = spur + searched;
+            for (int v = tree.towardsEnd[join]; v != -1; v = tree.towardsEnd[v], i++) {
+                vertices[i] = v;
+                prefix[i] = total - tree.toEnd[v];
+            }
+            if (root != null) {
+                System.arraycopy(root.vertices, 0, vertices, 0, spur);
+                System.arraycopy(root.prefix, 0, prefix, 0, spur);
+            }
+            return new Path(vertices, prefix, spur);
+        }
+
+        double cost() {
+            return prefix[prefix.length - 1];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Path && Arrays.equals(vertices, ((Path) o).vertices);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(vertices);
+        }
+    }
+
+    /**
+     * Runs the spur searches of a range of positions of a path, splitting it in halves down
+     * to single searches so that idle workers can steal the searches of busy ones.
+     */
+    private final class SpurSearches extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<Path> accepted; // the paths found so far, only read
+        private final Path last; // the path to deviate from
+        private final int end;
+        private final ReverseTree tree; // shortest paths to end, guiding and completing the searches
+        private final Path[] spurs; // spur position -> candidate, null if there is none
+        private final int from; // first spur position
+        private final int to; // last spur position + 1
+
+        SpurSearches(List<Path> accepted, Path last, int end, ReverseTree tree, Path[] spurs, int from, int to) {
+            this.accepted = accepted;
+            this.last = last;
+            this.end = end;
+            this.tree = tree;
+            this.spurs = spurs;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SpurSearches(accepted, last, end, tree, spurs, from, middle),
+                        new SpurSearches(accepted, last, end, tree, spurs, middle, to));
+            } else if (from < to)
+                spurs[from] = search(from);
+        }
+
+        private Path search(int spur) {
+            boolean[] removed = new boolean[getVertexCount()];
+            for (int i = 0; i < spur; i++)
+                removed[last.vertices[i]] = true;
+            int[] bannedNext = new int[accepted.size()];
+            int banned = 0;
+            for (Path path : accepted)
+                if (path.vertices.length > spur + 1
+                        && Arrays.equals(path.vertices, 0, spur + 1, last.vertices, 0, spur + 1))
+                    bannedNext[banned++] = path.vertices[spur + 1];
+            SearchState state = searchState(0); // owned by the worker thread running this search
+            int join;
+            try {
+                join = prepared.restrictedPath(last.vertices[spur], end, tree.toEnd, tree.towardsEnd, removed,
+                        Arrays.copyOf(bannedNext, banned), state);
+            } catch (NoSuchElementException e) {
+                return null;
+            }
+            return Path.fromSearch(last, spur, join, tree, state);
+        }
+    }
+
+    /**
+     * Returns the cost of the shortest path between two vertices of this version of the graph.
+     *
+     * @param from the id of the starting vertex
+     * @param to   the id of the destination vertex
+     * @return the summed weight of the edges on the shortest path
+     * @throws NoSuchElementException when no path can be found, including when the
+     *     snapshot has no vertex with id from or to
+     */
+    public double getPathCost(int from, int to) {
+        int start = indexOfExisting(from);
+        int end = indexOfExisting(to);
+        return prepared.pathCost(start, end, searchState(0), prepared.usesBackwardState() ? searchState(1) : null);
+    }
+}
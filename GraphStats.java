@@ -0,0 +1,77 @@
+/**
+ * An immutable snapshot of the size and degree statistics of a graph. The graph engines
+ * maintain the underlying counters as vertices and edges are inserted and removed, so
+ * taking a snapshot is O(1) however large the graph is.
+ */
+public class GraphStats {
+    protected final int vertexCount;
+    protected final int edgeCount;
+    protected final double totalWeight;
+    protected final int minOutDegree;
+    protected final int maxOutDegree;
+    protected final int minInDegree;
+    protected final int maxInDegree;
+
+    /**
+     * Constructor
+     *
+     * @param vertexCount  the number of vertices
+     * @param edgeCount    the number of edges
+     * @param totalWeight  the summed weight of all edges
+     * @param minOutDegree the smallest number of edges leaving a vertex, 0 for an empty graph
+     * @param maxOutDegree the largest number of edges leaving a vertex, 0 for an empty graph
+     * @param minInDegree  the smallest number of edges entering a vertex, 0 for an empty graph
+     * @param maxInDegree  the largest number of edges entering a vertex, 0 for an empty graph
+     */
+    public GraphStats(int vertexCount, int edgeCount, double totalWeight, int minOutDegree, int maxOutDegree,
+                      int minInDegree, int maxInDegree) {
+        this.vertexCount = vertexCount;
+        this.edgeCount = edgeCount;
+        this.totalWeight = totalWeight;
+        this.minOutDegree = minOutDegree;
+        this.maxOutDegree = maxOutDegree;
+        this.minInDegree = minInDegree;
+        this.maxInDegree = maxInDegree;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public double getTotalWeight() {
+        return totalWeight;
+    }
+
+    public int getMinOutDegree() {
+        return minOutDegree;
+    }
+
+    public int getMaxOutDegree() {
+        return maxOutDegree;
+    }
+
+    public int getMinInDegree() {
+        return minInDegree;
+    }
+
+    public int getMaxInDegree() {
+        return maxInDegree;
+    }
+
+    /**
+     * Average number of edges leaving (and entering) a vertex, 0 for an empty graph.
+     */
+    public double getAverageDegree() {
+        return vertexCount == 0 ? 0 : (double) edgeCount / vertexCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GraphStats{vertices=%d, edges=%d, totalWeight=%.2f, outDegree=%d..%d, inDegree=%d..%d, averageDegree=%.2f}",
+                vertexCount, edgeCount, totalWeight, minOutDegree, maxOutDegree, minInDegree, maxInDegree, getAverageDegree());
+    }
+}
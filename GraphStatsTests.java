@@ -0,0 +1,183 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * This class tests the incrementally kept size and degree statistics of the graph engines
+ * against statistics recounted from the vertices and edges
+ */
+public class GraphStatsTests {
+    private final List<IVertex> vertices = new ArrayList<>();
+    private final HashMap<List<IVertex>, Double> edges = new HashMap<>(); // (source, target) -> weight, NaN for the distance
+
+    private static double weight(List<IVertex> edge, double weight) {
+        return Double.isNaN(weight) ? ReferenceGraph.euclidean(edge.get(0), edge.get(1)) : weight;
+    }
+
+    /**
+     * Recount the histograms of the degrees, as the engines keep them, from the edges.
+     *
+     * @return the number of vertices with each out-degree and with each in-degree
+     */
+    private List<HashMap<Integer, Integer>> histograms() {
+        HashMap<IVertex, Integer> out = new HashMap<>();
+        HashMap<IVertex, Integer> in = new HashMap<>();
+        for (List<IVertex> edge : edges.keySet()) {
+            out.merge(edge.get(0), 1, Integer::sum);
+            in.merge(edge.get(1), 1, Integer::sum);
+        }
+        HashMap<Integer, Integer> outHistogram = new HashMap<>();
+        HashMap<Integer, Integer> inHistogram = new HashMap<>();
+        for (IVertex vertex : vertices) {
+            outHistogram.merge(out.getOrDefault(vertex, 0), 1, Integer::sum);
+            inHistogram.merge(in.getOrDefault(vertex, 0), 1, Integer::sum);
+        }
+        return List.of(outHistogram, inHistogram);
+    }
+
+    private static int minDegree(HashMap<Integer, Integer> histogram) {
+        return histogram.isEmpty() ? 0 : Collections.min(histogram.keySet());
+    }
+
+    private static int maxDegree(HashMap<Integer, Integer> histogram) {
+        return histogram.isEmpty() ? 0 : Collections.max(histogram.keySet());
+    }
+
+    private static void checkHistogram(HashMap<Integer, Integer> expected, GraphCounters.DegreeHistogram histogram) {
+        assertEquals(expected.values().stream().mapToInt(Integer::intValue).sum(), histogram.vertices);
+        for (int degree = 0; degree < histogram.count.length; degree++)
+            assertEquals((int) expected.getOrDefault(degree, 0), histogram.count[degree]);
+        assertEquals(minDegree(expected), histogram.min);
+        assertEquals(maxDegree(expected), histogram.max);
+    }
+
+    /**
+     * Check the statistics of a graph, and the histograms behind them, against a recount.
+     */
+    private void checkStats(IGraph graph, GraphCounters counters) {
+        List<HashMap<Integer, Integer>> histograms = histograms();
+        GraphStats stats = graph.getStats();
+        assertEquals(vertices.size(), stats.getVertexCount());
+        assertEquals(edges.size(), stats.getEdgeCount());
+        double totalWeight = 0;
+        for (Map.Entry<List<IVertex>, Double> edge : edges.entrySet())
+            totalWeight += weight(edge.getKey(), edge.getValue());
+        assertEquals(totalWeight, stats.getTotalWeight(), 1e-6 * Math.max(1, totalWeight));
+        assertEquals(vertices.isEmpty() ? 0 : (double) edges.size() / vertices.size(), stats.getAverageDegree(), 1e-12);
+        HashMap<Integer, Integer> out = histograms.get(0);
+        HashMap<Integer, Integer> in = histograms.get(1);
+        assertEquals(minDegree(out), stats.getMinOutDegree());
+        assertEquals(maxDegree(out), stats.getMaxOutDegree());
+        assertEquals(minDegree(in), stats.getMinInDegree());
+        assertEquals(maxDegree(in), stats.getMaxInDegree());
+        checkHistogram(out, counters.outDegrees);
+        checkHistogram(in, counters.inDegrees);
+    }
+
+    /**
+     * Run random vertex and edge inserts, removals and moves on a graph, checking its
+     * statistics along the way, and finally remove everything again.
+     */
+    private void checkMutations(Supplier<IGraph> factory, long seed) {
+        Random random = new Random(seed);
+        vertices.clear();
+        edges.clear();
+        IGraph graph = factory.get();
+        GraphCounters counters = graph instanceof AEPlaceholder ? ((AEPlaceholder) graph).counters
+                : graph instanceof CSRGraph ? ((CSRGraph) graph).counters : ((ConcurrentGraph) graph).graph.counters;
+        checkStats(graph, counters);
+        List<IVertex> all = new ArrayList<>();
+        for (int i = 0; i < 25; i++)
+            all.add(new VertexGeneral(i, "v" + i, random.nextDouble() * 1000, random.nextDouble() * 1000));
+        for (int step = 0; step < 3000; step++) {
+            IVertex vertex = all.get(random.nextInt(all.size()));
+            int op = random.nextInt(20);
+            if (op < 3) {
+                if (graph.insertVertex(vertex)) vertices.add(vertex);
+            } else if (op < 5) {
+                if (graph.removeVertex(vertex)) {
+                    vertices.remove(vertex);
+                    edges.keySet().removeIf(edge -> edge.contains(vertex));
+                }
+            } else if (op < 7) {
+                vertex.setX(random.nextDouble() * 1000);
+                vertex.setY(random.nextDouble() * 1000);
+                graph.updateVertex(vertex);
+            } else if (!vertices.isEmpty()) {
+                IVertex source = vertices.get(random.nextInt(vertices.size()));
+                IVertex target = random.nextInt(10) == 0 ? source : vertices.get(random.nextInt(vertices.size()));
+                List<IVertex> edge = List.of(source, target);
+                if (op < 15) {
+                    double weight = random.nextBoolean() ? Double.NaN : random.nextInt(100);
+                    boolean inserted = Double.isNaN(weight) ? graph.insertEdge(source, target)
+                            : graph.insertEdge(source, target, weight);
+                    assertEquals(!edges.containsKey(edge), inserted);
+                    if (inserted) edges.put(edge, weight);
+                } else
+                    assertEquals(edges.remove(edge) != null, graph.removeEdge(source, target));
+            }
+            if (step % 50 == 0) checkStats(graph, counters);
+        }
+        checkStats(graph, counters);
+        while (!vertices.isEmpty()) { // down to the empty graph, which reports 0 everywhere
+            IVertex vertex = vertices.remove(random.nextInt(vertices.size()));
+            graph.removeVertex(vertex);
+            edges.keySet().removeIf(edge -> edge.contains(vertex));
+            checkStats(graph, counters);
+        }
+    }
+
+    /**
+     * The statistics of every graph engine follow random changes, including the minimum and
+     * maximum degree after the only vertex of that degree lost its edges or was removed
+     */
+    @Test
+    public void testMatchesRecount() {
+        for (long seed = 0; seed < 5; seed++) {
+            checkMutations(AEPlaceholder::new, seed);
+            checkMutations(CSRGraph::new, seed);
+            checkMutations(ConcurrentGraph::new, seed);
+        }
+    }
+
+    /**
+     * A star whose center is removed drops the maximum degrees back to those of the leaves
+     */
+    @Test
+    public void testStar() {
+        for (IGraph graph : new IGraph[]{new AEPlaceholder(), new CSRGraph()}) {
+            IVertex center = new VertexGeneral(0, "center", 0, 0);
+            graph.insertVertex(center);
+            List<IVertex> leaves = new ArrayList<>();
+            for (int i = 1; i <= 10; i++) {
+                IVertex leaf = new VertexGeneral(i, "leaf" + i, i, 0);
+                leaves.add(leaf);
+                graph.insertVertex(leaf);
+                graph.insertEdge(center, leaf, 1);
+            }
+            graph.insertEdge(leaves.get(0), leaves.get(1), 1);
+            GraphStats stats = graph.getStats();
+            assertEquals(10, stats.getMaxOutDegree());
+            assertEquals(0, stats.getMinOutDegree());
+            assertEquals(2, stats.getMaxInDegree());
+            assertEquals(0, stats.getMinInDegree());
+            assertEquals(11, stats.getTotalWeight());
+            graph.removeVertex(center);
+            stats = graph.getStats();
+            assertEquals(1, stats.getMaxOutDegree());
+            assertEquals(0, stats.getMinOutDegree());
+            assertEquals(1, stats.getMaxInDegree());
+            assertEquals(0, stats.getMinInDegree());
+            assertEquals(1, stats.getTotalWeight());
+            assertEquals(1.0 / 10, stats.getAverageDegree());
+        }
+    }
+}
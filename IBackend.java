@@ -7,6 +7,13 @@ import java.util.List;
  * After the user performs an operation in the front-end,
  * the command is transmitted to the back-end,
  * which then calls the appropriate method to solve the problem and returns the data to the front-end.
+ *
+ * A backend is confined to one thread: its maps, spatial indexes and path cache are not locked.
+ * MapLoader fills a fresh backend on its own thread and then hands it to the MapController, after
+ * which every call comes from the JavaFX application thread. Work meant for other threads runs on
+ * a snapshot(), which is immutable. With a ConcurrentGraph engine, as MapController.createBackend
+ * uses, snapshot() itself may also be called from other threads while the JavaFX application
+ * thread keeps editing.
  */
 
 public interface IBackend {
@@ -15,6 +22,12 @@ public interface IBackend {
 
     void openFile(File file) throws IOException;                   // Open file with json files
 
+    List<IVertex> readVertices(File file) throws IOException;      // Parse the vertices of a folder, leaving the database as it is
+
+    List<IEdge> readEdges(File file) throws IOException;           // Parse the edges of a folder, leaving the database as it is
+
+    void load(List<? extends IVertex> vertices, List<? extends IEdge> edges); // Replace the database with vertices and edges, indexed in bulk
+
     void addVertex(IVertex v) throws IOException;                  // Adding vertices to the database
 
     void addEdge(IEdge e) throws IOException;                      // Adding edge to the database
@@ -31,12 +44,34 @@ public interface IBackend {
 
     List<Integer> searchByEdge(double weight);                     // Search by edge in the database
 
+    int[] nearestVertices(double x, double y, int k);              // Ids of the k vertices nearest to a point, nearest first
+
+    int[] verticesInRadius(double x, double y, double radius);     // Ids of the vertices within a distance of a point
+
+    int[] verticesInRectangle(double minX, double minY, double maxX, double maxY); // Ids of the vertices in a rectangle
+
+    int nearestEdge(double x, double y, double maxDistance);       // Id of the edge passing nearest to a point, -1 if none is close enough
+
+    int[] edgesInRectangle(double minX, double minY, double maxX, double maxY); // Ids of the edges crossing a rectangle
+
+    VertexClusters getClusters();                                  // Vertex counts and edge bundles of grid cells, per zoom level
+
     double getShortestByDistance(int from, int to);                // Search shortest by edge in the database
 
     List<Integer> getShortestByEdge(int from, int to);             // Search shortest by edge in the database
 
     List<Integer> getShortestByVertex(int from, int to);           // Search shortest by vertex in the database
 
+    List<PathCache.Route> getKShortest(int from, int to, int k);   // Up to k shortest loopless routes, shortest first
+
+    ShortestPathTree getShortestPathTree(int from);                // Shortest paths from one vertex to all others
+
+    ReachableSet verticesWithin(int id, double maxCost);           // Vertices within a distance of a vertex, nearest first
+
+    double[][] distanceMatrix(int[] sources, int[] targets);       // Shortest distances from every source to every target
+
+    AllPairsShortestPaths allPairsShortestPaths(File file) throws IOException; // Distances between all vertices, kept next to the map in file and reused while it is current
+
     List<IEdge> getEdges();                                        // Get edges in the database
 
     List<IVertex> getVertices();                                   // Get vertices in the database
@@ -47,4 +82,8 @@ public interface IBackend {
 
     void clear();                                                  // Clear the database
 
+    GraphSnapshot snapshot();                                      // Pin a consistent read-only version of the graph
+
+    PathCache getPathCache();                                      // Shortest path cache and its hit/miss counters
+
 }
@@ -3,16 +3,25 @@ import java.util.List;
 public interface IGraph extends GraphADT<IVertex> {
     boolean insertVertex(IVertex data);
     boolean removeVertex(IVertex data);
+    boolean updateVertex(IVertex data);
     boolean insertEdge(IVertex source, IVertex target, double weight);
     boolean insertEdge(IVertex source, IVertex target);
     boolean removeEdge(IVertex source, IVertex target);
     boolean containsVertex(IVertex data);
     boolean containsEdge(IVertex source, IVertex target);
     int getWeight(IVertex source, IVertex target);
+    double getWeightD(IVertex source, IVertex target);
     int getEdgeCount();
     int getVertexCount();
+    int getOutDegree(IVertex data);
+    int getInDegree(IVertex data);
+    GraphStats getStats();
+    GraphSnapshot snapshot();
     boolean isEmpty();
     List<IVertex> shortestPath(IVertex start, IVertex end);
+    ShortestPathTree shortestPathTree(IVertex source);
+    List<List<IVertex>> kShortestPaths(IVertex start, IVertex end, int k);
+    ReachableSet verticesWithin(IVertex source, double maxCost);
     int getPathCost(IVertex start, IVertex end);
     double getPathCostD(IVertex start, IVertex end);
 }
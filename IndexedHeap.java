@@ -0,0 +1,208 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A d-ary min heap over int items (vertex indices) keyed by double priorities that supports
+ * decrease-key, so a shortest path search keeps at most one entry per vertex instead of
+ * queueing a new boxed entry for every relaxation. Items with equal keys are ordered by
+ * item index.
+ */
+public class IndexedHeap {
+    protected final int arity;
+    protected int[] heap; // heap position -> item
+    protected int[] position; // item -> heap position, -1 when the item is not in the heap
+    protected double[] keys; // item -> key, only meaningful while the item is in the heap
+    protected int size;
+
+    /**
+     * Constructor of a 4-ary heap
+     *
+     * @param capacity the number of items (0 .. capacity - 1) the heap can hold
+     */
+    public IndexedHeap(int capacity) {
+        this(capacity, 4);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity the number of items (0 .. capacity - 1) the heap can hold
+     * @param arity    the number of children of each heap node, e.g. 2, 4 or 8
+     * @throws IllegalArgumentException if arity is less than 2
+     */
+    public IndexedHeap(int capacity, int arity) {
+        if (arity < 2) throw new IllegalArgumentException("Heap arity must be at least 2");
+        this.arity = arity;
+        this.heap = new int[Math.max(capacity, 1)];
+        this.position = new int[Math.max(capacity, 1)];
+        this.keys = new double[Math.max(capacity, 1)];
+        Arrays.fill(position, -1);
+        this.size = 0;
+    }
+
+    /**
+     * Grow the heap so it can hold items 0 .. capacity - 1, keeping its contents.
+     *
+     * @param capacity the number of items the heap must be able to hold
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= position.length) return;
+        int newCapacity = Math.max(capacity, position.length * 2);
+        int oldCapacity = position.length;
+        heap = Arrays.copyOf(heap, newCapacity);
+        position = Arrays.copyOf(position, newCapacity);
+        keys = Arrays.copyOf(keys, newCapacity);
+        Arrays.fill(position, oldCapacity, newCapacity, -1);
+    }
+
+    public int getArity() {
+        return arity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int item) {
+        return position[item] >= 0;
+    }
+
+    /**
+     * Return the key of an item in the heap.
+     *
+     * @throws NoSuchElementException if the item is not in the heap
+     */
+    public double getKey(int item) {
+        if (position[item] < 0) throw new NoSuchElementException("Item " + item + " is not in the heap");
+        return keys[item];
+    }
+
+    /**
+     * Insert an item, or lower its key if it is already in the heap with a larger key.
+     *
+     * @param item the item to insert
+     * @param key  the key of the item
+     * @return true if the item was inserted or its key decreased, false if its key was not larger
+     */
+    public boolean insertOrDecrease(int item, double key) {
+        int pos = position[item];
+        if (pos < 0) {
+            pos = size++;
+            heap[pos] = item;
+            position[item] = pos;
+        } else if (key >= keys[item])
+            return false;
+        keys[item] = key;
+        siftUp(pos);
+        return true;
+    }
+
+    /**
+     * Insert an item, or change its key in either direction if it is already in the heap.
+     *
+     * @param item the item to insert or update
+     * @param key  the new key of the item
+     */
+    public void update(int item, double key) {
+        int pos = position[item];
+        if (pos < 0 || key <= keys[item]) {
+            insertOrDecrease(item, key);
+            return;
+        }
+        keys[item] = key;
+        siftDown(pos);
+    }
+
+    /**
+     * Return the item with the smallest key without removing it.
+     *
+     * @throws NoSuchElementException if the heap is empty
+     */
+    public int peek() {
+        if (size == 0) throw new NoSuchElementException("Heap is empty");
+        return heap[0];
+    }
+
+    /**
+     * Return the smallest key in the heap.
+     *
+     * @throws NoSuchElementException if the heap is empty
+     */
+    public double peekKey() {
+        return keys[peek()];
+    }
+
+    /**
+     * Remove and return the item with the smallest key.
+     *
+     * @throws NoSuchElementException if the heap is empty
+     */
+    public int poll() {
+        int top = peek();
+        position[top] = -1;
+        size--;
+        if (size > 0) {
+            int last = heap[size];
+            heap[0] = last;
+            position[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /**
+     * Remove all items. Only the items still in the heap are touched, so clearing after a
+     * search costs the size of the remaining frontier rather than the capacity.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++)
+            position[heap[i]] = -1;
+        size = 0;
+    }
+
+    /**
+     * Ordering of two items: by key, then by item index.
+     */
+    private boolean less(int a, int b) {
+        double ka = keys[a];
+        double kb = keys[b];
+        return ka < kb || (ka == kb && a < b);
+    }
+
+    private void siftUp(int pos) {
+        int item = heap[pos];
+        while (pos > 0) {
+            int parentPos = (pos - 1) / arity;
+            int parent = heap[parentPos];
+            if (!less(item, parent)) break;
+            heap[pos] = parent;
+            position[parent] = pos;
+            pos = parentPos;
+        }
+        heap[pos] = item;
+        position[item] = pos;
+    }
+
+    private void siftDown(int pos) {
+        int item = heap[pos];
+        while (true) {
+            int firstChild = pos * arity + 1;
+            if (firstChild >= size) break;
+            int best = firstChild;
+            int lastChild = Math.min(firstChild + arity, size);
+            for (int c = firstChild + 1; c < lastChild; c++)
+                if (less(heap[c], heap[best]))
+                    best = c;
+            if (!less(heap[best], item)) break;
+            heap[pos] = heap[best];
+            position[heap[pos]] = pos;
+            pos = best;
+        }
+        heap[pos] = item;
+        position[item] = pos;
+    }
+}
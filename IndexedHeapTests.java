@@ -0,0 +1,167 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the indexed d-ary heap against a java.util.PriorityQueue of (key, item)
+ * entries, where changing the key of an item removes its entry and queues a new one
+ */
+public class IndexedHeapTests {
+    private final HashMap<Integer, Double> keys = new HashMap<>(); // items in the heap -> key
+    private final PriorityQueue<double[]> queue = new PriorityQueue<>(
+            (a, b) -> a[0] != b[0] ? Double.compare(a[0], b[0]) : Double.compare(a[1], b[1]));
+
+    private void put(int item, double key) {
+        Double old = keys.put(item, key);
+        if (old != null) queue.removeIf(entry -> entry[1] == item);
+        queue.add(new double[]{key, item});
+    }
+
+    private void clearReference() {
+        keys.clear();
+        queue.clear();
+    }
+
+    /**
+     * Check size, membership and the smallest entry of the heap against the reference.
+     */
+    private void checkTop(IndexedHeap heap, int capacity) {
+        assertEquals(keys.size(), heap.size());
+        assertEquals(keys.isEmpty(), heap.isEmpty());
+        for (int item = 0; item < capacity; item++) {
+            assertEquals(keys.containsKey(item), heap.contains(item));
+            if (keys.containsKey(item)) assertEquals(keys.get(item), heap.getKey(item));
+        }
+        if (!queue.isEmpty()) { // equal keys come out by item index
+            assertEquals((int) queue.peek()[1], heap.peek());
+            assertEquals(queue.peek()[0], heap.peekKey());
+        }
+    }
+
+    /**
+     * Random inserts, decrease-keys, key updates in either direction, polls and clears, with
+     * keys from a small set so that ties are frequent, give the items in the same order as
+     * the reference for every arity
+     */
+    @Test
+    public void testMatchesPriorityQueue() {
+        for (int arity = 2; arity <= 8; arity++)
+            for (long seed = 0; seed < 5; seed++) {
+                Random random = new Random(seed * 10 + arity);
+                int capacity = 200;
+                IndexedHeap heap = new IndexedHeap(capacity, arity);
+                clearReference();
+                for (int step = 0; step < 5000; step++) {
+                    int item = random.nextInt(capacity);
+                    double key = random.nextInt(50);
+                    int op = random.nextInt(10);
+                    if (op < 4) {
+                        Double old = keys.get(item);
+                        boolean changed = old == null || key < old;
+                        assertEquals(changed, heap.insertOrDecrease(item, key));
+                        if (changed) put(item, key);
+                    } else if (op < 6) {
+                        heap.update(item, key);
+                        put(item, key);
+                    } else if (op < 9) {
+                        if (queue.isEmpty()) {
+                            assertThrows(NoSuchElementException.class, heap::poll);
+                            continue;
+                        }
+                        double[] top = queue.poll();
+                        keys.remove((int) top[1]);
+                        assertEquals((int) top[1], heap.poll());
+                    } else if (random.nextInt(20) == 0) {
+                        heap.clear();
+                        clearReference();
+                    }
+                    if (step % 100 == 0) checkTop(heap, capacity);
+                }
+                while (!queue.isEmpty()) {
+                    double[] top = queue.poll();
+                    keys.remove((int) top[1]);
+                    assertEquals((int) top[1], heap.poll());
+                }
+                checkTop(heap, capacity);
+            }
+    }
+
+    /**
+     * A heap cleared while half full, as a search that stopped early leaves it, can be
+     * refilled with any items, and keeps its contents when it grows
+     */
+    @Test
+    public void testReuseAfterClear() {
+        Random random = new Random(4);
+        IndexedHeap heap = new IndexedHeap(10, 4);
+        for (int round = 0; round < 50; round++) {
+            int capacity = 10 + round * 10;
+            heap.ensureCapacity(capacity);
+            for (int i = 0; i < capacity; i++) {
+                int item = random.nextInt(capacity);
+                double key = random.nextDouble();
+                if (heap.insertOrDecrease(item, key)) put(item, key);
+                if (i == capacity / 2) heap.ensureCapacity(capacity + 5); // grows while holding items
+            }
+            for (int i = 0; i < capacity / 3; i++) {
+                double[] top = queue.poll();
+                keys.remove((int) top[1]);
+                assertEquals((int) top[1], heap.poll());
+            }
+            checkTop(heap, capacity);
+            heap.clear();
+            clearReference();
+            checkTop(heap, capacity);
+        }
+    }
+
+    /**
+     * Lowering the key of an item deep in the heap moves it to the top, and a key that is not
+     * lower leaves it where it is
+     */
+    @Test
+    public void testDecreaseKey() {
+        IndexedHeap heap = new IndexedHeap(100, 2);
+        for (int item = 0; item < 100; item++)
+            heap.insertOrDecrease(item, 100 + item);
+        assertFalse(heap.insertOrDecrease(99, 199));
+        assertFalse(heap.insertOrDecrease(99, 500));
+        assertEquals(0, heap.peek());
+        assertTrue(heap.insertOrDecrease(99, 100)); // ties with item 0, which has the lower index
+        assertEquals(0, heap.poll());
+        assertEquals(99, heap.poll());
+        assertTrue(heap.insertOrDecrease(50, 1));
+        assertEquals(50, heap.peek());
+        heap.update(50, 1000); // raised again, now the last one out
+        assertEquals(1, heap.peek());
+        assertEquals(98, heap.size());
+        int last = -1;
+        while (!heap.isEmpty())
+            last = heap.poll();
+        assertEquals(50, last);
+    }
+
+    /**
+     * Empty heaps, absent items and arities below 2 are refused
+     */
+    @Test
+    public void testErrors() {
+        assertThrows(IllegalArgumentException.class, () -> new IndexedHeap(10, 1));
+        IndexedHeap heap = new IndexedHeap(0);
+        assertEquals(4, heap.getArity());
+        assertThrows(NoSuchElementException.class, heap::peek);
+        assertThrows(NoSuchElementException.class, heap::peekKey);
+        assertThrows(NoSuchElementException.class, heap::poll);
+        assertThrows(NoSuchElementException.class, () -> heap.getKey(0));
+        heap.insertOrDecrease(0, 3);
+        assertEquals(3, heap.getKey(0));
+    }
+}
@@ -0,0 +1,131 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the k shortest loopless paths (Yen's algorithm) against a brute-force
+ * enumeration of all loopless paths
+ */
+public class KShortestPathsTests {
+    /**
+     * Check the paths found between two vertices against all loopless paths between them.
+     */
+    private static void checkPaths(ReferenceGraph reference, IVertex source, IVertex target, int k,
+                                   List<List<IVertex>> paths) {
+        List<Double> expected = reference.simplePathCosts(source, target);
+        assertEquals(Math.min(k, expected.size()), paths.size());
+        HashSet<List<IVertex>> distinct = new HashSet<>();
+        for (int i = 0; i < paths.size(); i++) {
+            List<IVertex> path = paths.get(i);
+            assertSame(source, path.get(0));
+            assertSame(target, path.get(path.size() - 1));
+            assertEquals(path.size(), new HashSet<>(path).size()); // loopless
+            assertTrue(distinct.add(path));
+            assertEquals(expected.get(i), reference.cost(path), 1e-9 * Math.max(1, expected.get(i)));
+        }
+    }
+
+    /**
+     * Check the paths between random vertices, throwing where there is no path at all.
+     */
+    private static void checkQueries(ReferenceGraph reference, int count, Finder finder) {
+        for (int i = 0; i < count; i++) {
+            IVertex source = reference.randomVertex();
+            IVertex target = reference.randomVertex();
+            int k = 1 + reference.getRandom().nextInt(12);
+            if (reference.distance(source, target) == Double.POSITIVE_INFINITY)
+                assertThrows(NoSuchElementException.class, () -> finder.find(source, target, k));
+            else
+                checkPaths(reference, source, target, k, finder.find(source, target, k));
+        }
+    }
+
+    private interface Finder {
+        List<List<IVertex>> find(IVertex source, IVertex target, int k);
+    }
+
+    /**
+     * The k shortest paths have the costs of the k cheapest loopless paths, on small random
+     * graphs where pairs may have fewer than k paths or none
+     */
+    @Test
+    public void testMatchesBruteForce() {
+        for (long seed = 0; seed < 30; seed++) {
+            CSRGraph graph = new CSRGraph();
+            ReferenceGraph reference = ReferenceGraph.random(graph, seed, 9, 22);
+            checkQueries(reference, 20, graph::kShortestPaths);
+        }
+    }
+
+    /**
+     * All loopless paths are found when k exceeds their number
+     */
+    @Test
+    public void testAllPaths() {
+        for (long seed = 0; seed < 10; seed++) {
+            CSRGraph graph = new CSRGraph();
+            ReferenceGraph reference = ReferenceGraph.random(graph, seed, 7, 30);
+            for (IVertex source : reference.getVertices())
+                for (IVertex target : reference.getVertices())
+                    if (reference.distance(source, target) < Double.POSITIVE_INFINITY)
+                        checkPaths(reference, source, target, 1000, graph.kShortestPaths(source, target, 1000));
+        }
+    }
+
+    /**
+     * The spur searches give the same paths when spread over several worker threads
+     */
+    @Test
+    public void testParallelSpurSearches() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (long seed = 0; seed < 10; seed++) {
+                CSRGraph graph = new CSRGraph();
+                ReferenceGraph reference = ReferenceGraph.random(graph, seed, 10, 30);
+                checkQueries(reference, 20,
+                        (source, target, k) -> graph.snapshot().kShortestPaths(source.getId(), target.getId(), k, pool));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The paths follow the graph as it changes, through every graph engine
+     */
+    @Test
+    public void testAfterMutations() {
+        for (long seed = 0; seed < 9; seed++) {
+            IGraph graph = seed % 3 == 0 ? new CSRGraph() : seed % 3 == 1 ? new ConcurrentGraph() : new AEPlaceholder();
+            ReferenceGraph reference = ReferenceGraph.random(graph, seed, 9, 22);
+            for (int round = 0; round < 5; round++) {
+                reference.removeVertex(reference.randomVertex());
+                reference.removeEdge(reference.randomVertex(), reference.randomVertex());
+                reference.addVertex();
+                for (int i = 0; i < 3; i++)
+                    reference.addEdge(reference.randomVertex(), reference.randomVertex());
+                checkQueries(reference, 10, graph::kShortestPaths);
+            }
+        }
+    }
+
+    /**
+     * Unknown vertices are refused
+     */
+    @Test
+    public void testUnknownVertex() {
+        CSRGraph graph = new CSRGraph();
+        ReferenceGraph reference = ReferenceGraph.random(graph, 1, 5, 10);
+        IVertex stranger = new VertexGeneral(100, "stranger", 0, 0);
+        assertThrows(NoSuchElementException.class, () -> graph.kShortestPaths(stranger, reference.randomVertex(), 3));
+        assertThrows(NoSuchElementException.class, () -> graph.kShortestPaths(reference.randomVertex(), stranger, 3));
+    }
+}
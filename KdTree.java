@@ -0,0 +1,371 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A two-dimensional k-d tree over the coordinates of vertices, answering nearest-k, radius
+ * and rectangle queries in time logarithmic in the number of vertices plus the size of the
+ * result. Every node splits the plane on x or y at its own point: points with a smaller
+ * coordinate are in its left subtree, points with a larger one in its right subtree, and
+ * points with an equal one on either side. Inserts keep the tree balanced like a scapegoat
+ * tree: when a point lands deeper than log base 1/ALPHA of the size of the tree, the deepest
+ * subtree on its path in which one child holds more than ALPHA of the points is rebuilt.
+ * Removed points stay in the tree as tombstones until they outnumber the live ones, at which
+ * point the whole tree is rebuilt without them.
+ */
+public class KdTree {
+
+    /**
+     * A point of the tree, removed ones are kept as tombstones.
+     */
+    private static final class Node {
+        final int id;
+        final double x;
+        final double y;
+        boolean vertical; // splits on x if true, on y otherwise
+        boolean removed;
+        int size; // nodes in the subtree, tombstones included
+        Node left;
+        Node right;
+
+        Node(int id, double x, double y) {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+            this.size = 1;
+        }
+
+        double key() {
+            return vertical ? x : y;
+        }
+    }
+
+    protected static final double ALPHA = 0.75; // largest share of a subtree one child may hold
+
+    private Node root;
+    private final HashMap<Integer, Node> nodes; // vertex id -> live node
+    private int removedCount; // tombstones in the tree
+
+    public KdTree() {
+        nodes = new HashMap<>();
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public boolean contains(int id) {
+        return nodes.containsKey(id);
+    }
+
+    /**
+     * Insert the point of a vertex, replacing its previous point if it already has a
+     * different one.
+     *
+     * @param id the id of the vertex
+     * @param x  the x coordinate of the vertex
+     * @param y  the y coordinate of the vertex
+     */
+    public void insert(int id, double x, double y) {
+        Node old = nodes.get(id);
+        if (old != null && old.x == x && old.y == y) return;
+        remove(id);
+        Node node = new Node(id, x, y);
+        nodes.put(id, node);
+        if (root == null) {
+            node.vertical = true;
+            root = node;
+            return;
+        }
+        List<Node> path = new ArrayList<>();
+        Node parent = root;
+        while (true) {
+            parent.size++;
+            path.add(parent);
+            boolean left = (parent.vertical ? x : y) < parent.key();
+            Node child = left ? parent.left : parent.right;
+            if (child == null) {
+                node.vertical = !parent.vertical;
+                if (left) parent.left = node;
+                else parent.right = node;
+                break;
+            }
+            parent = child;
+        }
+        if (path.size() <= Math.log(size(root)) / Math.log(1 / ALPHA))
+            return; // shallow enough
+        for (int i = path.size() - 1; i >= 0; i--) { // the deepest ancestor with an overweight child
+            Node scapegoat = path.get(i);
+            if (size(scapegoat.left) > ALPHA * scapegoat.size || size(scapegoat.right) > ALPHA * scapegoat.size) {
+                Node rebuilt = rebuild(scapegoat);
+                if (i == 0) root = rebuilt;
+                else if (path.get(i - 1).left == scapegoat) path.get(i - 1).left = rebuilt;
+                else path.get(i - 1).right = rebuilt;
+                for (int j = 0; j < i; j++) // the tombstones dropped by the rebuild left these subtrees
+                    path.get(j).size -= scapegoat.size - size(rebuilt);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Remove the point of a vertex.
+     *
+     * @param id the id of the vertex
+     * @return true if the vertex had a point in the tree
+     */
+    public boolean remove(int id) {
+        Node node = nodes.remove(id);
+        if (node == null) return false;
+        node.removed = true;
+        removedCount++;
+        if (removedCount > nodes.size())
+            root = rebuild(root);
+        return true;
+    }
+
+    /**
+     * Move the point of a vertex.
+     */
+    public void move(int id, double x, double y) {
+        insert(id, x, y);
+    }
+
+    public void clear() {
+        root = null;
+        nodes.clear();
+        removedCount = 0;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Rebuild a subtree into a balanced one without its tombstones.
+     */
+    private Node rebuild(Node subtree) {
+        List<Node> live = new ArrayList<>(size(subtree));
+        collect(subtree, live);
+        removedCount -= size(subtree) - live.size();
+        Node[] points = live.toArray(new Node[0]);
+        return build(points, 0, points.length);
+    }
+
+    private static void collect(Node node, List<Node> live) {
+        if (node == null) return;
+        collect(node.left, live);
+        if (!node.removed) live.add(node);
+        collect(node.right, live);
+    }
+
+    /**
+     * Build a balanced tree of points[from, to), splitting each range at the median of the
+     * axis along which its points are spread the widest.
+     */
+    private static Node build(Node[] points, int from, int to) {
+        if (from >= to) return null;
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            minX = Math.min(minX, points[i].x);
+            maxX = Math.max(maxX, points[i].x);
+            minY = Math.min(minY, points[i].y);
+            maxY = Math.max(maxY, points[i].y);
+        }
+        boolean vertical = maxX - minX >= maxY - minY;
+        int middle = (from + to) >>> 1;
+        select(points, from, to - 1, middle, vertical);
+        Node node = points[middle];
+        node.vertical = vertical;
+        node.left = build(points, from, middle);
+        node.right = build(points, middle + 1, to);
+        node.size = to - from;
+        return node;
+    }
+
+    /**
+     * Partially sort points[from, to] so that points[k] is the point a full sort on the
+     * given axis would put there, with no larger coordinate before it and no smaller one after.
+     */
+    private static void select(Node[] points, int from, int to, int k, boolean vertical) {
+        while (from < to) {
+            double pivot = key(points[(from + to) >>> 1], vertical);
+            int i = from, j = to;
+            while (i <= j) {
+                while (key(points[i], vertical) < pivot) i++;
+                while (key(points[j], vertical) > pivot) j--;
+                if (i <= j) {
+                    Node swap = points[i];
+                    points[i++] = points[j];
+                    points[j--] = swap;
+                }
+            }
+            if (k <= j) to = j;
+            else if (k >= i) from = i;
+            else return;
+        }
+    }
+
+    private static double key(Node node, boolean vertical) {
+        return vertical ? node.x : node.y;
+    }
+
+    /**
+     * Find the vertices nearest to a point.
+     *
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     * @param k the number of vertices to find
+     * @return the ids of the k vertices nearest to the point, nearest first; all vertices if
+     *     there are fewer than k
+     */
+    public int[] nearest(double x, double y, int k) {
+        k = Math.min(k, nodes.size());
+        if (k <= 0) return new int[0];
+        Nearest best = new Nearest(k);
+        nearest(root, x, y, best);
+        return best.sortedIds();
+    }
+
+    private static void nearest(Node node, double x, double y, Nearest best) {
+        if (node == null) return;
+        if (!node.removed) {
+            double dx = node.x - x, dy = node.y - y;
+            best.offer(node.id, dx * dx + dy * dy);
+        }
+        double diff = (node.vertical ? x : y) - node.key();
+        Node near = diff < 0 ? node.left : node.right;
+        Node far = diff < 0 ? node.right : node.left;
+        nearest(near, x, y, best);
+        if (diff * diff <= best.bound())
+            nearest(far, x, y, best);
+    }
+
+    /**
+     * The k closest points seen so far, as a binary max-heap on their squared distances.
+     */
+    private static final class Nearest {
+        final int[] ids;
+        final double[] dist;
+        int size;
+
+        Nearest(int k) {
+            ids = new int[k];
+            dist = new double[k];
+        }
+
+        /**
+         * Squared distance a point must beat to enter, infinity until k points were seen.
+         */
+        double bound() {
+            return size < ids.length ? Double.POSITIVE_INFINITY : dist[0];
+        }
+
+        void offer(int id, double d) {
+            if (size < ids.length) {
+                int i = size++;
+                while (i > 0 && dist[(i - 1) / 2] < d) { // sift up
+                    ids[i] = ids[(i - 1) / 2];
+                    dist[i] = dist[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                ids[i] = id;
+                dist[i] = d;
+            } else if (d < dist[0]) {
+                int i = 0;
+                while (true) { // sift down from the root, replacing the farthest point
+                    int child = 2 * i + 1;
+                    if (child >= size) break;
+                    if (child + 1 < size && dist[child + 1] > dist[child]) child++;
+                    if (dist[child] <= d) break;
+                    ids[i] = ids[child];
+                    dist[i] = dist[child];
+                    i = child;
+                }
+                ids[i] = id;
+                dist[i] = d;
+            }
+        }
+
+        int[] sortedIds() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++)
+                order[i] = i;
+            Arrays.sort(order, Comparator.comparingDouble(i -> dist[i]));
+            int[] sorted = new int[size];
+            for (int i = 0; i < size; i++)
+                sorted[i] = ids[order[i]];
+            return sorted;
+        }
+    }
+
+    /**
+     * Find the vertices within a distance of a point.
+     *
+     * @param x      the x coordinate of the point
+     * @param y      the y coordinate of the point
+     * @param radius the largest distance from the point to include
+     * @return the ids of the vertices within radius of the point, in no particular order
+     */
+    public int[] withinRadius(double x, double y, double radius) {
+        Hits hits = new Hits();
+        if (radius >= 0)
+            withinRadius(root, x, y, radius, hits);
+        return hits.toArray();
+    }
+
+    private static void withinRadius(Node node, double x, double y, double radius, Hits hits) {
+        if (node == null) return;
+        double dx = node.x - x, dy = node.y - y;
+        if (!node.removed && dx * dx + dy * dy <= radius * radius)
+            hits.add(node.id);
+        double diff = (node.vertical ? x : y) - node.key();
+        if (diff <= radius)
+            withinRadius(node.left, x, y, radius, hits);
+        if (diff >= -radius)
+            withinRadius(node.right, x, y, radius, hits);
+    }
+
+    /**
+     * Find the vertices inside a rectangle, borders included.
+     *
+     * @return the ids of the vertices in the rectangle, in no particular order
+     */
+    public int[] inRectangle(double minX, double minY, double maxX, double maxY) {
+        Hits hits = new Hits();
+        inRectangle(root, minX, minY, maxX, maxY, hits);
+        return hits.toArray();
+    }
+
+    private static void inRectangle(Node node, double minX, double minY, double maxX, double maxY, Hits hits) {
+        if (node == null) return;
+        if (!node.removed && node.x >= minX && node.x <= maxX && node.y >= minY && node.y <= maxY)
+            hits.add(node.id);
+        double min = node.vertical ? minX : minY;
+        double max = node.vertical ? maxX : maxY;
+        if (min <= node.key())
+            inRectangle(node.left, minX, minY, maxX, maxY, hits);
+        if (max >= node.key())
+            inRectangle(node.right, minX, minY, maxX, maxY, hits);
+    }
+
+    /**
+     * A growable array of the ids found by a query.
+     */
+    private static final class Hits {
+        int[] ids = new int[16];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
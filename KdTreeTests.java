@@ -0,0 +1,152 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the k-d tree over vertex coordinates against linear scans of the points
+ */
+public class KdTreeTests {
+    /**
+     * Pick a coordinate on a coarse grid, so that many points share an x or y with others.
+     */
+    private static double coordinate(Random random) {
+        return random.nextInt(40) * 25;
+    }
+
+    private static double squaredDistance(double[] point, double x, double y) {
+        double dx = point[0] - x;
+        double dy = point[1] - y;
+        return dx * dx + dy * dy;
+    }
+
+    private static int[] sorted(int[] ids) {
+        int[] copy = ids.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    /**
+     * Check every kind of query at a random point against a linear scan of the points.
+     */
+    private static void checkQueries(KdTree tree, Map<Integer, double[]> points, Random random) {
+        assertEquals(points.size(), tree.size());
+        double x = random.nextDouble() * 1000;
+        double y = random.nextDouble() * 1000;
+
+        int k = random.nextInt(15);
+        int[] nearest = tree.nearest(x, y, k);
+        assertEquals(Math.min(k, points.size()), nearest.length);
+        assertEquals(nearest.length, Arrays.stream(nearest).distinct().count());
+        List<Double> distances = new ArrayList<>();
+        for (double[] point : points.values())
+            distances.add(squaredDistance(point, x, y));
+        distances.sort(null);
+        for (int i = 0; i < nearest.length; i++) { // ties may be broken either way, the distances may not
+            assertTrue(points.containsKey(nearest[i]));
+            assertEquals(distances.get(i), squaredDistance(points.get(nearest[i]), x, y));
+        }
+
+        double radius = random.nextDouble() * 200;
+        List<Integer> inRadius = new ArrayList<>();
+        for (Map.Entry<Integer, double[]> entry : points.entrySet())
+            if (squaredDistance(entry.getValue(), x, y) <= radius * radius)
+                inRadius.add(entry.getKey());
+        assertArrayEquals(sorted(inRadius.stream().mapToInt(Integer::intValue).toArray()), sorted(tree.withinRadius(x, y, radius)));
+
+        double maxX = x + random.nextDouble() * 300;
+        double maxY = y + random.nextDouble() * 300;
+        x = coordinate(random); // on the grid, to put points on the border
+        List<Integer> inRectangle = new ArrayList<>();
+        for (Map.Entry<Integer, double[]> entry : points.entrySet()) {
+            double[] point = entry.getValue();
+            if (point[0] >= x && point[0] <= maxX && point[1] >= y && point[1] <= maxY)
+                inRectangle.add(entry.getKey());
+        }
+        assertArrayEquals(sorted(inRectangle.stream().mapToInt(Integer::intValue).toArray()), sorted(tree.inRectangle(x, y, maxX, maxY)));
+    }
+
+    /**
+     * Random inserts, moves and removals, enough of them to trigger partial rebuilds and the
+     * full rebuild that drops tombstones, keep the answers of a linear scan
+     */
+    @Test
+    public void testMatchesLinearScan() {
+        for (long seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            KdTree tree = new KdTree();
+            HashMap<Integer, double[]> points = new HashMap<>();
+            for (int i = 0; i < 3000; i++) {
+                int id = random.nextInt(400);
+                int op = random.nextInt(4);
+                if (op == 0) {
+                    assertEquals(points.remove(id) != null, tree.remove(id));
+                } else {
+                    double[] point = {coordinate(random), coordinate(random)};
+                    if (op == 1) tree.move(id, point[0], point[1]);
+                    else tree.insert(id, point[0], point[1]);
+                    points.put(id, point);
+                }
+                assertEquals(points.containsKey(id), tree.contains(id));
+                if (i % 50 == 0) checkQueries(tree, points, random);
+            }
+            checkQueries(tree, points, random);
+        }
+    }
+
+    /**
+     * Points inserted in sorted order, the worst case of an unbalanced tree, can be removed
+     * and inserted again at other coordinates
+     */
+    @Test
+    public void testRemoveAndReinsert() {
+        Random random = new Random(1);
+        KdTree tree = new KdTree();
+        HashMap<Integer, double[]> points = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            tree.insert(i, i, i);
+            points.put(i, new double[]{i, i});
+        }
+        checkQueries(tree, points, random);
+        for (int i = 0; i < 2000; i += 2) {
+            assertTrue(tree.remove(i));
+            points.remove(i);
+        }
+        assertFalse(tree.remove(0));
+        checkQueries(tree, points, random);
+        for (int i = 0; i < 2000; i += 2) {
+            double[] point = {coordinate(random), coordinate(random)};
+            tree.insert(i, point[0], point[1]);
+            points.put(i, point);
+        }
+        for (int i = 0; i < 50; i++)
+            checkQueries(tree, points, random);
+    }
+
+    /**
+     * An empty or cleared tree answers every query with nothing
+     */
+    @Test
+    public void testEmpty() {
+        KdTree tree = new KdTree();
+        assertEquals(0, tree.nearest(0, 0, 3).length);
+        tree.insert(1, 5, 5);
+        tree.insert(2, 6, 6);
+        assertArrayEquals(new int[]{1, 2}, tree.nearest(0, 0, 5));
+        tree.clear();
+        assertEquals(0, tree.size());
+        assertFalse(tree.contains(1));
+        assertEquals(0, tree.nearest(0, 0, 3).length);
+        assertEquals(0, tree.withinRadius(5, 5, 10).length);
+        assertEquals(0, tree.inRectangle(0, 0, 10, 10).length);
+    }
+}
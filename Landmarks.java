@@ -0,0 +1,192 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Landmark distance tables for ALT (A*, landmarks, triangle inequality) searches over a
+ * compiled CSRGraph. For every landmark L the distances d(L, v) and d(v, L) to and from all
+ * vertices are precomputed, and by the triangle inequality
+ * d(v, t) >= max(d(L, t) - d(L, v), d(v, L) - d(t, L)) for every landmark. Unlike the
+ * straight-line heuristic these bounds hold for any non-negative weights.
+ */
+public class Landmarks {
+
+    /**
+     * Strategies for picking the landmarks.
+     */
+    public enum Strategy {
+        FARTHEST, // each landmark is the vertex farthest from the landmarks chosen before it
+        AVOID // each landmark is a leaf of the largest shortest path subtree the current bounds cover badly
+    }
+
+    public final CSRGraph.Compiled graph; // the graph the tables were computed for
+    public final int[] landmarks;
+    protected final int count;
+    // vertex-major tables: entry v * count + i belongs to vertex v and landmark i
+    protected final double[] fromLandmark; // d(landmark, v)
+    protected final double[] toLandmark; // d(v, landmark)
+
+    /**
+     * Pick landmarks and compute their distance tables.
+     *
+     * @param graph    the compiled graph to compute the tables for
+     * @param count    the number of landmarks, at most the number of vertices
+     * @param strategy how to pick the landmarks
+     */
+    public Landmarks(CSRGraph.Compiled graph, int count, Strategy strategy) {
+        this.graph = graph;
+        this.count = Math.min(count, graph.vertexCount);
+        this.landmarks = new int[this.count];
+        this.fromLandmark = new double[graph.vertexCount * this.count];
+        this.toLandmark = new double[graph.vertexCount * this.count];
+        SearchState state = new SearchState(graph.vertexCount, 4);
+        int[] order = new int[graph.vertexCount];
+        Random random = new Random(graph.vertexCount); // deterministic for a given graph size
+        for (int i = 0; i < this.count; i++) {
+            int landmark = strategy == Strategy.AVOID ? pickAvoid(i, state, order, random) : pickFarthest(i, state, order);
+            landmarks[i] = landmark;
+            fillTable(i, fromLandmark, true, state, order);
+            fillTable(i, toLandmark, false, state, order);
+        }
+    }
+
+    /**
+     * Run a full Dijkstra search from a vertex over the leaving (forward) or entering
+     * (backward) edges of the graph.
+     *
+     * @param source  the vertex to search from
+     * @param forward true to follow edges in their direction, false to follow them backwards
+     * @param state   the search state, left holding the distances and predecessors
+     * @param order   filled with the vertices in the order they were settled
+     * @return the number of vertices settled
+     */
+    protected int fullSearch(int source, boolean forward, SearchState state, int[] order) {
+        int[] offsets = forward ? graph.offsets : graph.reverseOffsets;
+        int[] adjacent = forward ? graph.targets : graph.sources;
+        double[] weights = forward ? graph.weights : graph.reverseWeights;
+        state.reset(graph.vertexCount);
+        state.addSource(source, 0);
+        int settled = 0;
+        while (!state.heap.isEmpty()) {
+            int u = state.heap.poll();
+            order[settled++] = u;
+            for (int i = offsets[u]; i < offsets[u + 1]; i++)
+                state.relax(u, adjacent[i], weights[i], 0);
+        }
+        return settled;
+    }
+
+    /**
+     * Compute the distances from (forward) or to (backward) landmark i.
+     */
+    private void fillTable(int i, double[] table, boolean forward, SearchState state, int[] order) {
+        fullSearch(landmarks[i], forward, state, order);
+        for (int v = 0; v < graph.vertexCount; v++)
+            table[v * count + i] = state.dist(v);
+    }
+
+    /**
+     * The vertex whose distance from the closest of the first chosen landmarks is largest,
+     * preferring vertices no landmark reaches. The first landmark is the vertex farthest from
+     * vertex 0.
+     */
+    private int pickFarthest(int chosen, SearchState state, int[] order) {
+        if (chosen == 0) {
+            int settled = fullSearch(0, true, state, order);
+            if (settled < graph.vertexCount) // a vertex vertex 0 does not reach
+                for (int v = 0; v < graph.vertexCount; v++)
+                    if (!state.reached(v)) return v;
+            return order[settled - 1];
+        }
+        int best = -1;
+        double bestDistance = -1;
+        for (int v = 0; v < graph.vertexCount; v++) {
+            double closest = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < chosen; i++)
+                closest = Math.min(closest, fromLandmark[v * count + i] + toLandmark[v * count + i]);
+            if (closest > bestDistance) {
+                bestDistance = closest;
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The avoid strategy: grow a shortest path tree from a random root, weigh each vertex by
+     * how much the current landmarks underestimate its distance from the root, and descend
+     * from the root into the heaviest subtree that holds no landmark until a leaf is reached.
+     */
+    private int pickAvoid(int chosen, SearchState state, int[] order, Random random) {
+        int n = graph.vertexCount;
+        int root = random.nextInt(n);
+        int settled = fullSearch(root, true, state, order);
+        double[] size = new double[n];
+        boolean[] covered = new boolean[n]; // subtree holds a landmark
+        for (int i = 0; i < chosen; i++)
+            covered[landmarks[i]] = true;
+        int[] childCount = new int[n + 1];
+        for (int k = settled - 1; k >= 0; k--) { // children are settled after their parent
+            int v = order[k];
+            size[v] += state.dist(v) - lowerBound(root, v, chosen);
+            int parent = state.pred(v);
+            if (parent == -1) continue;
+            childCount[parent + 1]++;
+            if (covered[v]) covered[parent] = true;
+            else size[parent] += size[v];
+        }
+        // children of every vertex, laid out like the CSR arrays
+        for (int v = 0; v < n; v++)
+            childCount[v + 1] += childCount[v];
+        int[] children = new int[Math.max(settled - 1, 0)];
+        int[] cursor = Arrays.copyOf(childCount, n);
+        for (int k = 1; k < settled; k++)
+            children[cursor[state.pred(order[k])]++] = order[k];
+        int v = root;
+        while (true) {
+            int next = -1;
+            for (int c = childCount[v]; c < childCount[v + 1]; c++) {
+                int child = children[c];
+                if (!covered[child] && (next == -1 || size[child] > size[next])) next = child;
+            }
+            if (next == -1) break;
+            v = next;
+        }
+        if (covered[v] || isLandmark(v, chosen)) // every subtree holds a landmark already
+            return pickFarthest(chosen, state, order);
+        return v;
+    }
+
+    private boolean isLandmark(int v, int chosen) {
+        for (int i = 0; i < chosen; i++)
+            if (landmarks[i] == v) return true;
+        return false;
+    }
+
+    /**
+     * Lower bound on d(v, t) from the first landmarks only.
+     */
+    private double lowerBound(int v, int t, int landmarkCount) {
+        double bound = 0;
+        int rowV = v * count;
+        int rowT = t * count;
+        for (int i = 0; i < landmarkCount; i++) {
+            // differences of infinite distances are NaN and fail both comparisons
+            double forward = fromLandmark[rowT + i] - fromLandmark[rowV + i];
+            if (forward > bound) bound = forward;
+            double backward = toLandmark[rowV + i] - toLandmark[rowT + i];
+            if (backward > bound) bound = backward;
+        }
+        return bound;
+    }
+
+    /**
+     * Lower bound on the distance from v to t. Infinity means t cannot be reached from v.
+     *
+     * @param v the vertex to estimate the distance from
+     * @param t the vertex to estimate the distance to
+     * @return a lower bound on d(v, t)
+     */
+    public double lowerBound(int v, int t) {
+        return lowerBound(v, t, count);
+    }
+}
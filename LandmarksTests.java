@@ -0,0 +1,86 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the ALT search mode of the graph engine and its landmark bounds against a
+ * plain Dijkstra
+ */
+public class LandmarksTests {
+    /**
+     * ALT finds the same distances and paths as Dijkstra with either strategy and any number of
+     * landmarks, also more landmarks than vertices
+     */
+    @Test
+    public void testMatchesDijkstra() {
+        int unreachable = 0;
+        for (Landmarks.Strategy strategy : Landmarks.Strategy.values())
+            for (int count : new int[]{1, 4, 16, 100}) {
+                for (long seed = 0; seed < 5; seed++) {
+                    CSRGraph graph = new CSRGraph(SearchMode.ALT);
+                    graph.setLandmarks(count, strategy);
+                    ReferenceGraph reference = ReferenceGraph.random(graph, seed, 60, 150);
+                    unreachable += reference.checkQueries(100);
+                }
+            }
+        assertTrue(unreachable > 0);
+    }
+
+    /**
+     * The bounds never exceed the distance, and an infinite bound is only given when there is
+     * no path
+     */
+    @Test
+    public void testLowerBounds() {
+        for (Landmarks.Strategy strategy : Landmarks.Strategy.values())
+            for (long seed = 0; seed < 5; seed++) {
+                CSRGraph graph = new CSRGraph(SearchMode.ALT);
+                graph.setLandmarks(4, strategy);
+                ReferenceGraph reference = ReferenceGraph.random(graph, seed, 50, 100);
+                Landmarks landmarks = graph.prepareLandmarks();
+                IVertex[] data = landmarks.graph.data;
+                for (int v = 0; v < data.length; v++) {
+                    Map<IVertex, Double> distances = reference.distancesFrom(data[v]);
+                    for (int t = 0; t < data.length; t++) {
+                        double distance = distances.getOrDefault(data[t], Double.POSITIVE_INFINITY);
+                        double bound = landmarks.lowerBound(v, t);
+                        assertTrue(bound <= distance + 1e-9 * Math.max(1, distance));
+                        if (bound == Double.POSITIVE_INFINITY)
+                            assertEquals(Double.POSITIVE_INFINITY, distance);
+                    }
+                }
+            }
+    }
+
+    /**
+     * The tables are recomputed after the graph or the landmark settings change
+     */
+    @Test
+    public void testAfterMutations() {
+        for (long seed = 0; seed < 10; seed++) {
+            CSRGraph graph = new CSRGraph(SearchMode.ALT);
+            ReferenceGraph reference = ReferenceGraph.random(graph, seed, 60, 150);
+            for (int round = 0; round < 10; round++) {
+                reference.removeVertex(reference.randomVertex());
+                reference.removeEdge(reference.randomVertex(), reference.randomVertex());
+                reference.addVertex();
+                for (int i = 0; i < 5; i++)
+                    reference.addEdge(reference.randomVertex(), reference.randomVertex());
+                if (round == 5) graph.setLandmarks(2, Landmarks.Strategy.AVOID);
+                reference.checkQueries(20);
+            }
+        }
+    }
+
+    /**
+     * At least one landmark is needed
+     */
+    @Test
+    public void testNoLandmarks() {
+        assertThrows(IllegalArgumentException.class, () -> new CSRGraph(SearchMode.ALT).setLandmarks(0, Landmarks.Strategy.FARTHEST));
+    }
+}
@@ -0,0 +1,170 @@
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map from long keys to int values, used to index edges by their
+ * packed (source, target) pair. Keys and values live in two primitive arrays probed
+ * linearly, so lookups neither box the key nor follow a chain of entry objects. Removal
+ * shifts the following entries of the probe run back instead of leaving tombstones, so
+ * a map with many insertions and removals does not slow down.
+ */
+public class LongIntMap {
+    private static final long FREE = Long.MIN_VALUE; // marks an empty slot
+    private static final double MAX_LOAD = 0.5;
+
+    protected final int missingValue; // returned by lookups of absent keys
+    protected long[] keys;
+    protected int[] values;
+    protected int size;
+    protected boolean hasFreeKey; // the key equal to FREE is stored outside the table
+    protected int freeKeyValue;
+    private int mask;
+
+    /**
+     * Constructor of a map that returns -1 for absent keys
+     */
+    public LongIntMap() {
+        this(16, -1);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param expectedSize the number of entries the map can hold before it has to grow
+     * @param missingValue the value returned by lookups of absent keys
+     */
+    public LongIntMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        int capacity = Integer.highestOneBit(Math.max((int) (expectedSize / MAX_LOAD), 2) - 1) << 1;
+        allocate(capacity);
+        this.size = 0;
+    }
+
+    /**
+     * Pack two ints, e.g. the source and target of an edge, into a single key.
+     */
+    public static long key(int high, int low) {
+        return ((long) high << 32) | (low & 0xffffffffL);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == FREE) return hasFreeKey;
+        return keys[find(key)] != FREE;
+    }
+
+    /**
+     * Return the value of a key, or the missing value if the key is not in the map.
+     */
+    public int get(long key) {
+        if (key == FREE) return hasFreeKey ? freeKeyValue : missingValue;
+        int slot = find(key);
+        return keys[slot] == FREE ? missingValue : values[slot];
+    }
+
+    /**
+     * Map a key to a value.
+     *
+     * @return the previous value of the key, or the missing value if it was not in the map
+     */
+    public int put(long key, int value) {
+        if (key == FREE) {
+            int previous = hasFreeKey ? freeKeyValue : missingValue;
+            if (!hasFreeKey) size++;
+            hasFreeKey = true;
+            freeKeyValue = value;
+            return previous;
+        }
+        int slot = find(key);
+        if (keys[slot] != FREE) {
+            int previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > keys.length * MAX_LOAD) grow();
+        return missingValue;
+    }
+
+    /**
+     * Remove a key from the map.
+     *
+     * @return the value the key had, or the missing value if it was not in the map
+     */
+    public int remove(long key) {
+        if (key == FREE) {
+            if (!hasFreeKey) return missingValue;
+            hasFreeKey = false;
+            size--;
+            return freeKeyValue;
+        }
+        int slot = find(key);
+        if (keys[slot] == FREE) return missingValue;
+        int previous = values[slot];
+        // shift later entries of the probe run into the hole unless they sit at their home slot
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = hash(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = FREE;
+        size--;
+        return previous;
+    }
+
+    /**
+     * Remove all entries, keeping the allocated table.
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        hasFreeKey = false;
+        size = 0;
+    }
+
+    /**
+     * Slot holding key, or the free slot where it would be inserted.
+     */
+    private int find(long key) {
+        int slot = hash(key);
+        while (keys[slot] != FREE && keys[slot] != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L; // Fibonacci hashing spreads packed pairs over all bits
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+        mask = capacity - 1;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == FREE) continue;
+            int slot = find(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+}
@@ -0,0 +1,139 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the open-addressing edge index against a HashMap
+ */
+public class LongIntMapTests {
+    /**
+     * Check that the map holds exactly the entries of the expected map.
+     */
+    private static void assertSameEntries(Map<Long, Integer> expected, LongIntMap map, long[] keys) {
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected.isEmpty(), map.isEmpty());
+        for (long key : keys) {
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+            assertEquals(expected.getOrDefault(key, -7), map.get(key));
+        }
+    }
+
+    /**
+     * Random puts and removals over a small set of keys, so that probe runs form, wrap around
+     * the table and get shifted back by removals, agree with a HashMap
+     */
+    @Test
+    public void testRandomOperations() {
+        for (long seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            long[] keys = new long[200];
+            for (int i = 0; i < keys.length; i++)
+                keys[i] = LongIntMap.key(random.nextInt(50), random.nextInt(50));
+            keys[0] = Long.MIN_VALUE; // the key the table uses to mark free slots
+            keys[1] = 0;
+            LongIntMap map = new LongIntMap(4, -7);
+            HashMap<Long, Integer> expected = new HashMap<>();
+            for (int i = 0; i < 5000; i++) {
+                long key = keys[random.nextInt(keys.length)];
+                if (random.nextInt(3) == 0)
+                    assertEquals(expected.containsKey(key) ? expected.remove(key) : -7, map.remove(key));
+                else {
+                    int value = random.nextInt();
+                    Integer previous = expected.put(key, value);
+                    assertEquals(previous == null ? -7 : previous, map.put(key, value));
+                }
+                if (i % 100 == 0) assertSameEntries(expected, map, keys);
+            }
+            assertSameEntries(expected, map, keys);
+        }
+    }
+
+    /**
+     * Every key can be found again after all keys were removed and put back, in another order
+     */
+    @Test
+    public void testRemoveAndReinsert() {
+        LongIntMap map = new LongIntMap();
+        int n = 1000;
+        for (int i = 0; i < n; i++)
+            map.put(LongIntMap.key(i, -i), i);
+        for (int i = 0; i < n; i += 2)
+            assertEquals(i, map.remove(LongIntMap.key(i, -i)));
+        assertEquals(n / 2, map.size());
+        for (int i = 0; i < n; i++)
+            assertEquals(i % 2 == 0 ? -1 : i, map.get(LongIntMap.key(i, -i)));
+        for (int i = n - 1; i >= 0; i--)
+            map.remove(LongIntMap.key(i, -i));
+        assertTrue(map.isEmpty());
+        for (int i = n - 1; i >= 0; i--)
+            assertEquals(-1, map.put(LongIntMap.key(i, -i), 2 * i));
+        for (int i = 0; i < n; i++)
+            assertEquals(2 * i, map.get(LongIntMap.key(i, -i)));
+        assertEquals(-1, map.remove(LongIntMap.key(n, -n)));
+        assertEquals(n, map.size());
+    }
+
+    /**
+     * Clearing empties the map, which then works as a new one
+     */
+    @Test
+    public void testClear() {
+        LongIntMap map = new LongIntMap();
+        for (int i = 0; i < 100; i++)
+            map.put(i, i);
+        map.put(Long.MIN_VALUE, 5);
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(Long.MIN_VALUE));
+        for (int i = 0; i < 100; i++)
+            assertFalse(map.containsKey(i));
+        map.put(3, 4);
+        assertEquals(4, map.get(3));
+        assertEquals(1, map.size());
+    }
+
+    /**
+     * Packed keys keep both halves apart, also for negative numbers
+     */
+    @Test
+    public void testKey() {
+        assertTrue(LongIntMap.key(1, 2) != LongIntMap.key(2, 1));
+        assertTrue(LongIntMap.key(0, -1) != LongIntMap.key(-1, 0));
+        assertEquals(-1L, LongIntMap.key(-1, -1));
+        assertEquals(0x0000000100000002L, LongIntMap.key(1, 2));
+    }
+
+    /**
+     * The graph finds its edges through the index after they are removed and inserted again
+     */
+    @Test
+    public void testGraphEdges() {
+        CSRGraph graph = new CSRGraph();
+        ReferenceGraph reference = ReferenceGraph.random(graph, 4, 40, 300);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 30; i++)
+                reference.removeEdge(reference.randomVertex(), reference.randomVertex());
+            for (int i = 0; i < 30; i++)
+                reference.addEdge(reference.randomVertex(), reference.randomVertex());
+            if (round % 5 == 0) reference.removeVertex(reference.randomVertex());
+            int edges = 0;
+            for (IVertex source : reference.getVertices())
+                for (IVertex target : reference.getVertices()) {
+                    double weight = reference.cost(List.of(source, target));
+                    assertEquals(weight != Double.POSITIVE_INFINITY, graph.containsEdge(source, target));
+                    if (weight != Double.POSITIVE_INFINITY) {
+                        assertEquals(weight, graph.getWeightD(source, target));
+                        edges++;
+                    }
+                }
+            assertEquals(edges, graph.getEdgeCount());
+        }
+    }
+}
@@ -0,0 +1,257 @@
+import javafx.geometry.Bounds;
+import javafx.geometry.Point2D;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+import javafx.scene.transform.Scale;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Draws the vertices and edges of the map onto a single Canvas covering the viewport, so that
+ * drawing a large map costs one pass over the elements in view instead of a layout and CSS
+ * pass over a node per element. The canvas follows the viewport as it scrolls. Only the
+ * selected elements and the ones being edited keep their own nodes on top of it, see
+ * MapViewport. Mouse events on the canvas are hit-tested through the spatial indexes of the
+ * backend and handed to the vertex or edge under the mouse. The canvas has the resolution of
+ * the screen at any zoom. Zoomed far out it draws the clusters of VertexClusters instead, and
+ * a click zooms in on the point clicked.
+ */
+public class MapCanvas {
+    public static final double EDGE_TOLERANCE = 5; // distance in pixels within which a click hits an edge
+    public static final double CLUSTER_SIZE = 64; // smallest side of the cells drawn as clusters, in screen pixels
+
+    public final Canvas canvas;
+    private final MapController controller;
+    private final Scale scale; // back from screen pixels to the coordinates of the pane
+    private VertexFD pressedVertex; // vertex the mouse was pressed on, dragged until it is released
+
+    /**
+     * Constructor
+     *
+     * @param controller the controller of the map drawn
+     */
+    public MapCanvas(MapController controller) {
+        this.controller = controller;
+        this.canvas = new Canvas();
+        this.canvas.setId("canvas");
+        this.canvas.setManaged(false); // the canvas must not count towards the extent of the map
+        this.scale = new Scale(1, 1, 0, 0);
+        this.canvas.getTransforms().add(this.scale);
+        this.pressedVertex = null;
+
+        this.canvas.setOnMousePressed(this::handleMousePressed);
+        this.canvas.setOnDragDetected(e -> {
+            if (this.pressedVertex != null) this.pressedVertex.dragging = true;
+        });
+        this.canvas.setOnMouseDragged(this::handleMouseDragged);
+        this.canvas.setOnMouseReleased(e -> this.controller.updates.flush());
+        this.canvas.setOnMouseClicked(this::handleMouseClicked);
+        this.canvas.setOnContextMenuRequested(e -> {
+            if (this.controller.viewport.isClustered()) return;
+            Point2D point = this.canvas.localToParent(e.getX(), e.getY());
+            VertexFD vertex = vertexAt(point.getX(), point.getY());
+            EdgeFD edge = vertex == null ? edgeAt(point.getX(), point.getY()) : null;
+            if (vertex != null) {
+                this.controller.viewport.show(vertex);
+                vertex.contextMenu.show(vertex.group, e.getScreenX(), e.getScreenY());
+                e.consume();
+            } else if (edge != null) {
+                this.controller.viewport.show(edge);
+                edge.contextMenu.show(edge.group, e.getScreenX(), e.getScreenY());
+                e.consume();
+            }
+        });
+    }
+
+    /**
+     * Move and resize the canvas to cover an area of the pane at the resolution of the screen,
+     * and clear it
+     *
+     * @param area the area of the pane to cover
+     * @param zoom the scale of the pane
+     * @return the graphics context of the cleared canvas
+     */
+    private GraphicsContext cover(Bounds area, double zoom) {
+        this.canvas.setLayoutX(area.getMinX());
+        this.canvas.setLayoutY(area.getMinY());
+        this.canvas.setWidth(Math.ceil(area.getWidth() * zoom));
+        this.canvas.setHeight(Math.ceil(area.getHeight() * zoom));
+        this.scale.setX(1 / zoom);
+        this.scale.setY(1 / zoom);
+        GraphicsContext gc = this.canvas.getGraphicsContext2D();
+        gc.clearRect(0, 0, this.canvas.getWidth(), this.canvas.getHeight());
+        return gc;
+    }
+
+    /**
+     * Draw the vertices and edges that are not shown with their own nodes, moving and resizing
+     * the canvas to cover an area of the pane
+     *
+     * @param area     the area of the pane to cover, usually the visible area
+     * @param zoom     the scale of the pane
+     * @param vertices the vertices that may be in the area
+     * @param edges    the edges that may be in the area
+     */
+    public void draw(Bounds area, double zoom, Iterable<VertexFD> vertices, Iterable<EdgeFD> edges) {
+        GraphicsContext gc = cover(area, zoom);
+        gc.save();
+        gc.scale(zoom, zoom);
+        gc.translate(-area.getMinX(), -area.getMinY());
+        gc.setTextAlign(TextAlignment.CENTER);
+        gc.setTextBaseline(VPos.CENTER);
+        for (EdgeFD edge : edges)
+            if (edge.view == null) edge.draw(gc);
+        for (VertexFD vertex : vertices)
+            if (vertex.view == null) vertex.draw(gc);
+        gc.restore();
+    }
+
+    /**
+     * Draw the vertices in an area of the pane as clusters of the grid cells at least
+     * CLUSTER_SIZE pixels wide at the zoom, each a badge with its number of vertices at their
+     * centroid, and the edges between clusters as one line per pair, thicker the more edges it
+     * bundles. The cells are sized in map coordinates, so only the edges between them are
+     * merged and the edges within a cell are left out.
+     *
+     * @param area     the area of the pane to cover, usually the visible area
+     * @param zoom     the scale of the pane
+     * @param clusters the cluster summaries of the backend
+     */
+    public void drawClusters(Bounds area, double zoom, VertexClusters clusters) {
+        GraphicsContext gc = cover(area, zoom);
+        int level = VertexClusters.levelFor(CLUSTER_SIZE / zoom);
+        double size = VertexClusters.cellSize(level);
+        List<VertexClusters.Cell> cells = clusters.cellsIn(level, area.getMinX() - size, area.getMinY() - size,
+                area.getMaxX() + size, area.getMaxY() + size);
+        HashSet<Long> inView = new HashSet<>();
+        for (VertexClusters.Cell cell : cells)
+            inView.add(cell.getKey());
+
+        gc.setStroke(Color.GRAY);
+        for (VertexClusters.Cell cell : cells)
+            for (Map.Entry<Long, Integer> link : cell.getLinks().entrySet()) {
+                if (inView.contains(link.getKey()) && link.getKey() < cell.getKey())
+                    continue; // drawn from the other end
+                VertexClusters.Cell other = clusters.getCell(level, link.getKey());
+                gc.setLineWidth(1 + Math.log(link.getValue()) / Math.log(2));
+                gc.strokeLine((cell.getX() - area.getMinX()) * zoom, (cell.getY() - area.getMinY()) * zoom,
+                        (other.getX() - area.getMinX()) * zoom, (other.getY() - area.getMinY()) * zoom);
+            }
+
+        gc.setLineWidth(1);
+        gc.setTextAlign(TextAlignment.CENTER);
+        gc.setTextBaseline(VPos.CENTER);
+        for (VertexClusters.Cell cell : cells) {
+            double radius = Math.min(CLUSTER_SIZE / 2, 8 + 3 * Math.log(cell.getCount()) / Math.log(2));
+            double x = (cell.getX() - area.getMinX()) * zoom, y = (cell.getY() - area.getMinY()) * zoom;
+            gc.setFill(Color.LIGHTGRAY);
+            gc.fillOval(x - radius, y - radius, 2 * radius, 2 * radius);
+            gc.setStroke(Color.DARKGRAY);
+            gc.strokeOval(x - radius, y - radius, 2 * radius, 2 * radius);
+            gc.setFill(Color.BLACK);
+            gc.fillText(Integer.toString(cell.getCount()), x, y);
+        }
+    }
+
+    /**
+     * Return the vertex whose circle contains a point
+     *
+     * @param x the x coordinate in the pane
+     * @param y the y coordinate in the pane
+     * @return the vertex nearest to the point, null if the point is outside all circles
+     */
+    public VertexFD vertexAt(double x, double y) {
+        int[] nearest = this.controller.backend.nearestVertices(x, y, 1);
+        if (nearest.length == 0) return null;
+        VertexFD vertex = this.controller.vertices.get(nearest[0]);
+        if (vertex == null || this.controller.distance(vertex.getX(), vertex.getY(), x, y) > VertexFD.RADIUS)
+            return null;
+        return vertex;
+    }
+
+    /**
+     * Return the edge whose line passes through a point
+     *
+     * @param x the x coordinate in the pane
+     * @param y the y coordinate in the pane
+     * @return the edge whose line is nearest to the point, null if none is within EDGE_TOLERANCE
+     */
+    public EdgeFD edgeAt(double x, double y) {
+        // the lines are drawn OFFSET away from the segments the backend indexes
+        double reach = EdgeFD.OFFSET + EDGE_TOLERANCE;
+        EdgeFD best = null;
+        double bestDistance = EDGE_TOLERANCE;
+        for (int id : this.controller.backend.edgesInRectangle(x - reach, y - reach, x + reach, y + reach)) {
+            EdgeFD edge = this.controller.edges.get(id);
+            if (edge == null) continue;
+            double distance = edge.distanceTo(x, y);
+            if (distance <= bestDistance) {
+                best = edge;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Handle the mouse pressed event on the canvas, a vertex pressed on can be dragged
+     *
+     * @param e the mouse pressed event
+     */
+    private void handleMousePressed(MouseEvent e) {
+        this.pressedVertex = null;
+        if (e.getButton() != MouseButton.PRIMARY || this.controller.viewport.isClustered()) return;
+        Point2D point = this.canvas.localToParent(e.getX(), e.getY());
+        this.pressedVertex = vertexAt(point.getX(), point.getY());
+        if (this.pressedVertex != null)
+            this.pressedVertex.dragging = false;
+    }
+
+    /**
+     * Handle the mouse dragged event on the canvas, dragging the vertex pressed on
+     *
+     * @param e the mouse dragged event
+     */
+    private void handleMouseDragged(MouseEvent e) {
+        if (this.pressedVertex == null) return;
+        Point2D point = this.canvas.localToParent(e.getX(), e.getY());
+        this.pressedVertex.dragTo(point.getX(), point.getY());
+        e.consume();
+    }
+
+    /**
+     * Handle the mouse clicked event on the canvas, clicks on a vertex or an edge go to it as
+     * if it had been clicked with its own nodes and all others to the scroll pane. While the
+     * map is drawn as clusters a click zooms in on the point clicked instead.
+     *
+     * @param e the mouse clicked event
+     */
+    private void handleMouseClicked(MouseEvent e) {
+        Point2D point = this.canvas.localToParent(e.getX(), e.getY());
+        double x = point.getX(), y = point.getY();
+        if (this.controller.viewport.isClustered()) {
+            if (e.getButton() == MouseButton.PRIMARY)
+                this.controller.viewport.zoomAt(this.controller.viewport.getZoom() * MapViewport.ZOOM_STEP, x, y);
+            e.consume();
+            return;
+        }
+        VertexFD vertex = vertexAt(x, y);
+        if (vertex != null) {
+            this.controller.viewport.show(vertex);
+            vertex.clickHandler.handle(e);
+            return;
+        }
+        EdgeFD edge = edgeAt(x, y);
+        if (edge != null) {
+            this.controller.viewport.show(edge);
+            edge.handleGroupMouseClicked(e);
+        }
+    }
+}
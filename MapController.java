@@ -1,7 +1,7 @@
 import javafx.event.ActionEvent;
 import javafx.event.Event;
 import javafx.fxml.FXML;
-import javafx.scene.Node;
+import javafx.geometry.Point2D;
 import javafx.scene.control.*;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
@@ -22,7 +22,9 @@ import java.util.*;
  * @author Ruixuan Tu
  */
 public class MapController {
-    public final IBackend backend;
+    public IBackend backend; // replaced by a freshly indexed one whenever a map is opened
+    public final MapViewport viewport; // shows only the vertices and edges near the visible area
+    public final UpdateScheduler updates; // applies the moves of dragged vertices once per frame
     public LinkedList<VertexFD> selectedVertices;
     public LinkedList<EdgeFD> selectedEdges;
     public Hashtable<Integer, VertexFD> vertices;
@@ -36,6 +38,10 @@ public class MapController {
     public boolean changed;
     public Stage stage;
     public boolean dialogCancelled;
+    public int pathCount; // number of shortest paths looked for after two vertices are selected
+    public MapLoader loader; // the map being opened in the background, null if none
+    // colors of the alternative paths, the shortest path keeps the selection color
+    public static final Color[] ALTERNATIVE_COLORS = {Color.DARKORANGE, Color.MEDIUMPURPLE, Color.OLIVEDRAB, Color.STEELBLUE, Color.PALEVIOLETRED};
 
     @FXML
     public BorderPane borderPane;
@@ -47,12 +53,16 @@ public class MapController {
     public ScrollPane scrollPane;
     @FXML
     public MenuBar menuBar;
+    @FXML
+    public Button cancelButton;
 
     /**
      * Constructor
      */
     public MapController() {
-        backend = new BackendPlaceholder();
+        backend = createBackend();
+        viewport = new MapViewport(this);
+        updates = new UpdateScheduler(this);
         selectedVertices = new LinkedList<>();
         selectedEdges = new LinkedList<>();
         vertices = new Hashtable<>();
@@ -64,6 +74,19 @@ public class MapController {
         currentGraphFile = null;
         dragging = false;
         changed = false;
+        pathCount = 1;
+        loader = null;
+    }
+
+    /**
+     * Create an empty backend, e.g. to open a map into. The backend itself belongs to the JavaFX
+     * application thread, its graph engine is locked so that snapshots for other threads can be
+     * taken while the map is edited
+     *
+     * @return the new backend
+     */
+    public IBackend createBackend() {
+        return new BackendPlaceholder(ConcurrentGraph::new);
     }
 
     /**
@@ -77,6 +100,7 @@ public class MapController {
         scrollPane.addEventFilter(MouseEvent.MOUSE_DRAGGED, this::handleChanged);
         scrollPane.addEventFilter(MouseEvent.MOUSE_CLICKED, this::handleChanged);
         scrollPane.addEventFilter(KeyEvent.KEY_PRESSED, this::handleChanged);
+        viewport.install();
 
         this.statusLabel.setText("New map loaded.");
     }
@@ -87,8 +111,7 @@ public class MapController {
      * @param vertex the vertex to be selected
      */
     public void addSelectedVertex(VertexFD vertex) {
-        vertex.circle.setFill(Color.SALMON);
-        vertex.label.setTextFill(Color.DARKCYAN);
+        vertex.setColors(Color.SALMON, Color.DARKCYAN);
         vertex.selected = true;
         this.selectedVertices.add(vertex);
     }
@@ -99,13 +122,25 @@ public class MapController {
      * @param edge the edge to be selected
      */
     public void addSelectedEdge(EdgeFD edge) {
-        edge.line.setStroke(Color.DARKCYAN);
-        edge.triangle.setFill(Color.DARKCYAN);
-        edge.label.setTextFill(Color.DARKRED);
+        edge.setColors(Color.DARKCYAN, Color.DARKRED);
         edge.selected = true;
         this.selectedEdges.add(edge);
     }
 
+    /**
+     * Highlight an edge in another color than the selection color, e.g. on an alternative path
+     *
+     * @param edge  the edge to be highlighted
+     * @param color the color of the edge
+     */
+    public void addHighlightedEdge(EdgeFD edge, Color color) {
+        edge.setColors(color, edge.textFill);
+        if (!edge.selected) {
+            edge.selected = true;
+            this.selectedEdges.add(edge);
+        }
+    }
+
     /**
      * Set a vertex to be selected and unselect all other vertices
      *
@@ -134,17 +169,12 @@ public class MapController {
      * @param id the id of the vertex to be removed
      */
     public void removeVertex(int id) {
-        Node toRemove = null;
-        for (Node node : pane.getChildren())
-            if (node.getId().equals("vertex-" + id)) {
-                toRemove = node;
-                break;
-            }
+        VertexFD toRemove = vertices.get(id);
         if (toRemove != null) {
-            if (edgesConnectedToVertex.containsKey(vertices.get(id)))
-                for (EdgeFD edge : edgesConnectedToVertex.get(vertices.get(id)))
+            if (edgesConnectedToVertex.containsKey(toRemove))
+                for (EdgeFD edge : edgesConnectedToVertex.get(toRemove))
                     removeEdge(edge.getId());
-            pane.getChildren().remove(toRemove);
+            viewport.hide(toRemove);
             try {
                 backend.removeVertex(id);
             } catch (Exception ex) {
@@ -162,12 +192,7 @@ public class MapController {
      * @param id the id of the edge to be removed
      */
     public void removeEdge(int id) {
-        Node toRemove = null;
-        for (Node node : pane.getChildren())
-            if (node.getId().equals("edge-" + id)) {
-                toRemove = node;
-                break;
-            }
+        EdgeFD toRemove = edges.get(id);
         if (toRemove != null) {
             try {
                 backend.removeEdge(id);
@@ -175,7 +200,7 @@ public class MapController {
                 this.criticalError("Backend error when removing Edge " + id + ".", ex);
                 return;
             }
-            pane.getChildren().remove(toRemove);
+            viewport.hide(toRemove);
             edges.remove(id);
             this.statusLabel.setText("Edge " + id + " removed.");
         }
@@ -216,23 +241,23 @@ public class MapController {
     }
 
     /**
-     * Return the vertex within range of x and y
+     * Return the vertex within range of x and y, looked up in the spatial index of the backend
      *
      * @param x the x coordinate
      * @param y the y coordinate
-     * @return the vertex within range of x and y
+     * @return the nearest vertex within range of x and y
      */
     private VertexFD findVertexAtPoint(double x, double y) {
         VertexFD vertex = null;
-        for (VertexFD v : vertices.values()) {
+        for (int id : backend.verticesInRectangle(x - 15, y - 15, x + 15, y + 15)) {
             // find a vertex at the point
-            if (!(Math.abs(v.pos.getX() - x) <= 15 && Math.abs(v.pos.getY() - y) <= 15))
-                continue;
-            if (v.equals(drawFromVertex))
+            VertexFD v = vertices.get(id);
+            if (v == null || v.equals(drawFromVertex))
                 continue;
             if (this.searchConnectedEdgeBetween(drawFromVertex, v) != null)
                 continue;
-            vertex = v;
+            if (vertex == null || distance(v.pos.getX(), v.pos.getY(), x, y) < distance(vertex.pos.getX(), vertex.pos.getY(), x, y))
+                vertex = v;
         }
         return vertex;
     }
@@ -243,14 +268,14 @@ public class MapController {
      * @param e the mouse click event
      */
     private void handleScrollPaneMouseClicked(MouseEvent e) {
-        double deltaX = scrollPane.getHvalue() * (pane.getWidth() - scrollPane.getWidth());
-        double deltaY = scrollPane.getVvalue() * (pane.getHeight() - scrollPane.getHeight());
-        double paneClickedX = e.getX() + deltaX;
-        double paneClickedY = e.getY() + deltaY;
+        Point2D paneClicked = pane.sceneToLocal(e.getSceneX(), e.getSceneY()); // scrolled and zoomed
+        double paneClickedX = paneClicked.getX();
+        double paneClickedY = paneClicked.getY();
         if (e.getButton() == MouseButton.PRIMARY && !dragging) {
             VertexFD v = new VertexFD(vertexId, paneClickedX, paneClickedY, Integer.toString(vertexId), this);
             vertices.put(vertexId, v);
-            pane.getChildren().add(v.group);
+            viewport.extend(v.getX(), v.getY());
+            viewport.show(v);
             try {
                 this.backend.addVertex(v);
             } catch (Exception ex) {
@@ -272,7 +297,7 @@ public class MapController {
                     edgesConnectedToVertex.put(drawToVertex, new LinkedList<>());
                 edgesConnectedToVertex.get(drawFromVertex).add(edge);
                 edgesConnectedToVertex.get(drawToVertex).add(edge);
-                pane.getChildren().add(edge.group);
+                viewport.show(edge);
                 try {
                     this.backend.addEdge(edge);
                 } catch (Exception ex) {
@@ -309,7 +334,7 @@ public class MapController {
         this.edgesConnectedToVertex.clear();
         this.vertexId = 0;
         this.edgeId = 0;
-        this.pane.getChildren().clear();
+        this.viewport.clear();
         this.drawFromVertex = null;
         this.statusLabel.setText("New map loaded.");
         this.currentGraphFile = null;
@@ -329,45 +354,42 @@ public class MapController {
     }
 
     /**
-     * Handle opening a graph from a folder with specified File path (for second step/testing)
+     * Handle opening a graph from a folder with specified File path (for second step/testing).
+     * The graph is opened in the background by a MapLoader, the map can only be looked at
+     * until it is done.
      */
     public void handleOpen(File file) {
         if (file == null) {
             this.statusLabel.setText("No folder selected.");
             return;
         }
-        try {
-            this.backend.openFile(file);
-            List<IVertex> verticesCopy = this.backend.getVertices();
-            List<IEdge> edgesCopy = this.backend.getEdges();
-            handleNew();
-            for (IVertex v : verticesCopy) {
-                vertexId = Math.max(vertexId, v.getId() + 1);
-                VertexFD vertex = new VertexFD(v.getId(), v.getX(), v.getY(), v.getLabel(), this);
-                vertices.put(v.getId(), vertex);
-                pane.getChildren().add(vertex.group);
-                this.backend.addVertex(v);
-            }
-            for (IEdge e : edgesCopy) {
-                edgeId = Math.max(edgeId, e.getId() + 1);
-                EdgeFD edge = new EdgeFD(e.getId(), vertices.get(e.getFrom()), vertices.get(e.getTo()), this);
-                edges.put(e.getId(), edge);
-                if (!edgesConnectedToVertex.containsKey(vertices.get(e.getFrom())))
-                    edgesConnectedToVertex.put(vertices.get(e.getFrom()), new LinkedList<>());
-                if (!edgesConnectedToVertex.containsKey(vertices.get(e.getTo())))
-                    edgesConnectedToVertex.put(vertices.get(e.getTo()), new LinkedList<>());
-                edgesConnectedToVertex.get(vertices.get(e.getFrom())).add(edge);
-                edgesConnectedToVertex.get(vertices.get(e.getTo())).add(edge);
-                pane.getChildren().add(edge.group);
-                this.backend.addEdge(e);
-            }
-        } catch (Exception e) {
-            this.criticalError("Failed to open the graph from folder.", e);
-            return;
-        }
-        this.statusLabel.setText("Loaded a graph from folder successfully.");
-        this.currentGraphFile = file;
-        this.stage.setTitle("BadgerMap - " + getFileName());
+        if (this.loader != null) return;
+        this.updates.flush();
+        this.loader = new MapLoader(this, file);
+        setLoading(true);
+        Thread thread = new Thread(this.loader, "MapLoader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Handle cancel button clicked while a graph is being opened
+     */
+    public void handleCancelOpen() {
+        if (this.loader != null)
+            this.loader.cancel();
+    }
+
+    /**
+     * Lock the menus and the map while a graph is being opened, and show the cancel button
+     *
+     * @param loading true while a graph is being opened
+     */
+    public void setLoading(boolean loading) {
+        this.menuBar.setDisable(loading);
+        this.scrollPane.setMouseTransparent(loading);
+        this.cancelButton.setVisible(loading);
+        this.cancelButton.setManaged(loading);
     }
 
     /**
@@ -388,6 +410,7 @@ public class MapController {
             }
         }
         try {
+            this.updates.flush();
             this.backend.saveFile(file);
         } catch (Exception e) {
             this.statusLabel.setText("Failed to save the graph to folder.");
@@ -405,6 +428,40 @@ public class MapController {
         this.stage.close();
     }
 
+    /**
+     * Handle canvas rendering menu item toggled, switch between drawing the map onto a canvas
+     * and drawing every vertex and edge with its own nodes
+     */
+    public void handleCanvasRendering(ActionEvent e) {
+        boolean enabled = ((CheckMenuItem) e.getSource()).isSelected();
+        this.viewport.setCanvasMode(enabled);
+        if (enabled)
+            this.statusLabel.setText("Drawing the map onto a canvas, selected vertices and edges are drawn on top.");
+        else
+            this.statusLabel.setText("Drawing every vertex and edge with its own nodes.");
+    }
+
+    /**
+     * Handle zoom in menu item clicked
+     */
+    public void handleZoomIn() {
+        this.viewport.zoom(this.viewport.getZoom() * MapViewport.ZOOM_STEP);
+    }
+
+    /**
+     * Handle zoom out menu item clicked, far enough out the vertices are drawn as clusters
+     */
+    public void handleZoomOut() {
+        this.viewport.zoom(this.viewport.getZoom() / MapViewport.ZOOM_STEP);
+    }
+
+    /**
+     * Handle actual size menu item clicked
+     */
+    public void handleActualSize() {
+        this.viewport.zoom(1);
+    }
+
     /**
      * Handle graph changed
      */
@@ -485,6 +542,48 @@ public class MapController {
         }
     }
 
+    /**
+     * Handle vertices within menu item clicked, select all vertices within a distance of
+     * the selected vertex
+     */
+    public void handleVerticesWithin() {
+        if (this.selectedVertices.size() != 1) {
+            this.statusLabel.setText("Select one vertex to find the vertices within a distance of it.");
+            return;
+        }
+        VertexFD source = this.selectedVertices.get(0);
+        TextInputDialog dialog = new TextInputDialog("");
+        dialog.setTitle("Vertices Within");
+        dialog.setHeaderText("Enter a distance from vertex " + source.getId() + ".");
+        dialog.setContentText("Distance:");
+        updateTextInputDialogButtons(dialog);
+        this.statusLabel.setText("Vertices Within dialog shown.");
+        Optional<String> result = dialog.showAndWait();
+        double maxCost = Double.NaN;
+        if (result.isPresent()) {
+            try {
+                maxCost = Double.parseDouble(result.get());
+            } catch (NumberFormatException e) {
+                this.statusLabel.setText("Invalid distance.");
+                return;
+            }
+        }
+        if (!Double.isNaN(maxCost) && maxCost >= 0) {
+            this.deselectAll();
+            this.updates.flush();
+            ReachableSet reachable = backend.verticesWithin(source.getId(), maxCost);
+            for (int i = 0; i < reachable.size(); i++)
+                this.addSelectedVertex(vertices.get(reachable.getId(i)));
+            this.statusLabel.setText(String.format("Found %d vertex(es) within distance %.2f of vertex %d.",
+                    reachable.size(), maxCost, source.getId()));
+        } else {
+            if (dialogCancelled)
+                this.statusLabel.setText("Search cancelled.");
+            else
+                this.statusLabel.setText("Invalid distance.");
+        }
+    }
+
     /**
      * Initialize the text input dialog buttons
      */
@@ -501,6 +600,42 @@ public class MapController {
      * Handle shortest path menu item clicked
      */
     public void handleShortestPath() {
+        this.pathCount = 1;
+        this.selectPathEnds();
+    }
+
+    /**
+     * Handle alternative paths menu item clicked
+     */
+    public void handleAlternativePaths() {
+        TextInputDialog dialog = new TextInputDialog("3");
+        dialog.setTitle("Alternative Paths");
+        dialog.setHeaderText("Enter the number of paths to find.");
+        dialog.setContentText("Number of paths:");
+        updateTextInputDialogButtons(dialog);
+        this.statusLabel.setText("Alternative Paths dialog shown.");
+        Optional<String> result = dialog.showAndWait();
+        if (result.isEmpty()) {
+            this.statusLabel.setText(dialogCancelled ? "Search cancelled." : "Invalid number of paths.");
+            return;
+        }
+        try {
+            this.pathCount = Integer.parseInt(result.get().trim());
+        } catch (NumberFormatException e) {
+            this.pathCount = 0;
+        }
+        if (this.pathCount < 1) {
+            this.statusLabel.setText("Invalid number of paths.");
+            this.pathCount = 1;
+            return;
+        }
+        this.selectPathEnds();
+    }
+
+    /**
+     * Let the user select the two end vertices of the paths to find
+     */
+    private void selectPathEnds() {
         if (this.vertices.size() < 2) {
             this.statusLabel.setText("Need at least two vertices to find a shortest path.");
             return;
@@ -511,7 +646,7 @@ public class MapController {
         this.scrollPane.setOnMouseClicked(Event::consume);
         this.scrollPane.setOnKeyPressed(Event::consume);
         for (VertexFD v : vertices.values())
-            v.group.setOnMouseClicked(v::handleGroupMouseClickedShortestPathSelection);
+            v.setOnMouseClicked(v::handleGroupMouseClickedShortestPathSelection);
     }
 
     /**
@@ -521,13 +656,18 @@ public class MapController {
         int id1 = this.selectedVertices.get(0).getId();
         int id2 = this.selectedVertices.get(1).getId();
         this.deselectAll();
+        this.updates.flush();
         try {
-            double pathByDistance = backend.getShortestByDistance(id1, id2);
-            List<Integer> pathByVertex = backend.getShortestByVertex(id1, id2);
-            List<Integer> pathByEdge = backend.getShortestByEdge(id1, id2);
-            pathByVertex.forEach(id -> this.addSelectedVertex(vertices.get(id)));
-            pathByEdge.forEach(id -> this.addSelectedEdge(edges.get(id)));
-            this.statusLabel.setText(String.format("Shortest path found with distance %.2f.", pathByDistance));
+            if (this.pathCount > 1)
+                processAlternativePaths(id1, id2);
+            else {
+                double pathByDistance = backend.getShortestByDistance(id1, id2);
+                List<Integer> pathByVertex = backend.getShortestByVertex(id1, id2);
+                List<Integer> pathByEdge = backend.getShortestByEdge(id1, id2);
+                pathByVertex.forEach(id -> this.addSelectedVertex(vertices.get(id)));
+                pathByEdge.forEach(id -> this.addSelectedEdge(edges.get(id)));
+                this.statusLabel.setText(String.format("Shortest path found with distance %.2f.", pathByDistance));
+            }
         } catch (NoSuchElementException e) {
             this.statusLabel.setText("No path found.");
         }
@@ -536,7 +676,36 @@ public class MapController {
         this.scrollPane.setOnMouseClicked(this::handleScrollPaneMouseClicked);
         this.scrollPane.setOnKeyPressed(this::handleScrollPaneKeyPressed);
         for (VertexFD v : vertices.values())
-            v.group.setOnMouseClicked(v::handleGroupMouseClicked);
+            v.setOnMouseClicked(v::handleGroupMouseClicked);
+    }
+
+    /**
+     * Find up to pathCount shortest paths between two vertices and highlight them, the
+     * shortest one in the selection color and each alternative in its own color
+     */
+    private void processAlternativePaths(int id1, int id2) {
+        List<PathCache.Route> routes = backend.getKShortest(id1, id2, this.pathCount);
+        // paint the longest first so that edges shared with shorter paths show their color
+        for (int i = routes.size() - 1; i >= 0; i--) {
+            PathCache.Route route = routes.get(i);
+            for (int id : route.vertexIds)
+                if (!vertices.get(id).selected)
+                    this.addSelectedVertex(vertices.get(id));
+            for (int id : route.edgeIds) {
+                EdgeFD edge = edges.get(id);
+                if (i > 0)
+                    this.addHighlightedEdge(edge, ALTERNATIVE_COLORS[(i - 1) % ALTERNATIVE_COLORS.length]);
+                else {
+                    if (edge.selected)
+                        edge.deselect();
+                    this.addSelectedEdge(edge);
+                }
+            }
+        }
+        StringJoiner distances = new StringJoiner(", ");
+        for (PathCache.Route route : routes)
+            distances.add(String.format("%.2f", route.distance));
+        this.statusLabel.setText("Found " + routes.size() + " path(s) with distances " + distances + ".");
     }
 
     /**
@@ -557,7 +726,7 @@ public class MapController {
      *
      * @return current file name
      */
-    private String getFileName() {
+    public String getFileName() {
         if (currentGraphFile == null)
             return "Untitled";
         return currentGraphFile.getName();
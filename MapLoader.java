@@ -0,0 +1,175 @@
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.concurrent.Task;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Opens a map in the background so that the window stays responsive however large the map is.
+ * The vertices and edges are parsed, then indexed into a fresh backend, both off the FX
+ * application thread while the current map stays as it is. The fresh backend then takes the
+ * place of the current one, and the vertices and edges are handed to the controller in
+ * chunks, each run on the FX application thread between events, so that the viewport fills
+ * in as they arrive. Every element goes into a backend once. Progress is shown in the status
+ * label. Cancelling before the last stage leaves the current map as it was, cancelling during
+ * it leaves a new map.
+ */
+public class MapLoader extends Task<Void> {
+    public static final int CHUNK = 2000; // vertices or edges handed to the controller at a time
+
+    private final MapController controller;
+    private final File file;
+    private final ChangeListener<String> showMessage;
+    private boolean replaced; // the current map was replaced, only used on the FX application thread
+
+    /**
+     * Constructor
+     *
+     * @param controller the controller of the map to replace
+     * @param file       the folder containing the vertex and edge JSON files
+     */
+    public MapLoader(MapController controller, File file) {
+        this.controller = controller;
+        this.file = file;
+        this.showMessage = (o, before, after) -> this.controller.statusLabel.setText(after);
+        this.replaced = false;
+        messageProperty().addListener(this.showMessage);
+    }
+
+    /**
+     * Parse, index and hand over the map, called on a background thread
+     */
+    @Override
+    protected Void call() throws Exception {
+        updateMessage("Opening " + this.file.getName() + ": parsing...");
+        IBackend backend = this.controller.createBackend();
+        List<IVertex> parsedVertices = backend.readVertices(this.file);
+        if (isCancelled()) return null;
+        List<IEdge> parsedEdges = backend.readEdges(this.file);
+        if (isCancelled()) return null;
+
+        // the backend holds the vertices and edges of the frontend, as when they are drawn
+        updateMessage(String.format("Opening %s: indexing %d vertices and %d edges...",
+                this.file.getName(), parsedVertices.size(), parsedEdges.size()));
+        HashMap<Integer, VertexFD> vertices = new HashMap<>();
+        List<VertexFD> vertexList = new ArrayList<>(parsedVertices.size());
+        int nextVertexId = 0;
+        for (IVertex v : parsedVertices) {
+            VertexFD vertex = new VertexFD(v.getId(), v.getX(), v.getY(), v.getLabel(), this.controller);
+            vertices.put(v.getId(), vertex);
+            vertexList.add(vertex);
+            nextVertexId = Math.max(nextVertexId, v.getId() + 1);
+        }
+        List<EdgeFD> edgeList = new ArrayList<>(parsedEdges.size());
+        HashMap<VertexFD, LinkedList<EdgeFD>> incident = new HashMap<>();
+        int nextEdgeId = 0;
+        for (IEdge e : parsedEdges) {
+            VertexFD from = vertices.get(e.getFrom()), to = vertices.get(e.getTo());
+            EdgeFD edge = new EdgeFD(e.getId(), from, to, this.controller);
+            edgeList.add(edge);
+            incident.computeIfAbsent(from, k -> new LinkedList<>()).add(edge);
+            incident.computeIfAbsent(to, k -> new LinkedList<>()).add(edge);
+            nextEdgeId = Math.max(nextEdgeId, e.getId() + 1);
+        }
+        if (isCancelled()) return null;
+        backend.load(vertexList, edgeList);
+        if (isCancelled()) return null;
+
+        int total = vertexList.size() + edgeList.size();
+        int vertexId = nextVertexId, edgeId = nextEdgeId;
+        runAndWait(() -> {
+            this.controller.handleNew();
+            this.controller.backend = backend;
+            this.controller.vertexId = vertexId;
+            this.controller.edgeId = edgeId;
+            this.replaced = true;
+        });
+        for (int start = 0; start < vertexList.size(); start += CHUNK) {
+            List<VertexFD> chunk = vertexList.subList(start, Math.min(start + CHUNK, vertexList.size()));
+            int done = start + chunk.size();
+            runAndWait(() -> {
+                for (VertexFD vertex : chunk) {
+                    this.controller.vertices.put(vertex.getId(), vertex);
+                    LinkedList<EdgeFD> edges = incident.get(vertex);
+                    if (edges != null) this.controller.edgesConnectedToVertex.put(vertex, edges);
+                    this.controller.viewport.extend(vertex.getX(), vertex.getY());
+                }
+                this.controller.viewport.requestRefresh();
+                showProgress(done, total);
+            });
+        }
+        for (int start = 0; start < edgeList.size(); start += CHUNK) {
+            List<EdgeFD> chunk = edgeList.subList(start, Math.min(start + CHUNK, edgeList.size()));
+            int done = vertexList.size() + start + chunk.size();
+            runAndWait(() -> {
+                for (EdgeFD edge : chunk)
+                    this.controller.edges.put(edge.id, edge);
+                this.controller.viewport.requestRefresh();
+                showProgress(done, total);
+            });
+        }
+        return null;
+    }
+
+    private void showProgress(int done, int total) {
+        updateProgress(done, total);
+        updateMessage(String.format("Opening %s: drawing %d of %d vertices and edges...", this.file.getName(), done, total));
+    }
+
+    /**
+     * Run a step on the FX application thread unless the task is cancelled, and wait for it,
+     * so that the steps queued never get ahead of the events of the user
+     *
+     * @param step the step to run
+     * @throws Exception the exception thrown by the step
+     */
+    private void runAndWait(Runnable step) throws Exception {
+        FutureTask<Void> future = new FutureTask<>(() -> {
+            if (!isCancelled()) step.run();
+        }, null);
+        Platform.runLater(future);
+        try {
+            future.get();
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+        }
+    }
+
+    @Override
+    protected void succeeded() {
+        finish();
+        this.controller.viewport.refresh();
+        this.controller.statusLabel.setText("Loaded a graph from folder successfully.");
+        this.controller.currentGraphFile = this.file;
+        this.controller.stage.setTitle("BadgerMap - " + this.controller.getFileName());
+    }
+
+    @Override
+    protected void cancelled() {
+        finish();
+        if (this.replaced) {
+            this.controller.handleNew();
+            this.controller.statusLabel.setText("Opening cancelled, a new map is loaded.");
+        } else
+            this.controller.statusLabel.setText("Opening cancelled, the map is left as it was.");
+    }
+
+    @Override
+    protected void failed() {
+        finish();
+        Throwable t = getException();
+        this.controller.criticalError("Failed to open the graph from folder.", t instanceof Exception ? (Exception) t : new Exception(t));
+    }
+
+    private void finish() {
+        messageProperty().removeListener(this.showMessage);
+        this.controller.loader = null;
+        this.controller.setLoading(false);
+    }
+}
@@ -0,0 +1,371 @@
+import javafx.application.Platform;
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
+import javafx.geometry.Point2D;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.transform.Scale;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Keeps JavaFX nodes in the pane only for the vertices and edges inside the viewport of the
+ * scroll pane plus a margin, so that the scene graph stays small however large the map is.
+ * The vertices and edges near the viewport are looked up in the spatial indexes of the backend
+ * whenever the view scrolls or resizes, and the nodes of the elements leaving it are kept in
+ * pools to draw the elements entering it. The pane is given the size of the whole map so that
+ * the scroll bars still span every element. In canvas mode the elements are drawn onto a
+ * MapCanvas instead, and only the selected ones and the ones being edited get nodes on top.
+ * The pane can be zoomed with Ctrl and the mouse wheel. Below LOD_ZOOM there would be too many
+ * elements in view to draw one by one, so they all lose their nodes and the canvas draws the
+ * clusters precomputed by the backend instead.
+ */
+public class MapViewport {
+    public static final double MARGIN = 200; // pixels around the viewport whose elements are drawn too
+    public static final double MIN_ZOOM = 1.0 / 512;
+    public static final double MAX_ZOOM = 4;
+    public static final double LOD_ZOOM = 0.5; // below this zoom the map is drawn as clusters
+    public static final double ZOOM_STEP = 2; // factor of the zoom in and out menu items
+    public static final double WHEEL_STEP = 1.25; // factor of one notch of the mouse wheel
+
+    private final MapController controller;
+    private final ArrayDeque<VertexFD.View> vertexPool; // nodes of vertices that left the viewport
+    private final ArrayDeque<EdgeFD.View> edgePool; // nodes of edges that left the viewport
+    private final HashSet<VertexFD> shownVertices;
+    private final HashSet<EdgeFD> shownEdges;
+    private double width; // extent of the map, kept as the minimum size of the pane
+    private double height;
+    private boolean refreshRequested;
+    private boolean canvasMode;
+    private MapCanvas canvas; // null unless the map or its clusters are drawn onto a canvas
+    private final Scale scale; // zoom of the pane
+
+    /**
+     * Constructor
+     *
+     * @param controller the controller of the map, whose pane and scroll pane are virtualized
+     */
+    public MapViewport(MapController controller) {
+        this.controller = controller;
+        this.vertexPool = new ArrayDeque<>();
+        this.edgePool = new ArrayDeque<>();
+        this.shownVertices = new HashSet<>();
+        this.shownEdges = new HashSet<>();
+        this.width = 0;
+        this.height = 0;
+        this.refreshRequested = false;
+        this.canvasMode = false;
+        this.canvas = null;
+        this.scale = new Scale(1, 1, 0, 0);
+    }
+
+    /**
+     * Make the pane zoomable and refresh the shown elements whenever the scroll pane scrolls,
+     * resizes or zooms
+     */
+    public void install() {
+        // the scroll pane scrolls over the bounds of its content, which only include the zoom
+        // of the pane if it is applied inside a Group
+        this.controller.pane.getTransforms().add(this.scale);
+        this.controller.scrollPane.setContent(new Group(this.controller.pane));
+        this.controller.scrollPane.addEventFilter(ScrollEvent.SCROLL, e -> {
+            if (!e.isShortcutDown() || e.getDeltaY() == 0) return;
+            Point2D point = this.controller.pane.sceneToLocal(e.getSceneX(), e.getSceneY());
+            zoomAt(getZoom() * (e.getDeltaY() > 0 ? WHEEL_STEP : 1 / WHEEL_STEP), point.getX(), point.getY());
+            e.consume();
+        });
+        this.controller.scrollPane.hvalueProperty().addListener((o, before, after) -> requestRefresh());
+        this.controller.scrollPane.vvalueProperty().addListener((o, before, after) -> requestRefresh());
+        this.controller.scrollPane.viewportBoundsProperty().addListener((o, before, after) -> requestRefresh());
+        this.controller.pane.widthProperty().addListener((o, before, after) -> requestRefresh());
+        this.controller.pane.heightProperty().addListener((o, before, after) -> requestRefresh());
+    }
+
+    /**
+     * Refresh the shown elements once the current events are handled, so that a burst of
+     * scroll events costs a single refresh
+     */
+    public void requestRefresh() {
+        if (this.refreshRequested) return;
+        this.refreshRequested = true;
+        Platform.runLater(() -> {
+            this.refreshRequested = false;
+            refresh();
+        });
+    }
+
+    /**
+     * Redraw the canvas after an element changed, only when there is a canvas since the nodes
+     * of the elements update themselves
+     */
+    public void requestRedraw() {
+        if (this.canvas != null) requestRefresh();
+    }
+
+    /**
+     * Switch between drawing the map onto a canvas and drawing every element with its own nodes
+     *
+     * @param enabled true to draw onto a canvas
+     */
+    public void setCanvasMode(boolean enabled) {
+        if (enabled == this.canvasMode) return;
+        this.canvasMode = enabled;
+        refresh();
+    }
+
+    public boolean isCanvasMode() {
+        return this.canvasMode;
+    }
+
+    /**
+     * Return true if the map is zoomed out far enough to be drawn as clusters
+     */
+    public boolean isClustered() {
+        return getZoom() < LOD_ZOOM;
+    }
+
+    public double getZoom() {
+        return this.scale.getX();
+    }
+
+    /**
+     * Zoom the pane, keeping a point of it where it is in the viewport
+     *
+     * @param zoom the new zoom, clamped to MIN_ZOOM and MAX_ZOOM
+     * @param x    the x coordinate of the point in the pane
+     * @param y    the y coordinate of the point in the pane
+     */
+    public void zoomAt(double zoom, double x, double y) {
+        Bounds area = visibleArea();
+        zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom));
+        if (area == null || zoom == getZoom()) return;
+        double screenX = (x - area.getMinX()) * getZoom(), screenY = (y - area.getMinY()) * getZoom();
+        this.scale.setX(zoom);
+        this.scale.setY(zoom);
+        Bounds content = this.controller.scrollPane.getContent().getLayoutBounds();
+        Bounds viewport = this.controller.scrollPane.getViewportBounds();
+        if (content.getWidth() > viewport.getWidth())
+            this.controller.scrollPane.setHvalue(Math.max(0, Math.min(1,
+                    (x * zoom - screenX - content.getMinX()) / (content.getWidth() - viewport.getWidth()))));
+        if (content.getHeight() > viewport.getHeight())
+            this.controller.scrollPane.setVvalue(Math.max(0, Math.min(1,
+                    (y * zoom - screenY - content.getMinY()) / (content.getHeight() - viewport.getHeight()))));
+        if (isClustered())
+            this.controller.statusLabel.setText(String.format("Zoomed to %.1f%%, vertices are drawn as clusters, click to zoom in.", zoom * 100));
+        else
+            this.controller.statusLabel.setText(String.format("Zoomed to %.1f%%.", zoom * 100));
+        requestRefresh();
+    }
+
+    /**
+     * Zoom the pane, keeping the center of the viewport where it is
+     *
+     * @param zoom the new zoom, clamped to MIN_ZOOM and MAX_ZOOM
+     */
+    public void zoom(double zoom) {
+        Bounds area = visibleArea();
+        if (area != null)
+            zoomAt(zoom, area.getCenterX(), area.getCenterY());
+    }
+
+    /**
+     * Return the part of the pane visible in the viewport of the scroll pane
+     *
+     * @return the visible area in the coordinates of the pane, null before the first layout
+     */
+    public Bounds visibleArea() {
+        Bounds viewport = this.controller.scrollPane.getViewportBounds();
+        if (viewport.getWidth() <= 0 || viewport.getHeight() <= 0) return null;
+        Bounds content = this.controller.scrollPane.getContent().getLayoutBounds();
+        double zoom = getZoom();
+        double x = content.getMinX() + this.controller.scrollPane.getHvalue() * Math.max(0, content.getWidth() - viewport.getWidth());
+        double y = content.getMinY() + this.controller.scrollPane.getVvalue() * Math.max(0, content.getHeight() - viewport.getHeight());
+        return new BoundingBox(x / zoom, y / zoom, viewport.getWidth() / zoom, viewport.getHeight() / zoom);
+    }
+
+    /**
+     * Add or remove the canvas
+     *
+     * @param used true if the canvas is needed
+     */
+    private void useCanvas(boolean used) {
+        if (used == (this.canvas != null)) return;
+        if (used) {
+            this.canvas = new MapCanvas(this.controller);
+            this.controller.pane.getChildren().add(0, this.canvas.canvas);
+        } else {
+            this.controller.pane.getChildren().remove(this.canvas.canvas);
+            this.canvas = null;
+        }
+    }
+
+    /**
+     * Show the elements near the viewport and hide all others, except vertices and edges being
+     * renamed or reweighted or with their context menu open and the vertex an edge is being
+     * drawn from. In canvas mode only the selected elements among those near the viewport are
+     * shown, and the canvas is redrawn. Zoomed out to clusters no element is shown but those.
+     */
+    public void refresh() {
+        Bounds area = visibleArea();
+        if (area == null) return;
+        boolean clustered = isClustered();
+        useCanvas(this.canvasMode || clustered);
+        double minX = area.getMinX() - MARGIN, minY = area.getMinY() - MARGIN;
+        double maxX = area.getMaxX() + MARGIN, maxY = area.getMaxY() + MARGIN;
+
+        List<VertexFD> near = new ArrayList<>();
+        HashSet<VertexFD> vertices = new HashSet<>();
+        List<EdgeFD> nearEdges = new ArrayList<>();
+        HashSet<EdgeFD> edges = new HashSet<>();
+        if (!clustered) {
+            double r = VertexFD.RADIUS;
+            for (int id : this.controller.backend.verticesInRectangle(minX - r, minY - r, maxX + r, maxY + r)) {
+                VertexFD vertex = this.controller.vertices.get(id);
+                if (vertex == null) continue;
+                near.add(vertex);
+                if (!this.canvasMode || vertex.selected) vertices.add(vertex);
+            }
+            double o = EdgeFD.OFFSET;
+            for (int id : this.controller.backend.edgesInRectangle(minX - o, minY - o, maxX + o, maxY + o)) {
+                EdgeFD edge = this.controller.edges.get(id);
+                if (edge == null) continue;
+                nearEdges.add(edge);
+                if (!this.canvasMode || edge.selected) edges.add(edge);
+            }
+        }
+        for (VertexFD vertex : this.shownVertices)
+            if (vertex.dragging && vertex.group.isPressed()) { // keep the vertex under the mouse, with its edges
+                vertices.add(vertex);
+                List<EdgeFD> incident = this.controller.edgesConnectedToVertex.get(vertex);
+                if (incident != null && !this.canvasMode && !clustered) edges.addAll(incident);
+            }
+
+        HashSet<Node> leaving = new HashSet<>();
+        for (VertexFD vertex : new ArrayList<>(this.shownVertices))
+            if (!vertices.contains(vertex) && !vertex.editing && !vertex.contextMenu.isShowing()
+                    && vertex != this.controller.drawFromVertex) {
+                leaving.add(vertex.group);
+                release(vertex);
+            }
+        for (EdgeFD edge : new ArrayList<>(this.shownEdges))
+            if (!edges.contains(edge) && !edge.editing && !edge.contextMenu.isShowing()) {
+                leaving.add(edge.group);
+                release(edge);
+            }
+        if (!leaving.isEmpty())
+            this.controller.pane.getChildren().removeAll(leaving);
+
+        List<Node> entering = new ArrayList<>();
+        for (VertexFD vertex : vertices)
+            if (vertex.view == null) entering.add(attach(vertex));
+        for (EdgeFD edge : edges)
+            if (edge.view == null) entering.add(attach(edge));
+        this.controller.pane.getChildren().addAll(entering);
+        if (clustered)
+            this.canvas.drawClusters(area, getZoom(), this.controller.backend.getClusters());
+        else if (this.canvasMode)
+            this.canvas.draw(area, getZoom(), near, nearEdges);
+    }
+
+    /**
+     * Show a vertex, e.g. one just drawn, without waiting for the next refresh
+     */
+    public void show(VertexFD vertex) {
+        if (vertex.view == null)
+            this.controller.pane.getChildren().add(attach(vertex));
+    }
+
+    /**
+     * Show an edge, e.g. one just drawn, without waiting for the next refresh
+     */
+    public void show(EdgeFD edge) {
+        if (edge.view == null)
+            this.controller.pane.getChildren().add(attach(edge));
+    }
+
+    /**
+     * Hide a vertex, e.g. one being removed
+     */
+    public void hide(VertexFD vertex) {
+        requestRedraw();
+        if (vertex.view == null) return;
+        this.controller.pane.getChildren().remove(vertex.group);
+        release(vertex);
+    }
+
+    /**
+     * Hide an edge, e.g. one being removed
+     */
+    public void hide(EdgeFD edge) {
+        requestRedraw();
+        if (edge.view == null) return;
+        this.controller.pane.getChildren().remove(edge.group);
+        release(edge);
+    }
+
+    private Node attach(VertexFD vertex) {
+        VertexFD.View view = this.vertexPool.poll();
+        vertex.show(view != null ? view : new VertexFD.View());
+        this.shownVertices.add(vertex);
+        return vertex.group;
+    }
+
+    private Node attach(EdgeFD edge) {
+        EdgeFD.View view = this.edgePool.poll();
+        edge.show(view != null ? view : new EdgeFD.View());
+        this.shownEdges.add(edge);
+        return edge.group;
+    }
+
+    private void release(VertexFD vertex) {
+        this.shownVertices.remove(vertex);
+        this.vertexPool.push(vertex.hide());
+    }
+
+    private void release(EdgeFD edge) {
+        this.shownEdges.remove(edge);
+        this.edgePool.push(edge.hide());
+    }
+
+    /**
+     * Grow the pane to take in a vertex at a position, so that it can be scrolled to
+     */
+    public void extend(double x, double y) {
+        if (x + VertexFD.RADIUS > this.width) {
+            this.width = x + VertexFD.RADIUS;
+            this.controller.pane.setMinWidth(this.width);
+        }
+        if (y + VertexFD.RADIUS > this.height) {
+            this.height = y + VertexFD.RADIUS;
+            this.controller.pane.setMinHeight(this.height);
+        }
+    }
+
+    /**
+     * Hide every element and shrink the pane back for a new map, keeping the pooled nodes
+     */
+    public void clear() {
+        for (VertexFD vertex : new ArrayList<>(this.shownVertices))
+            release(vertex);
+        for (EdgeFD edge : new ArrayList<>(this.shownEdges))
+            release(edge);
+        this.controller.pane.getChildren().clear();
+        if (this.canvas != null)
+            this.controller.pane.getChildren().add(this.canvas.canvas);
+        this.width = 0;
+        this.height = 0;
+        this.controller.pane.setMinSize(0, 0);
+    }
+
+    public int getShownVertexCount() {
+        return this.shownVertices.size();
+    }
+
+    public int getShownEdgeCount() {
+        return this.shownEdges.size();
+    }
+}
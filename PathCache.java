@@ -0,0 +1,124 @@
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded least-recently-used cache of shortest path results keyed by (from, to) vertex
+ * ids. Every entry is tagged with the graph version it was computed for; bumping the
+ * version on a change of the graph makes all older entries stale in O(1), and stale entries
+ * are dropped when they are next looked up or evicted. The cache may be shared between threads:
+ * every operation holds the monitor of the cache, and the hit and miss counters are atomic so
+ * that they can be read without it.
+ */
+public class PathCache {
+
+    /**
+     * The shortest path between two vertices, or the fact that there is none.
+     */
+    public static final class Route {
+        public final List<Integer> vertexIds; // null if there is no path
+        public final List<Integer> edgeIds; // null if there is no path
+        public final double distance; // infinity if there is no path
+        protected long version; // graph version the route was computed for
+
+        public Route(List<Integer> vertexIds, List<Integer> edgeIds, double distance) {
+            this.vertexIds = vertexIds;
+            this.edgeIds = edgeIds;
+            this.distance = distance;
+        }
+
+        public boolean exists() {
+            return vertexIds != null;
+        }
+    }
+
+    protected final int capacity;
+    protected final LinkedHashMap<Long, Route> entries; // in access order, least recently used first
+    protected long version;
+    protected final AtomicLong hits;
+    protected final AtomicLong misses;
+
+    /**
+     * Constructor
+     *
+     * @param capacity the number of routes kept before the least recently used one is evicted
+     * @throws IllegalArgumentException if capacity is less than 1
+     */
+    public PathCache(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Cache capacity must be at least 1");
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Long, Route>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Route> eldest) {
+                return size() > PathCache.this.capacity;
+            }
+        };
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * Look up the route from one vertex to another computed for the current graph version.
+     *
+     * @return the cached route, or null on a miss
+     */
+    public synchronized Route get(int from, int to) {
+        long key = LongIntMap.key(from, to);
+        Route route = entries.get(key);
+        if (route != null && route.version != version) {
+            entries.remove(key);
+            route = null;
+        }
+        if (route == null) misses.incrementAndGet();
+        else hits.incrementAndGet();
+        return route;
+    }
+
+    /**
+     * Cache a route computed for the current graph version.
+     */
+    public synchronized void put(int from, int to, Route route) {
+        route.version = version;
+        entries.put(LongIntMap.key(from, to), route);
+    }
+
+    /**
+     * Mark every cached route as stale, to be called whenever the graph changes.
+     */
+    public synchronized void invalidate() {
+        version++;
+    }
+
+    /**
+     * Drop all cached routes and reset the counters.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        version++;
+        hits.set(0);
+        misses.set(0);
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("PathCache{size=%d, capacity=%d, version=%d, hits=%d, misses=%d}",
+                entries.size(), capacity, version, hits.get(), misses.get());
+    }
+}
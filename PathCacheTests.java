@@ -0,0 +1,164 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the versioned least-recently-used cache of shortest path results
+ */
+public class PathCacheTests {
+    private static PathCache.Route route(int from, int to) {
+        return new PathCache.Route(List.of(from, to), List.of(from * 100 + to), 1);
+    }
+
+    /**
+     * A cached route is a hit until the cache is invalidated, and a miss for the old version
+     * afterwards, until it is cached again
+     */
+    @Test
+    public void testHitAndMissAfterInvalidate() {
+        PathCache cache = new PathCache(10);
+        assertNull(cache.get(1, 2));
+        PathCache.Route route = route(1, 2);
+        cache.put(1, 2, route);
+        assertSame(route, cache.get(1, 2));
+        assertNull(cache.get(2, 1)); // the direction matters
+        long version = cache.getVersion();
+        cache.invalidate();
+        assertEquals(version + 1, cache.getVersion());
+        assertEquals(1, cache.size()); // stale entries stay until they are looked up
+        assertNull(cache.get(1, 2));
+        assertEquals(0, cache.size());
+        PathCache.Route again = route(1, 2);
+        cache.put(1, 2, again);
+        assertSame(again, cache.get(1, 2));
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getMisses());
+        assertNull(cache.get(1, 2));
+    }
+
+    /**
+     * At capacity the least recently used route is evicted, where a lookup counts as a use
+     */
+    @Test
+    public void testEvictionOrder() {
+        PathCache cache = new PathCache(3);
+        cache.put(1, 1, route(1, 1));
+        cache.put(2, 2, route(2, 2));
+        cache.put(3, 3, route(3, 3));
+        cache.get(1, 1); // 2 is now the least recently used
+        cache.put(4, 4, route(4, 4));
+        assertEquals(3, cache.size());
+        assertNull(cache.get(2, 2));
+        cache.put(1, 1, route(1, 1)); // replacing counts as a use too, 3 is next
+        cache.put(5, 5, route(5, 5));
+        assertNull(cache.get(3, 3));
+        assertNotNull(cache.get(1, 1));
+        assertNotNull(cache.get(4, 4));
+        assertNotNull(cache.get(5, 5));
+        assertThrows(IllegalArgumentException.class, () -> new PathCache(0));
+    }
+
+    /**
+     * The fact that there is no path is cached like a route, so asking again throws without
+     * searching, until the graph changes
+     */
+    @Test
+    public void testNoPathIsCached() throws IOException {
+        PathCache cache = new PathCache(10);
+        PathCache.Route none = new PathCache.Route(null, null, Double.POSITIVE_INFINITY);
+        assertFalse(none.exists());
+        assertTrue(route(1, 2).exists());
+        cache.put(1, 2, none);
+        assertSame(none, cache.get(1, 2));
+
+        IBackend backend = new BackendPlaceholder(CSRGraph::new);
+        backend.addVertex(new VertexGeneral(0, "a", 0, 0));
+        backend.addVertex(new VertexGeneral(1, "b", 10, 0));
+        backend.addVertex(new VertexGeneral(2, "c", 20, 0));
+        backend.addEdge(new EdgeGeneral(0, 0, 0, 1));
+        PathCache backendCache = backend.getPathCache();
+        assertThrows(NoSuchElementException.class, () -> backend.getShortestByDistance(0, 2));
+        long misses = backendCache.getMisses();
+        assertThrows(NoSuchElementException.class, () -> backend.getShortestByVertex(0, 2));
+        assertEquals(misses, backendCache.getMisses());
+        assertFalse(backendCache.get(0, 2).exists());
+        backend.addEdge(new EdgeGeneral(1, 0, 1, 2));
+        assertEquals(20, backend.getShortestByDistance(0, 2), 1e-9);
+        assertEquals(List.of(0, 1), backend.getShortestByEdge(0, 2));
+    }
+
+    /**
+     * Moving a vertex to where it already is, as every click on it does, or renaming it keeps
+     * the cached routes in every backend and graph engine, while a move invalidates them, also
+     * one the vertex object already reports before the backend is told
+     */
+    @Test
+    public void testOnlyMovesInvalidate() throws IOException {
+        List<Supplier<IGraph>> engines = List.of(AEPlaceholder::new, CSRGraph::new, ConcurrentGraph::new);
+        for (Supplier<IGraph> engine : engines)
+            for (IBackend backend : new IBackend[]{new Backend(engine), new BackendPlaceholder(engine)}) {
+                IVertex moved = new VertexGeneral(1, "b", 10, 0);
+                backend.addVertex(new VertexGeneral(0, "a", 0, 0));
+                backend.addVertex(moved);
+                backend.addEdge(new EdgeGeneral(0, 0, 0, 1));
+                PathCache cache = backend.getPathCache();
+                assertEquals(10, backend.getShortestByDistance(0, 1), 1e-9);
+                long version = cache.getVersion();
+                long misses = cache.getMisses();
+                backend.changeVertex(1, 10, 0);
+                backend.changeVertex(1, "renamed");
+                assertEquals(version, cache.getVersion());
+                assertEquals(10, backend.getShortestByDistance(0, 1), 1e-9);
+                assertEquals(misses, cache.getMisses());
+                backend.changeVertex(1, 20, 0);
+                assertEquals(20, backend.getShortestByDistance(0, 1), 1e-9);
+                moved.setX(30); // the vertex object moves first, as frontend vertices do
+                backend.changeVertex(1, 30, 0);
+                assertEquals(30, backend.getShortestByDistance(0, 1), 1e-9);
+                assertEquals(misses + 2, cache.getMisses());
+                assertEquals(List.of(1), backend.searchByVertex("renamed"));
+            }
+    }
+
+    /**
+     * Removing a vertex also drops its edges, so that they can be added again between the
+     * same ids, and the routes through them name the edges added last
+     */
+    @Test
+    public void testRemoveVertexDropsEdges() throws IOException {
+        for (IBackend backend : new IBackend[]{new Backend(), new BackendPlaceholder()}) {
+            backend.addVertex(new VertexGeneral(0, "a", 0, 0));
+            backend.addVertex(new VertexGeneral(1, "b", 10, 0));
+            backend.addVertex(new VertexGeneral(2, "c", 20, 0));
+            backend.addEdge(new EdgeGeneral(0, 0, 0, 1));
+            backend.addEdge(new EdgeGeneral(1, 0, 1, 2));
+            backend.addEdge(new EdgeGeneral(2, 0, 2, 0));
+            assertEquals(List.of(0, 1), backend.getShortestByEdge(0, 2));
+            backend.removeVertex(1);
+            assertFalse(backend.containsEdge(0));
+            assertFalse(backend.containsEdge(1));
+            assertTrue(backend.containsEdge(2));
+            assertEquals(1, backend.getEdges().size());
+            backend.addVertex(new VertexGeneral(1, "b", 10, 0));
+            backend.addEdge(new EdgeGeneral(0, 0, 0, 1)); // the same id again
+            backend.addEdge(new EdgeGeneral(3, 0, 1, 2)); // between the same ids again
+            assertEquals(List.of(0, 3), backend.getShortestByEdge(0, 2));
+            assertEquals(List.of(0, 1, 2), backend.getShortestByVertex(0, 2));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.Arrays;
+
+/**
+ * The vertices within a maximum distance of a source vertex, as found by a bounded Dijkstra
+ * search, in order of increasing distance. The source comes first at distance 0. Ids and
+ * distances are kept in parallel primitive arrays, so a large set costs no boxing.
+ */
+public class ReachableSet {
+    protected final int sourceId;
+    protected final double maxCost;
+    protected int[] ids; // vertex ids in order of increasing distance
+    protected double[] distances; // distance from the source of each vertex in ids
+    protected int size;
+
+    /**
+     * Constructor of an empty set, filled by the search through add.
+     *
+     * @param sourceId the id of the source vertex
+     * @param maxCost  the largest distance from the source a vertex in the set may have
+     */
+    public ReachableSet(int sourceId, double maxCost) {
+        this.sourceId = sourceId;
+        this.maxCost = maxCost;
+        this.ids = new int[16];
+        this.distances = new double[16];
+        this.size = 0;
+    }
+
+    /**
+     * Append a vertex settled by the search.
+     */
+    protected void add(int id, double distance) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            distances = Arrays.copyOf(distances, size * 2);
+        }
+        ids[size] = id;
+        distances[size] = distance;
+        size++;
+    }
+
+    public int getSourceId() {
+        return sourceId;
+    }
+
+    public double getMaxCost() {
+        return maxCost;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getId(int i) {
+        return ids[i];
+    }
+
+    public double getDistance(int i) {
+        return distances[i];
+    }
+
+    /**
+     * Return the ids of the vertices in the set, in order of increasing distance.
+     */
+    public int[] getIds() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    /**
+     * Return the distances of the vertices in the set, in the order of getIds().
+     */
+    public double[] getDistances() {
+        return Arrays.copyOf(distances, size);
+    }
+}
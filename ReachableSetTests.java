@@ -0,0 +1,177 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the bounded range queries of the graph engines against the distances of
+ * a plain Dijkstra
+ */
+public class ReachableSetTests {
+    /**
+     * A range query on some graph engine, from a source vertex up to a distance.
+     */
+    private interface Query {
+        ReachableSet verticesWithin(IVertex source, double maxCost);
+    }
+
+    /**
+     * Check a set against the vertices the reference Dijkstra finds within its distance of its
+     * source. Vertices whose distance is within rounding of maxCost may be in the set or not.
+     */
+    private static void checkSet(ReferenceGraph reference, IVertex source, double maxCost, ReachableSet reachable) {
+        assertEquals(source.getId(), reachable.getSourceId());
+        assertEquals(maxCost, reachable.getMaxCost());
+        assertEquals(source.getId(), reachable.getId(0)); // the source first, at distance 0
+        assertEquals(0, reachable.getDistance(0));
+        Map<Integer, Double> expected = new HashMap<>();
+        for (Map.Entry<IVertex, Double> entry : reference.distancesFrom(source).entrySet())
+            expected.put(entry.getKey().getId(), entry.getValue());
+        HashMap<Integer, Double> found = new HashMap<>();
+        for (int i = 0; i < reachable.size(); i++) {
+            assertNull(found.put(reachable.getId(i), reachable.getDistance(i))); // each vertex once
+            assertTrue(reachable.getDistance(i) <= maxCost);
+            if (i > 0) assertTrue(reachable.getDistance(i - 1) <= reachable.getDistance(i)); // nearest first
+        }
+        for (Map.Entry<Integer, Double> entry : expected.entrySet()) {
+            double distance = entry.getValue();
+            double delta = 1e-9 * Math.max(1, distance);
+            if (Math.abs(distance - maxCost) <= delta) continue;
+            assertEquals(distance < maxCost, found.containsKey(entry.getKey()));
+            if (distance < maxCost) assertEquals(distance, found.get(entry.getKey()), delta);
+        }
+        for (int id : found.keySet())
+            assertTrue(expected.containsKey(id)); // no vertex the source does not reach
+        assertEquals(reachable.size(), reachable.getIds().length);
+        assertEquals(reachable.size(), reachable.getDistances().length);
+    }
+
+    /**
+     * Check the range queries from random sources of random graphs built on an engine, over
+     * distances from nothing to the whole graph.
+     */
+    private static void checkEngine(Supplier<IGraph> engine, Function<IGraph, Query> query) {
+        double[] maxCosts = {0, 50, 150, 400, 1000, Double.POSITIVE_INFINITY};
+        for (long seed = 0; seed < 4; seed++) {
+            IGraph graph = engine.get();
+            ReferenceGraph reference = ReferenceGraph.random(graph, seed, 50, 100);
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < 5; i++) {
+                    IVertex source = reference.randomVertex();
+                    for (double maxCost : maxCosts)
+                        checkSet(reference, source, maxCost, query.apply(graph).verticesWithin(source, maxCost));
+                }
+                reference.removeVertex(reference.randomVertex());
+                reference.addVertex();
+                reference.addEdge(reference.randomVertex(), reference.randomVertex());
+            }
+        }
+    }
+
+    /**
+     * Every engine and snapshots find the vertices within a distance that a plain Dijkstra
+     * finds, nearest first and starting with the source
+     */
+    @Test
+    public void testMatchesDijkstra() {
+        checkEngine(AEPlaceholder::new, graph -> graph::verticesWithin);
+        for (SearchMode mode : SearchMode.values())
+            checkEngine(() -> new CSRGraph(mode), graph -> graph::verticesWithin);
+        checkEngine(ConcurrentGraph::new, graph -> graph::verticesWithin);
+        checkEngine(CSRGraph::new, graph -> (source, maxCost) -> graph.snapshot().verticesWithin(source.getId(), maxCost));
+    }
+
+    /**
+     * The engines a range query can run on, each given its graph.
+     */
+    private static List<Function<IGraph, Query>> queries() {
+        return List.of(graph -> graph::verticesWithin,
+                graph -> (source, maxCost) -> graph.snapshot().verticesWithin(source.getId(), maxCost));
+    }
+
+    /**
+     * A vertex exactly maxCost away is in the set, one just beyond it is not, and vertices the
+     * source does not reach are not in it however far it goes
+     */
+    @Test
+    public void testBoundaryAndUnreachable() {
+        for (Supplier<IGraph> engine : List.<Supplier<IGraph>>of(AEPlaceholder::new, CSRGraph::new, ConcurrentGraph::new))
+            for (Function<IGraph, Query> query : queries()) {
+                IGraph graph = engine.get();
+                ReferenceGraph reference = ReferenceGraph.random(graph, 1, 6, 0);
+                List<IVertex> vertices = reference.getVertices();
+                reference.addEdge(vertices.get(0), vertices.get(1), 2); // a line 0 -> 1 -> 2 -> 3
+                reference.addEdge(vertices.get(1), vertices.get(2), 3);
+                reference.addEdge(vertices.get(2), vertices.get(3), 4);
+                reference.addEdge(vertices.get(4), vertices.get(0), 1); // 4 and 5 are not reached from 0
+                IVertex source = vertices.get(0);
+                ReachableSet reachable = query.apply(graph).verticesWithin(source, 5);
+                assertArrayEquals(new int[]{vertices.get(0).getId(), vertices.get(1).getId(), vertices.get(2).getId()},
+                        reachable.getIds());
+                assertArrayEquals(new double[]{0, 2, 5}, reachable.getDistances());
+                assertEquals(3, query.apply(graph).verticesWithin(source, Math.nextDown(9.0)).size());
+                assertEquals(4, query.apply(graph).verticesWithin(source, 9).size());
+                ReachableSet all = query.apply(graph).verticesWithin(source, Double.POSITIVE_INFINITY);
+                assertEquals(4, all.size());
+                for (int i = 0; i < all.size(); i++)
+                    assertTrue(all.getId(i) != vertices.get(4).getId() && all.getId(i) != vertices.get(5).getId());
+                checkSet(reference, source, 5, reachable);
+            }
+    }
+
+    /**
+     * The source is in the set at distance 0 even with nothing else in reach, also when it
+     * has a loop, while a negative or NaN distance gives an empty set and an unknown source
+     * throws
+     */
+    @Test
+    public void testSource() {
+        for (Supplier<IGraph> engine : List.<Supplier<IGraph>>of(AEPlaceholder::new, CSRGraph::new, ConcurrentGraph::new))
+            for (Function<IGraph, Query> query : queries()) {
+                IGraph graph = engine.get();
+                ReferenceGraph reference = ReferenceGraph.random(graph, 2, 3, 0);
+                IVertex source = reference.getVertices().get(0);
+                reference.addEdge(source, reference.getVertices().get(1), 10);
+                reference.addEdge(source, source, 1);
+                ReachableSet reachable = query.apply(graph).verticesWithin(source, 0);
+                assertArrayEquals(new int[]{source.getId()}, reachable.getIds());
+                assertArrayEquals(new double[]{0}, reachable.getDistances());
+                assertEquals(1, query.apply(graph).verticesWithin(source, 9).size());
+                assertEquals(0, query.apply(graph).verticesWithin(source, -1).size());
+                assertEquals(0, query.apply(graph).verticesWithin(source, Double.NaN).size());
+                IVertex unknown = new VertexGeneral(100, "unknown", 0, 0);
+                assertThrows(NoSuchElementException.class, () -> query.apply(graph).verticesWithin(unknown, 1));
+            }
+    }
+
+    /**
+     * The backends look up the source by id and find the same set as the graph
+     */
+    @Test
+    public void testBackends() throws IOException {
+        for (IBackend backend : new IBackend[]{new Backend(), new BackendPlaceholder()}) {
+            backend.addVertex(new VertexGeneral(0, "a", 0, 0));
+            backend.addVertex(new VertexGeneral(1, "b", 10, 0));
+            backend.addVertex(new VertexGeneral(2, "c", 20, 0));
+            backend.addVertex(new VertexGeneral(3, "d", 30, 0));
+            backend.addEdge(new EdgeGeneral(0, 0, 0, 1));
+            backend.addEdge(new EdgeGeneral(1, 0, 1, 2));
+            backend.addEdge(new EdgeGeneral(2, 0, 3, 0));
+            ReachableSet reachable = backend.verticesWithin(0, 20);
+            assertArrayEquals(new int[]{0, 1, 2}, reachable.getIds());
+            assertArrayEquals(new double[]{0, 10, 20}, reachable.getDistances(), 1e-9);
+            assertArrayEquals(new int[]{0, 1}, backend.verticesWithin(0, 19).getIds());
+        }
+    }
+}
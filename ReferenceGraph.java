@@ -0,0 +1,217 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A random graph for the shortest path tests. Every change is made to the graph under test
+ * and to plain adjacency maps kept here, so that the answers of the graph can be checked
+ * against a textbook Dijkstra over the maps.
+ */
+public class ReferenceGraph {
+    public static final double SIZE = 1000; // vertices lie in a square of this side
+
+    private final IGraph graph;
+    private final Random random;
+    private final List<IVertex> vertices;
+    private final HashMap<IVertex, HashMap<IVertex, Double>> out; // source -> target -> weight
+    private int nextId;
+
+    public ReferenceGraph(IGraph graph, long seed) {
+        this.graph = graph;
+        this.random = new Random(seed);
+        this.vertices = new ArrayList<>();
+        this.out = new HashMap<>();
+    }
+
+    /**
+     * Fill a graph with vertices at random positions and random edges between them, each
+     * at least as heavy as the straight line between its ends.
+     */
+    public static ReferenceGraph random(IGraph graph, long seed, int vertexCount, int edgeCount) {
+        ReferenceGraph reference = new ReferenceGraph(graph, seed);
+        for (int i = 0; i < vertexCount; i++)
+            reference.addVertex();
+        for (int i = 0; i < edgeCount; i++)
+            reference.addEdge(reference.randomVertex(), reference.randomVertex());
+        return reference;
+    }
+
+    public IGraph getGraph() {
+        return graph;
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+
+    public List<IVertex> getVertices() {
+        return vertices;
+    }
+
+    public IVertex randomVertex() {
+        return vertices.get(random.nextInt(vertices.size()));
+    }
+
+    /**
+     * Add a vertex at a random position.
+     */
+    public IVertex addVertex() {
+        IVertex vertex = new VertexGeneral(nextId, "v" + nextId, random.nextDouble() * SIZE, random.nextDouble() * SIZE);
+        nextId++;
+        graph.insertVertex(vertex);
+        vertices.add(vertex);
+        out.put(vertex, new HashMap<>());
+        return vertex;
+    }
+
+    /**
+     * Add an edge between 1 and 2 times as heavy as the straight line between its ends.
+     *
+     * @return false if the edge was already there
+     */
+    public boolean addEdge(IVertex source, IVertex target) {
+        return addEdge(source, target, euclidean(source, target) * (1 + random.nextDouble()));
+    }
+
+    public boolean addEdge(IVertex source, IVertex target, double weight) {
+        boolean inserted = graph.insertEdge(source, target, weight);
+        assertEquals(!out.get(source).containsKey(target), inserted);
+        if (inserted) out.get(source).put(target, weight);
+        return inserted;
+    }
+
+    public void removeVertex(IVertex vertex) {
+        assertTrue(graph.removeVertex(vertex));
+        vertices.remove(vertex);
+        out.remove(vertex);
+        for (HashMap<IVertex, Double> edges : out.values())
+            edges.remove(vertex);
+    }
+
+    public boolean removeEdge(IVertex source, IVertex target) {
+        boolean removed = graph.removeEdge(source, target);
+        assertEquals(out.get(source).remove(target) != null, removed);
+        return removed;
+    }
+
+    public static double euclidean(IVertex a, IVertex b) {
+        double dx = a.getX() - b.getX();
+        double dy = a.getY() - b.getY();
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Find the distance from source to target with a plain Dijkstra.
+     *
+     * @return the distance, or infinity if target cannot be reached
+     */
+    public double distance(IVertex source, IVertex target) {
+        return distancesFrom(source).getOrDefault(target, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Find the distance from source to every vertex it reaches with a plain Dijkstra.
+     */
+    public Map<IVertex, Double> distancesFrom(IVertex source) {
+        HashMap<IVertex, Double> settled = new HashMap<>();
+        PriorityQueue<Object[]> queue = new PriorityQueue<>((a, b) -> Double.compare((double) a[1], (double) b[1]));
+        queue.add(new Object[]{source, 0.0});
+        while (!queue.isEmpty()) {
+            Object[] entry = queue.poll();
+            IVertex vertex = (IVertex) entry[0];
+            if (settled.containsKey(vertex)) continue;
+            double distance = (double) entry[1];
+            settled.put(vertex, distance);
+            for (Map.Entry<IVertex, Double> edge : out.get(vertex).entrySet())
+                if (!settled.containsKey(edge.getKey()))
+                    queue.add(new Object[]{edge.getKey(), distance + edge.getValue()});
+        }
+        return settled;
+    }
+
+    /**
+     * Enumerate every loopless path from source to target by brute force.
+     *
+     * @return the costs of the paths, cheapest first
+     */
+    public List<Double> simplePathCosts(IVertex source, IVertex target) {
+        List<Double> costs = new ArrayList<>();
+        simplePaths(source, target, 0, new HashSet<>(), costs);
+        Collections.sort(costs);
+        return costs;
+    }
+
+    private void simplePaths(IVertex vertex, IVertex target, double cost, Set<IVertex> visited, List<Double> costs) {
+        if (vertex == target) {
+            costs.add(cost);
+            return;
+        }
+        visited.add(vertex);
+        for (Map.Entry<IVertex, Double> edge : out.get(vertex).entrySet())
+            if (!visited.contains(edge.getKey()))
+                simplePaths(edge.getKey(), target, cost + edge.getValue(), visited, costs);
+        visited.remove(vertex);
+    }
+
+    /**
+     * Return the sum of the weights along a path.
+     *
+     * @return the cost, or infinity if the path uses an edge that is not in the graph
+     */
+    public double cost(List<IVertex> path) {
+        double cost = 0;
+        for (int i = 1; i < path.size(); i++) {
+            Double weight = out.get(path.get(i - 1)).get(path.get(i));
+            if (weight == null) return Double.POSITIVE_INFINITY;
+            cost += weight;
+        }
+        return cost;
+    }
+
+    /**
+     * Check the path cost and the shortest path the graph finds between two vertices against
+     * the plain Dijkstra, both of them throwing when target cannot be reached.
+     */
+    public void checkQuery(IVertex source, IVertex target) {
+        double expected = distance(source, target);
+        if (expected == Double.POSITIVE_INFINITY) {
+            assertThrows(NoSuchElementException.class, () -> graph.getPathCostD(source, target));
+            assertThrows(NoSuchElementException.class, () -> graph.shortestPath(source, target));
+            return;
+        }
+        double delta = 1e-9 * Math.max(1, expected);
+        assertEquals(expected, graph.getPathCostD(source, target), delta);
+        List<IVertex> path = graph.shortestPath(source, target);
+        assertSame(source, path.get(0));
+        assertSame(target, path.get(path.size() - 1));
+        assertEquals(expected, cost(path), delta);
+    }
+
+    /**
+     * Check a number of queries between random vertices.
+     *
+     * @return the number of those queries whose target could not be reached
+     */
+    public int checkQueries(int count) {
+        int unreachable = 0;
+        for (int i = 0; i < count; i++) {
+            IVertex source = randomVertex();
+            IVertex target = randomVertex();
+            if (distance(source, target) == Double.POSITIVE_INFINITY) unreachable++;
+            checkQuery(source, target);
+        }
+        return unreachable;
+    }
+}
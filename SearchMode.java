@@ -0,0 +1,10 @@
+/**
+ * Algorithms a graph engine can answer point-to-point shortest path queries with.
+ */
+public enum SearchMode {
+    DIJKSTRA, // plain Dijkstra from the start vertex
+    ASTAR, // A* with the straight-line distance to the end vertex as heuristic
+    BIDIRECTIONAL, // Dijkstra from both the start and the end vertex until the searches meet
+    CONTRACTION_HIERARCHIES, // bidirectional upward search over a preprocessed contraction hierarchy
+    ALT // A* with lower bounds from precomputed landmark distances as heuristic
+}
@@ -0,0 +1,115 @@
+import java.util.Arrays;
+
+/**
+ * Working memory of a shortest path search over dense vertex indices: tentative distances,
+ * predecessors and the indexed heap of the frontier. Entries are tagged with the search
+ * they were written by, so starting a new search is O(1) and a state kept by a graph can be
+ * reused by any number of queries without allocating.
+ */
+public class SearchState {
+    public final IndexedHeap heap;
+    protected double[] dist;
+    protected int[] pred;
+    protected int[] stamp; // search generation that last wrote dist/pred of each vertex
+    protected int generation;
+
+    /**
+     * Constructor
+     *
+     * @param capacity the number of vertices the state can hold, grown on demand
+     * @param arity    the arity of the heap
+     */
+    public SearchState(int capacity, int arity) {
+        capacity = Math.max(capacity, 1);
+        this.heap = new IndexedHeap(capacity, arity);
+        this.dist = new double[capacity];
+        this.pred = new int[capacity];
+        this.stamp = new int[capacity];
+        this.generation = 0;
+    }
+
+    /**
+     * Start a new search over vertexCount vertices, forgetting all previous distances.
+     *
+     * @param vertexCount the number of vertices of the graph to be searched
+     */
+    public void reset(int vertexCount) {
+        if (vertexCount > stamp.length) {
+            int capacity = Math.max(vertexCount, stamp.length * 2);
+            dist = Arrays.copyOf(dist, capacity);
+            pred = Arrays.copyOf(pred, capacity);
+            stamp = Arrays.copyOf(stamp, capacity);
+        }
+        heap.clear();
+        heap.ensureCapacity(vertexCount);
+        if (++generation == Integer.MAX_VALUE) { // wrapped around, old stamps become ambiguous
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * Tentative distance of a vertex in the current search, infinity if it was not reached.
+     */
+    public double dist(int v) {
+        return stamp[v] == generation ? dist[v] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Predecessor of a vertex in the current search, -1 for the source or an unreached vertex.
+     */
+    public int pred(int v) {
+        return stamp[v] == generation ? pred[v] : -1;
+    }
+
+    /**
+     * Check if a vertex was reached by the current search.
+     */
+    public boolean reached(int v) {
+        return stamp[v] == generation;
+    }
+
+    /**
+     * Check if a vertex was reached and removed from the frontier by the current search.
+     */
+    public boolean settled(int v) {
+        return stamp[v] == generation && !heap.contains(v);
+    }
+
+    /**
+     * Add a source of the search with the given initial distance.
+     */
+    public void addSource(int v, double distance) {
+        addSource(v, distance, 0);
+    }
+
+    /**
+     * Add a source of the search with the given initial distance, queueing it with key
+     * distance + bias.
+     */
+    public void addSource(int v, double distance, double bias) {
+        stamp[v] = generation;
+        dist[v] = distance;
+        pred[v] = -1;
+        heap.insertOrDecrease(v, distance + bias);
+    }
+
+    /**
+     * Relax an edge u -> v of the given weight, queueing v with key distance + bias.
+     *
+     * @param u      the vertex the edge leaves
+     * @param v      the vertex the edge enters
+     * @param weight the weight of the edge
+     * @param bias   added to the heap key only, e.g. the heuristic of an A* search
+     * @return true if the distance of v improved
+     */
+    public boolean relax(int u, int v, double weight, double bias) {
+        double candidate = dist[u] + weight;
+        if (stamp[v] == generation && candidate >= dist[v]) return false;
+        stamp[v] = generation;
+        dist[v] = candidate;
+        pred[v] = u;
+        heap.insertOrDecrease(v, candidate + bias);
+        return true;
+    }
+}
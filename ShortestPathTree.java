@@ -0,0 +1,107 @@
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The shortest paths from one source vertex to every vertex it reaches, as computed by a
+ * single full Dijkstra search: the distance and predecessor of each vertex index. A tree
+ * never changes after construction, so it keeps answering for the version of the graph it
+ * was computed on; the backends drop it when the graph changes. Each query follows the
+ * predecessors back to the source, so it costs O(path length).
+ */
+public class ShortestPathTree {
+    protected final IVertex[] data; // index -> data item
+    protected final int source; // index of the source
+    protected final double[] dist; // index -> distance from the source, infinity if not reached
+    protected final int[] pred; // index -> predecessor on the path from the source, -1 for the source
+    protected final LongIntMap indexOfId; // vertex id -> index
+
+    /**
+     * Constructor
+     *
+     * @param data   the data item of each vertex index
+     * @param source the index of the source vertex
+     * @param dist   the distance of each vertex index from the source
+     * @param pred   the predecessor of each vertex index, -1 for the source and unreached vertices
+     */
+    public ShortestPathTree(IVertex[] data, int source, double[] dist, int[] pred) {
+        this.data = data;
+        this.source = source;
+        this.dist = dist;
+        this.pred = pred;
+        this.indexOfId = new LongIntMap(data.length, -1);
+        for (int i = 0; i < data.length; i++)
+            indexOfId.put(data[i].getId(), i);
+    }
+
+    /**
+     * Build a tree from a finished full search.
+     *
+     * @param data   the data item of each vertex index
+     * @param source the index the search started from
+     * @param state  the search state, holding distances and predecessors of all reached vertices
+     * @return a tree holding a copy of the distances and predecessors
+     */
+    public static ShortestPathTree fromSearch(IVertex[] data, int source, SearchState state) {
+        double[] dist = new double[data.length];
+        int[] pred = new int[data.length];
+        for (int v = 0; v < data.length; v++) {
+            dist[v] = state.dist(v);
+            pred[v] = state.pred(v);
+        }
+        return new ShortestPathTree(data, source, dist, pred);
+    }
+
+    public IVertex getSource() {
+        return data[source];
+    }
+
+    public int getSourceId() {
+        return data[source].getId();
+    }
+
+    /**
+     * Check if the source reaches the vertex with the given id.
+     */
+    public boolean reaches(int id) {
+        int index = indexOfId.get(id);
+        return index != -1 && dist[index] != Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Look up the index of a reached vertex.
+     *
+     * @throws NoSuchElementException when the source does not reach a vertex with that id
+     */
+    protected int indexOfReached(int id) {
+        int index = indexOfId.get(id);
+        if (index == -1 || dist[index] == Double.POSITIVE_INFINITY)
+            throw new NoSuchElementException("No path found between these vertices");
+        return index;
+    }
+
+    /**
+     * Return the cost of the shortest path from the source to a vertex.
+     *
+     * @param id the id of the destination vertex
+     * @return the summed weight of the edges on the path
+     * @throws NoSuchElementException when the source does not reach a vertex with that id
+     */
+    public double distanceTo(int id) {
+        return dist[indexOfReached(id)];
+    }
+
+    /**
+     * Return the shortest path from the source to a vertex.
+     *
+     * @param id the id of the destination vertex
+     * @return the data items of the vertices on the path, including the source and the destination
+     * @throws NoSuchElementException when the source does not reach a vertex with that id
+     */
+    public List<IVertex> pathTo(int id) {
+        LinkedList<IVertex> path = new LinkedList<>();
+        for (int v = indexOfReached(id); v != -1; v = pred[v])
+            path.addFirst(data[v]);
+        return path;
+    }
+}
@@ -0,0 +1,158 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the single-source shortest path trees against a plain Dijkstra per pair,
+ * and their reuse by the backends
+ */
+public class ShortestPathTreeTests {
+    /**
+     * Check the tree of a source against the distances the reference Dijkstra finds from it.
+     */
+    private static void checkTree(ReferenceGraph reference, IVertex source, ShortestPathTree tree) {
+        assertSame(source, tree.getSource());
+        assertEquals(source.getId(), tree.getSourceId());
+        Map<IVertex, Double> distances = reference.distancesFrom(source);
+        for (IVertex target : reference.getVertices()) {
+            Double expected = distances.get(target);
+            if (expected == null) {
+                assertFalse(tree.reaches(target.getId()));
+                assertThrows(NoSuchElementException.class, () -> tree.distanceTo(target.getId()));
+                assertThrows(NoSuchElementException.class, () -> tree.pathTo(target.getId()));
+                continue;
+            }
+            assertTrue(tree.reaches(target.getId()));
+            double delta = 1e-9 * Math.max(1, expected);
+            assertEquals(expected, tree.distanceTo(target.getId()), delta);
+            List<IVertex> path = tree.pathTo(target.getId());
+            assertSame(source, path.get(0));
+            assertSame(target, path.get(path.size() - 1));
+            assertEquals(expected, reference.cost(path), delta);
+        }
+        assertFalse(tree.reaches(-1));
+        assertThrows(NoSuchElementException.class, () -> tree.distanceTo(-1));
+    }
+
+    /**
+     * Check the trees of random sources of random graphs built on an engine.
+     */
+    private static void checkEngine(Supplier<IGraph> engine, Function<IGraph, Function<IVertex, ShortestPathTree>> trees) {
+        for (long seed = 0; seed < 5; seed++) {
+            IGraph graph = engine.get();
+            ReferenceGraph reference = ReferenceGraph.random(graph, seed, 50, 110);
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < 5; i++) {
+                    IVertex source = reference.randomVertex();
+                    checkTree(reference, source, trees.apply(graph).apply(source));
+                }
+                reference.removeVertex(reference.randomVertex());
+                reference.addVertex();
+                reference.addEdge(reference.randomVertex(), reference.randomVertex());
+            }
+        }
+    }
+
+    /**
+     * The tree of every engine, and of snapshots, has the distances and paths of a plain
+     * Dijkstra per pair, and throws for the vertices the source does not reach
+     */
+    @Test
+    public void testMatchesDijkstra() {
+        checkEngine(AEPlaceholder::new, graph -> graph::shortestPathTree);
+        for (SearchMode mode : SearchMode.values())
+            checkEngine(() -> new CSRGraph(mode), graph -> graph::shortestPathTree);
+        checkEngine(ConcurrentGraph::new, graph -> graph::shortestPathTree);
+        checkEngine(CSRGraph::new, graph -> source -> graph.snapshot().shortestPathTree(source.getId()));
+    }
+
+    /**
+     * A tree keeps answering for the graph it was grown on after the graph changed
+     */
+    @Test
+    public void testTreeOfOldGraph() {
+        CSRGraph graph = new CSRGraph();
+        ReferenceGraph reference = ReferenceGraph.random(graph, 3, 40, 120);
+        IVertex source = reference.getVertices().get(0);
+        ShortestPathTree tree = graph.shortestPathTree(source);
+        List<Double> before = new ArrayList<>();
+        for (IVertex target : reference.getVertices())
+            before.add(tree.reaches(target.getId()) ? tree.distanceTo(target.getId()) : Double.POSITIVE_INFINITY);
+        for (IVertex target : reference.getVertices())
+            if (target != source) reference.addEdge(source, target, 1e-3);
+        for (int i = 0; i < before.size(); i++) {
+            IVertex target = reference.getVertices().get(i);
+            assertEquals(before.get(i), tree.reaches(target.getId()) ? tree.distanceTo(target.getId()) : Double.POSITIVE_INFINITY);
+        }
+        checkTree(reference, source, graph.shortestPathTree(source));
+    }
+
+    /**
+     * A graph engine that counts the trees it grows.
+     */
+    private static class CountingGraph extends CSRGraph {
+        int trees;
+
+        @Override
+        public ShortestPathTree shortestPathTree(IVertex source) {
+            trees++;
+            return super.shortestPathTree(source);
+        }
+    }
+
+    /**
+     * Routes to several destinations from one origin grow a single tree, which clicks that
+     * leave every vertex where it is do not drop, while a move grows a new one
+     */
+    @Test
+    public void testOneTreePerSource() throws IOException {
+        ReferenceGraph reference = ReferenceGraph.random(new CSRGraph(), 5, 30, 0);
+        List<IVertex> vertices = reference.getVertices();
+        List<IEdge> edges = new ArrayList<>();
+        for (int i = 0; i < 90; i++) {
+            IVertex source = reference.randomVertex();
+            IVertex target = reference.randomVertex();
+            if (reference.addEdge(source, target, ReferenceGraph.euclidean(source, target)))
+                edges.add(new EdgeGeneral(i, 0, source.getId(), target.getId()));
+        }
+        for (int kind = 0; kind < 2; kind++) {
+            CountingGraph graph = new CountingGraph();
+            IBackend backend = kind == 0 ? new Backend(() -> graph) : new BackendPlaceholder(() -> graph);
+            backend.load(vertices, edges);
+            IVertex origin = vertices.get(0);
+            IVertex reached = origin;
+            for (IVertex target : vertices) {
+                double expected = reference.distance(origin, target);
+                if (expected == Double.POSITIVE_INFINITY)
+                    assertThrows(NoSuchElementException.class, () -> backend.getShortestByDistance(origin.getId(), target.getId()));
+                else {
+                    assertEquals(expected, backend.getShortestByDistance(origin.getId(), target.getId()), 1e-9 * Math.max(1, expected));
+                    reached = target;
+                }
+                backend.changeVertex(target.getId(), target.getX(), target.getY()); // a click on the target
+            }
+            assertEquals(1, graph.trees);
+            ShortestPathTree tree = backend.getShortestPathTree(origin.getId());
+            assertSame(tree, backend.getShortestPathTree(origin.getId()));
+            assertEquals(1, graph.trees);
+
+            IVertex moved = vertices.get(1);
+            backend.changeVertex(moved.getId(), moved.getX(), moved.getY() + 1);
+            backend.getShortestByVertex(origin.getId(), reached.getId());
+            assertEquals(2, graph.trees);
+            backend.changeVertex(moved.getId(), moved.getX(), moved.getY() - 1);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+import javafx.animation.AnimationTimer;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Coalesces the updates caused by dragging vertices into one batch per frame. A drag only
+ * moves the vertex itself and marks it dirty. Once per pulse the timer writes each dirty
+ * vertex to the backend once and recomputes each edge incident to a dirty vertex once, even
+ * when both of its ends moved or the mouse sent several events during the frame. The timer
+ * stops as soon as a frame finds nothing to do.
+ */
+public class UpdateScheduler extends AnimationTimer {
+    private final MapController controller;
+    private final LinkedHashSet<VertexFD> movedVertices; // moved since the last frame, in order of the first move
+    private boolean running;
+
+    /**
+     * Constructor
+     *
+     * @param controller the controller of the map whose vertices are dragged
+     */
+    public UpdateScheduler(MapController controller) {
+        this.controller = controller;
+        this.movedVertices = new LinkedHashSet<>();
+        this.running = false;
+    }
+
+    /**
+     * Mark a vertex as moved, its position is written and its edges are updated in the next frame
+     *
+     * @param vertex the vertex that moved
+     */
+    public void vertexMoved(VertexFD vertex) {
+        this.movedVertices.add(vertex);
+        if (!this.running) {
+            this.running = true;
+            start();
+        }
+    }
+
+    /**
+     * Called by JavaFX once per frame while the timer runs
+     */
+    @Override
+    public void handle(long now) {
+        if (this.movedVertices.isEmpty()) {
+            this.running = false;
+            stop();
+        } else
+            flush();
+    }
+
+    /**
+     * Apply the pending updates now, e.g. when the drag ends or before the backend is queried
+     */
+    public void flush() {
+        if (this.movedVertices.isEmpty()) return;
+        HashSet<EdgeFD> edges = new HashSet<>();
+        for (VertexFD vertex : this.movedVertices) {
+            this.controller.viewport.extend(vertex.getX(), vertex.getY());
+            this.controller.backend.changeVertex(vertex.getId(), vertex.getX(), vertex.getY());
+            List<EdgeFD> incident = this.controller.edgesConnectedToVertex.get(vertex);
+            if (incident != null) edges.addAll(incident);
+        }
+        this.movedVertices.clear();
+        for (EdgeFD edge : edges)
+            edge.update();
+        this.controller.viewport.requestRedraw();
+    }
+
+    public boolean hasPendingUpdates() {
+        return !this.movedVertices.isEmpty();
+    }
+}
@@ -0,0 +1,312 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summaries of the map for drawing it zoomed out: at every level the plane is cut into a grid
+ * of square cells, twice as wide as at the level below, and each cell keeps the number and
+ * centroid of its vertices and the number of edges to every other cell. Drawing a level costs
+ * the cells in view instead of the vertices and edges in them. The summaries of all levels
+ * are kept up to date as vertices and edges are added, moved and removed: a move only touches
+ * the levels at which the vertex changes cells, and there only the bundles of its own edges.
+ */
+public class VertexClusters {
+
+    /**
+     * The vertices of one grid cell and the edges from them to other cells.
+     */
+    public static final class Cell {
+        private final int column;
+        private final int row;
+        private int count;
+        private double sumX; // of the coordinates of the vertices, for the centroid
+        private double sumY;
+        private final HashMap<Long, Integer> links; // key of another cell -> edges between the two, both directions
+
+        Cell(int column, int row) {
+            this.column = column;
+            this.row = row;
+            this.links = new HashMap<>();
+        }
+
+        public long getKey() {
+            return key(column, row);
+        }
+
+        public int getColumn() {
+            return column;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Return the x coordinate of the centroid of the vertices in the cell.
+         */
+        public double getX() {
+            return sumX / count;
+        }
+
+        /**
+         * Return the y coordinate of the centroid of the vertices in the cell.
+         */
+        public double getY() {
+            return sumY / count;
+        }
+
+        /**
+         * Return the number of edges between this cell and every other cell they connect it to,
+         * by the key of the other cell.
+         */
+        public Map<Long, Integer> getLinks() {
+            return Collections.unmodifiableMap(links);
+        }
+    }
+
+    public static final double BASE_CELL = 64; // side of a cell at level 0, in map coordinates
+    public static final int LEVELS = 10; // the top level has cells of 32768 pixels, CLUSTER_SIZE of MapCanvas at MIN_ZOOM
+
+    private final List<HashMap<Long, Cell>> levels; // level -> key of a cell -> cell
+    private final HashMap<Integer, double[]> positions; // vertex id -> {x, y}
+    private final HashMap<Integer, int[]> edgeEnds; // edge id -> {from id, to id}
+    private final HashMap<Integer, List<Integer>> incident; // vertex id -> ids of its edges
+
+    public VertexClusters() {
+        levels = new ArrayList<>(LEVELS);
+        for (int level = 0; level < LEVELS; level++)
+            levels.add(new HashMap<>());
+        positions = new HashMap<>();
+        edgeEnds = new HashMap<>();
+        incident = new HashMap<>();
+    }
+
+    /**
+     * Return the side of the cells at a level.
+     */
+    public static double cellSize(int level) {
+        return BASE_CELL * (1 << level);
+    }
+
+    /**
+     * Return the lowest level whose cells are at least a given size, the top level if none is.
+     */
+    public static int levelFor(double size) {
+        int level = 0;
+        while (level < LEVELS - 1 && cellSize(level) < size)
+            level++;
+        return level;
+    }
+
+    /**
+     * Pack the column and row of a cell into its key.
+     */
+    public static long key(int column, int row) {
+        return LongIntMap.key(column, row);
+    }
+
+    private static long keyOf(double x, double y, int level) {
+        double size = cellSize(level);
+        return key((int) Math.floor(x / size), (int) Math.floor(y / size));
+    }
+
+    public int vertexCount() {
+        return positions.size();
+    }
+
+    public int edgeCount() {
+        return edgeEnds.size();
+    }
+
+    /**
+     * Return a cell of a level.
+     *
+     * @return the cell with the given key, null if it holds no vertex
+     */
+    public Cell getCell(int level, long key) {
+        return levels.get(level).get(key);
+    }
+
+    /**
+     * Return the cells of a level that overlap a rectangle.
+     *
+     * @return the cells holding at least one vertex, in no particular order
+     */
+    public List<Cell> cellsIn(int level, double minX, double minY, double maxX, double maxY) {
+        HashMap<Long, Cell> cells = levels.get(level);
+        List<Cell> result = new ArrayList<>();
+        double size = cellSize(level);
+        long firstColumn = (long) Math.floor(minX / size), lastColumn = (long) Math.floor(maxX / size);
+        long firstRow = (long) Math.floor(minY / size), lastRow = (long) Math.floor(maxY / size);
+        if ((lastColumn - firstColumn + 1) * (lastRow - firstRow + 1) > cells.size()) {
+            // a sparse level, scanning its cells is cheaper than probing the rectangle
+            for (Cell cell : cells.values())
+                if (cell.column >= firstColumn && cell.column <= lastColumn && cell.row >= firstRow && cell.row <= lastRow)
+                    result.add(cell);
+        } else
+            for (long column = firstColumn; column <= lastColumn; column++)
+                for (long row = firstRow; row <= lastRow; row++) {
+                    Cell cell = cells.get(key((int) column, (int) row));
+                    if (cell != null) result.add(cell);
+                }
+        return result;
+    }
+
+    /**
+     * Add a vertex, moving it if it is already in the summaries.
+     */
+    public void addVertex(int id, double x, double y) {
+        if (positions.containsKey(id)) {
+            moveVertex(id, x, y);
+            return;
+        }
+        positions.put(id, new double[]{x, y});
+        for (int level = 0; level < LEVELS; level++)
+            enter(level, x, y);
+    }
+
+    /**
+     * Move a vertex, carrying the bundles of its edges along to the cells it enters.
+     */
+    public void moveVertex(int id, double x, double y) {
+        double[] pos = positions.get(id);
+        if (pos == null) {
+            addVertex(id, x, y);
+            return;
+        }
+        if (pos[0] == x && pos[1] == y) return;
+        List<Integer> edges = incident.getOrDefault(id, Collections.emptyList());
+        boolean[] changed = new boolean[LEVELS];
+        for (int level = 0; level < LEVELS; level++) {
+            changed[level] = keyOf(pos[0], pos[1], level) != keyOf(x, y, level);
+            if (changed[level])
+                for (int edge : edges)
+                    link(level, edge, -1);
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            if (changed[level]) {
+                leave(level, pos[0], pos[1]);
+                enter(level, x, y);
+            } else {
+                Cell cell = levels.get(level).get(keyOf(x, y, level));
+                cell.sumX += x - pos[0];
+                cell.sumY += y - pos[1];
+            }
+        }
+        pos[0] = x;
+        pos[1] = y;
+        for (int level = 0; level < LEVELS; level++)
+            if (changed[level])
+                for (int edge : edges)
+                    link(level, edge, 1);
+    }
+
+    /**
+     * Remove a vertex along with its edges.
+     */
+    public void removeVertex(int id) {
+        double[] pos = positions.get(id);
+        if (pos == null) return;
+        List<Integer> edges = incident.get(id);
+        if (edges != null)
+            for (int edge : edges.toArray(new Integer[0]))
+                removeEdge(edge);
+        for (int level = 0; level < LEVELS; level++)
+            leave(level, pos[0], pos[1]);
+        positions.remove(id);
+    }
+
+    /**
+     * Add an edge between two vertices in the summaries, replacing an edge with the same id.
+     * Edges with an end missing from the summaries are left out.
+     */
+    public void addEdge(int id, int from, int to) {
+        removeEdge(id);
+        if (!positions.containsKey(from) || !positions.containsKey(to)) return;
+        edgeEnds.put(id, new int[]{from, to});
+        incident.computeIfAbsent(from, k -> new ArrayList<>()).add(id);
+        if (to != from)
+            incident.computeIfAbsent(to, k -> new ArrayList<>()).add(id);
+        for (int level = 0; level < LEVELS; level++)
+            link(level, id, 1);
+    }
+
+    /**
+     * Remove an edge from the summaries.
+     */
+    public void removeEdge(int id) {
+        int[] ends = edgeEnds.get(id);
+        if (ends == null) return;
+        for (int level = 0; level < LEVELS; level++)
+            link(level, id, -1);
+        edgeEnds.remove(id);
+        forget(ends[0], id);
+        if (ends[1] != ends[0]) forget(ends[1], id);
+    }
+
+    public void clear() {
+        for (HashMap<Long, Cell> cells : levels)
+            cells.clear();
+        positions.clear();
+        edgeEnds.clear();
+        incident.clear();
+    }
+
+    private void forget(int vertex, int edge) {
+        List<Integer> edges = incident.get(vertex);
+        edges.remove((Integer) edge);
+        if (edges.isEmpty()) incident.remove(vertex);
+    }
+
+    private void enter(int level, double x, double y) {
+        long key = keyOf(x, y, level);
+        Cell cell = levels.get(level).get(key);
+        if (cell == null) {
+            double size = cellSize(level);
+            cell = new Cell((int) Math.floor(x / size), (int) Math.floor(y / size));
+            levels.get(level).put(key, cell);
+        }
+        cell.count++;
+        cell.sumX += x;
+        cell.sumY += y;
+    }
+
+    private void leave(int level, double x, double y) {
+        long key = keyOf(x, y, level);
+        Cell cell = levels.get(level).get(key);
+        if (--cell.count == 0)
+            levels.get(level).remove(key); // its links are gone too, the edges were unlinked first
+        else {
+            cell.sumX -= x;
+            cell.sumY -= y;
+        }
+    }
+
+    /**
+     * Count an edge in or out of the bundle between the cells of its ends at a level, edges
+     * within a single cell are not bundled.
+     */
+    private void link(int level, int edge, int delta) {
+        int[] ends = edgeEnds.get(edge);
+        double[] from = positions.get(ends[0]);
+        double[] to = positions.get(ends[1]);
+        long fromKey = keyOf(from[0], from[1], level);
+        long toKey = keyOf(to[0], to[1], level);
+        if (fromKey == toKey) return;
+        HashMap<Long, Cell> cells = levels.get(level);
+        adjust(cells.get(fromKey).links, toKey, delta);
+        adjust(cells.get(toKey).links, fromKey, delta);
+    }
+
+    private static void adjust(HashMap<Long, Integer> links, long key, int delta) {
+        int count = links.getOrDefault(key, 0) + delta;
+        if (count == 0) links.remove(key);
+        else links.put(key, count);
+    }
+}
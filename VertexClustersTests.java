@@ -0,0 +1,192 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the zoomed-out summaries of the map against summaries recomputed from
+ * scratch
+ */
+public class VertexClustersTests {
+    private final HashMap<Integer, double[]> positions = new HashMap<>();
+    private final HashMap<Integer, int[]> edges = new HashMap<>();
+
+    private static long keyOf(double[] position, int level) {
+        double size = VertexClusters.cellSize(level);
+        return VertexClusters.key((int) Math.floor(position[0] / size), (int) Math.floor(position[1] / size));
+    }
+
+    /**
+     * Recompute the cells of every level from the vertices and edges and compare them with
+     * the incrementally kept ones.
+     */
+    private void checkCells(VertexClusters clusters) {
+        assertEquals(positions.size(), clusters.vertexCount());
+        for (int level = 0; level < VertexClusters.LEVELS; level++) {
+            HashMap<Long, Integer> counts = new HashMap<>();
+            HashMap<Long, double[]> sums = new HashMap<>();
+            HashMap<Long, HashMap<Long, Integer>> links = new HashMap<>();
+            for (double[] position : positions.values()) {
+                long key = keyOf(position, level);
+                counts.merge(key, 1, Integer::sum);
+                double[] sum = sums.computeIfAbsent(key, k -> new double[2]);
+                sum[0] += position[0];
+                sum[1] += position[1];
+            }
+            for (int[] ends : edges.values()) {
+                long from = keyOf(positions.get(ends[0]), level);
+                long to = keyOf(positions.get(ends[1]), level);
+                if (from == to) continue;
+                links.computeIfAbsent(from, k -> new HashMap<>()).merge(to, 1, Integer::sum);
+                links.computeIfAbsent(to, k -> new HashMap<>()).merge(from, 1, Integer::sum);
+            }
+            List<VertexClusters.Cell> cells = clusters.cellsIn(level, -1e6, -1e6, 1e6, 1e6);
+            assertEquals(counts.size(), cells.size());
+            for (VertexClusters.Cell cell : cells) {
+                long key = cell.getKey();
+                assertEquals(counts.get(key), cell.getCount());
+                assertEquals(sums.get(key)[0] / counts.get(key), cell.getX(), 1e-6);
+                assertEquals(sums.get(key)[1] / counts.get(key), cell.getY(), 1e-6);
+                assertEquals(links.getOrDefault(key, new HashMap<>()), cell.getLinks());
+                assertEquals(cell, clusters.getCell(level, key));
+            }
+        }
+    }
+
+    /**
+     * Random vertex adds, moves and removals and edge adds and removals keep the cells of every
+     * level equal to cells recomputed from scratch
+     */
+    @Test
+    public void testMatchesRecomputation() {
+        for (long seed = 0; seed < 5; seed++) {
+            Random random = new Random(seed);
+            positions.clear();
+            edges.clear();
+            VertexClusters clusters = new VertexClusters();
+            int nextEdge = 0;
+            for (int step = 0; step < 5000; step++) {
+                int vertex = random.nextInt(300);
+                int op = random.nextInt(20);
+                if (op < 4) { // anywhere, also at negative coordinates
+                    double[] position = {random.nextDouble() * 5000 - 1000, random.nextDouble() * 5000 - 1000};
+                    clusters.addVertex(vertex, position[0], position[1]);
+                    positions.put(vertex, position);
+                } else if (op < 12) { // mostly a short way, so that the vertex often stays in its cell
+                    double[] position = positions.get(vertex);
+                    if (position == null) continue;
+                    position[0] += random.nextGaussian() * 100;
+                    position[1] += random.nextGaussian() * 100;
+                    clusters.moveVertex(vertex, position[0], position[1]);
+                } else if (op < 17) {
+                    int other = random.nextInt(300);
+                    if (!positions.containsKey(vertex) || !positions.containsKey(other)) continue;
+                    clusters.addEdge(nextEdge, vertex, other);
+                    edges.put(nextEdge++, new int[]{vertex, other});
+                } else if (op < 19) {
+                    if (edges.isEmpty()) continue;
+                    int edge = new ArrayList<>(edges.keySet()).get(random.nextInt(edges.size()));
+                    clusters.removeEdge(edge);
+                    edges.remove(edge);
+                } else {
+                    clusters.removeVertex(vertex);
+                    positions.remove(vertex);
+                    edges.values().removeIf(ends -> ends[0] == vertex || ends[1] == vertex);
+                }
+                if (step % 500 == 0) checkCells(clusters);
+            }
+            assertEquals(edges.size(), clusters.edgeCount());
+            checkCells(clusters);
+        }
+    }
+
+    /**
+     * A vertex removed along with its edges can be added again with new edges
+     */
+    @Test
+    public void testRemoveAndReinsert() {
+        VertexClusters clusters = new VertexClusters();
+        for (int i = 0; i < 10; i++) {
+            clusters.addVertex(i, i * 100, 0);
+            positions.put(i, new double[]{i * 100, 0});
+        }
+        for (int i = 0; i < 9; i++) {
+            clusters.addEdge(i, i, i + 1);
+            edges.put(i, new int[]{i, i + 1});
+        }
+        clusters.removeVertex(5);
+        positions.remove(5);
+        edges.remove(4);
+        edges.remove(5);
+        checkCells(clusters);
+        clusters.addVertex(5, 500, 300);
+        positions.put(5, new double[]{500, 300});
+        clusters.addEdge(4, 0, 5);
+        edges.put(4, new int[]{0, 5});
+        clusters.addEdge(4, 5, 9); // replaces the edge with the same id
+        edges.put(4, new int[]{5, 9});
+        clusters.addEdge(10, 5, 5);
+        edges.put(10, new int[]{5, 5});
+        clusters.addVertex(5, 520, 320); // moves the vertex, which is already there
+        positions.put(5, new double[]{520, 320});
+        checkCells(clusters);
+        clusters.addEdge(11, 5, 42); // an end is missing, left out
+        assertEquals(edges.size(), clusters.edgeCount());
+        clusters.clear();
+        positions.clear();
+        edges.clear();
+        checkCells(clusters);
+    }
+
+    /**
+     * Probing the cells of a small rectangle and scanning the cells of a sparse level find
+     * the same cells
+     */
+    @Test
+    public void testCellsIn() {
+        Random random = new Random(3);
+        VertexClusters clusters = new VertexClusters();
+        for (int i = 0; i < 500; i++)
+            clusters.addVertex(i, random.nextDouble() * 3000, random.nextDouble() * 3000);
+        for (int level = 0; level < VertexClusters.LEVELS; level++) {
+            List<VertexClusters.Cell> all = clusters.cellsIn(level, -1e6, -1e6, 1e6, 1e6);
+            for (int query = 0; query < 20; query++) {
+                double minX = random.nextDouble() * 3000, minY = random.nextDouble() * 3000;
+                double maxX = minX + random.nextDouble() * 500, maxY = minY + random.nextDouble() * 500;
+                double size = VertexClusters.cellSize(level);
+                Map<Long, VertexClusters.Cell> expected = new HashMap<>();
+                for (VertexClusters.Cell cell : all)
+                    if (cell.getColumn() >= Math.floor(minX / size) && cell.getColumn() <= Math.floor(maxX / size)
+                            && cell.getRow() >= Math.floor(minY / size) && cell.getRow() <= Math.floor(maxY / size))
+                        expected.put(cell.getKey(), cell);
+                List<VertexClusters.Cell> found = clusters.cellsIn(level, minX, minY, maxX, maxY);
+                assertEquals(expected.size(), found.size());
+                for (VertexClusters.Cell cell : found)
+                    assertEquals(expected.get(cell.getKey()), cell);
+            }
+        }
+        assertNull(clusters.getCell(0, VertexClusters.key(-5, -5)));
+    }
+
+    /**
+     * Cells double in size from level to level, and a size picks the lowest level whose cells
+     * are at least that large
+     */
+    @Test
+    public void testLevels() {
+        for (int level = 1; level < VertexClusters.LEVELS; level++)
+            assertEquals(2 * VertexClusters.cellSize(level - 1), VertexClusters.cellSize(level));
+        assertEquals(0, VertexClusters.levelFor(1));
+        assertEquals(0, VertexClusters.levelFor(VertexClusters.BASE_CELL));
+        assertEquals(1, VertexClusters.levelFor(VertexClusters.BASE_CELL + 1));
+        assertEquals(VertexClusters.LEVELS - 1, VertexClusters.levelFor(1e12));
+        assertTrue(VertexClusters.key(1, 2) != VertexClusters.key(2, 1));
+    }
+}
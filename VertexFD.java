@@ -1,4 +1,6 @@
+import javafx.event.EventHandler;
 import javafx.scene.Group;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
 import javafx.scene.control.MenuItem;
@@ -14,19 +16,79 @@ import java.util.Objects;
 
 /**
  * VertexFD is a class that represents a vertex on the graph, and an instance of IVertex
+ * Its JavaFX nodes are only attached while the vertex is near the viewport, see MapViewport
  *
  * @author Ruixuan Tu
  */
 public class VertexFD implements IVertex {
-    public Group group;
+    public static final double RADIUS = 30;
+
+    /**
+     * The JavaFX nodes drawing a vertex, recycled between the vertices that scroll in and out
+     * of the viewport, their handlers forward to the vertex currently owning them
+     */
+    public static class View {
+        public final Group group;
+        public final Circle circle;
+        public final Label label;
+        public final TextField textField;
+        public final ContextMenu contextMenu;
+        private VertexFD owner;
+
+        /**
+         * Constructor for View
+         */
+        public View() {
+            this.circle = new Circle(0, 0, RADIUS);
+            this.label = new Label();
+            this.group = new Group(circle, label);
+            this.textField = new TextField();
+            this.contextMenu = new ContextMenu();
+            MenuItem rename = new MenuItem("Rename");
+            MenuItem delete = new MenuItem("Delete");
+            this.contextMenu.getItems().addAll(rename, delete);
+
+            this.group.setOnMouseClicked(e -> this.owner.clickHandler.handle(e));
+            this.group.setOnContextMenuRequested(e -> {
+                this.contextMenu.show(this.group, e.getScreenX(), e.getScreenY());
+                e.consume();
+            });
+            this.group.setOnMouseDragged(e -> this.owner.handleGroupMouseDragged(e));
+            this.group.setOnMouseReleased(e -> this.owner.controller.updates.flush());
+            this.group.setOnDragDetected(e -> this.owner.dragging = true);
+            this.group.setOnMousePressed(e -> {
+                this.owner.dragging = false;
+                this.owner.updatePositions();
+            });
+
+            rename.setOnAction(e -> {
+                this.owner.startEditing();
+                e.consume();
+            });
+            delete.setOnAction(e -> {
+                this.owner.controller.removeVertex(this.owner.id);
+                e.consume();
+            });
+
+            this.textField.setOnKeyPressed(e -> this.owner.handleTextFieldKeyPressed(e));
+        }
+    }
+
+    public View view; // null while the vertex is outside the viewport
+    public Group group; // the nodes of view, null along with it
     public Circle circle;
-    public int id;
-    public MapPoint pos;
     public Label label;
     public TextField textField;
     public ContextMenu contextMenu;
+    public int id;
+    public MapPoint pos;
+    public String labelText;
+    public Color fill;
+    public Color textFill;
     public boolean selected;
     public boolean dragging;
+    public boolean editing; // the label is replaced by the text field to rename the vertex
+    public EventHandler<MouseEvent> clickHandler;
     public MapController controller;
 
     /**
@@ -39,74 +101,160 @@ public class VertexFD implements IVertex {
      * @param controller the controller of the graph
      */
     public VertexFD(int id, double x, double y, String labelText, MapController controller) {
-        this.circle = new Circle(x, y, 30);
-        this.label = new Label(labelText);
-        this.group = new Group(circle, label);
-        this.circle.setFill(Color.LIGHTGRAY);
         this.pos = new MapPoint(x, y);
         this.id = id;
-        this.textField = new TextField(labelText);
-        this.contextMenu = new ContextMenu();
-        MenuItem rename = new MenuItem("Rename");
-        MenuItem delete = new MenuItem("Delete");
-        this.contextMenu.getItems().addAll(rename, delete);
+        this.labelText = labelText;
+        this.fill = Color.LIGHTGRAY;
+        this.textFill = Color.BLACK;
         this.selected = false;
-        this.group.setId("vertex-" + id);
+        this.editing = false;
+        this.clickHandler = this::handleGroupMouseClicked;
         this.controller = controller;
-        try {
-            this.controller.backend.addVertex(this);
-        } catch (Exception ex) {
-            this.controller.criticalError("Backend error when adding Vertex " + id + ".", ex);
+    }
+
+    /**
+     * Attach the nodes of a view to the vertex and draw the vertex with them
+     *
+     * @param view the view to take over
+     */
+    public void show(View view) {
+        this.view = view;
+        view.owner = this;
+        this.group = view.group;
+        this.circle = view.circle;
+        this.label = view.label;
+        this.textField = view.textField;
+        this.contextMenu = view.contextMenu;
+        this.group.setId("vertex-" + id);
+        this.circle.setCenterX(this.pos.getX());
+        this.circle.setCenterY(this.pos.getY());
+        this.circle.setFill(this.fill);
+        this.label.setText(this.labelText);
+        this.label.setTextFill(this.textFill);
+        this.textField.setText(this.labelText);
+        this.group.getChildren().setAll(this.circle, this.editing ? this.textField : this.label);
+        layoutLabel();
+    }
+
+    /**
+     * Detach the nodes of the vertex so that another vertex can reuse them
+     *
+     * @return the view the vertex was drawn with
+     */
+    public View hide() {
+        View view = this.view;
+        this.contextMenu.hide();
+        view.owner = null;
+        this.view = null;
+        this.group = null;
+        this.circle = null;
+        this.label = null;
+        this.textField = null;
+        this.contextMenu = null;
+        return view;
+    }
+
+    /**
+     * Draw the vertex onto a canvas, for the vertices not shown with their own nodes
+     *
+     * @param gc the graphics context of the canvas, with text centered on the drawing point
+     */
+    public void draw(GraphicsContext gc) {
+        gc.setFill(this.fill);
+        gc.fillOval(this.pos.getX() - RADIUS, this.pos.getY() - RADIUS, 2 * RADIUS, 2 * RADIUS);
+        gc.setFill(this.textFill);
+        gc.fillText(this.labelText, this.pos.getX(), this.pos.getY());
+    }
+
+    /**
+     * Set the colors of the circle and the label of the vertex
+     *
+     * @param fill     the color of the circle
+     * @param textFill the color of the label
+     */
+    public void setColors(Color fill, Color textFill) {
+        this.fill = fill;
+        this.textFill = textFill;
+        if (this.view != null) {
+            this.circle.setFill(fill);
+            this.label.setTextFill(textFill);
         }
-        updatePositions();
+        this.controller.viewport.requestRedraw();
+    }
 
-        this.group.setOnMouseClicked(this::handleGroupMouseClicked);
-        this.group.setOnContextMenuRequested(e -> {
-            this.contextMenu.show(this.group, e.getScreenX(), e.getScreenY());
-            e.consume();
-        });
-        this.group.setOnMouseDragged(this::handleGroupMouseDragged);
-        this.group.setOnDragDetected(e -> this.dragging = true);
-        this.group.setOnMousePressed(e -> {
-            this.dragging = false;
-            updatePositions();
-        });
-
-        rename.setOnAction(e -> {
-            this.group.getChildren().remove(this.label);
-            this.textField.setText(this.label.getText());
-            this.group.getChildren().add(textField);
-            updatePositions();
-            e.consume();
-        });
-        delete.setOnAction(e -> {
-            this.controller.removeVertex(this.id);
-            e.consume();
-        });
-
-        this.textField.setOnKeyPressed(this::handleTextFieldKeyPressed);
+    /**
+     * Set the handler of mouse clicks on the vertex
+     *
+     * @param handler the handler of the mouse clicked event
+     */
+    public void setOnMouseClicked(EventHandler<MouseEvent> handler) {
+        this.clickHandler = handler;
     }
 
     /**
      * Deselects the vertex
      */
     public void deselect() {
-        this.circle.setFill(Color.LIGHTGRAY);
-        this.label.setTextFill(Color.BLACK);
+        setColors(Color.LIGHTGRAY, Color.BLACK);
         this.selected = false;
         this.controller.selectedVertices.remove(this);
     }
 
+    /**
+     * Replaces the label with the text field to rename the vertex
+     */
+    private void startEditing() {
+        this.editing = true;
+        this.group.getChildren().remove(this.label);
+        this.textField.setText(this.label.getText());
+        this.group.getChildren().add(textField);
+        updatePositions();
+    }
+
+    /**
+     * Replaces the text field with the label after renaming the vertex
+     */
+    private void stopEditing() {
+        this.editing = false;
+        this.group.getChildren().remove(this.textField);
+        this.group.getChildren().add(this.label);
+        updatePositions();
+    }
+
+    /**
+     * Moves the vertex to a new position
+     *
+     * @param x the new x coordinate of the vertex
+     * @param y the new y coordinate of the vertex
+     */
+    private void moveTo(double x, double y) {
+        this.pos.setPos(x, y);
+        if (this.view != null) {
+            this.circle.setCenterX(x);
+            this.circle.setCenterY(y);
+        }
+        updatePositions();
+    }
+
     /**
      * Updates the x and y positions of the vertex
      */
     private void updatePositions() {
+        layoutLabel();
+        this.controller.viewport.extend(this.pos.getX(), this.pos.getY());
+        this.controller.viewport.requestRedraw();
+        this.controller.backend.changeVertex(this.id, this.pos.getX(), this.pos.getY());
+    }
+
+    /**
+     * Centers the label and the text field on the circle, if the vertex is shown
+     */
+    private void layoutLabel() {
+        if (this.view == null) return;
         this.label.setLayoutX(this.circle.getCenterX() - this.label.getWidth() / 2);
         this.label.setLayoutY(this.circle.getCenterY() - this.label.getHeight() / 2);
         this.textField.setLayoutX(this.circle.getCenterX() - this.textField.getWidth() / 2);
         this.textField.setLayoutY(this.circle.getCenterY() - this.textField.getHeight() / 2);
-        this.pos.setPos(this.circle.getCenterX(), this.circle.getCenterY());
-        this.controller.backend.changeVertex(this.id, this.pos.getX(), this.pos.getY());
     }
 
     /**
@@ -116,15 +264,11 @@ public class VertexFD implements IVertex {
      */
     private void handleTextFieldKeyPressed(KeyEvent e) {
         if (e.getCode() == KeyCode.ENTER) {
-            this.label.setText(this.textField.getText());
+            setLabel(this.textField.getText());
             this.controller.backend.changeVertex(this.getId(), this.textField.getText());
-            this.group.getChildren().remove(this.textField);
-            this.group.getChildren().add(this.label);
-            updatePositions();
+            stopEditing();
         } else if (e.getCode() == KeyCode.ESCAPE) {
-            this.group.getChildren().remove(this.textField);
-            this.group.getChildren().add(this.label);
-            updatePositions();
+            stopEditing();
         }
         e.consume();
     }
@@ -167,15 +311,26 @@ public class VertexFD implements IVertex {
      * @param e the mouse dragged event
      */
     private void handleGroupMouseDragged(MouseEvent e) {
+        dragTo(e.getX(), e.getY());
+    }
+
+    /**
+     * Drags the vertex to a point, or starts to draw an edge from it if it is the selected
+     * vertex. Only the vertex itself moves right away, its backend position and its edges are
+     * updated once per frame by the update scheduler of the controller
+     *
+     * @param x the x coordinate of the point in the pane
+     * @param y the y coordinate of the point in the pane
+     */
+    public void dragTo(double x, double y) {
         if (!selected) {
-            double draggedX = e.getX();
-            double draggedY = e.getY();
-            this.circle.setCenterX(draggedX);
-            this.circle.setCenterY(draggedY);
-            updatePositions();
-            if (this.controller.edgesConnectedToVertex.containsKey(this))
-                for (EdgeFD edge : this.controller.edgesConnectedToVertex.get(this))
-                    edge.update();
+            this.pos.setPos(x, y);
+            if (this.view != null) {
+                this.circle.setCenterX(x);
+                this.circle.setCenterY(y);
+                layoutLabel();
+            }
+            this.controller.updates.vertexMoved(this);
         } else {
             if (this.controller.selectedVertices.size() == 1)
                 // start to draw an edge
@@ -201,7 +356,8 @@ public class VertexFD implements IVertex {
     @Override
     public void setId(int id) {
         this.id = id;
-        group.setId(Integer.toString(id));
+        if (this.view != null)
+            group.setId(Integer.toString(id));
     }
 
     /**
@@ -211,7 +367,7 @@ public class VertexFD implements IVertex {
      */
     @Override
     public String getLabel() {
-        return this.label.getText();
+        return this.labelText;
     }
 
     /**
@@ -221,7 +377,9 @@ public class VertexFD implements IVertex {
      */
     @Override
     public void setLabel(String label) {
-        this.label.setText(label);
+        this.labelText = label;
+        if (this.view != null)
+            this.label.setText(label);
     }
 
     /**
@@ -231,7 +389,7 @@ public class VertexFD implements IVertex {
      */
     @Override
     public double getX() {
-        return this.circle.getCenterX();
+        return this.pos.getX();
     }
 
     /**
@@ -241,8 +399,7 @@ public class VertexFD implements IVertex {
      */
     @Override
     public void setX(double x) {
-        this.circle.setCenterX(x);
-        updatePositions();
+        moveTo(x, this.pos.getY());
     }
 
     /**
@@ -252,7 +409,7 @@ public class VertexFD implements IVertex {
      */
     @Override
     public double getY() {
-        return this.circle.getCenterY();
+        return this.pos.getY();
     }
 
     /**
@@ -262,8 +419,7 @@ public class VertexFD implements IVertex {
      */
     @Override
     public void setY(double y) {
-        this.circle.setCenterY(y);
-        updatePositions();
+        moveTo(this.pos.getX(), y);
     }
 
     /**